@@ -1,18 +1,84 @@
 package edu.sdsu.rocket.core.helpers;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 public abstract class RateLimitedRunnable implements Runnable {
 	
 	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
 
-	private long sleep_ms;
-	private long sleep_ns;
+	/**
+	 * How the loop is paced.
+	 */
+	public enum Pacing {
+		/**
+		 * Sleeps for the sleep duration after each loop, so the period is the
+		 * duration of the loop plus the sleep (the default).
+		 */
+		SLEEP,
+		/**
+		 * Starts each loop at an absolute deadline, the sleep duration (the
+		 * period) after the previous deadline, so the rate does not drift
+		 * with the duration of the loop or the load.
+		 */
+		DEADLINE,
+	}
+	
+	/**
+	 * What a {@link Pacing#DEADLINE} paced loop does when it overruns (ends
+	 * after the next deadline).
+	 */
+	public enum Overrun {
+		/**
+		 * Skips the deadlines which have passed and continues at the next one,
+		 * so the rate drops while overrunning (the default).
+		 */
+		SKIP,
+		/**
+		 * Runs the loop again immediately until it has caught up with the
+		 * deadlines, so the average rate is kept.
+		 */
+		CATCH_UP,
+	}
+	
+	/**
+	 * Default duration before a deadline which is spun instead of parked:
+	 * none, since spinning busies a core every period. A loop which needs
+	 * more precision than parking gives (it overshoots by tens of
+	 * microseconds) opts in with {@link #setSpinNanoseconds(long)}.
+	 */
+	public static final long DEFAULT_SPIN_NANOSECONDS = 0L;
+	
+	/**
+	 * Number of recent periods kept for {@link #getRecentPeriods()}.
+	 */
+	public static final int WINDOW = 1024;
+	
+	// set from other threads than the loop's
+	private volatile long sleep_ms;
+	private volatile long sleep_ns;
 
+	private volatile Pacing pacing = Pacing.SLEEP;
+	private volatile Overrun overrun = Overrun.SKIP;
+	private volatile long spin = DEFAULT_SPIN_NANOSECONDS;
+	
+	// statistics of the periods, guarded by statistics
+	private final Object statistics = new Object();
+	private final long[] window = new long[WINDOW]; // ns, recent periods
+	private int windowSize;
+	private int next; // index in the window
+	private long periods;
+	private double periodMean; // ns
+	private double periodM2; // sum of squared differences from the mean (Welford)
+	private long maxLateness; // ns
+	private long overruns;
+	private long skipped;
+	
 	private Object lock = new Object();
-	private boolean isPaused;
+	private volatile boolean isPaused;
 
-	private boolean isRunning = true;
+	private volatile boolean isRunning = true;
 	
 	public RateLimitedRunnable() {
 		this(0L, false);
@@ -34,7 +100,7 @@ public abstract class RateLimitedRunnable implements Runnable {
 	public void setRunning(boolean isRunning) {
 		this.isRunning = isRunning;
 	}
-
+	
 	/**
 	 * Sets the running frequency.
 	 * 
@@ -44,7 +110,7 @@ public abstract class RateLimitedRunnable implements Runnable {
 		if (frequency == 0f) {
 			throw new IllegalArgumentException("Frequency cannot be zero.");
 		}
-		setSleep(Math.round(1000f / frequency));
+		setSleepNanoseconds(Math.round(NANOSECONDS_PER_SECOND / (double) frequency));
 	}
 	
 	/**
@@ -63,14 +129,8 @@ public abstract class RateLimitedRunnable implements Runnable {
 	 * @param sleep (in nanoseconds)
 	 */
 	public void setSleepNanoseconds(long nanoseconds) {
-		// http://stackoverflow.com/q/4300653/196486
-		if (nanoseconds > 999999) {
-			sleep_ms = nanoseconds / NANOSECONDS_PER_MILLISECOND;
-			sleep_ns = TimeUnit.NANOSECONDS.toMillis(nanoseconds);
-		} else {
-			sleep_ms = 0;
-			sleep_ns = nanoseconds;
-		}
+		sleep_ms = nanoseconds / NANOSECONDS_PER_MILLISECOND;
+		sleep_ns = nanoseconds % NANOSECONDS_PER_MILLISECOND;
 	}
 	
 	/**
@@ -86,16 +146,140 @@ public abstract class RateLimitedRunnable implements Runnable {
 		return sleep_ms * NANOSECONDS_PER_MILLISECOND + sleep_ns;
 	}
 	
+	/**
+	 * Sets how the loop is paced. With {@link Pacing#DEADLINE}, the sleep
+	 * duration is the period.
+	 * 
+	 * @param pacing
+	 */
+	public void setPacing(Pacing pacing) {
+		if (pacing == null) throw new NullPointerException();
+		this.pacing = pacing;
+	}
+	
+	public Pacing getPacing() {
+		return pacing;
+	}
+	
+	/**
+	 * Sets what a deadline paced loop does when it overruns.
+	 * 
+	 * @param overrun
+	 */
+	public void setOverrun(Overrun overrun) {
+		if (overrun == null) throw new NullPointerException();
+		this.overrun = overrun;
+	}
+	
+	/**
+	 * Sets the duration before each deadline which is spun (busy waited)
+	 * rather than parked, for sub-millisecond precision at the cost of a
+	 * busy core, or 0 to only park (the default).
+	 * 
+	 * @param nanoseconds
+	 */
+	public void setSpinNanoseconds(long nanoseconds) {
+		if (nanoseconds < 0) {
+			throw new IllegalArgumentException("Spin cannot be negative.");
+		}
+		this.spin = nanoseconds;
+	}
+	
+	/**
+	 * Returns the number of periods (times between the starts of consecutive
+	 * loops) measured.
+	 */
+	public long getPeriods() {
+		synchronized (statistics) {
+			return periods;
+		}
+	}
+	
+	/**
+	 * Returns the mean period (ns).
+	 */
+	public double getMeanPeriod() {
+		synchronized (statistics) {
+			return periodMean;
+		}
+	}
+	
+	/**
+	 * Returns the standard deviation of the periods (ns).
+	 */
+	public double getJitter() {
+		synchronized (statistics) {
+			return periods < 2 ? 0.0 : Math.sqrt(periodM2 / (periods - 1));
+		}
+	}
+	
+	/**
+	 * Returns the longest a deadline paced loop started after its deadline
+	 * (ns).
+	 */
+	public long getMaxLateness() {
+		synchronized (statistics) {
+			return maxLateness;
+		}
+	}
+	
+	/**
+	 * Returns the number of deadline paced loops which ended after the next
+	 * deadline.
+	 */
+	public long getOverruns() {
+		synchronized (statistics) {
+			return overruns;
+		}
+	}
+	
+	/**
+	 * Returns the number of deadlines skipped after overruns.
+	 */
+	public long getSkipped() {
+		synchronized (statistics) {
+			return skipped;
+		}
+	}
+	
+	/**
+	 * Returns the most recent periods (ns), up to {@link #WINDOW} of them in
+	 * no particular order.
+	 */
+	public long[] getRecentPeriods() {
+		synchronized (statistics) {
+			return Arrays.copyOf(window, windowSize);
+		}
+	}
+	
+	public void resetStatistics() {
+		synchronized (statistics) {
+			windowSize = 0;
+			next = 0;
+			periods = 0;
+			periodMean = 0.0;
+			periodM2 = 0.0;
+			maxLateness = 0;
+			overruns = 0;
+			skipped = 0;
+		}
+	}
+	
 	public void pause() {
 		synchronized (lock) {
 			isPaused = true;
 		}
 	}
 	
+	/**
+	 * Resumes the loop, resetting the statistics so that they are not of the
+	 * time spent paused.
+	 */
 	public void resume() {
 		synchronized (lock) {
 			if (isPaused) {
 				isPaused = false;
+				resetStatistics();
 				lock.notifyAll();
 			}
 		}
@@ -107,21 +291,61 @@ public abstract class RateLimitedRunnable implements Runnable {
 	
 	@Override
 	public final void run() {
+		long previous = 0; // start of the previous loop, 0 to restart the statistics
+		long deadline = 0; // of the loop when deadline paced, 0 to start pacing
 		while (!Thread.currentThread().isInterrupted() && isRunning) {
 			try {
+				long start = System.nanoTime();
+				boolean isPaced = pacing == Pacing.DEADLINE;
+				if (!isPaced || deadline == 0) {
+					deadline = start;
+				}
+				if (previous != 0) {
+					record(start - previous, start - deadline);
+				}
+				previous = start;
+				
 				loop();
 				
-				if (sleep_ms != 0 || sleep_ns != 0) {
-					if (sleep_ns == 0) {
-						Thread.sleep(sleep_ms);
+				if (isPaced) {
+					long period = getSleepNanoseconds();
+					if (period != 0) {
+						deadline += period;
+						long now = System.nanoTime();
+						if (now - deadline > 0) {
+							long missed = 0;
+							if (overrun == Overrun.SKIP) {
+								missed = (now - deadline) / period + 1;
+								deadline += missed * period;
+							}
+							synchronized (statistics) {
+								overruns++;
+								skipped += missed;
+							}
+						}
+						waitUntil(deadline);
 					} else {
-						Thread.sleep(sleep_ms, (int) sleep_ns);
+						deadline = 0;
+					}
+				} else {
+					long ms = sleep_ms;
+					long ns = sleep_ns;
+					if (ms != 0 || ns != 0) {
+						if (ns == 0) {
+							Thread.sleep(ms);
+						} else {
+							Thread.sleep(ms, (int) ns);
+						}
 					}
 				}
 				
 				synchronized (lock) {
-					while (isPaused) {
-						lock.wait();
+					if (isPaused) {
+						while (isPaused) {
+							lock.wait();
+						}
+						previous = 0; // rather than measuring the pause
+						deadline = 0; // rather than catching up on it
 					}
 				}
 			} catch (InterruptedException e) {
@@ -131,6 +355,45 @@ public abstract class RateLimitedRunnable implements Runnable {
 		}
 	}
 	
+	private void record(long period, long lateness) {
+		synchronized (statistics) {
+			window[next] = period;
+			next = (next + 1) % WINDOW;
+			if (windowSize < WINDOW) windowSize++;
+			
+			periods++;
+			double delta = period - periodMean;
+			periodMean += delta / periods;
+			periodM2 += delta * (period - periodMean);
+			if (lateness > maxLateness) {
+				maxLateness = lateness;
+			}
+		}
+	}
+	
+	private void waitUntil(long deadline) throws InterruptedException {
+		waitUntil(deadline, spin);
+	}
+	
+	/**
+	 * Parks until shortly before the deadline and spins for the rest.
+	 * 
+	 * @param deadline {@link System#nanoTime()} to wait until
+	 * @param spin Duration before the deadline which is spun (ns), 0 to only
+	 *             park.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public static void waitUntil(long deadline, long spin) throws InterruptedException {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > spin) {
+			LockSupport.parkNanos(remaining - spin);
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+		while (deadline - System.nanoTime() > 0) {
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+	}
+	
 	public abstract void loop() throws InterruptedException;
 
 }
@@ -1,26 +1,29 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import edu.sdsu.rocket.core.helpers.Stopwatch;
 
-public class ADS1115OutputStream extends DataOutputStream {
+public class ADS1115OutputStream extends SensorOutputStream {
 	
-	public static final byte SENSOR_VALUE = 0x0;
+	public static final String NAME = "ads1115";
 	
-	private final Stopwatch stopwatch = new Stopwatch();
+	public static final byte SENSOR_VALUE = 0x0;
 
 	public ADS1115OutputStream(OutputStream out) {
 		super(out);
 	}
+	
+	public ADS1115OutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out, stopwatch);
+	}
 
-	public void writeValue(int channel, float value) throws IOException {
-		write(SENSOR_VALUE);
-		writeLong(stopwatch.nanoSecondsElapsed());
-		writeInt(channel);
-		writeFloat(value);
+	public synchronized void writeValue(int channel, float value) throws IOException {
+		beginRecord(SENSOR_VALUE)
+			.putInt(channel)
+			.putFloat(value);
+		endRecord();
 	}
 
 }
@@ -1,10 +1,9 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-public class ADXL345InputStream extends DataInputStream {
+public class ADXL345InputStream extends SensorInputStream {
 	
 	public class ADXL345Reading {
 		public long timestamp;
@@ -24,10 +23,13 @@ public class ADXL345InputStream extends DataInputStream {
 			switch (type) {
 			case ADXL345OutputStream.SENSOR_VALUES:
 				ADXL345Reading reading = new ADXL345Reading();
-				reading.timestamp = readLong();
-				reading.values[0] = readShort();
-				reading.values[1] = readShort();
-				reading.values[2] = readShort();
+				reading.timestamp = readVector(reading.values);
+				reading.scalingFactor = scalingFactor;
+				return reading;
+			case ADXL345OutputStream.SENSOR_VALUES_DELTA:
+				reading = new ADXL345Reading();
+				reading.timestamp = readVectorDelta(reading.values);
+				if (reading.timestamp == -1L) break; // no keyframe yet
 				reading.scalingFactor = scalingFactor;
 				return reading;
 			case ADXL345OutputStream.SCALING_FACTOR:
@@ -0,0 +1,347 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Writes blocks to the sinks of one target (e.g. a logging directory) on a
+ * dedicated thread, so that a slow target cannot stall the thread producing
+ * the blocks or the other targets.
+ * 
+ * Blocks are copied into a bounded queue. When the queue is full the policy
+ * decides whether the producer waits, the oldest queued block is dropped or
+ * the target is detached (all further blocks for it are dropped).
+ */
+public class AsyncBlockWriter {
+	
+	public enum Policy {
+		BLOCK,
+		DROP_OLDEST,
+		DETACH;
+	}
+	
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	
+	private static final int WRITE = 0;
+	private static final int FLUSH = 1;
+	private static final int CLOSE = 2;
+	
+	private static class Entry {
+		final int op;
+		final BlockSink target;
+		final ByteBuffer buffer;
+		final long enqueued = System.nanoTime();
+		
+		Entry(int op, BlockSink target, ByteBuffer buffer) {
+			this.op = op;
+			this.target = target;
+			this.buffer = buffer;
+		}
+	}
+	
+	private final String name;
+	private final int capacity;
+	private final Policy policy;
+	
+	private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+	private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>();
+	private int queuedBlocks;
+	
+	private boolean isDetached;
+	private boolean isClosed;
+	private Thread thread;
+	
+	private final long started = System.nanoTime();
+	private volatile long blocks;
+	private volatile long bytes;
+	private volatile long dropped;
+	private volatile long writeErrors;
+	private volatile long lag;
+	private volatile long maxLag;
+	
+	/**
+	 * @param name Name of the target (e.g. its directory).
+	 * @param capacity Maximum number of queued blocks.
+	 * @param policy What to do when the queue is full.
+	 */
+	public AsyncBlockWriter(String name, int capacity, Policy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		if (policy == null) throw new NullPointerException();
+		this.name = name;
+		this.capacity = capacity;
+		this.policy = policy;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns a sink which queues its blocks to be written to the specified
+	 * target by the writer thread. Flushing and closing the sink are queued
+	 * in order with its blocks.
+	 * 
+	 * @param target
+	 * @return
+	 */
+	public BlockSink open(final BlockSink target) {
+		if (target == null) throw new NullPointerException();
+		return new BlockSink() {
+			@Override
+			public void write(ByteBuffer block) throws IOException {
+				enqueue(target, block);
+			}
+			
+			@Override
+			public void flush() throws IOException {
+				enqueue(new Entry(FLUSH, target, null));
+			}
+			
+			@Override
+			public void close() throws IOException {
+				enqueue(new Entry(CLOSE, target, null));
+			}
+		};
+	}
+	
+	private synchronized void enqueue(BlockSink target, ByteBuffer block) throws IOException {
+		while (queuedBlocks == capacity && !isDetached && !isClosed) {
+			switch (policy) {
+			case BLOCK:
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for " + name);
+				}
+				break;
+			case DROP_OLDEST:
+				if (!dropOldest()) {
+					dropped++; // only the block being written is older
+					return;
+				}
+				break;
+			case DETACH:
+				detach();
+				break;
+			}
+		}
+		if (isDetached || isClosed) {
+			dropped++;
+			return;
+		}
+		
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null || buffer.capacity() < block.remaining()) {
+			buffer = ByteBuffer.allocate(block.remaining());
+		}
+		int position = block.position();
+		buffer.clear();
+		buffer.put(block);
+		buffer.flip();
+		block.position(position);
+		
+		queue.add(new Entry(WRITE, target, buffer));
+		queuedBlocks++;
+		notifyAll();
+	}
+	
+	private boolean dropOldest() {
+		for (Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.op == WRITE) {
+				it.remove();
+				pool.add(entry.buffer);
+				queuedBlocks--;
+				dropped++;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private synchronized void enqueue(Entry entry) {
+		queue.add(entry);
+		notifyAll();
+	}
+	
+	/**
+	 * Stops writing to the target. Queued blocks are discarded, but queued
+	 * flushes and closes are still performed.
+	 */
+	public synchronized void detach() {
+		if (isDetached) return;
+		isDetached = true;
+		for (Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.op == WRITE) {
+				it.remove();
+				dropped++;
+			}
+		}
+		queuedBlocks = 0;
+		pool.clear();
+		notifyAll();
+		System.err.println(getClass().getSimpleName() + ": detached " + name);
+	}
+	
+	public synchronized boolean isDetached() {
+		return isDetached;
+	}
+	
+	/**
+	 * Starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Writer already started: " + name);
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Entry entry;
+						synchronized (AsyncBlockWriter.this) {
+							while (queue.isEmpty()) {
+								if (isClosed) return;
+								AsyncBlockWriter.this.wait();
+							}
+							entry = queue.poll();
+						}
+						process(entry);
+					}
+				} catch (InterruptedException e) {
+					// shutting down
+				}
+			}
+		});
+		thread.setName(getClass().getSimpleName() + " " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void process(Entry entry) {
+		try {
+			switch (entry.op) {
+			case WRITE:
+				int length = entry.buffer.remaining();
+				entry.target.write(entry.buffer);
+				long l = System.nanoTime() - entry.enqueued;
+				lag = l;
+				if (l > maxLag) maxLag = l;
+				bytes += length;
+				blocks++;
+				break;
+			case FLUSH:
+				entry.target.flush();
+				break;
+			case CLOSE:
+				entry.target.close();
+				break;
+			}
+		} catch (IOException e) {
+			writeErrors++;
+			System.err.println(name + ": " + e);
+		} finally {
+			if (entry.op == WRITE) {
+				synchronized (this) {
+					if (!isDetached) {
+						pool.add(entry.buffer);
+						queuedBlocks--;
+					}
+					notifyAll();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stops accepting blocks, then waits up to the specified timeout for the
+	 * queued blocks to be written. If they are not, the target is detached.
+	 * 
+	 * @param timeout (in milliseconds)
+	 * @return true if every queued block was written.
+	 */
+	public boolean shutdown(long timeout) {
+		synchronized (this) {
+			isClosed = true;
+			notifyAll();
+			if (thread == null) {
+				return queue.isEmpty();
+			}
+		}
+		
+		boolean isFinished = true;
+		try {
+			thread.join(timeout);
+			if (thread.isAlive()) {
+				isFinished = false;
+				detach();
+				thread.join(timeout);
+			}
+		} catch (InterruptedException e) {
+			isFinished = false;
+			System.err.println(e);
+		}
+		return isFinished;
+	}
+	
+	/**
+	 * Returns the number of blocks waiting to be written.
+	 */
+	public synchronized int getPending() {
+		return queuedBlocks;
+	}
+	
+	public long getBlockCount() {
+		return blocks;
+	}
+	
+	public long getDroppedCount() {
+		return dropped;
+	}
+	
+	public long getWriteErrorCount() {
+		return writeErrors;
+	}
+	
+	/**
+	 * Returns the time (in milliseconds) the most recently written block
+	 * spent queued.
+	 */
+	public long getLag() {
+		return lag / NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	public long getMaxLag() {
+		return maxLag / NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	/**
+	 * Returns the average number of bytes written per second.
+	 */
+	public long getThroughput() {
+		long elapsed = System.nanoTime() - started;
+		return elapsed == 0 ? 0 : bytes * NANOSECONDS_PER_SECOND / elapsed;
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " " + name
+				+ ": blocks=" + getBlockCount()
+				+ ", pending=" + getPending() + "/" + capacity
+				+ ", dropped=" + getDroppedCount()
+				+ ", lag=" + getLag() + " ms"
+				+ ", max lag=" + getMaxLag() + " ms"
+				+ ", throughput=" + getThroughput() / 1024 + " KiB/s"
+				+ ", write errors=" + getWriteErrorCount()
+				+ (isDetached() ? ", detached" : "");
+	}
+
+}
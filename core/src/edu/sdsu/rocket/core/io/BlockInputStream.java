@@ -0,0 +1,312 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads the payload of framed blocks written by {@link BlockOutputStream}.
+ * 
+ * Given the scanners of several mirrored copies of a log, each block is taken
+ * from whichever copy holds an intact block with its sequence number, so a
+ * block is only lost if it is damaged in every copy.
+ * 
+ * Given the scanners of the stripes of a log (see {@link BlockSinkStriper}),
+ * the blocks are interleaved back into sequence order the same way.
+ * 
+ * While tracking, the offset of every block in each copy is kept until it is
+ * located (see {@link #locate(long)}), so that a reading can later be read
+ * again by opening the copies at its block (see
+ * {@link LogFiles#seek(BlockInputStream, int, long[], java.io.File...)}).
+ */
+public class BlockInputStream extends InputStream {
+	
+	/**
+	 * Where a block of the log can be read from.
+	 */
+	public static class Location {
+		
+		/**
+		 * Offset of the payload of the block in the log.
+		 */
+		public final long start;
+		
+		/**
+		 * Offset of the block in each copy, or of the first block after it
+		 * which the copy holds (-1 if it holds none).
+		 */
+		public final long[] offsets;
+		
+		Location(long start, long[] offsets) {
+			this.start = start;
+			this.offsets = offsets;
+		}
+		
+	}
+	
+	private BlockScanner[] scanners;
+	private boolean[] hasBlock;
+	
+	private BlockScanner current;
+	private int position;
+	private int limit;
+	
+	private long expected;
+	private long lostBlocks;
+	private boolean isStarted;
+	private boolean isResumed;
+	
+	/**
+	 * Offset in the log of the payload of the next block.
+	 */
+	private long nextStart;
+	private Deque<Location> locations;
+	
+	private DiscontinuityListener listener;
+	
+	public BlockInputStream(BlockScanner... scanners) {
+		if (scanners.length == 0) {
+			throw new IllegalArgumentException("At least one scanner is required.");
+		}
+		this.scanners = scanners;
+		this.hasBlock = new boolean[scanners.length];
+	}
+	
+	/**
+	 * Reads the log from the specified scanners instead, which start within
+	 * the log (e.g. at the offsets of a {@link Location}), so the blocks
+	 * before their first block are not lost. Offsets in the log are from
+	 * there on. The current scanners are closed.
+	 * 
+	 * @param scanners
+	 * @throws IOException
+	 */
+	void resume(BlockScanner... scanners) throws IOException {
+		if (isStarted) {
+			throw new IllegalStateException("Already reading.");
+		}
+		if (scanners.length == 0) {
+			throw new IllegalArgumentException("At least one scanner is required.");
+		}
+		close();
+		this.scanners = scanners;
+		this.hasBlock = new boolean[scanners.length];
+		this.isResumed = true;
+	}
+	
+	/**
+	 * Keeps the location of the blocks read from now on, until they are
+	 * located.
+	 */
+	public void track() {
+		if (locations == null) {
+			locations = new ArrayDeque<Location>();
+		}
+	}
+	
+	/**
+	 * Returns the location of the block holding the specified offset of the
+	 * log, and forgets the locations of the blocks before it (so offsets are
+	 * located in increasing order).
+	 * 
+	 * @param offset Offset in the log of a block which has been read since
+	 *               {@link #track()} was called.
+	 * @return
+	 */
+	public Location locate(long offset) {
+		if (locations == null) {
+			throw new IllegalStateException("Blocks are not tracked.");
+		}
+		Location location = locations.poll();
+		while (!locations.isEmpty() && locations.peek().start <= offset) {
+			location = locations.poll();
+		}
+		if (location == null || location.start > offset) {
+			throw new IllegalArgumentException("Offset not read: " + offset);
+		}
+		locations.addFirst(location); // may hold the next offset too
+		return location;
+	}
+	
+	/**
+	 * Sets the listener notified where blocks are lost. It is called from the
+	 * read which returns the first payload of the block after them, before
+	 * any of it is returned (blocks hold whole records, so that is the start
+	 * of a record).
+	 * 
+	 * @param listener
+	 */
+	public void setDiscontinuityListener(DiscontinuityListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Advances to the next block.
+	 * 
+	 * @return false once every copy has been exhausted.
+	 * @throws IOException
+	 */
+	private boolean nextBlock() throws IOException {
+		BlockScanner next = null;
+		for (int i = 0; i < scanners.length; i++) {
+			if (!isStarted) {
+				hasBlock[i] = scanners[i].next();
+			}
+			while (hasBlock[i] && scanners[i].getSequence() < expected) {
+				hasBlock[i] = scanners[i].next();
+			}
+			if (hasBlock[i] && (next == null || scanners[i].getSequence() < next.getSequence())) {
+				next = scanners[i];
+			}
+		}
+		isStarted = true;
+		
+		current = next;
+		if (next == null) return false;
+		
+		if (isResumed) {
+			isResumed = false;
+			expected = next.getSequence();
+		}
+		if (next.getSequence() > expected) {
+			lostBlocks += next.getSequence() - expected;
+			if (listener != null) {
+				listener.onDiscontinuity();
+			}
+		}
+		expected = next.getSequence() + 1;
+		position = next.getPayloadOffset();
+		limit = position + next.getPayloadLength();
+		
+		if (locations != null) {
+			long[] offsets = new long[scanners.length];
+			for (int i = 0; i < scanners.length; i++) {
+				offsets[i] = hasBlock[i] ? scanners[i].getBlockOffset() : -1L;
+			}
+			locations.add(new Location(nextStart, offsets));
+		}
+		nextStart += next.getPayloadLength();
+		return true;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		while (current == null || position == limit) {
+			if (!nextBlock()) return -1;
+		}
+		return current.getBuffer()[position++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		while (current == null || position == limit) {
+			if (!nextBlock()) return -1;
+		}
+		int n = Math.min(len, limit - position);
+		System.arraycopy(current.getBuffer(), position, b, off, n);
+		position += n;
+		return n;
+	}
+	
+	/**
+	 * Skips payload without copying it (the blocks are still read and
+	 * checked).
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n) {
+			while (current == null || position == limit) {
+				if (!nextBlock()) return skipped;
+			}
+			int count = (int) Math.min(n - skipped, limit - position);
+			position += count;
+			skipped += count;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return current == null ? 0 : limit - position;
+	}
+	
+	/**
+	 * Returns the number of copies (or stripes) the blocks are read from.
+	 */
+	public int getCopyCount() {
+		return scanners.length;
+	}
+	
+	/**
+	 * Returns the number of blocks missing (or damaged) in every copy.
+	 */
+	public long getLostBlockCount() {
+		return lostBlocks;
+	}
+	
+	/**
+	 * Returns the number of damaged regions skipped across all copies.
+	 */
+	public long getCorruptionCount() {
+		long count = 0;
+		for (BlockScanner scanner : scanners) {
+			count += scanner.getCorruptionCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the number of bytes skipped in damaged regions across all
+	 * copies.
+	 */
+	public long getSkippedBytes() {
+		long count = 0;
+		for (BlockScanner scanner : scanners) {
+			count += scanner.getSkippedBytes();
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the number of headers skipped across all copies because their
+	 * length was larger than the block size.
+	 */
+	public long getOversizedCount() {
+		long count = 0;
+		for (BlockScanner scanner : scanners) {
+			count += scanner.getOversizedCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the number of bytes of unused pre-allocated space found at the
+	 * end of the copies, which are left behind by logs that were not closed.
+	 */
+	public long getUnusedBytes() {
+		long count = 0;
+		for (BlockScanner scanner : scanners) {
+			count += scanner.getUnusedBytes();
+		}
+		return count;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (BlockScanner scanner : scanners) {
+			try {
+				scanner.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+}
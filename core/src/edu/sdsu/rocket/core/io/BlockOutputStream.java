@@ -0,0 +1,167 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Accumulates writes into a reusable block buffer which is handed to a
+ * {@link BlockSink} once full, turning many small record writes into a single
+ * bulk write per block.
+ * 
+ * A write never straddles two blocks unless it is larger than a block, so
+ * records written with a single call always start and end within a block.
+ * 
+ * When framed, each block is preceded by a header which allows a
+ * {@link BlockScanner} to verify it and to resynchronise past damaged blocks:
+ *   sync marker (int), sequence number (int), payload length (int),
+ *   CRC32 of sequence number, length and payload (int)
+ */
+public class BlockOutputStream extends OutputStream {
+	
+	public static final int DEFAULT_BLOCK_SIZE = 4096; // bytes
+	
+	public static final int SYNC = 0xA55AC33C;
+	public static final int HEADER_SIZE = 16; // bytes
+	
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	private final BlockSink sink;
+	private final ByteBuffer block;
+	private final boolean isFramed;
+	private final int start;
+	
+	private final CRC32 crc = new CRC32();
+	private int sequence;
+	
+	private long maxAge;
+	private long firstWrite;
+	
+	public BlockOutputStream(BlockSink sink) {
+		this(sink, DEFAULT_BLOCK_SIZE, false);
+	}
+	
+	public BlockOutputStream(BlockSink sink, int blockSize) {
+		this(sink, blockSize, false);
+	}
+	
+	/**
+	 * @param sink
+	 * @param blockSize Size of each block (in bytes), including the header of
+	 *                  framed blocks.
+	 * @param isFramed Whether to precede each block with a checksummed header.
+	 */
+	public BlockOutputStream(BlockSink sink, int blockSize, boolean isFramed) {
+		if (sink == null) throw new NullPointerException();
+		if (blockSize <= (isFramed ? HEADER_SIZE : 0)) {
+			throw new IllegalArgumentException("Block size too small: " + blockSize);
+		}
+		this.sink = sink;
+		this.block = ByteBuffer.allocate(blockSize);
+		this.isFramed = isFramed;
+		this.start = isFramed ? HEADER_SIZE : 0;
+		block.position(start);
+	}
+	
+	public BlockSink getSink() {
+		return sink;
+	}
+	
+	public int getBlockSize() {
+		return block.capacity();
+	}
+	
+	public boolean isFramed() {
+		return isFramed;
+	}
+	
+	/**
+	 * Returns the sequence number of the next block.
+	 */
+	public synchronized int getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * Sets the maximum duration data may remain in a partially filled block
+	 * before it is written on the next write. Zero disables the limit.
+	 * 
+	 * @param milliseconds
+	 */
+	public void setMaxAge(long milliseconds) {
+		maxAge = milliseconds * NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	@Override
+	public synchronized void write(int b) throws IOException {
+		if (!block.hasRemaining()) {
+			writeBlock();
+		}
+		if (block.position() == start) {
+			firstWrite = System.nanoTime();
+		}
+		block.put((byte) b);
+	}
+	
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (len > block.remaining()) {
+			writeBlock();
+		}
+		if (block.position() == start) {
+			firstWrite = System.nanoTime();
+		}
+		
+		while (len > block.remaining()) { // larger than a block
+			int chunk = block.remaining();
+			block.put(b, off, chunk);
+			off += chunk;
+			len -= chunk;
+			writeBlock();
+		}
+		block.put(b, off, len);
+		
+		if (!block.hasRemaining() || (maxAge != 0 && System.nanoTime() - firstWrite >= maxAge)) {
+			writeBlock();
+		}
+	}
+	
+	private void writeBlock() throws IOException {
+		if (block.position() == start) return;
+		if (isFramed) {
+			int length = block.position() - HEADER_SIZE;
+			block.putInt(0, SYNC);
+			block.putInt(4, sequence);
+			block.putInt(8, length);
+			crc.reset();
+			crc.update(block.array(), 4, 8);
+			crc.update(block.array(), HEADER_SIZE, length);
+			block.putInt(12, (int) crc.getValue());
+		}
+		block.flip();
+		try {
+			sink.write(block);
+		} finally {
+			sequence++;
+			block.clear();
+			block.position(start);
+		}
+	}
+	
+	@Override
+	public synchronized void flush() throws IOException {
+		writeBlock();
+		sink.flush();
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			writeBlock();
+		} finally {
+			sink.close();
+		}
+	}
+
+}
@@ -0,0 +1,351 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Scans a stream of framed blocks written by {@link BlockOutputStream},
+ * returning only the blocks whose checksum is intact.
+ * 
+ * Torn or corrupted regions (e.g. after a loss of power) are skipped by
+ * searching forward for the next sync marker, so a damaged block only costs
+ * the records it contained rather than the rest of the log.
+ * 
+ * A run of zeros from the last intact block to the end of the stream is the
+ * unused space of a pre-allocated log (see {@link FileChannelSink}) rather
+ * than damage, so it marks the true end of the data. So is an unfinished
+ * block of a mapped log (see {@link MappedLogOutputStream}) followed by zeros:
+ * its payload is written before its header, so after a crash it is a header
+ * of zeros followed by at most a block of data.
+ */
+public class BlockScanner {
+	
+	/**
+	 * Largest payload accepted when the block size of the writer is not
+	 * known.
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 24; // bytes
+	
+	private static final int BUFFER_SIZE = 1 << 16; // bytes
+	
+	private final InputStream in;
+	private final int maxLength; // of a payload
+	private final CRC32 crc = new CRC32();
+	
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean isEOF;
+	
+	/**
+	 * Stream offset of the first byte in the buffer.
+	 */
+	private long base;
+	
+	private long sequence = -1L;
+	private int payloadOffset;
+	private int payloadLength;
+	private long blockOffset;
+	
+	private long endOffset;
+	
+	private long blocks;
+	private long corruptions;
+	private long skippedBytes;
+	private long unusedBytes;
+	private long oversized;
+	
+	/**
+	 * Bytes skipped since the last intact block and the offsets (into them)
+	 * of the first and last non-zero bytes (-1 if all zero).
+	 */
+	private long pending;
+	private long firstNonZero = -1L;
+	private long lastNonZero = -1L;
+	
+	public BlockScanner(InputStream in) {
+		this(in, BlockOutputStream.HEADER_SIZE + MAX_BLOCK_SIZE);
+	}
+	
+	/**
+	 * @param in
+	 * @param blockSize Block size the log was written with (in bytes,
+	 *                  including the header). Headers of larger blocks are
+	 *                  damaged, which keeps a damaged length from hiding the
+	 *                  blocks after it.
+	 */
+	public BlockScanner(InputStream in, int blockSize) {
+		this(in, blockSize, 0L);
+	}
+	
+	/**
+	 * @param in Stream of a copy of the log, opened at the specified offset.
+	 * @param blockSize Block size the log was written with.
+	 * @param offset Offset of the start of the stream in the copy, so that
+	 *               {@link #getBlockOffset()} is an offset into the copy.
+	 */
+	public BlockScanner(InputStream in, int blockSize, long offset) {
+		if (in == null) throw new NullPointerException();
+		if (blockSize <= BlockOutputStream.HEADER_SIZE) {
+			throw new IllegalArgumentException("Block size too small: " + blockSize);
+		}
+		this.in = in;
+		this.maxLength = blockSize - BlockOutputStream.HEADER_SIZE;
+		this.base = offset;
+		this.endOffset = offset;
+	}
+	
+	/**
+	 * Returns true if the specified bytes start with a block sync marker.
+	 * 
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return
+	 */
+	public static boolean isFramed(byte[] b, int off, int len) {
+		return len >= 4 && getInt(b, off) == BlockOutputStream.SYNC;
+	}
+	
+	/**
+	 * Advances to the next intact block.
+	 * 
+	 * @return false once the end of the stream is reached.
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			if (!fill(BlockOutputStream.HEADER_SIZE)) {
+				skip(limit - position);
+				endOfStream();
+				return false;
+			}
+			
+			if (getInt(buffer, position) != BlockOutputStream.SYNC) {
+				int sync = findSync(position + 1);
+				skip(sync - position);
+				continue;
+			}
+			
+			int length = getInt(buffer, position + 8);
+			if (length < 0 || length > maxLength) {
+				if (length > maxLength && length <= MAX_BLOCK_SIZE) {
+					oversized++;
+				}
+				skip(1);
+				continue;
+			}
+			
+			int size = BlockOutputStream.HEADER_SIZE + length;
+			if (!fill(size)) {
+				// a torn block at the end of the stream, or a damaged length
+				// running past it: the rest of the stream is in the buffer,
+				// so keep searching it for intact blocks
+				skip(1);
+				continue;
+			}
+			
+			crc.reset();
+			crc.update(buffer, position + 4, 8);
+			crc.update(buffer, position + BlockOutputStream.HEADER_SIZE, length);
+			if ((int) crc.getValue() != getInt(buffer, position + 12)) {
+				skip(1);
+				continue;
+			}
+			
+			damaged();
+			sequence = getInt(buffer, position + 4) & 0xFFFFFFFFL;
+			blockOffset = base + position;
+			payloadOffset = position + BlockOutputStream.HEADER_SIZE;
+			payloadLength = length;
+			position += size;
+			endOffset = base + position;
+			blocks++;
+			return true;
+		}
+	}
+	
+	private void skip(int count) {
+		for (int i = position; i < position + count; i++) {
+			if (buffer[i] != 0) {
+				lastNonZero = pending + i - position;
+				if (firstNonZero == -1L) {
+					firstNonZero = lastNonZero;
+				}
+			}
+		}
+		pending += count;
+		position += count;
+	}
+	
+	/**
+	 * Counts the bytes skipped since the last intact block as a damaged
+	 * region.
+	 */
+	private void damaged() {
+		if (pending != 0) {
+			corruptions++;
+			skippedBytes += pending;
+		}
+		pending = 0;
+		firstNonZero = -1L;
+		lastNonZero = -1L;
+	}
+	
+	/**
+	 * Counts the bytes skipped before the end of the stream as unused space
+	 * if they are all zero or an unfinished block of a mapped log followed by
+	 * zeros, or as damage otherwise.
+	 */
+	private void endOfStream() {
+		boolean isUnused = firstNonZero == -1L
+				|| (firstNonZero >= BlockOutputStream.HEADER_SIZE
+						&& lastNonZero < BlockOutputStream.HEADER_SIZE + maxLength);
+		if (isUnused) {
+			unusedBytes += pending;
+			pending = 0;
+			firstNonZero = -1L;
+			lastNonZero = -1L;
+		} else {
+			damaged();
+		}
+	}
+	
+	/**
+	 * Returns the position of the next possible sync marker in the buffer at
+	 * or after the specified position, or the position from which the search
+	 * must continue once more data has been read.
+	 */
+	private int findSync(int from) {
+		int last = limit - 4;
+		byte b0 = (byte) (BlockOutputStream.SYNC >>> 24);
+		for (int i = from; i <= last; i++) {
+			if (buffer[i] == b0 && getInt(buffer, i) == BlockOutputStream.SYNC) {
+				return i;
+			}
+		}
+		return Math.max(from, last + 1);
+	}
+	
+	/**
+	 * Ensures the specified number of bytes are available in the buffer from
+	 * the current position.
+	 * 
+	 * @param count
+	 * @return false if the end of the stream is reached first.
+	 * @throws IOException
+	 */
+	private boolean fill(int count) throws IOException {
+		if (limit - position >= count) return true;
+		if (isEOF) return false;
+		
+		if (position + count > buffer.length) {
+			int remaining = limit - position;
+			byte[] b = count > buffer.length ? new byte[Math.max(count, buffer.length * 2)] : buffer;
+			System.arraycopy(buffer, position, b, 0, remaining);
+			buffer = b;
+			base += position;
+			position = 0;
+			limit = remaining;
+		}
+		
+		while (limit - position < count) {
+			int n = in.read(buffer, limit, buffer.length - limit);
+			if (n == -1) {
+				isEOF = true;
+				return false;
+			}
+			limit += n;
+		}
+		return true;
+	}
+	
+	private static int getInt(byte[] b, int off) {
+		return ((b[off] & 0xFF) << 24)
+				| ((b[off + 1] & 0xFF) << 16)
+				| ((b[off + 2] & 0xFF) << 8)
+				| (b[off + 3] & 0xFF);
+	}
+	
+	/**
+	 * Returns the sequence number of the current block.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * Returns the buffer holding the payload of the current block (only valid
+	 * until the next call to {@link #next()}).
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+	
+	public int getPayloadOffset() {
+		return payloadOffset;
+	}
+	
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+	
+	/**
+	 * Returns the stream offset of the current block.
+	 */
+	public long getBlockOffset() {
+		return blockOffset;
+	}
+	
+	/**
+	 * Returns the stream offset just past the last intact block, which is the
+	 * true end of the data once the end of the stream has been reached.
+	 */
+	public long getEndOffset() {
+		return endOffset;
+	}
+	
+	/**
+	 * Returns the number of intact blocks read.
+	 */
+	public long getBlockCount() {
+		return blocks;
+	}
+	
+	/**
+	 * Returns the number of damaged regions skipped.
+	 */
+	public long getCorruptionCount() {
+		return corruptions;
+	}
+	
+	/**
+	 * Returns the number of bytes skipped in damaged regions.
+	 */
+	public long getSkippedBytes() {
+		return skippedBytes;
+	}
+	
+	/**
+	 * Returns the number of headers skipped because their length was larger
+	 * than the block size, which, if there are no intact blocks, suggests the
+	 * log was written with a larger block size.
+	 */
+	public long getOversizedCount() {
+		return oversized;
+	}
+	
+	/**
+	 * Returns the number of bytes found after the last intact block which were
+	 * never written (zeros) or never closed (an unfinished mapped block).
+	 */
+	public long getUnusedBytes() {
+		return unusedBytes;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
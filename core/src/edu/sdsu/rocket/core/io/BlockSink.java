@@ -0,0 +1,25 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for the blocks assembled by a {@link BlockOutputStream}.
+ */
+public interface BlockSink {
+	
+	/**
+	 * Writes the remaining bytes of the block. Implementations must leave the
+	 * position of the block unchanged so that it can be written to multiple
+	 * sinks.
+	 * 
+	 * @param block
+	 * @throws IOException
+	 */
+	public void write(ByteBuffer block) throws IOException;
+	
+	public void flush() throws IOException;
+	
+	public void close() throws IOException;
+	
+}
@@ -0,0 +1,58 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mirrors every block to each of its sinks (in order, on the caller thread).
+ */
+public class BlockSinkMultiplexer implements BlockSink {
+	
+	private final List<BlockSink> sinks = new ArrayList<BlockSink>();
+	
+	public BlockSinkMultiplexer(BlockSink ... sinks) {
+		for (BlockSink sink : sinks) {
+			this.sinks.add(sink);
+		}
+	}
+	
+	public void add(BlockSink sink) {
+		sinks.add(sink);
+	}
+	
+	public void remove(BlockSink sink) {
+		sinks.remove(sink);
+	}
+
+	@Override
+	public void write(ByteBuffer block) throws IOException {
+		for (BlockSink sink : sinks) {
+			sink.write(block);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (BlockSink sink : sinks) {
+			sink.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (BlockSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distributes blocks round-robin across its sinks (RAID-0 style), so each
+ * sink receives only every n-th block.
+ * 
+ * The blocks should be framed so that the stripes can be put back in order
+ * by the sequence numbers of their blocks (see {@link BlockInputStream}).
+ */
+public class BlockSinkStriper implements BlockSink {
+	
+	private final List<BlockSink> sinks = new ArrayList<BlockSink>();
+	private int next;
+	
+	public BlockSinkStriper(BlockSink ... sinks) {
+		for (BlockSink sink : sinks) {
+			this.sinks.add(sink);
+		}
+	}
+	
+	public void add(BlockSink sink) {
+		sinks.add(sink);
+	}
+	
+	@Override
+	public void write(ByteBuffer block) throws IOException {
+		if (next >= sinks.size()) {
+			next = 0;
+		}
+		sinks.get(next++).write(block);
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		for (BlockSink sink : sinks) {
+			sink.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (BlockSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over the remaining bytes of a (replaceable) byte buffer.
+ */
+public class ByteBufferInputStream extends InputStream {
+	
+	private ByteBuffer buffer;
+	
+	public ByteBufferInputStream() {
+		this(ByteBuffer.allocate(0));
+	}
+	
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		setBuffer(buffer);
+	}
+	
+	public void setBuffer(ByteBuffer buffer) {
+		if (buffer == null) throw new NullPointerException();
+		this.buffer = buffer;
+	}
+	
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+	
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) return 0;
+		if (!buffer.hasRemaining()) return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+	
+	@Override
+	public long skip(long n) {
+		int k = (int) Math.min(Math.max(n, 0), buffer.remaining());
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+	
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+}
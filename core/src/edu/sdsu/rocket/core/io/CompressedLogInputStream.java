@@ -0,0 +1,292 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a log written by {@link CompressedLogOutputStream}, decompressing it
+ * one chunk at a time. Uses the index in the footer to seek to any
+ * uncompressed offset without decompressing the chunks before it.
+ * 
+ * A corrupt chunk is reported and skipped, continuing from the next chunk
+ * (found from its header or, if that is damaged too, from the index), so the
+ * rest of the log can still be read; a framed log resynchronizes on the next
+ * intact block.
+ */
+public class CompressedLogInputStream extends InputStream {
+	
+	private final String path;
+	private final RandomAccessFile file;
+	private final Inflater inflater = new Inflater();
+	
+	private final byte[] chunk;
+	private byte[] compressed;
+	private int position;
+	private int limit;
+	
+	/**
+	 * Uncompressed offset of the current chunk.
+	 */
+	private long chunkStart;
+	
+	/**
+	 * File offset of the next chunk.
+	 */
+	private long next = CompressedLogOutputStream.HEADER_SIZE;
+	private boolean isEOF;
+	
+	private long[] uncompressedOffsets;
+	private long[] offsets;
+	
+	private long corruptChunks;
+	
+	public CompressedLogInputStream(File file) throws IOException {
+		this.path = file.getPath();
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			int magic = this.file.readInt();
+			if (magic != CompressedLogOutputStream.MAGIC) {
+				throw new IOException("Not a compressed log: " + Integer.toHexString(magic));
+			}
+			int version = this.file.readUnsignedByte();
+			if (version > CompressedLogOutputStream.VERSION) {
+				throw new IOException("Unsupported compressed log version: " + version);
+			}
+			int chunkSize = this.file.readInt();
+			if (chunkSize <= 0) {
+				throw new IOException("Invalid chunk size: " + chunkSize);
+			}
+			chunk = new byte[chunkSize];
+			compressed = new byte[chunkSize + chunkSize / 8 + 64];
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Decompresses the next intact chunk.
+	 * 
+	 * @return false at the footer or the end of the file.
+	 * @throws IOException
+	 */
+	private boolean nextChunk() throws IOException {
+		while (!isEOF) {
+			chunkStart += limit;
+			position = 0;
+			limit = 0;
+			
+			int length;
+			int compressedLength;
+			try {
+				file.seek(next);
+				length = file.readInt();
+				if (length == 0) { // footer
+					isEOF = true;
+					return false;
+				}
+				compressedLength = file.readInt();
+				if (length < 0 || length > chunk.length || compressedLength < 0 || compressedLength > file.length() - next) {
+					corrupt("invalid chunk header");
+					if (!skipToIndexedChunk()) {
+						isEOF = true;
+						return false;
+					}
+					continue;
+				}
+				if (compressedLength > compressed.length) {
+					compressed = new byte[compressedLength];
+				}
+				file.readFully(compressed, 0, compressedLength);
+			} catch (EOFException e) { // not closed properly
+				isEOF = true;
+				return false;
+			}
+			
+			boolean isIntact = inflate(length, compressedLength);
+			next += CompressedLogOutputStream.CHUNK_HEADER_SIZE + compressedLength;
+			if (isIntact) return true;
+			
+			chunkStart += length; // keeps the uncompressed offsets of the chunks after it
+			limit = 0;
+		}
+		return false;
+	}
+	
+	/**
+	 * Decompresses the compressed chunk into the chunk buffer.
+	 * 
+	 * @return false if the chunk is corrupt (and was reported).
+	 */
+	private boolean inflate(int length, int compressedLength) {
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedLength);
+		try {
+			while (limit < length && !inflater.finished()) {
+				int n = inflater.inflate(chunk, limit, length - limit);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				limit += n;
+			}
+		} catch (DataFormatException e) {
+			corrupt(e.getMessage());
+			return false;
+		}
+		if (limit != length) {
+			corrupt("truncated");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves to the first chunk of the index after the current one, when the
+	 * header of the current chunk cannot be trusted to find it.
+	 * 
+	 * @return false if there is no such chunk or the log has no index.
+	 */
+	private boolean skipToIndexedChunk() {
+		try {
+			if (offsets == null) {
+				readIndex();
+			}
+		} catch (IOException e) {
+			System.err.println(path + ": " + e.getMessage() + " Skipping the rest of the log.");
+			return false;
+		}
+		for (int i = 0; i < offsets.length; i++) {
+			if (offsets[i] > next) {
+				chunkStart = uncompressedOffsets[i];
+				next = offsets[i];
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void corrupt(String reason) {
+		corruptChunks++;
+		System.err.println(path + ": skipping corrupt chunk at offset " + next + " (" + reason + ")");
+	}
+	
+	@Override
+	public int read() throws IOException {
+		while (position == limit) {
+			if (!nextChunk()) return -1;
+		}
+		return chunk[position++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		while (position == limit) {
+			if (!nextChunk()) return -1;
+		}
+		int n = Math.min(len, limit - position);
+		System.arraycopy(chunk, position, b, off, n);
+		position += n;
+		return n;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return limit - position;
+	}
+	
+	/**
+	 * Returns the number of corrupt chunks skipped.
+	 */
+	public long getCorruptChunkCount() {
+		return corruptChunks;
+	}
+	
+	/**
+	 * Returns the current uncompressed offset.
+	 */
+	public long getPosition() {
+		return chunkStart + position;
+	}
+	
+	/**
+	 * Returns the uncompressed length of the log.
+	 * 
+	 * @throws IOException if the log has no index (e.g. it was not closed).
+	 */
+	public long getLength() throws IOException {
+		if (offsets == null) {
+			readIndex();
+		}
+		int last = offsets.length - 1;
+		if (last == -1) return 0L;
+		file.seek(offsets[last]);
+		return uncompressedOffsets[last] + file.readInt();
+	}
+	
+	/**
+	 * Moves to the specified uncompressed offset.
+	 * 
+	 * @param offset
+	 * @throws IOException if the log has no index (e.g. it was not closed).
+	 */
+	public void seek(long offset) throws IOException {
+		if (offsets == null) {
+			readIndex();
+		}
+		
+		int i = -1;
+		int lo = 0;
+		int hi = uncompressedOffsets.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (uncompressedOffsets[mid] <= offset) {
+				i = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (i == -1) {
+			throw new IOException("Invalid offset: " + offset);
+		}
+		
+		chunkStart = uncompressedOffsets[i];
+		next = offsets[i];
+		position = 0;
+		limit = 0;
+		isEOF = false;
+		if (nextChunk()) {
+			position = (int) Math.max(0, Math.min(offset - chunkStart, limit)); // 0 if its chunk was corrupt
+		}
+	}
+	
+	private void readIndex() throws IOException {
+		long length = file.length();
+		file.seek(length - CompressedLogOutputStream.TRAILER_SIZE);
+		long footer = file.readLong();
+		if (file.readInt() != CompressedLogOutputStream.MAGIC || footer < 0 || footer >= length) {
+			throw new IOException("Compressed log has no index.");
+		}
+		
+		file.seek(footer);
+		file.readInt(); // end of chunks
+		int count = file.readInt();
+		uncompressedOffsets = new long[count];
+		offsets = new long[count];
+		for (int i = 0; i < count; i++) {
+			uncompressedOffsets[i] = file.readLong();
+			offsets[i] = file.readLong();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		file.close();
+	}
+
+}
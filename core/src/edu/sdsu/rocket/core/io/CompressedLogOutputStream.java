@@ -0,0 +1,167 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a log in a seekable block-compressed format. The log is split into
+ * chunks of a fixed uncompressed size which are deflated independently, so a
+ * reader can start decompressing at any chunk.
+ * 
+ * Header:
+ *   magic (int), version (byte), chunk size (int)
+ * 
+ * Chunk:
+ *   uncompressed length (int), compressed length (int), deflated data
+ * 
+ * Footer:
+ *   zero (int), index entry count (int), then per chunk: uncompressed offset
+ *   (long) and file offset of the chunk (long), followed by the offset of the
+ *   footer (long) and the magic (int)
+ */
+public class CompressedLogOutputStream extends OutputStream {
+	
+	public static final int MAGIC = 0x47414C5A; // "GALZ"
+	public static final byte VERSION = 1;
+	
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16; // bytes
+	
+	static final int HEADER_SIZE = 4 + 1 + 4; // bytes
+	static final int CHUNK_HEADER_SIZE = 4 + 4; // bytes
+	static final int TRAILER_SIZE = 8 + 4; // bytes
+	
+	private final DataOutputStream out;
+	private final Deflater deflater;
+	
+	private final byte[] chunk;
+	private byte[] compressed;
+	private int count;
+	
+	private long uncompressedOffset;
+	private long offset;
+	private final List<long[]> index = new ArrayList<long[]>();
+	
+	private boolean isClosed;
+	
+	public CompressedLogOutputStream(OutputStream out) throws IOException {
+		this(out, DEFAULT_CHUNK_SIZE, Deflater.BEST_SPEED);
+	}
+	
+	/**
+	 * @param out
+	 * @param chunkSize Uncompressed size of each chunk (in bytes).
+	 * @param level Deflater compression level.
+	 * @throws IOException
+	 */
+	public CompressedLogOutputStream(OutputStream out, int chunkSize, int level) throws IOException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.out = new DataOutputStream(out);
+		this.deflater = new Deflater(level);
+		this.chunk = new byte[chunkSize];
+		this.compressed = new byte[chunkSize + chunkSize / 8 + 64];
+		
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeInt(chunkSize);
+		offset = HEADER_SIZE;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		chunk[count++] = (byte) b;
+		if (count == chunk.length) {
+			writeChunk();
+		}
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, chunk.length - count);
+			System.arraycopy(b, off, chunk, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == chunk.length) {
+				writeChunk();
+			}
+		}
+	}
+	
+	private void writeChunk() throws IOException {
+		if (count == 0) return;
+		
+		deflater.reset();
+		deflater.setInput(chunk, 0, count);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				byte[] b = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, b, 0, length);
+				compressed = b;
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		
+		index.add(new long[] { uncompressedOffset, offset });
+		out.writeInt(count);
+		out.writeInt(length);
+		out.write(compressed, 0, length);
+		
+		uncompressedOffset += count;
+		offset += CHUNK_HEADER_SIZE + length;
+		count = 0;
+	}
+	
+	/**
+	 * Returns the number of uncompressed bytes written.
+	 */
+	public long getUncompressedSize() {
+		return uncompressedOffset + count;
+	}
+	
+	/**
+	 * Returns the number of compressed bytes written (excluding the footer).
+	 */
+	public long getCompressedSize() {
+		return offset;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/**
+	 * Writes the remaining chunk and the footer, then closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed) return;
+		isClosed = true;
+		try {
+			writeChunk();
+			
+			long footer = offset;
+			out.writeInt(0);
+			out.writeInt(index.size());
+			for (long[] entry : index) {
+				out.writeLong(entry[0]);
+				out.writeLong(entry[1]);
+			}
+			out.writeLong(footer);
+			out.writeInt(MAGIC);
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+}
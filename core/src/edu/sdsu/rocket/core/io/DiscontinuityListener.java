@@ -0,0 +1,15 @@
+package edu.sdsu.rocket.core.io;
+
+/**
+ * Notified where records of a log are missing: dropped before they were
+ * written (e.g. by a full {@link RecordRingBuffer}) or lost when read back
+ * (e.g. blocks damaged in every copy, see {@link BlockInputStream}).
+ * 
+ * Delta encoded readings are relative to the reading before them, so the
+ * sensor streams restart from a keyframe after a discontinuity.
+ */
+public interface DiscontinuityListener {
+	
+	void onDiscontinuity();
+
+}
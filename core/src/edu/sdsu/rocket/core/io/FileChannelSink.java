@@ -0,0 +1,113 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes blocks to a file with bulk {@link FileChannel} writes.
+ * 
+ * A file may be pre-allocated to its expected size when opened so that the
+ * filesystem does not have to allocate blocks and update the file size as the
+ * log grows, which on SD cards causes periodic latency spikes. Blocks are then
+ * written positionally into the allocated space and the file is truncated to
+ * the data actually written on close. After a crash the unused space remains
+ * at the end of the file as zeros, which {@link BlockScanner} recognises as
+ * the end of a framed log.
+ */
+public class FileChannelSink implements BlockSink {
+	
+	private final Closeable stream;
+	private final FileChannel channel;
+	private final boolean isPreallocated;
+	
+	private long position;
+	
+	public FileChannelSink(File file) throws FileNotFoundException {
+		FileOutputStream stream = new FileOutputStream(file);
+		this.stream = stream;
+		this.channel = stream.getChannel();
+		this.isPreallocated = false;
+	}
+	
+	/**
+	 * @param file
+	 * @param preallocate Expected size of the file (in bytes), or zero to grow
+	 *                    the file as blocks are written.
+	 * @throws FileNotFoundException
+	 */
+	public FileChannelSink(File file, long preallocate) throws FileNotFoundException {
+		if (preallocate < 0) {
+			throw new IllegalArgumentException("Pre-allocated size must not be negative.");
+		}
+		if (preallocate == 0) {
+			FileOutputStream stream = new FileOutputStream(file);
+			this.stream = stream;
+			this.channel = stream.getChannel();
+			this.isPreallocated = false;
+		} else {
+			RandomAccessFile stream = new RandomAccessFile(file, "rw");
+			this.stream = stream;
+			this.channel = stream.getChannel();
+			this.isPreallocated = preallocate(stream, file, preallocate);
+		}
+	}
+	
+	/**
+	 * Sets the length of the file, which allocates its blocks on filesystems
+	 * which cannot hold sparse files (e.g. FAT). Failure is not fatal, the
+	 * file then simply grows as blocks are written.
+	 * 
+	 * @return true if the file was pre-allocated.
+	 */
+	private static boolean preallocate(RandomAccessFile stream, File file, long size) {
+		try {
+			stream.setLength(0L); // discard the contents of an existing file
+			stream.setLength(size);
+			return true;
+		} catch (IOException e) {
+			System.err.println("Failed to pre-allocate " + file + ": " + e);
+			return false;
+		}
+	}
+	
+	public FileChannel getChannel() {
+		return channel;
+	}
+	
+	public boolean isPreallocated() {
+		return isPreallocated;
+	}
+	
+	@Override
+	public void write(ByteBuffer block) throws IOException {
+		int start = block.position();
+		while (block.hasRemaining()) {
+			position += channel.write(block, position);
+		}
+		block.position(start);
+	}
+	
+	@Override
+	public void flush() throws IOException {}
+	
+	/**
+	 * Truncates a pre-allocated file to the data written before closing it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (isPreallocated && channel.isOpen()) {
+				channel.truncate(position);
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+}
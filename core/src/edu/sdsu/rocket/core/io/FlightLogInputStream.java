@@ -0,0 +1,219 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a flight log written by {@link FlightLogOutputStream}.
+ */
+public class FlightLogInputStream extends DataInputStream {
+	
+	public class FlightLogRecord {
+		public int channel;
+		public long offset; // from the start of the flight log stream
+		
+		/**
+		 * Payload of the record (reused by the next call to readRecord).
+		 */
+		public final ByteBuffer payload = ByteBuffer.wrap(buffer);
+	}
+	
+	private final byte[] buffer = new byte[FlightLogOutputStream.MAX_PAYLOAD];
+	private final FlightLogRecord record = new FlightLogRecord();
+	
+	private int version;
+	private long startTime;
+	private String[] channels;
+	
+	private final CountingInputStream counter;
+	
+	private long[] recordCounts;
+	
+	public FlightLogInputStream(InputStream in) throws IOException {
+		super(new CountingInputStream(in));
+		counter = (CountingInputStream) this.in;
+		readHeader();
+	}
+	
+	/**
+	 * Returns true if the specified file starts with the flight log magic
+	 * (once unframed, if it was written as framed blocks).
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isFlightLog(File file) throws IOException {
+		DataInputStream in = new DataInputStream(LogFiles.open(file));
+		try {
+			return in.readInt() == FlightLogOutputStream.MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+	
+	private void readHeader() throws IOException {
+		int magic = readInt();
+		if (magic != FlightLogOutputStream.MAGIC) {
+			throw new IOException("Not a flight log: " + Integer.toHexString(magic));
+		}
+		version = readUnsignedByte();
+		if (version > FlightLogOutputStream.VERSION) {
+			throw new IOException("Unsupported flight log version: " + version);
+		}
+		startTime = readLong();
+		
+		int count = readUnsignedByte();
+		channels = new String[count];
+		for (int i = 0; i < count; i++) {
+			int id = readUnsignedByte();
+			String name = readUTF();
+			if (id >= count) {
+				throw new IOException("Invalid channel id: " + id);
+			}
+			channels[id] = name;
+		}
+	}
+	
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns the wall clock time (ms since epoch) at which the shared
+	 * stopwatch was started.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	/**
+	 * Returns the channel names indexed by channel id.
+	 */
+	public String[] getChannels() {
+		return channels;
+	}
+	
+	/**
+	 * Returns the id of the specified channel or -1 if it is not present.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public int getChannel(String name) {
+		for (int i = 0; i < channels.length; i++) {
+			if (channels[i].equals(name)) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return Next record (reused between calls) or null once the footer or
+	 *         the end of the stream is reached.
+	 * @throws IOException
+	 */
+	public FlightLogRecord readRecord() throws IOException {
+		long offset = counter.count;
+		int channel = read();
+		if (channel == -1) {
+			return null; // log was not finished (e.g. loss of power)
+		}
+		if (channel == FlightLogOutputStream.END) {
+			try {
+				readFooter();
+			} catch (EOFException e) {
+				// partial footer, the records are complete
+			}
+			return null;
+		}
+		if (channel >= channels.length) {
+			throw new IOException("Invalid channel id at offset " + offset + ": " + channel);
+		}
+		
+		int length;
+		try {
+			length = readUnsignedShort();
+			readFully(buffer, 0, length);
+		} catch (EOFException e) {
+			return null; // partial record
+		}
+		
+		record.channel = channel;
+		record.offset = offset;
+		record.payload.limit(length).position(0);
+		return record;
+	}
+	
+	private void readFooter() throws IOException {
+		if (version == 1) {
+			readInt(); // index interval
+		}
+		int count = readUnsignedByte();
+		long[] counts = new long[count];
+		for (int i = 0; i < count; i++) {
+			counts[i] = readLong();
+		}
+		recordCounts = counts; // a version 1 index follows, which is not used
+	}
+	
+	/**
+	 * Returns the number of records of each channel according to the footer,
+	 * or null if the footer has not been read (or the log has none).
+	 */
+	public long[] getRecordCounts() {
+		return recordCounts;
+	}
+	
+	/**
+	 * Counts the bytes read, which are the offsets of the records.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		
+		long count;
+		
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	
+	}
+
+}
@@ -0,0 +1,206 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+
+/**
+ * Writes the records of every sensor, interleaved in the order they occur,
+ * into a single append-only flight log.
+ * 
+ * Header:
+ *   magic (int), version (byte), start time (long, ms since epoch),
+ *   channel count (byte), then per channel: id (byte), name (UTF)
+ * 
+ * Record:
+ *   channel id (byte), payload length (unsigned short), payload
+ * 
+ * Footer:
+ *   END (byte), channel count (byte), record count of each channel (long)
+ * 
+ * The payloads are the records of the sensor output streams, which all share
+ * the stopwatch of the flight log so that their timestamps are directly
+ * comparable.
+ * 
+ * There is no index of the records: the log is written as framed blocks,
+ * segments or mirrors, in which the offsets of records in the stream cannot
+ * be seeked to, so a time range is read by filtering (version 1 logs carry
+ * an unused index in their footer, which is skipped).
+ */
+public class FlightLogOutputStream extends DataOutputStream {
+	
+	public static final int MAGIC = 0x47414C46; // "GALF"
+	public static final byte VERSION = 2;
+	
+	public static final int END = 0xFF;
+	public static final int MAX_CHANNELS = END;
+	public static final int MAX_PAYLOAD = 0xFFFF;
+	
+	private static final int RECORD_HEADER = 3; // bytes
+	
+	private final Stopwatch stopwatch;
+	private final long startTime;
+	
+	private final List<String> names = new ArrayList<String>();
+	private long[] counts = new long[0];
+	
+	private final byte[] record = new byte[RECORD_HEADER + MAX_PAYLOAD];
+	private boolean isStarted;
+	private boolean isFinished;
+	
+	public FlightLogOutputStream(OutputStream out) {
+		this(out, new Stopwatch());
+	}
+	
+	/**
+	 * @param out
+	 * @param stopwatch Shared source of record timestamps.
+	 */
+	public FlightLogOutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out);
+		if (stopwatch == null) throw new NullPointerException();
+		this.stopwatch = stopwatch;
+		this.startTime = System.currentTimeMillis() - stopwatch.nanoSecondsElapsed() / 1000000L;
+	}
+	
+	public Stopwatch getStopwatch() {
+		return stopwatch;
+	}
+	
+	/**
+	 * Adds a channel. All channels must be added before the header is
+	 * written.
+	 * 
+	 * @param name Channel name (e.g. "adxl345").
+	 * @return Stream whose writes are appended as records of the channel.
+	 */
+	public synchronized OutputStream addChannel(String name) {
+		if (isStarted) {
+			throw new IllegalStateException("Channels must be added before the header is written.");
+		}
+		if (names.size() == MAX_CHANNELS) {
+			throw new IllegalStateException("Maximum number of channels reached: " + MAX_CHANNELS);
+		}
+		names.add(name);
+		counts = new long[names.size()];
+		return new ChannelOutputStream(names.size() - 1);
+	}
+	
+	/**
+	 * Writes the header describing the channels. Called automatically before
+	 * the first record if not called explicitly.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void writeHeader() throws IOException {
+		if (isStarted) return;
+		isStarted = true;
+		
+		writeInt(MAGIC);
+		writeByte(VERSION);
+		writeLong(startTime);
+		writeByte(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			writeByte(i);
+			writeUTF(names.get(i));
+		}
+	}
+	
+	/**
+	 * Appends a record to the flight log.
+	 * 
+	 * @param channel
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @throws IOException
+	 */
+	public synchronized void writeRecord(int channel, byte[] b, int off, int len) throws IOException {
+		if (isFinished) {
+			throw new IOException("Flight log already finished.");
+		}
+		if (len > MAX_PAYLOAD) {
+			throw new IOException("Record payload too large: " + len + " bytes");
+		}
+		if (!isStarted) {
+			writeHeader();
+		}
+		
+		record[0] = (byte) channel;
+		record[1] = (byte) (len >>> 8);
+		record[2] = (byte) len;
+		System.arraycopy(b, off, record, RECORD_HEADER, len);
+		out.write(record, 0, RECORD_HEADER + len);
+		counts[channel]++;
+	}
+	
+	/**
+	 * Writes the footer (record counts) to the flight log.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void finish() throws IOException {
+		if (isFinished) return;
+		if (!isStarted) {
+			writeHeader();
+		}
+		isFinished = true;
+		
+		writeByte(END);
+		writeByte(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			writeLong(counts[i]);
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			super.close();
+		}
+	}
+	
+	private class ChannelOutputStream extends OutputStream {
+		
+		private final int channel;
+		private final byte[] single = new byte[1];
+		
+		ChannelOutputStream(int channel) {
+			this.channel = channel;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			synchronized (FlightLogOutputStream.this) {
+				single[0] = (byte) b;
+				writeRecord(channel, single, 0, 1);
+			}
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			writeRecord(channel, b, off, len);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			FlightLogOutputStream.this.flush();
+		}
+		
+		/**
+		 * Closing a channel leaves the flight log open.
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	
+	}
+
+}
@@ -0,0 +1,42 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class GPSInputStream extends DataInputStream {
+	
+	public class GPSReading {
+		public long timestamp;
+		public double latitude; // degrees
+		public double longitude; // degrees
+		public double altitude; // m MSL
+		public int fixStatus;
+		public int satellites;
+	}
+	
+	public GPSInputStream(InputStream in) {
+		super(in);
+	}
+	
+	public GPSReading readReading() throws IOException {
+		int type = 0;
+		while ((type = read()) != -1) {
+			switch (type) {
+			case GPSOutputStream.FIX:
+				GPSReading reading = new GPSReading();
+				reading.timestamp = readLong();
+				reading.latitude = readDouble();
+				reading.longitude = readDouble();
+				reading.altitude = readDouble();
+				reading.fixStatus = readUnsignedByte();
+				reading.satellites = readUnsignedByte();
+				return reading;
+			default:
+				throw new IOException("Unsupported value type: " + type);
+			}
+		}
+		return null;
+	}
+
+}
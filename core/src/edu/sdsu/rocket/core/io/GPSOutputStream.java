@@ -0,0 +1,40 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+
+/**
+ * Log of decoded GPS fixes, so that positions do not have to be parsed from
+ * NMEA sentences again afterwards.
+ * 
+ * Fix: type, timestamp (long), latitude, longitude (double, degrees),
+ * altitude (double, m MSL), fix status (byte, see
+ * {@link edu.sdsu.rocket.core.models.GPS#getFixStatus()}), satellites (byte)
+ */
+public class GPSOutputStream extends SensorOutputStream {
+	
+	public static final String NAME = "gps";
+	
+	public static final byte FIX = 0x0;
+	
+	public GPSOutputStream(OutputStream out) {
+		super(out);
+	}
+	
+	public GPSOutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out, stopwatch);
+	}
+	
+	public synchronized void writeFix(double latitude, double longitude, double altitude, int fixStatus, int satellites) throws IOException {
+		beginRecord(FIX)
+			.putDouble(latitude)
+			.putDouble(longitude)
+			.putDouble(altitude)
+			.put((byte) fixStatus)
+			.put((byte) satellites);
+		endRecord();
+	}
+
+}
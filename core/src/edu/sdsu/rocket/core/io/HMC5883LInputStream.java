@@ -1,10 +1,9 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-public class HMC5883LInputStream extends DataInputStream {
+public class HMC5883LInputStream extends SensorInputStream {
 	
 	public class HMC5883LReading {
 		public long timestamp;
@@ -24,10 +23,13 @@ public class HMC5883LInputStream extends DataInputStream {
 			switch (type) {
 			case HMC5883LOutputStream.SENSOR_VALUES:
 				HMC5883LReading reading = new HMC5883LReading();
-				reading.timestamp = readLong();
-				reading.values[0] = readShort();
-				reading.values[1] = readShort();
-				reading.values[2] = readShort();
+				reading.timestamp = readVector(reading.values);
+				reading.scalingFactor = scalingFactor;
+				return reading;
+			case HMC5883LOutputStream.SENSOR_VALUES_DELTA:
+				reading = new HMC5883LReading();
+				reading.timestamp = readVectorDelta(reading.values);
+				if (reading.timestamp == -1L) break; // no keyframe yet
 				reading.scalingFactor = scalingFactor;
 				return reading;
 			case HMC5883LOutputStream.SCALING_FACTOR:
@@ -1,10 +1,9 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-public class ITG3205InputStream extends DataInputStream {
+public class ITG3205InputStream extends SensorInputStream {
 	
 	public class ITG3205Reading {
 		public long timestamp;
@@ -24,10 +23,13 @@ public class ITG3205InputStream extends DataInputStream {
 			switch (type) {
 			case ITG3205OutputStream.SENSOR_VALUES:
 				ITG3205Reading reading = new ITG3205Reading();
-				reading.timestamp = readLong();
-				reading.values[0] = readShort();
-				reading.values[1] = readShort();
-				reading.values[2] = readShort();
+				reading.timestamp = readVector(reading.values);
+				reading.scalingFactor = scalingFactor;
+				return reading;
+			case ITG3205OutputStream.SENSOR_VALUES_DELTA:
+				reading = new ITG3205Reading();
+				reading.timestamp = readVectorDelta(reading.values);
+				if (reading.timestamp == -1L) break; // no keyframe yet
 				reading.scalingFactor = scalingFactor;
 				return reading;
 			case ITG3205OutputStream.SCALING_FACTOR:
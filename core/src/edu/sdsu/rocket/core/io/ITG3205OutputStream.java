@@ -1,34 +1,34 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import edu.sdsu.rocket.core.helpers.Stopwatch;
 
-public class ITG3205OutputStream extends DataOutputStream {
+public class ITG3205OutputStream extends SensorOutputStream {
 
-	public static final byte SENSOR_VALUES  = 0x0;
-	public static final byte SCALING_FACTOR = 0x1;
+	public static final String NAME = "itg3205";
 	
-	private final Stopwatch stopwatch = new Stopwatch();
+	public static final byte SENSOR_VALUES       = 0x0;
+	public static final byte SCALING_FACTOR      = 0x1;
+	public static final byte SENSOR_VALUES_DELTA = 0x2;
 	
 	public ITG3205OutputStream(OutputStream out) {
 		super(out);
 	}
 	
-	public void writeScalingFactor(float scalingFactor) throws IOException {
-		write(SCALING_FACTOR);
-		writeLong(stopwatch.nanoSecondsElapsed());
-		writeFloat(scalingFactor);
+	public ITG3205OutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out, stopwatch);
 	}
 	
-	public void writeValues(short x, short y, short z) throws IOException {
-		write(SENSOR_VALUES);
-		writeLong(stopwatch.nanoSecondsElapsed());
-		writeShort(x);
-		writeShort(y);
-		writeShort(z);
+	public synchronized void writeScalingFactor(float scalingFactor) throws IOException {
+		beginRecord(SCALING_FACTOR)
+			.putFloat(scalingFactor);
+		endRecord();
+	}
+	
+	public synchronized void writeValues(short x, short y, short z) throws IOException {
+		writeVector(SENSOR_VALUES, SENSOR_VALUES_DELTA, x, y, z);
 	}
 
 }
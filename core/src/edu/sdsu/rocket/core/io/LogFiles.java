@@ -0,0 +1,426 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opens log files for reading regardless of whether they were written as
+ * plain streams or as framed blocks, in one file or as a series of segments,
+ * and compressed or not.
+ * 
+ * Segment n of log "adxl345.log" is named "adxl345.log.n" and its compressed
+ * form "adxl345.log.n.z".
+ */
+public class LogFiles {
+	
+	public static final String COMPRESSED_SUFFIX = ".z";
+	
+	private static final int SNIFF_SIZE = 4; // bytes
+	
+	/**
+	 * Returns the specified segment of a log.
+	 * 
+	 * @param file Log file.
+	 * @param index Segment index.
+	 * @return
+	 */
+	public static File getSegment(File file, int index) {
+		return new File(file.getPath() + "." + index);
+	}
+	
+	/**
+	 * Returns the compressed form of a log file or segment.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static File getCompressed(File file) {
+		return new File(file.getPath() + COMPRESSED_SUFFIX);
+	}
+	
+	/**
+	 * Returns the log file of a segment or compressed file (or the file
+	 * itself if it is neither).
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static File getLogFile(File file) {
+		String path = file.getPath();
+		if (path.endsWith(COMPRESSED_SUFFIX)) {
+			path = path.substring(0, path.length() - COMPRESSED_SUFFIX.length());
+		}
+		int dot = path.lastIndexOf('.');
+		if (dot > path.lastIndexOf(File.separatorChar) && dot + 1 < path.length()) {
+			boolean isSegment = true;
+			for (int i = dot + 1; i < path.length(); i++) {
+				isSegment &= Character.isDigit(path.charAt(i));
+			}
+			if (isSegment) {
+				path = path.substring(0, dot);
+			}
+		}
+		return new File(path);
+	}
+	
+	/**
+	 * Opens a single copy of a log: the file itself, its compressed form or
+	 * the concatenation of its segments. Missing segments are reported and
+	 * left out, so the segments after them are still read (a framed log
+	 * counts their blocks as lost).
+	 * 
+	 * @param file Log file.
+	 * @return Stream of the log or null if it does not exist.
+	 * @throws IOException
+	 */
+	public static InputStream openCopy(File file) throws IOException {
+		return openCopy(file, 0L);
+	}
+	
+	/**
+	 * Opens a single copy of a log as {@link #openCopy(File)} does, starting
+	 * at the specified offset. The files before the offset are not read: the
+	 * segments before it are skipped by their length and the file holding it
+	 * is seeked (a compressed file by its index).
+	 * 
+	 * @param file Log file.
+	 * @param offset Offset in the copy.
+	 * @return Stream of the log or null if it does not exist.
+	 * @throws IOException also if a compressed file has no index.
+	 */
+	public static InputStream openCopy(File file, long offset) throws IOException {
+		InputStream in = openFile(file);
+		if (in != null) {
+			try {
+				seek(in, offset);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+			return in;
+		}
+		
+		List<InputStream> segments = new ArrayList<InputStream>();
+		try {
+			int last = getLastSegment(file);
+			for (int index = 0; index <= last; index++) {
+				File segment = getSegment(file, index);
+				if (offset > 0 && segments.isEmpty()) {
+					long length = getLength(segment);
+					if (offset >= length) {
+						offset -= length; // including a missing segment's 0
+						continue;
+					}
+				}
+				in = openFile(segment);
+				if (in == null) {
+					System.err.println("Missing segment: " + segment);
+				} else {
+					segments.add(in);
+					seek(in, offset);
+					offset = 0;
+				}
+			}
+		} catch (IOException e) {
+			close(segments);
+			throw e;
+		}
+		
+		switch (segments.size()) {
+		case 0:
+			return null;
+		case 1:
+			return segments.get(0);
+		default:
+			return new SequenceInputStream(Collections.enumeration(segments));
+		}
+	}
+	
+	/**
+	 * Lists the files of a single copy of a log which exist: the file itself
+	 * or its segments, each either plain or compressed.
+	 * 
+	 * @param file Log file.
+	 * @return
+	 */
+	public static List<File> listFiles(File file) {
+		List<File> files = new ArrayList<File>();
+		if (!addFile(files, file)) {
+			int last = getLastSegment(file);
+			for (int index = 0; index <= last; index++) {
+				addFile(files, getSegment(file, index));
+			}
+		}
+		return files;
+	}
+	
+	/**
+	 * Returns the index of the last segment of a log which exists (plain or
+	 * compressed), or -1 if it has none. Segments before it may be missing.
+	 * 
+	 * @param file Log file.
+	 * @return
+	 */
+	private static int getLastSegment(File file) {
+		File dir = file.getAbsoluteFile().getParentFile();
+		String[] names = dir == null ? null : dir.list();
+		if (names == null) return -1;
+		
+		String prefix = file.getName() + ".";
+		int last = -1;
+		for (String name : names) {
+			if (name.endsWith(COMPRESSED_SUFFIX)) {
+				name = name.substring(0, name.length() - COMPRESSED_SUFFIX.length());
+			}
+			if (!name.startsWith(prefix)) continue;
+			String index = name.substring(prefix.length());
+			if (index.length() == 0 || index.length() > 9) continue;
+			boolean isIndex = true;
+			for (int i = 0; i < index.length(); i++) {
+				isIndex &= Character.isDigit(index.charAt(i));
+			}
+			if (isIndex) {
+				last = Math.max(last, Integer.parseInt(index));
+			}
+		}
+		return last;
+	}
+	
+	private static boolean addFile(List<File> files, File file) {
+		File compressed = getCompressed(file);
+		if (compressed.isFile()) {
+			files.add(compressed);
+		} else if (file.isFile()) {
+			files.add(file);
+		} else {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Skips the specified number of bytes of a stream.
+	 * 
+	 * @param in
+	 * @param n
+	 * @throws EOFException if the stream ends first.
+	 */
+	public static void skipFully(InputStream in, long n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() == -1) throw new EOFException();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+	
+	/**
+	 * Returns the length of a file or segment as read, i.e. uncompressed.
+	 * 
+	 * @return 0 if it does not exist.
+	 * @throws IOException if a compressed file has no index.
+	 */
+	private static long getLength(File file) throws IOException {
+		File compressed = getCompressed(file);
+		if (compressed.isFile()) {
+			CompressedLogInputStream in = new CompressedLogInputStream(compressed);
+			try {
+				return in.getLength();
+			} finally {
+				in.close();
+			}
+		}
+		return file.length();
+	}
+	
+	/**
+	 * Moves a stream from {@link #openFile(File)} to the specified offset.
+	 */
+	private static void seek(InputStream in, long offset) throws IOException {
+		if (offset == 0) return;
+		if (in instanceof CompressedLogInputStream) {
+			((CompressedLogInputStream) in).seek(offset);
+		} else {
+			((FileInputStream) in).getChannel().position(offset);
+		}
+	}
+	
+	/**
+	 * Opens a file or, if only its compressed form exists, the compressed
+	 * file. The compressed form takes precedence when both exist since it is
+	 * only renamed into place once complete.
+	 */
+	private static InputStream openFile(File file) throws IOException {
+		File compressed = getCompressed(file);
+		if (compressed.isFile()) {
+			return new CompressedLogInputStream(compressed);
+		}
+		if (file.isFile()) {
+			return new FileInputStream(file);
+		}
+		return null;
+	}
+	
+	/**
+	 * Opens a log from one or more mirrored copies (or stripes) of it. Framed
+	 * logs are read through a {@link BlockInputStream} which takes each block,
+	 * in sequence order, from an intact copy; plain logs are read from the
+	 * first copy that exists.
+	 * 
+	 * @param copies Mirrored copies or stripes of the log (missing copies are
+	 *               ignored).
+	 *               Each copy may be segmented and compressed.
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream open(File... copies) throws IOException {
+		return open(BlockOutputStream.HEADER_SIZE + BlockScanner.MAX_BLOCK_SIZE, copies);
+	}
+	
+	/**
+	 * Opens a log as {@link #open(File...)} does, which if framed was written
+	 * with the specified block size (see {@link BlockScanner}).
+	 * 
+	 * @param blockSize (in bytes)
+	 * @param copies
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream open(int blockSize, File... copies) throws IOException {
+		List<PushbackInputStream> streams = new ArrayList<PushbackInputStream>();
+		boolean isFramed = false;
+		try {
+			byte[] b = new byte[SNIFF_SIZE];
+			for (File file : copies) {
+				InputStream copy = openCopy(file);
+				if (copy == null) continue;
+				PushbackInputStream in = new PushbackInputStream(copy, SNIFF_SIZE);
+				streams.add(in);
+				
+				int len = read(in, b);
+				in.unread(b, 0, len);
+				isFramed |= BlockScanner.isFramed(b, 0, len);
+			}
+		} catch (IOException e) {
+			close(streams);
+			throw e;
+		}
+		
+		if (streams.isEmpty()) {
+			throw new FileNotFoundException(copies.length == 0 ? "No log files" : copies[0].getPath());
+		}
+		
+		if (isFramed) {
+			BlockScanner[] scanners = new BlockScanner[streams.size()];
+			for (int i = 0; i < scanners.length; i++) {
+				scanners[i] = new BlockScanner(streams.get(i), blockSize);
+			}
+			return new BlockInputStream(scanners);
+		}
+		
+		close(streams.subList(1, streams.size()));
+		return new BufferedInputStream(streams.get(0));
+	}
+	
+	/**
+	 * Moves a framed log from {@link #open(int, File...)} to a block read
+	 * before (see {@link BlockInputStream#locate(long)}), by reopening each
+	 * copy at the offset of the block in it. None of the blocks before it are
+	 * read.
+	 * 
+	 * @param log Framed log, not read from yet.
+	 * @param blockSize (in bytes)
+	 * @param offsets Offset of the block in each copy which exists, in order,
+	 *                or -1 to leave a copy out.
+	 * @param copies
+	 * @throws IOException also if the copies which exist do not match the
+	 *                     offsets.
+	 */
+	public static void seek(BlockInputStream log, int blockSize, long[] offsets, File... copies) throws IOException {
+		List<InputStream> streams = new ArrayList<InputStream>();
+		List<BlockScanner> scanners = new ArrayList<BlockScanner>();
+		try {
+			int index = 0;
+			for (File file : copies) {
+				if (listFiles(file).isEmpty()) continue;
+				if (index == offsets.length) {
+					throw new IOException("Log copies do not match the offsets.");
+				}
+				long offset = offsets[index++];
+				InputStream in = offset == -1 ? null : openCopy(file, offset);
+				if (in == null) continue; // nothing left to read
+				streams.add(in);
+				scanners.add(new BlockScanner(in, blockSize, offset));
+			}
+			if (index != offsets.length || scanners.isEmpty()) {
+				throw new IOException("Log copies do not match the offsets.");
+			}
+		} catch (IOException e) {
+			close(streams);
+			throw e;
+		}
+		log.resume(scanners.toArray(new BlockScanner[scanners.size()]));
+	}
+	
+	/**
+	 * Opens a log which is still being written, framed or not. Blocks until
+	 * the start of the log has been written (or following is stopped).
+	 * 
+	 * @param tail Stream following the log.
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream follow(TailInputStream tail) throws IOException {
+		if (tail.isFramed()) {
+			return new BlockInputStream(new BlockScanner(tail, tail.getBlockSize()));
+		}
+		return tail;
+	}
+	
+	/**
+	 * Sets the listener notified where blocks of a log are lost, if the log
+	 * is framed (a plain log has no means of telling).
+	 * 
+	 * @param log Log from {@link #open(File...)} or
+	 *            {@link #follow(TailInputStream)}.
+	 * @param listener
+	 */
+	public static void setDiscontinuityListener(InputStream log, DiscontinuityListener listener) {
+		if (log instanceof BlockInputStream) {
+			((BlockInputStream) log).setDiscontinuityListener(listener);
+		}
+	}
+	
+	private static int read(InputStream in, byte[] b) throws IOException {
+		int len = 0;
+		while (len < b.length) {
+			int n = in.read(b, len, b.length - len);
+			if (n == -1) break;
+			len += n;
+		}
+		return len;
+	}
+	
+	private static void close(List<? extends InputStream> streams) {
+		for (InputStream in : streams) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				System.err.println(e);
+			}
+		}
+	}
+
+}
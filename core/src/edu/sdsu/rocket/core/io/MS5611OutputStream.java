@@ -1,33 +1,36 @@
 package edu.sdsu.rocket.core.io;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import edu.sdsu.rocket.core.helpers.Stopwatch;
 
-public class MS5611OutputStream extends DataOutputStream {
+public class MS5611OutputStream extends SensorOutputStream {
+	
+	public static final String NAME = "ms5611";
 	
 	public static final byte SENSOR_VALUES = 0x0;
 	public static final byte FAULT         = 0x1;
-	
-	private final Stopwatch stopwatch = new Stopwatch();
 
 	public MS5611OutputStream(OutputStream out) {
 		super(out);
 	}
+	
+	public MS5611OutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out, stopwatch);
+	}
 
-	public void writeValues(int T, int P) throws IOException {
-		write(SENSOR_VALUES);
-		writeLong(stopwatch.nanoSecondsElapsed());
-		writeInt(T);
-		writeInt(P);
+	public synchronized void writeValues(int T, int P) throws IOException {
+		beginRecord(SENSOR_VALUES)
+			.putInt(T)
+			.putInt(P);
+		endRecord();
 	}
 	
-	public void writeFault(int fault) throws IOException {
-		write(FAULT);
-		writeLong(stopwatch.nanoSecondsElapsed());
-		writeInt(fault);
+	public synchronized void writeFault(int fault) throws IOException {
+		beginRecord(FAULT)
+			.putInt(fault);
+		endRecord();
 	}
 
 }
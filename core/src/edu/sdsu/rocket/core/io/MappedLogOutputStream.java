@@ -0,0 +1,325 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a log into memory mapped segments, so a record is written with plain
+ * memory stores and the kernel writes the pages back to the file.
+ * 
+ * The log has the same format as a segmented log of framed blocks written by
+ * {@link BlockOutputStream}: records are collected into blocks directly in the
+ * mapped segment and the header of a block is filled in once it is full (or
+ * too old). Segment n of log "adxl345.log" is named "adxl345.log.n" (see
+ * {@link LogFiles}) and each segment is truncated to the blocks it holds when
+ * closed. After a crash the unwritten end of the last segment remains as zeros
+ * which, with the unfinished block before them (whose header is still zeros),
+ * {@link BlockScanner} recognises as the end of the log.
+ * 
+ * Closed blocks are only durable once written back, which happens when
+ * {@link #sync()} is called (e.g. periodically by a background thread) and
+ * when a segment is closed.
+ */
+public class MappedLogOutputStream extends OutputStream {
+	
+	public static final long DEFAULT_SEGMENT_SIZE = 1 << 24; // bytes
+	
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	private final File[] files;
+	private final int segmentSize;
+	private final int blockSize;
+	
+	/**
+	 * Held while segments are forced, opened and closed so that a segment is
+	 * never closed while being forced.
+	 */
+	private final Object segmentLock = new Object();
+	private final RandomAccessFile[] streams;
+	private final MappedByteBuffer[] segments;
+	private int index = -1;
+	private boolean isClosed;
+	
+	private int blockStart;
+	private int sequence;
+	private final byte[] payload;
+	private final CRC32 crc = new CRC32();
+	private final byte[] single = new byte[1];
+	
+	private long maxAge;
+	private long firstWrite;
+	
+	private SegmentCompressor compressor;
+	
+	/**
+	 * @param files Log file in each directory (each file is a mirrored copy).
+	 * @param segmentSize Size of each segment (in bytes).
+	 * @param blockSize Size of each block (in bytes), including its header.
+	 */
+	public MappedLogOutputStream(File[] files, long segmentSize, int blockSize) {
+		if (files.length == 0) {
+			throw new IllegalArgumentException("At least one file is required.");
+		}
+		if (blockSize <= BlockOutputStream.HEADER_SIZE) {
+			throw new IllegalArgumentException("Block size too small: " + blockSize);
+		}
+		if (segmentSize < blockSize || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		}
+		this.files = files;
+		this.segmentSize = (int) segmentSize;
+		this.blockSize = blockSize;
+		this.streams = new RandomAccessFile[files.length];
+		this.segments = new MappedByteBuffer[files.length];
+		this.payload = new byte[blockSize - BlockOutputStream.HEADER_SIZE];
+	}
+	
+	/**
+	 * Sets the maximum duration data may remain in a partially filled block
+	 * before it is closed on the next write. Zero disables the limit.
+	 * 
+	 * @param milliseconds
+	 */
+	public void setMaxAge(long milliseconds) {
+		maxAge = milliseconds * NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	/**
+	 * Sets the compressor closed segments are submitted to (null to leave them
+	 * uncompressed).
+	 * 
+	 * @param compressor
+	 */
+	public synchronized void setCompressor(SegmentCompressor compressor) {
+		this.compressor = compressor;
+	}
+	
+	/**
+	 * Returns the index of the current segment (-1 if none has been opened).
+	 */
+	public synchronized int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Returns the sequence number of the next block.
+	 */
+	public synchronized int getSequence() {
+		return sequence;
+	}
+	
+	@Override
+	public synchronized void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+	
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (isClosed) {
+			throw new IOException("Log closed.");
+		}
+		if (index == -1) {
+			openSegment(0);
+		}
+		
+		if (len > remaining()) {
+			closeBlock();
+		}
+		if (segments[0].position() == blockStart + BlockOutputStream.HEADER_SIZE) {
+			firstWrite = System.nanoTime();
+		}
+		
+		while (len > remaining()) { // larger than a block
+			int chunk = remaining();
+			put(b, off, chunk);
+			off += chunk;
+			len -= chunk;
+			closeBlock();
+		}
+		put(b, off, len);
+		
+		if (remaining() == 0 || (maxAge != 0 && System.nanoTime() - firstWrite >= maxAge)) {
+			closeBlock();
+		}
+	}
+	
+	/**
+	 * Returns the space remaining in the current block.
+	 */
+	private int remaining() {
+		return blockStart + blockSize - segments[0].position();
+	}
+	
+	private void put(byte[] b, int off, int len) {
+		for (MappedByteBuffer segment : segments) {
+			segment.put(b, off, len);
+		}
+	}
+	
+	/**
+	 * Fills in the header of the current block and starts the next block,
+	 * rolling over to the next segment if a full block no longer fits.
+	 * 
+	 * @throws IOException
+	 */
+	private void closeBlock() throws IOException {
+		int length = segments[0].position() - blockStart - BlockOutputStream.HEADER_SIZE;
+		if (length == 0) return;
+		
+		ByteBuffer block = segments[0].duplicate();
+		block.position(blockStart + BlockOutputStream.HEADER_SIZE);
+		block.get(payload, 0, length);
+		crc.reset();
+		crc.update(sequence >>> 24);
+		crc.update(sequence >>> 16);
+		crc.update(sequence >>> 8);
+		crc.update(sequence);
+		crc.update(length >>> 24);
+		crc.update(length >>> 16);
+		crc.update(length >>> 8);
+		crc.update(length);
+		crc.update(payload, 0, length);
+		
+		for (MappedByteBuffer segment : segments) {
+			segment.putInt(blockStart, BlockOutputStream.SYNC);
+			segment.putInt(blockStart + 4, sequence);
+			segment.putInt(blockStart + 8, length);
+			segment.putInt(blockStart + 12, (int) crc.getValue());
+		}
+		sequence++;
+		
+		blockStart = segments[0].position();
+		if (segmentSize - blockStart < blockSize) {
+			openSegment(index + 1);
+		} else {
+			skipHeader();
+		}
+	}
+	
+	private void skipHeader() {
+		for (MappedByteBuffer segment : segments) {
+			segment.position(blockStart + BlockOutputStream.HEADER_SIZE);
+		}
+	}
+	
+	/**
+	 * Closes the current segment (if any) and maps the specified segment in
+	 * every directory.
+	 * 
+	 * @param index
+	 * @throws IOException
+	 */
+	private void openSegment(int index) throws IOException {
+		synchronized (segmentLock) {
+			closeSegment();
+			
+			try {
+				for (int i = 0; i < files.length; i++) {
+					File file = LogFiles.getSegment(files[i], index);
+					streams[i] = new RandomAccessFile(file, "rw");
+					streams[i].setLength(0L); // discard the contents of an existing file
+					segments[i] = streams[i].getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, segmentSize);
+				}
+			} catch (IOException e) {
+				for (int i = 0; i < files.length; i++) {
+					close(i);
+				}
+				isClosed = true;
+				throw e;
+			}
+			
+			this.index = index;
+			blockStart = 0;
+			skipHeader();
+		}
+	}
+	
+	/**
+	 * Writes back the current segment, truncates it to the blocks it holds and
+	 * closes it. A segment which cannot be truncated is still readable since
+	 * its unwritten end is zeros.
+	 */
+	private void closeSegment() {
+		if (segments[0] == null) return;
+		
+		for (int i = 0; i < files.length; i++) {
+			try {
+				segments[i].force();
+				streams[i].setLength(blockStart);
+			} catch (IOException e) {
+				System.err.println(e);
+			}
+			close(i);
+			if (compressor != null) {
+				compressor.submit(LogFiles.getSegment(files[i], index));
+			}
+		}
+	}
+	
+	private void close(int i) {
+		segments[i] = null;
+		if (streams[i] == null) return;
+		try {
+			streams[i].close();
+		} catch (IOException e) {
+			System.err.println(e);
+		}
+		streams[i] = null;
+	}
+	
+	/**
+	 * Closes the current block and writes the current segment back to the
+	 * files.
+	 * 
+	 * Writers only wait while the block is closed, the write back happens
+	 * outside of the lock they wait on.
+	 * 
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		synchronized (this) {
+			if (isClosed || index == -1) return;
+			closeBlock();
+		}
+		synchronized (segmentLock) {
+			for (MappedByteBuffer segment : segments) {
+				if (segment != null) {
+					segment.force();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Closes the current block. The block is written back by the kernel (or
+	 * by {@link #sync()}).
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (isClosed || index == -1) return;
+		closeBlock();
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		if (isClosed) return;
+		isClosed = true;
+		if (index == -1) return;
+		
+		try {
+			closeBlock();
+		} finally {
+			synchronized (segmentLock) {
+				closeSegment();
+			}
+		}
+	}
+
+}
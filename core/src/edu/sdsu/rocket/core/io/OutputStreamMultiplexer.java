@@ -30,6 +30,13 @@ public class OutputStreamMultiplexer extends OutputStream {
 		}
 	}
 	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		for (OutputStream stream : streams) {
+			stream.write(b, off, len);
+		}
+	}
+	
 	@Override
 	public void flush() throws IOException {
 		for (OutputStream stream : streams) {
@@ -0,0 +1,367 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-allocated, lock-free multi-producer ring buffer of log records.
+ * 
+ * Device threads publish records into fixed-size slots without blocking and a
+ * single writer thread drains them, in order, into the output stream of the
+ * channel each record was published on. When the buffer is full the record is
+ * dropped (and counted) rather than stalling the publishing thread.
+ * 
+ * Records larger than a slot are stored in consecutive slots which are
+ * claimed together (skipping the slots at the end of the buffer if the record
+ * would wrap around), so each record is written to its channel whole, in a
+ * single write.
+ */
+public class RecordRingBuffer {
+	
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	private static final long IDLE_PARK = 500000L; // nanoseconds
+	private static final int DRAIN_BATCH = 256; // slots
+	
+	private final int capacity;
+	private final int mask;
+	private final int slotSize;
+	
+	private final byte[] data;
+	private final int[] lengths; // of the record starting at each slot, -1 for padding
+	private final int[] spans; // number of slots claimed from each slot
+	private final int[] channels;
+	
+	/**
+	 * Sequence number most recently published to each slot.
+	 */
+	private final AtomicLongArray published;
+	
+	/**
+	 * Next sequence number to be claimed by a producer.
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+	
+	/**
+	 * Next sequence number to be drained by the writer thread.
+	 */
+	private volatile long consumed;
+	
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong highWaterMark = new AtomicLong();
+	private final AtomicLong writeErrors = new AtomicLong();
+	
+	private volatile OutputStream[] targets = new OutputStream[0];
+	private final boolean[] dirty = new boolean[256];
+	
+	private long flushInterval = 1000L * NANOSECONDS_PER_MILLISECOND;
+	
+	private volatile boolean isClosed;
+	private volatile boolean isAborted; // stop without writing the rest
+	private Thread thread;
+	
+	/**
+	 * @param capacity Number of slots, rounded up to a power of two.
+	 * @param slotSize Size of each slot (in bytes).
+	 */
+	public RecordRingBuffer(int capacity, int slotSize) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		if (slotSize <= 0) {
+			throw new IllegalArgumentException("Slot size must be positive.");
+		}
+		
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		
+		this.capacity = size;
+		this.mask = size - 1;
+		this.slotSize = slotSize;
+		
+		data = new byte[size * slotSize];
+		lengths = new int[size];
+		spans = new int[size];
+		channels = new int[size];
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1L);
+		}
+	}
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public int getSlotSize() {
+		return slotSize;
+	}
+	
+	/**
+	 * Sets the maximum duration buffered channel data may remain unflushed
+	 * while the writer thread is idle. Flushing a {@link BlockOutputStream}
+	 * writes out its partial block, so an interval shorter than the time a
+	 * block takes to fill leaves the log mostly small blocks.
+	 * 
+	 * @param milliseconds 0 to flush only when the writer thread stops.
+	 */
+	public void setFlushInterval(long milliseconds) {
+		flushInterval = milliseconds * NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	/**
+	 * Registers an output stream to be written by the writer thread.
+	 * 
+	 * Channels should be opened before device threads start publishing.
+	 * 
+	 * @param out Target output stream.
+	 * @return Stream which publishes each write as a record.
+	 */
+	public synchronized RingBufferOutputStream open(OutputStream out) {
+		if (out == null) throw new NullPointerException();
+		if (targets.length == dirty.length) {
+			throw new IllegalStateException("Maximum number of channels reached: " + dirty.length);
+		}
+		
+		OutputStream[] t = new OutputStream[targets.length + 1];
+		System.arraycopy(targets, 0, t, 0, targets.length);
+		t[targets.length] = out;
+		targets = t;
+		return new RingBufferOutputStream(this, targets.length - 1, out);
+	}
+	
+	/**
+	 * Publishes a record on the specified channel.
+	 * 
+	 * @param channel
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return false if the record was dropped.
+	 */
+	public boolean publish(int channel, byte[] b, int off, int len) {
+		if (len == 0) return true;
+		int n = (len + slotSize - 1) / slotSize;
+		if (n > capacity / 2) {
+			throw new IllegalArgumentException("Record exceeds half the ring buffer capacity: " + len + " bytes");
+		}
+		
+		long seq;
+		int padding;
+		do {
+			seq = claimed.get();
+			int index = (int) (seq & mask);
+			padding = index + n > capacity ? capacity - index : 0; // rather than wrap around
+			if (isClosed || seq + padding + n - consumed > capacity) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		} while (!claimed.compareAndSet(seq, seq + padding + n));
+		
+		if (padding != 0) {
+			int index = (int) (seq & mask);
+			lengths[index] = -1;
+			spans[index] = padding;
+			published.lazySet(index, seq);
+			seq += padding;
+		}
+		
+		int index = (int) (seq & mask);
+		System.arraycopy(b, off, data, index * slotSize, len);
+		lengths[index] = len;
+		spans[index] = n;
+		channels[index] = channel;
+		published.lazySet(index, seq); // after the record, which it publishes
+		records.incrementAndGet();
+		
+		long occupancy = seq + n - consumed;
+		long max;
+		while (occupancy > (max = highWaterMark.get())) {
+			if (highWaterMark.compareAndSet(max, occupancy)) break;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes up to the specified number of published slots to their targets.
+	 * Must only be called from the writer thread.
+	 * 
+	 * @param max Maximum number of slots to drain.
+	 * @return Number of slots drained.
+	 */
+	private int drain(int max) {
+		OutputStream[] targets = this.targets;
+		long seq = consumed;
+		int count = 0;
+		while (count < max) {
+			int index = (int) (seq & mask);
+			if (published.get(index) != seq) break;
+			
+			int length = lengths[index];
+			if (length >= 0) {
+				int channel = channels[index];
+				OutputStream out = targets[channel];
+				try {
+					synchronized (out) {
+						out.write(data, index * slotSize, length);
+					}
+					dirty[channel] = true;
+				} catch (IOException e) {
+					writeErrors.incrementAndGet();
+					System.err.println(e);
+				}
+			}
+			seq += spans[index];
+			count += spans[index];
+		}
+		if (count != 0) {
+			consumed = seq;
+		}
+		return count;
+	}
+	
+	private void flushTargets() {
+		OutputStream[] targets = this.targets;
+		for (int i = 0; i < targets.length; i++) {
+			if (!dirty[i]) continue;
+			dirty[i] = false;
+			try {
+				synchronized (targets[i]) {
+					targets[i].flush();
+				}
+			} catch (IOException e) {
+				writeErrors.incrementAndGet();
+				System.err.println(e);
+			}
+		}
+	}
+	
+	/**
+	 * Starts the writer thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Ring buffer writer already started.");
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long lastFlush = System.nanoTime();
+				while (!isAborted) {
+					int count = drain(DRAIN_BATCH);
+					if (count == 0) {
+						if (isClosed && consumed == claimed.get()) break;
+						
+						long now = System.nanoTime();
+						if (flushInterval != 0 && now - lastFlush >= flushInterval) {
+							flushTargets();
+							lastFlush = now;
+						}
+						LockSupport.parkNanos(IDLE_PARK);
+					}
+				}
+				flushTargets(); // also after an abort, so what was written is not lost
+			}
+		});
+		thread.setName(getClass().getSimpleName());
+		thread.start();
+	}
+	
+	/**
+	 * Waits until all records published before this call have been written.
+	 * 
+	 * @param timeout (in milliseconds)
+	 * @return true if all records were written within the timeout.
+	 */
+	boolean await(long timeout) {
+		long target = claimed.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		while (consumed < target) {
+			if (thread == null || !thread.isAlive()) return false;
+			if (System.nanoTime() - deadline >= 0) return false;
+			LockSupport.parkNanos(IDLE_PARK);
+		}
+		return true;
+	}
+	
+	/**
+	 * Stops accepting records, then waits up to the specified timeout for the
+	 * writer thread to write out the records already published. After the
+	 * timeout the writer thread is stopped after its current batch and
+	 * flushes the targets (it is not interrupted, since interrupting a
+	 * thread writing to a FileChannel closes the channel).
+	 * 
+	 * @param timeout (in milliseconds)
+	 * @return true if every published record was written.
+	 */
+	public synchronized boolean shutdown(long timeout) {
+		isClosed = true;
+		if (thread == null) {
+			return consumed == claimed.get();
+		}
+		
+		LockSupport.unpark(thread); // rather than finish parking
+		try {
+			thread.join(timeout);
+			if (thread.isAlive()) {
+				isAborted = true;
+				LockSupport.unpark(thread);
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			isAborted = true;
+			System.err.println(e);
+		}
+		thread = null;
+		return consumed == claimed.get();
+	}
+	
+	/**
+	 * Returns the number of records published.
+	 */
+	public long getRecordCount() {
+		return records.get();
+	}
+	
+	/**
+	 * Returns the number of records dropped because the buffer was full (or
+	 * already shut down).
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	/**
+	 * Returns the maximum number of slots that have been in use at once.
+	 */
+	public long getHighWaterMark() {
+		return highWaterMark.get();
+	}
+	
+	/**
+	 * Returns the number of slots published but not yet written.
+	 */
+	public long getPending() {
+		return claimed.get() - consumed;
+	}
+	
+	public long getWriteErrorCount() {
+		return writeErrors.get();
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName()
+				+ ": records=" + getRecordCount()
+				+ ", dropped=" + getDroppedCount()
+				+ ", pending=" + getPending()
+				+ ", high water mark=" + getHighWaterMark() + "/" + capacity
+				+ ", write errors=" + getWriteErrorCount();
+	}
+
+}
@@ -0,0 +1,96 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream which publishes each write as a single record into a
+ * {@link RecordRingBuffer}, to be written to the target stream by the ring
+ * buffer's writer thread.
+ */
+public class RingBufferOutputStream extends OutputStream {
+	
+	private static final long CLOSE_TIMEOUT = 1000L; // milliseconds
+	
+	private final RecordRingBuffer ring;
+	private final int channel;
+	private final OutputStream out;
+	
+	private final byte[] single = new byte[1];
+	
+	private volatile boolean isDropped;
+	private DiscontinuityListener listener;
+	
+	RingBufferOutputStream(RecordRingBuffer ring, int channel, OutputStream out) {
+		this.ring = ring;
+		this.channel = channel;
+		this.out = out;
+	}
+	
+	public int getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Sets the listener notified (on the publishing thread) when a record
+	 * written to this stream is dropped because the ring buffer is full.
+	 * 
+	 * @param listener
+	 */
+	public void setDiscontinuityListener(DiscontinuityListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public synchronized void write(int b) throws IOException {
+		single[0] = (byte) b;
+		if (!ring.publish(channel, single, 0, 1)) {
+			dropped();
+		}
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (!ring.publish(channel, b, off, len)) {
+			dropped();
+		}
+	}
+	
+	private void dropped() {
+		isDropped = true;
+		if (listener != null) {
+			listener.onDiscontinuity();
+		}
+	}
+	
+	/**
+	 * Returns true if a record written to this stream has been dropped since
+	 * the previous call.
+	 * 
+	 * @return
+	 */
+	public boolean checkDropped() {
+		if (!isDropped) return false;
+		isDropped = false;
+		return true;
+	}
+	
+	/**
+	 * Flushing is performed by the writer thread.
+	 */
+	@Override
+	public void flush() throws IOException {}
+	
+	/**
+	 * Waits (bounded) for the records already published on this channel to be
+	 * written, then closes the target stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		ring.await(CLOSE_TIMEOUT);
+		synchronized (out) {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses closed log segments on a low priority background thread.
+ * 
+ * Each segment is written to a temporary file which is renamed to the
+ * compressed segment name once complete, after which the uncompressed segment
+ * is deleted. A segment which is not compressed (e.g. on shutdown) is left as
+ * is and remains readable.
+ */
+public class SegmentCompressor {
+	
+	private static final long POLL_TIMEOUT = 100L; // milliseconds
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	
+	private final BlockingQueue<File> queue = new LinkedBlockingQueue<File>();
+	private final int level;
+	
+	private volatile boolean isClosed;
+	private Thread thread;
+	
+	private volatile long segments;
+	private volatile long bytesIn;
+	private volatile long bytesOut;
+	private volatile long failures;
+	
+	public SegmentCompressor() {
+		this(Deflater.BEST_SPEED);
+	}
+	
+	/**
+	 * @param level Deflater compression level.
+	 */
+	public SegmentCompressor(int level) {
+		this.level = level;
+	}
+	
+	/**
+	 * Queues the specified segment for compression.
+	 * 
+	 * @param file
+	 */
+	public void submit(File file) {
+		queue.add(file);
+	}
+	
+	/**
+	 * Returns a sink which queues the specified file for compression once the
+	 * sink (which writes the file) is closed.
+	 * 
+	 * @param sink
+	 * @param file
+	 * @return
+	 */
+	public BlockSink wrap(final BlockSink sink, final File file) {
+		return new BlockSink() {
+			@Override
+			public void write(ByteBuffer block) throws IOException {
+				sink.write(block);
+			}
+			
+			@Override
+			public void flush() throws IOException {
+				sink.flush();
+			}
+			
+			@Override
+			public void close() throws IOException {
+				sink.close();
+				submit(file);
+			}
+		};
+	}
+	
+	/**
+	 * Starts the compressor thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Segment compressor already started.");
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						File file = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+						if (file == null) {
+							if (isClosed) break;
+							continue;
+						}
+						compress(file);
+					}
+				} catch (InterruptedException e) {
+					// shutting down
+				}
+			}
+		});
+		thread.setName(getClass().getSimpleName());
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void compress(File file) {
+		File compressed = LogFiles.getCompressed(file);
+		File temporary = new File(compressed.getPath() + TEMPORARY_SUFFIX);
+		try {
+			InputStream in = new FileInputStream(file);
+			CompressedLogOutputStream out = null;
+			try {
+				out = new CompressedLogOutputStream(new FileOutputStream(temporary), CompressedLogOutputStream.DEFAULT_CHUNK_SIZE, level);
+				byte[] buffer = new byte[CompressedLogOutputStream.DEFAULT_CHUNK_SIZE];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException("Compression of " + file + " interrupted.");
+					}
+					out.write(buffer, 0, n);
+				}
+				out.close();
+			} finally {
+				in.close();
+				if (out != null) {
+					out.close();
+				}
+			}
+			
+			if (!temporary.renameTo(compressed)) {
+				throw new IOException("Failed to rename " + temporary + " to " + compressed);
+			}
+			if (!file.delete()) {
+				System.err.println("Failed to delete " + file);
+			}
+			segments++;
+			bytesIn += out.getUncompressedSize();
+			bytesOut += compressed.length();
+		} catch (IOException e) {
+			failures++;
+			System.err.println(e);
+			temporary.delete();
+		}
+	}
+	
+	/**
+	 * Waits up to the specified timeout for the queued segments to be
+	 * compressed, then stops the compressor thread.
+	 * 
+	 * @param timeout (in milliseconds)
+	 * @return true if every queued segment was compressed.
+	 */
+	public synchronized boolean shutdown(long timeout) {
+		isClosed = true;
+		if (thread == null) {
+			return queue.isEmpty();
+		}
+		
+		boolean isFinished = true;
+		try {
+			thread.join(timeout);
+			if (thread.isAlive()) {
+				isFinished = false;
+				thread.interrupt();
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			isFinished = false;
+			System.err.println(e);
+		}
+		thread = null;
+		return isFinished && queue.isEmpty();
+	}
+	
+	/**
+	 * Returns the number of segments waiting to be compressed.
+	 */
+	public int getPending() {
+		return queue.size();
+	}
+	
+	public long getSegmentCount() {
+		return segments;
+	}
+	
+	public long getFailureCount() {
+		return failures;
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName()
+				+ ": segments=" + segments
+				+ ", pending=" + getPending()
+				+ ", bytes in=" + bytesIn
+				+ ", bytes out=" + bytesOut
+				+ ", failures=" + failures;
+	}
+
+}
@@ -0,0 +1,98 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes blocks into a series of segments, rolling over to a new segment once
+ * the current one reaches a maximum size or age.
+ * 
+ * Rollover only happens between blocks, so each segment holds whole blocks.
+ */
+public class SegmentedSink implements BlockSink {
+	
+	public interface SegmentFactory {
+		
+		/**
+		 * Opens the sink of the specified segment.
+		 * 
+		 * @param index Segment index (starting at zero).
+		 * @return
+		 * @throws IOException
+		 */
+		public BlockSink openSegment(int index) throws IOException;
+	
+	}
+	
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	private final SegmentFactory factory;
+	private final long maxSize;
+	private final long maxAge;
+	
+	private BlockSink segment;
+	private int index = -1;
+	private long size;
+	private long opened;
+	
+	/**
+	 * @param factory
+	 * @param maxSize Maximum size of a segment (in bytes), zero for no limit.
+	 * @param maxAge Maximum age of a segment (in milliseconds), zero for no
+	 *               limit.
+	 */
+	public SegmentedSink(SegmentFactory factory, long maxSize, long maxAge) {
+		if (factory == null) throw new NullPointerException();
+		this.factory = factory;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge * NANOSECONDS_PER_MILLISECOND;
+	}
+	
+	/**
+	 * Returns the index of the current segment (-1 if none has been opened).
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	@Override
+	public void write(ByteBuffer block) throws IOException {
+		if (segment == null
+				|| (maxSize != 0 && size != 0 && size + block.remaining() > maxSize)
+				|| (maxAge != 0 && System.nanoTime() - opened >= maxAge)) {
+			roll();
+		}
+		segment.write(block);
+		size += block.remaining();
+	}
+	
+	private void roll() throws IOException {
+		closeSegment();
+		segment = factory.openSegment(index + 1);
+		index++;
+		size = 0;
+		opened = System.nanoTime();
+	}
+	
+	private void closeSegment() throws IOException {
+		if (segment == null) return;
+		try {
+			segment.close();
+		} finally {
+			segment = null;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (segment != null) {
+			segment.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		closeSegment();
+	}
+
+}
@@ -0,0 +1,95 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base class for the sensor log readers, decoding the vector readings written
+ * by {@link SensorOutputStream} in either absolute or compact (delta) form.
+ * 
+ * As a {@link DiscontinuityListener} of the log (see
+ * {@link LogFiles#setDiscontinuityListener(InputStream, DiscontinuityListener)})
+ * delta encoded readings are skipped from where records are missing until
+ * the next keyframe.
+ */
+public abstract class SensorInputStream extends DataInputStream implements DiscontinuityListener {
+	
+	private boolean hasKeyframe;
+	private long timestamp;
+	private long interval;
+	private final short[] vector = new short[3];
+	
+	public SensorInputStream(InputStream in) {
+		super(in);
+	}
+	
+	/**
+	 * Reads an absolute vector reading (keyframe).
+	 * 
+	 * @param values Array to read the x, y and z values into.
+	 * @return Timestamp of the reading.
+	 * @throws IOException
+	 */
+	protected long readVector(short[] values) throws IOException {
+		timestamp = readLong();
+		vector[0] = readShort();
+		vector[1] = readShort();
+		vector[2] = readShort();
+		interval = 0;
+		hasKeyframe = true;
+		System.arraycopy(vector, 0, values, 0, 3);
+		return timestamp;
+	}
+	
+	/**
+	 * Reads a delta encoded vector reading.
+	 * 
+	 * @param values Array to read the x, y and z values into.
+	 * @return Timestamp of the reading, or -1 if no keyframe has been read yet
+	 *         (the reading cannot be decoded).
+	 * @throws IOException
+	 */
+	protected long readVectorDelta(short[] values) throws IOException {
+		long dt = interval + zigZag(readVarint());
+		short dx = (short) zigZag(readVarint());
+		short dy = (short) zigZag(readVarint());
+		short dz = (short) zigZag(readVarint());
+		if (!hasKeyframe) return -1L;
+		
+		timestamp += dt;
+		interval = dt;
+		vector[0] += dx;
+		vector[1] += dy;
+		vector[2] += dz;
+		System.arraycopy(vector, 0, values, 0, 3);
+		return timestamp;
+	}
+	
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = read();
+			if (b == -1) throw new EOFException();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint.");
+	}
+	
+	/**
+	 * Discards the reading delta encoded readings are relative to. Called
+	 * where records are missing, i.e. before the first record after them is
+	 * decoded.
+	 */
+	@Override
+	public void onDiscontinuity() {
+		hasKeyframe = false;
+	}
+	
+	private static long zigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
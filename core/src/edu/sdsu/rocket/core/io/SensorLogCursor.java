@@ -0,0 +1,431 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Reads the records of a sensor log without allocating per record.
+ * 
+ * The log is read into a large window and each record is decoded in place
+ * into the fields of the cursor (a flyweight which is overwritten by every
+ * call to {@link #next()}), instead of into a new reading object decoded one
+ * field at a time through a {@link java.io.DataInputStream}. Vector readings
+ * can also be decoded in bulk into primitive arrays with
+ * {@link #readBatch(long[], short[], short[], short[])}.
+ * 
+ * Decodes the same records as the sensor input streams (e.g.
+ * {@link ADXL345InputStream}), including compact (delta encoded) readings.
+ * As a {@link DiscontinuityListener} of the log, delta encoded readings are
+ * skipped from where records are missing until the next keyframe.
+ */
+public class SensorLogCursor implements DiscontinuityListener {
+	
+	public enum Format {
+		VECTOR, // ADXL345, ITG3205 and HMC5883L: x, y, z (short) and scaling factor
+		BAROMETER, // MS5611: temperature and pressure (int)
+		ANALOG; // ADS1115: channel (int) and value (float)
+		
+		/**
+		 * Returns the record format of the specified sensor, or null if not
+		 * supported.
+		 * 
+		 * @param name Sensor name (e.g. "adxl345").
+		 * @return
+		 */
+		public static Format getFormat(String name) {
+			if (ADXL345OutputStream.NAME.equals(name)
+					|| ITG3205OutputStream.NAME.equals(name)
+					|| HMC5883LOutputStream.NAME.equals(name)) {
+				return VECTOR;
+			} else if (MS5611OutputStream.NAME.equals(name)) {
+				return BAROMETER;
+			} else if (ADS1115OutputStream.NAME.equals(name)) {
+				return ANALOG;
+			}
+			return null;
+		}
+	}
+	
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 20; // bytes
+	
+	/**
+	 * Upper bound of the size of a record, i.e. a delta encoded reading with
+	 * four varints of at most 10 bytes each.
+	 */
+	private static final int MAX_RECORD_SIZE = 64; // bytes
+	
+	// record types shared by the vector sensors
+	private static final byte VECTOR_VALUES = ADXL345OutputStream.SENSOR_VALUES;
+	private static final byte VECTOR_SCALING_FACTOR = ADXL345OutputStream.SCALING_FACTOR;
+	private static final byte VECTOR_VALUES_DELTA = ADXL345OutputStream.SENSOR_VALUES_DELTA;
+	
+	private final InputStream in;
+	private final Format format;
+	private final byte[] window;
+	private final ByteBuffer buffer;
+	private int position;
+	private int limit;
+	private boolean isEOF;
+	
+	/**
+	 * Number of bytes of the log before the start of the window.
+	 */
+	private long consumed;
+	private long recordOffset;
+	private boolean isKeyframe;
+	
+	private long timestamp;
+	private float scalingFactor = 1f;
+	private short x, y, z;
+	private int temperature, pressure;
+	private int channel;
+	private float value;
+	
+	private boolean hasKeyframe;
+	private long interval;
+	private long faults;
+	
+	/**
+	 * Offsets of the records which follow missing records and have not been
+	 * reached yet (the window is read ahead of the current record).
+	 */
+	private final Queue<Long> discontinuities = new ArrayDeque<Long>();
+	
+	/**
+	 * Whether the current reading has been decoded but not yet returned by
+	 * {@link #readBatch(long[], short[], short[], short[])}.
+	 */
+	private boolean isPending;
+	private float pendingScalingFactor;
+	
+	public SensorLogCursor(InputStream in, Format format) {
+		this(in, format, DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * @param in Sensor log (e.g. from {@link LogFiles#open(java.io.File...)}).
+	 * @param format Record format of the sensor.
+	 * @param windowSize Number of bytes read from the log at a time.
+	 */
+	public SensorLogCursor(InputStream in, Format format, int windowSize) {
+		if (in == null || format == null) throw new NullPointerException();
+		if (windowSize < MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("Window size too small: " + windowSize);
+		}
+		this.in = in;
+		this.format = format;
+		this.window = new byte[windowSize];
+		this.buffer = ByteBuffer.wrap(window);
+	}
+	
+	public Format getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Advances to the next reading.
+	 * 
+	 * @return false once the end of the log is reached.
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (isPending) {
+			isPending = false;
+			scalingFactor = pendingScalingFactor;
+			return true;
+		}
+		
+		while (fill(1)) {
+			recordOffset = consumed + position;
+			while (!discontinuities.isEmpty() && discontinuities.peek() <= recordOffset) {
+				discontinuities.remove();
+				hasKeyframe = false;
+			}
+			isKeyframe = true;
+			int type = window[position++];
+			switch (format) {
+			case VECTOR:
+				if (nextVector(type)) return true;
+				break;
+			case BAROMETER:
+				if (nextBarometer(type)) return true;
+				break;
+			case ANALOG:
+				if (nextAnalog(type)) return true;
+				break;
+			}
+		}
+		return false;
+	}
+	
+	private boolean nextVector(int type) throws IOException {
+		switch (type) {
+		case VECTOR_VALUES:
+			require(14);
+			timestamp = buffer.getLong(position);
+			x = buffer.getShort(position + 8);
+			y = buffer.getShort(position + 10);
+			z = buffer.getShort(position + 12);
+			position += 14;
+			interval = 0;
+			hasKeyframe = true;
+			return true;
+		case VECTOR_VALUES_DELTA:
+			long dt = interval + zigZag(readVarint());
+			short dx = (short) zigZag(readVarint());
+			short dy = (short) zigZag(readVarint());
+			short dz = (short) zigZag(readVarint());
+			if (!hasKeyframe) return false; // no keyframe yet
+			isKeyframe = false;
+			timestamp += dt;
+			interval = dt;
+			x += dx;
+			y += dy;
+			z += dz;
+			return true;
+		case VECTOR_SCALING_FACTOR:
+			require(12);
+			scalingFactor = buffer.getFloat(position + 8);
+			position += 12;
+			return false;
+		default:
+			throw new IOException("Unsupported value type: " + type);
+		}
+	}
+	
+	private boolean nextBarometer(int type) throws IOException {
+		switch (type) {
+		case MS5611OutputStream.SENSOR_VALUES:
+			require(16);
+			timestamp = buffer.getLong(position);
+			temperature = buffer.getInt(position + 8);
+			pressure = buffer.getInt(position + 12);
+			position += 16;
+			return true;
+		case MS5611OutputStream.FAULT:
+			require(12);
+			position += 12;
+			faults++;
+			return false;
+		default:
+			throw new IOException("Unsupported value type: " + type);
+		}
+	}
+	
+	private boolean nextAnalog(int type) throws IOException {
+		switch (type) {
+		case ADS1115OutputStream.SENSOR_VALUE:
+			require(16);
+			timestamp = buffer.getLong(position);
+			channel = buffer.getInt(position + 8);
+			value = buffer.getFloat(position + 12);
+			position += 16;
+			return true;
+		default:
+			throw new IOException("Unsupported value type: " + type);
+		}
+	}
+	
+	/**
+	 * Reads vector readings into the specified arrays.
+	 * 
+	 * A batch ends early where the scaling factor changes, so every reading
+	 * of a batch shares {@link #getScalingFactor()}.
+	 * 
+	 * @param timestamps
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return Number of readings read, 0 once the end of the log is reached.
+	 * @throws IOException
+	 */
+	public int readBatch(long[] timestamps, short[] x, short[] y, short[] z) throws IOException {
+		if (format != Format.VECTOR) {
+			throw new IllegalStateException("Not a vector log: " + format);
+		}
+		
+		int length = Math.min(timestamps.length, Math.min(x.length, Math.min(y.length, z.length)));
+		int count = 0;
+		float batchScalingFactor = 0f;
+		while (count < length && next()) {
+			if (count == 0) {
+				batchScalingFactor = scalingFactor;
+			} else if (scalingFactor != batchScalingFactor) {
+				isPending = true; // starts the next batch
+				pendingScalingFactor = scalingFactor;
+				scalingFactor = batchScalingFactor;
+				break;
+			}
+			timestamps[count] = timestamp;
+			x[count] = this.x;
+			y[count] = this.y;
+			z[count] = this.z;
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Ensures the specified number of bytes are in the window from the current
+	 * position, unless the end of the log is reached first.
+	 * 
+	 * @param count
+	 * @return false if fewer bytes remain in the log.
+	 * @throws IOException
+	 */
+	private boolean fill(int count) throws IOException {
+		if (limit - position >= count) return true;
+		if (isEOF) return false;
+		
+		int remaining = limit - position;
+		System.arraycopy(window, position, window, 0, remaining);
+		consumed += position;
+		position = 0;
+		limit = remaining;
+		
+		while (limit < window.length) {
+			int n = in.read(window, limit, window.length - limit);
+			if (n == -1) {
+				isEOF = true;
+				break;
+			}
+			limit += n;
+			if (limit - position >= count && in.available() <= 0) {
+				break; // rather than wait for more (e.g. of a log still being written)
+			}
+		}
+		return limit - position >= count;
+	}
+	
+	/**
+	 * Ensures the remainder of a record is in the window.
+	 * 
+	 * @param count
+	 * @throws EOFException if the log ends within the record.
+	 */
+	private void require(int count) throws IOException {
+		if (!fill(count)) throw new EOFException();
+	}
+	
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position == limit && !fill(1)) throw new EOFException();
+			int b = window[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint.");
+	}
+	
+	/**
+	 * Marks the record at the end of the window, i.e. the start of the data
+	 * the log is returning next, as following missing records. Called by the
+	 * log (e.g. a {@link BlockInputStream}) from within a read.
+	 */
+	@Override
+	public void onDiscontinuity() {
+		discontinuities.add(consumed + limit);
+	}
+	
+	private static long zigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Returns the timestamp of the current reading (ns).
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Returns the offset of the record of the current reading from the start
+	 * of the stream (e.g. to index the log).
+	 */
+	public long getRecordOffset() {
+		return recordOffset;
+	}
+	
+	/**
+	 * Returns whether the current reading is decoded from its record alone,
+	 * i.e. is not delta encoded. Reading can start from the record of a
+	 * keyframe.
+	 */
+	public boolean isKeyframe() {
+		return isKeyframe;
+	}
+	
+	/**
+	 * Returns the scaling factor of the current vector reading.
+	 */
+	public float getScalingFactor() {
+		return scalingFactor;
+	}
+	
+	/**
+	 * Sets the scaling factor in effect, when the stream starts after the
+	 * record which set it (e.g. at an offset from a {@link SensorLogIndex}).
+	 * 
+	 * @param scalingFactor
+	 */
+	public void setScalingFactor(float scalingFactor) {
+		this.scalingFactor = scalingFactor;
+	}
+	
+	public short getX() {
+		return x;
+	}
+	
+	public short getY() {
+		return y;
+	}
+	
+	public short getZ() {
+		return z;
+	}
+	
+	/**
+	 * Returns the temperature of the current barometer reading (C * 100).
+	 */
+	public int getTemperature() {
+		return temperature;
+	}
+	
+	/**
+	 * Returns the pressure of the current barometer reading (mbar * 100).
+	 */
+	public int getPressure() {
+		return pressure;
+	}
+	
+	/**
+	 * Returns the channel of the current analog reading.
+	 */
+	public int getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Returns the value of the current analog reading (mV).
+	 */
+	public float getValue() {
+		return value;
+	}
+	
+	/**
+	 * Returns the number of fault records skipped.
+	 */
+	public long getFaultCount() {
+		return faults;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,301 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sparse index of a sensor log, mapping the timestamp of every Nth reading to
+ * the offset of its record, so that a time range can be read by seeking to
+ * it instead of decoding the log from the beginning.
+ * 
+ * Offsets are into the log as read through {@link LogFiles#open(File...)}
+ * (i.e. into the payload of framed logs) and only keyframes are indexed, so
+ * that a {@link SensorLogCursor} can start reading at any entry. The scaling
+ * factor in effect at each entry is stored with it.
+ * 
+ * Skipping to the offset of a framed log would still read and check every
+ * block before it, so for framed logs each entry also holds the offset of
+ * its block in every copy and the offset of its record within the block's
+ * payload: the copies are opened at the block instead (see
+ * {@link LogFiles#seek(BlockInputStream, int, long[], File...)}).
+ * 
+ * The index is written next to the log ("adxl345.log.idx") together with a
+ * stamp of the log files, from which a stale index is detected.
+ */
+public class SensorLogIndex {
+	
+	public static final String SUFFIX = ".idx";
+	
+	public static final int DEFAULT_INTERVAL = 1024; // readings
+	
+	private static final int MAGIC = 0x494E4458; // "INDX"
+	private static final int VERSION = 2;
+	
+	private final long stamp;
+	private final int copies; // 0 if not framed
+	private int size;
+	private long[] timestamps;
+	private long[] offsets;
+	private float[] scalingFactors;
+	private long[][] blockOffsets;
+	private int[] payloadOffsets;
+	
+	private SensorLogIndex(long stamp, int copies, int capacity) {
+		this.stamp = stamp;
+		this.copies = copies;
+		this.timestamps = new long[capacity];
+		this.offsets = new long[capacity];
+		this.scalingFactors = new float[capacity];
+		this.blockOffsets = new long[capacity][];
+		this.payloadOffsets = new int[capacity];
+	}
+	
+	/**
+	 * Returns the index file of a log.
+	 * 
+	 * @param file Log file.
+	 * @return
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+	
+	/**
+	 * Returns a stamp of the files of a log, which changes when any of them
+	 * is written, added or removed.
+	 * 
+	 * @param copies Mirrored copies or stripes of the log.
+	 * @return
+	 */
+	public static long getStamp(File... copies) {
+		long stamp = 17;
+		for (File copy : copies) {
+			for (File file : LogFiles.listFiles(copy)) {
+				stamp = 31 * stamp + file.getPath().hashCode();
+				stamp = 31 * stamp + file.length();
+				stamp = 31 * stamp + file.lastModified();
+			}
+		}
+		return stamp;
+	}
+	
+	/**
+	 * Indexes a log by reading it to the end.
+	 * 
+	 * @param cursor Cursor at the start of the log.
+	 * @param interval Number of readings between entries (the entry is at the
+	 *                 first keyframe after them).
+	 * @param stamp Stamp of the log files.
+	 * @return
+	 * @throws IOException
+	 */
+	public static SensorLogIndex build(SensorLogCursor cursor, int interval, long stamp) throws IOException {
+		return build(cursor, null, interval, stamp);
+	}
+	
+	/**
+	 * Indexes a framed log by reading it to the end, including the location
+	 * of the block of every entry.
+	 * 
+	 * @param cursor Cursor at the start of the log.
+	 * @param blocks Stream the cursor reads (or null if the log is not
+	 *               framed).
+	 * @param interval Number of readings between entries.
+	 * @param stamp Stamp of the log files.
+	 * @return
+	 * @throws IOException
+	 */
+	public static SensorLogIndex build(SensorLogCursor cursor, BlockInputStream blocks, int interval, long stamp) throws IOException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be positive.");
+		}
+		SensorLogIndex index = new SensorLogIndex(stamp, blocks == null ? 0 : blocks.getCopyCount(), 64);
+		if (blocks != null) {
+			blocks.track();
+		}
+		long readings = 0;
+		long next = 0; // readings at which the next entry is due
+		while (cursor.next()) {
+			if (readings >= next && cursor.isKeyframe()) {
+				long offset = cursor.getRecordOffset();
+				if (blocks == null) {
+					index.add(cursor.getTimestamp(), offset, cursor.getScalingFactor(), null, 0);
+				} else {
+					BlockInputStream.Location location = blocks.locate(offset);
+					index.add(cursor.getTimestamp(), offset, cursor.getScalingFactor(), location.offsets, (int) (offset - location.start));
+				}
+				next = readings + interval;
+			}
+			readings++;
+		}
+		return index;
+	}
+	
+	private void add(long timestamp, long offset, float scalingFactor, long[] blockOffsets, int payloadOffset) {
+		if (size == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+			scalingFactors = Arrays.copyOf(scalingFactors, size * 2);
+			this.blockOffsets = Arrays.copyOf(this.blockOffsets, size * 2);
+			payloadOffsets = Arrays.copyOf(payloadOffsets, size * 2);
+		}
+		timestamps[size] = timestamp;
+		offsets[size] = offset;
+		scalingFactors[size] = scalingFactor;
+		this.blockOffsets[size] = blockOffsets;
+		payloadOffsets[size] = payloadOffset;
+		size++;
+	}
+	
+	/**
+	 * Reads an index file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is not an index.
+	 */
+	public static SensorLogIndex read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a sensor log index: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported sensor log index version " + version + ": " + file);
+			}
+			long stamp = in.readLong();
+			int copies = in.readInt();
+			int size = in.readInt();
+			if (copies < 0 || size < 0) {
+				throw new IOException("Invalid sensor log index: " + file);
+			}
+			SensorLogIndex index = new SensorLogIndex(stamp, copies, Math.max(size, 1));
+			for (int i = 0; i < size; i++) {
+				long timestamp = in.readLong();
+				long offset = in.readLong();
+				float scalingFactor = in.readFloat();
+				long[] blockOffsets = null;
+				int payloadOffset = 0;
+				if (copies != 0) {
+					blockOffsets = new long[copies];
+					for (int j = 0; j < copies; j++) {
+						blockOffsets[j] = in.readLong();
+					}
+					payloadOffset = in.readInt();
+				}
+				index.add(timestamp, offset, scalingFactor, blockOffsets, payloadOffset);
+			}
+			return index;
+		} finally {
+			in.close();
+		}
+	}
+	
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(stamp);
+			out.writeInt(copies);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeLong(timestamps[i]);
+				out.writeLong(offsets[i]);
+				out.writeFloat(scalingFactors[i]);
+				if (copies != 0) {
+					for (int j = 0; j < copies; j++) {
+						out.writeLong(blockOffsets[i][j]);
+					}
+					out.writeInt(payloadOffsets[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	public long getStamp() {
+		return stamp;
+	}
+	
+	/**
+	 * Returns the number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Finds the last entry at or before the specified time, from which the
+	 * readings at that time can be read. Assumes the timestamps of the log
+	 * increase.
+	 * 
+	 * @param timestamp
+	 * @return Entry index, or -1 if the log has to be read from the start.
+	 */
+	public int find(long timestamp) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (timestamps[mid] <= timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+	
+	public long getTimestamp(int entry) {
+		return timestamps[entry];
+	}
+	
+	/**
+	 * Returns the offset of the record of an entry.
+	 */
+	public long getOffset(int entry) {
+		return offsets[entry];
+	}
+	
+	/**
+	 * Returns the scaling factor in effect at an entry.
+	 */
+	public float getScalingFactor(int entry) {
+		return scalingFactors[entry];
+	}
+	
+	/**
+	 * Returns whether the entries hold the location of their block, i.e. the
+	 * log is framed.
+	 */
+	public boolean hasBlockOffsets() {
+		return copies != 0;
+	}
+	
+	/**
+	 * Returns the offset of the block of an entry in each copy of the log
+	 * which exists (see {@link BlockInputStream.Location#offsets}).
+	 */
+	public long[] getBlockOffsets(int entry) {
+		return blockOffsets[entry];
+	}
+	
+	/**
+	 * Returns the offset of the record of an entry within the payload of its
+	 * block.
+	 */
+	public int getPayloadOffset(int entry) {
+		return payloadOffsets[entry];
+	}
+
+}
@@ -0,0 +1,177 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+
+/**
+ * Base class for the sensor log streams.
+ * 
+ * Every record (type, timestamp and values) is encoded into a reusable buffer
+ * and handed to the underlying stream with a single write, so the streams
+ * below only ever see whole records.
+ * 
+ * In compact mode, vector readings (e.g. the three axes of the IMU sensors)
+ * are written as zig-zag varint deltas from the previous reading. The
+ * timestamp is encoded as the change in the interval between readings, which
+ * is close to zero at a steady sample rate. Every keyframe interval (and
+ * after any other record) an absolute reading is written instead, which
+ * bounds the readings which cannot be decoded after a lost block (readers
+ * skip delta encoded readings from a discontinuity to the next keyframe).
+ * The stream is also a {@link DiscontinuityListener} of the stream below, so
+ * a record dropped there (see {@link RingBufferOutputStream}) is followed by
+ * a keyframe.
+ */
+public abstract class SensorOutputStream extends DataOutputStream implements DiscontinuityListener {
+	
+	private static final int RECORD_CAPACITY = 64; // bytes
+	
+	/**
+	 * Size of the type and timestamp which start every absolute record.
+	 */
+	public static final int RECORD_HEADER_SIZE = 9; // bytes
+	
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 256; // readings
+	
+	protected final Stopwatch stopwatch;
+	
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_CAPACITY);
+	
+	private boolean isCompact;
+	private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+	
+	private int deltas = -1; // since the last keyframe (-1 forces a keyframe)
+	private long timestamp;
+	private long interval;
+	private final short[] vector = new short[3];
+	
+	public SensorOutputStream(OutputStream out) {
+		this(out, new Stopwatch());
+	}
+	
+	/**
+	 * Streams sharing a stopwatch have directly comparable timestamps.
+	 * 
+	 * @param out
+	 * @param stopwatch Source of record timestamps.
+	 */
+	public SensorOutputStream(OutputStream out, Stopwatch stopwatch) {
+		super(out);
+		if (stopwatch == null) throw new NullPointerException();
+		this.stopwatch = stopwatch;
+	}
+	
+	public Stopwatch getStopwatch() {
+		return stopwatch;
+	}
+	
+	/**
+	 * Enables delta encoding of vector readings.
+	 * 
+	 * @param isCompact
+	 * @param keyframeInterval Maximum number of delta encoded readings between
+	 *                         absolute readings.
+	 */
+	public synchronized void setCompact(boolean isCompact, int keyframeInterval) {
+		if (keyframeInterval <= 0) {
+			throw new IllegalArgumentException("Keyframe interval must be positive.");
+		}
+		this.isCompact = isCompact;
+		this.keyframeInterval = keyframeInterval;
+		deltas = -1;
+	}
+	
+	public boolean isCompact() {
+		return isCompact;
+	}
+	
+	/**
+	 * Starts a new record with the specified type and the current timestamp.
+	 * 
+	 * @param type Record type.
+	 * @return Buffer to put the record values into.
+	 */
+	protected ByteBuffer beginRecord(byte type) {
+		deltas = -1;
+		record.clear();
+		record.put(type);
+		record.putLong(stopwatch.nanoSecondsElapsed());
+		return record;
+	}
+	
+	/**
+	 * Writes a vector reading, delta encoded when compact and absolute
+	 * otherwise.
+	 * 
+	 * Absolute: type, timestamp (long), x, y, z (short)
+	 * Delta: deltaType, change in interval (varint), change in x, y, z (varint)
+	 * 
+	 * @param type Record type of absolute readings.
+	 * @param deltaType Record type of delta encoded readings.
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @throws IOException
+	 */
+	protected void writeVector(byte type, byte deltaType, short x, short y, short z) throws IOException {
+		if (!isCompact || deltas == -1 || deltas == keyframeInterval) {
+			beginRecord(type)
+				.putShort(x)
+				.putShort(y)
+				.putShort(z);
+			timestamp = record.getLong(1);
+			interval = 0;
+			deltas = 0;
+		} else {
+			long t = stopwatch.nanoSecondsElapsed();
+			long dt = t - timestamp;
+			record.clear();
+			record.put(deltaType);
+			putVarint(record, zigZag(dt - interval));
+			putVarint(record, zigZag(x - vector[0]));
+			putVarint(record, zigZag(y - vector[1]));
+			putVarint(record, zigZag(z - vector[2]));
+			timestamp = t;
+			interval = dt;
+			deltas++;
+		}
+		vector[0] = x;
+		vector[1] = y;
+		vector[2] = z;
+		write(record.array(), 0, record.position());
+	}
+	
+	/**
+	 * Forces the next vector reading to be written as a keyframe, since a
+	 * delta would be relative to a reading which was not written.
+	 */
+	@Override
+	public synchronized void onDiscontinuity() {
+		deltas = -1;
+	}
+	
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private static void putVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	/**
+	 * Writes the record started by {@link #beginRecord(byte)}.
+	 * 
+	 * @throws IOException
+	 */
+	protected void endRecord() throws IOException {
+		write(record.array(), 0, record.position());
+	}
+
+}
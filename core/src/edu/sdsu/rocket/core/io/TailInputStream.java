@@ -0,0 +1,397 @@
+package edu.sdsu.rocket.core.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a log which is still being written, polling for appended data at the
+ * end of the log instead of returning the end of the stream, until stopped.
+ * 
+ * The log is read as written: the file itself or, once a segment of it
+ * exists, its segments in turn (a segment is complete once the next one
+ * exists, and may since have been compressed).
+ * 
+ * Of a framed log being written, only the blocks which are complete are
+ * returned: pre-allocated and mapped logs are written into space which is
+ * already zero (and a mapped block's header is only filled in once the block
+ * is closed), so the end of the data is the end of the last intact block.
+ * Damaged regions followed by intact blocks are returned for
+ * {@link BlockScanner} to skip. Once stopped, the rest of the log is returned
+ * as is.
+ * 
+ * Reads block until data is available, so a partial record at the end of
+ * a plain log is completed by the writer before it is decoded.
+ */
+public class TailInputStream extends InputStream {
+	
+	public static final long DEFAULT_POLL_INTERVAL = 100L; // milliseconds
+	
+	/**
+	 * Maximum number of bytes searched for the next block past a damaged
+	 * region per poll.
+	 */
+	private static final int SEARCH_SIZE = 1 << 20; // bytes
+	
+	private final File file;
+	private final long pollInterval;
+	private int blockSize = BlockOutputStream.HEADER_SIZE + BlockScanner.MAX_BLOCK_SIZE;
+	
+	private Boolean isFramed;
+	private boolean isSegmented;
+	private int segment;
+	
+	private RandomAccessFile current;
+	private InputStream compressed;
+	private long position;
+	private long end; // of the intact blocks of the current file
+	private boolean isEOF;
+	
+	private final CRC32 crc = new CRC32();
+	private byte[] buffer = new byte[BlockOutputStream.HEADER_SIZE];
+	
+	private Flushable idle;
+	private volatile boolean isStopped;
+	
+	public TailInputStream(File file) {
+		this(file, DEFAULT_POLL_INTERVAL);
+	}
+	
+	/**
+	 * @param file Log file.
+	 * @param pollInterval Interval at which the log is checked for appended
+	 *                     data (ms).
+	 */
+	public TailInputStream(File file, long pollInterval) {
+		if (file == null) throw new NullPointerException();
+		if (pollInterval <= 0) {
+			throw new IllegalArgumentException("Poll interval must be positive.");
+		}
+		this.file = file;
+		this.pollInterval = pollInterval;
+	}
+	
+	/**
+	 * Sets the block size a framed log is written with (in bytes, including
+	 * the header), see {@link BlockScanner}.
+	 * 
+	 * @param blockSize
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize <= BlockOutputStream.HEADER_SIZE) {
+			throw new IllegalArgumentException("Block size too small: " + blockSize);
+		}
+		this.blockSize = blockSize;
+	}
+	
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * Sets what is flushed whenever the stream has to wait for more data,
+	 * e.g. the output the log is converted into, so that it is up to date
+	 * while the log is idle.
+	 * 
+	 * @param idle
+	 */
+	public void setIdle(Flushable idle) {
+		this.idle = idle;
+	}
+	
+	/**
+	 * Stops following the log: the rest of the data written so far is read
+	 * and then the end of the stream is returned. May be called from any
+	 * thread.
+	 */
+	public void stop() {
+		isStopped = true;
+	}
+	
+	public boolean isStopped() {
+		return isStopped;
+	}
+	
+	/**
+	 * Returns whether the log is framed, waiting until the start of the log
+	 * has been written (or following is stopped).
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isFramed() throws IOException {
+		while (isFramed == null) {
+			boolean isFinal = isStopped;
+			if (current == null && compressed == null) {
+				open();
+			}
+			if (current != null || compressed != null) {
+				isFramed = sniff(isFinal);
+			}
+			if (isFramed == null) {
+				if (isFinal) return false;
+				sleep();
+			}
+		}
+		return isFramed;
+	}
+	
+	/**
+	 * Determines whether the first file of the log is framed, unless its start
+	 * is still zero (not yet written).
+	 */
+	private Boolean sniff(boolean isFinal) throws IOException {
+		byte[] b = new byte[BlockOutputStream.HEADER_SIZE];
+		int len;
+		if (compressed != null) { // complete, so read it separately to leave it unread
+			InputStream in = new CompressedLogInputStream(LogFiles.getCompressed(isSegmented ? LogFiles.getSegment(file, 0) : file));
+			try {
+				len = read(in, b);
+			} finally {
+				in.close();
+			}
+		} else {
+			current.seek(0L);
+			len = read(current, b);
+		}
+		if (BlockScanner.isFramed(b, 0, len)) return true;
+		for (int i = 0; i < len; i++) {
+			if (b[i] != 0) return false; // records
+		}
+		return isFinal ? Boolean.FALSE : null;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		isFramed();
+		boolean isFlushed = false;
+		while (true) {
+			boolean isFinal = isStopped; // read the rest once stopped, before returning the end
+			int n = readAvailable(b, off, len, isFinal);
+			if (n != 0) return n;
+			if (isFinal) return -1;
+			
+			if (idle != null && !isFlushed) {
+				idle.flush();
+				isFlushed = true;
+			}
+			sleep();
+		}
+	}
+	
+	private void sleep() throws IOException {
+		try {
+			Thread.sleep(pollInterval);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+	
+	/**
+	 * Reads data available without waiting.
+	 * 
+	 * @return Number of bytes read, 0 if none are available yet or -1 at the
+	 *         end of a complete (compressed) log.
+	 */
+	private int readAvailable(byte[] b, int off, int len, boolean isFinal) throws IOException {
+		while (!isEOF) {
+			if (compressed != null) {
+				int n = compressed.read(b, off, len);
+				if (n != -1) return n;
+				compressed.close();
+				compressed = null;
+				if (!isSegmented) {
+					isEOF = true; // a compressed log is complete
+					break;
+				}
+				segment++;
+				continue;
+			}
+			
+			if (current == null) {
+				if (!open()) return 0;
+				continue;
+			}
+			
+			boolean isComplete = isSegmented && exists(LogFiles.getSegment(file, segment + 1));
+			long length = current.length(); // final once the next segment exists
+			long available = isComplete || isFinal || !isFramed ? length : verify(length);
+			if (position < available) {
+				current.seek(position);
+				int n = current.read(b, off, (int) Math.min(len, available - position));
+				if (n > 0) {
+					position += n;
+					return n;
+				}
+			}
+			if (!isComplete) return 0;
+			
+			current.close();
+			current = null;
+			segment++;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Advances the end of the data over the blocks of the current file which
+	 * are complete and intact, or past a damaged region up to the next block.
+	 * 
+	 * A mapped segment is truncated to its blocks when it is closed, which may
+	 * happen after its length was read, so the end of the file is then met
+	 * before the length: the blocks up to there are returned and the rest is
+	 * verified on the next poll, against the new length.
+	 * 
+	 * @param length Current length of the file.
+	 * @return End of the data which can be returned.
+	 * @throws IOException
+	 */
+	private long verify(long length) throws IOException {
+		try {
+			while (end + BlockOutputStream.HEADER_SIZE <= length) {
+				current.seek(end);
+				current.readFully(buffer, 0, BlockOutputStream.HEADER_SIZE);
+				int sync = getInt(buffer, 0);
+				if (sync == 0) break; // not yet written
+				
+				if (sync == BlockOutputStream.SYNC) {
+					int size = getInt(buffer, 8);
+					if (size >= 0 && size <= blockSize - BlockOutputStream.HEADER_SIZE) {
+						long next = end + BlockOutputStream.HEADER_SIZE + size;
+						if (next > length) break; // not yet complete
+						if (isIntact(size)) {
+							end = next;
+							continue;
+						}
+					}
+				}
+				
+				long next = search(end + 1, length);
+				if (next == -1) break; // possibly still being written
+				end = next;
+			}
+		} catch (EOFException e) {
+			// truncated since its length was read
+		}
+		return end;
+	}
+	
+	/**
+	 * Checks the block at the end of the data whose header is in the buffer.
+	 */
+	private boolean isIntact(int size) throws IOException {
+		int blockSize = BlockOutputStream.HEADER_SIZE + size;
+		if (buffer.length < blockSize) {
+			byte[] b = new byte[blockSize];
+			System.arraycopy(buffer, 0, b, 0, BlockOutputStream.HEADER_SIZE);
+			buffer = b;
+		}
+		current.readFully(buffer, BlockOutputStream.HEADER_SIZE, size);
+		crc.reset();
+		crc.update(buffer, 4, 8);
+		crc.update(buffer, BlockOutputStream.HEADER_SIZE, size);
+		return (int) crc.getValue() == getInt(buffer, 12);
+	}
+	
+	/**
+	 * Searches for the next sync marker.
+	 * 
+	 * @return Its position or -1 if there is none (yet).
+	 */
+	private long search(long from, long length) throws IOException {
+		byte[] b = new byte[(int) Math.min(SEARCH_SIZE, length - from)];
+		current.seek(from);
+		current.readFully(b);
+		for (int i = 0; i + 4 <= b.length; i++) {
+			if (getInt(b, i) == BlockOutputStream.SYNC) return from + i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Opens the log itself or its current segment, compressed or not.
+	 * 
+	 * @return false if it does not exist yet.
+	 */
+	private boolean open() throws IOException {
+		if (!isSegmented) {
+			if (open(file)) return true;
+			if (!exists(LogFiles.getSegment(file, 0))) return false;
+			isSegmented = true;
+		}
+		return open(LogFiles.getSegment(file, segment));
+	}
+	
+	private boolean open(File file) throws IOException {
+		File compressed = LogFiles.getCompressed(file);
+		if (compressed.isFile()) { // takes precedence as in LogFiles
+			this.compressed = new CompressedLogInputStream(compressed);
+			return true;
+		}
+		if (file.isFile()) {
+			current = new RandomAccessFile(file, "r");
+			position = 0;
+			end = 0;
+			return true;
+		}
+		return false;
+	}
+	
+	private static boolean exists(File file) {
+		return file.isFile() || LogFiles.getCompressed(file).isFile();
+	}
+	
+	private static int read(InputStream in, byte[] b) throws IOException {
+		int len = 0;
+		while (len < b.length) {
+			int n = in.read(b, len, b.length - len);
+			if (n == -1) break;
+			len += n;
+		}
+		return len;
+	}
+	
+	private static int read(RandomAccessFile in, byte[] b) throws IOException {
+		int len = 0;
+		while (len < b.length) {
+			int n = in.read(b, len, b.length - len);
+			if (n == -1) break;
+			len += n;
+		}
+		return len;
+	}
+	
+	private static int getInt(byte[] b, int off) {
+		return ((b[off] & 0xFF) << 24)
+				| ((b[off + 1] & 0xFF) << 16)
+				| ((b[off + 2] & 0xFF) << 8)
+				| (b[off + 3] & 0xFF);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		isStopped = true;
+		try {
+			if (compressed != null) {
+				compressed.close();
+			}
+		} finally {
+			if (current != null) {
+				current.close();
+			}
+		}
+	}
+
+}
@@ -14,12 +14,23 @@ public class Pressures {
 	}
 	
 	public float getMotor() {
-//		float volts = analog.getA0()  / 1000f;
+		return getMotor(analog.getA0());
+	}
+	
+	/**
+	 * Converts a reading of the motor pressure transducer (A0, mV) into PSI,
+	 * e.g. when post-processing logs.
+	 * 
+	 * @param a0 mV
+	 * @return PSI
+	 */
+	public static float getMotor(float a0) {
+//		float volts = a0 / 1000f;
 //		return MathHelper.translate(volts, 0f, 3.3f, 0f, (float) MOTOR_MAX_PRESSURE);
 		
 		// P51-500-A-A-I36-5V-000-000
 		// calibrated transducer #1 on Nov 13, 2014
-		return 0.210439f * analog.getA0() - 150.502f;
+		return 0.210439f * a0 - 150.502f;
 	}
 	
 	public float getLOX() {
@@ -110,6 +110,7 @@ public class SensorClient {
 				}
 			}
 		};
+		runnable.setPacing(RateLimitedRunnable.Pacing.DEADLINE); // requests at the frequency, skipping any missed
 		setFrequency(frequency);
 		
 		thread = new Thread(runnable);
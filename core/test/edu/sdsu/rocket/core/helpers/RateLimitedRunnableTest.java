@@ -0,0 +1,136 @@
+package edu.sdsu.rocket.core.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable.Overrun;
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable.Pacing;
+
+/**
+ * The deadlines of a deadline paced loop are exact multiples of the period
+ * from the first loop, so however late the loops start (which depends on the
+ * load of the machine), the time between the first and last loop is the
+ * periods and skipped deadlines times the period plus the lateness of the
+ * last loop.
+ */
+public class RateLimitedRunnableTest {
+	
+	private static final long PERIOD = 10000000L; // ns
+	private static final int LOOPS = 20;
+	private static final double ACCURACY = 1000.0; // ns, of the summed periods
+	
+	/**
+	 * Loops a number of times, sleeping through the specified loop.
+	 */
+	static class CountingRunnable extends RateLimitedRunnable {
+		final int loops;
+		final int stall;
+		final long stallTime; // ms
+		int count;
+		
+		CountingRunnable(int loops, int stall, long stallTime) {
+			this.loops = loops;
+			this.stall = stall;
+			this.stallTime = stallTime;
+			setSleepNanoseconds(PERIOD);
+			setPacing(Pacing.DEADLINE);
+		}
+		
+		@Override
+		public void loop() throws InterruptedException {
+			if (count == stall) {
+				Thread.sleep(stallTime);
+			}
+			if (++count == loops) {
+				setRunning(false);
+			}
+		}
+	}
+	
+	private static void assertDeadlines(RateLimitedRunnable runnable) {
+		double elapsed = runnable.getMeanPeriod() * runnable.getPeriods();
+		long deadlines = (runnable.getPeriods() + runnable.getSkipped()) * PERIOD;
+		assertTrue("loops started early", elapsed >= deadlines - ACCURACY);
+		assertTrue("loops drifted", elapsed <= deadlines + runnable.getMaxLateness() + ACCURACY);
+	}
+	
+	@Test
+	public void startsLoopsAtDeadlines() {
+		CountingRunnable runnable = new CountingRunnable(LOOPS, -1, 0L);
+		runnable.run();
+		
+		assertEquals(LOOPS, runnable.count);
+		assertEquals(LOOPS - 1, runnable.getPeriods());
+		assertTrue(runnable.getMeanPeriod() >= PERIOD);
+		assertDeadlines(runnable);
+	}
+	
+	@Test
+	public void skipsMissedDeadlines() {
+		CountingRunnable runnable = new CountingRunnable(LOOPS, LOOPS / 2, 25L); // overruns by 1.5 periods
+		runnable.run();
+		
+		assertEquals(LOOPS - 1, runnable.getPeriods());
+		assertTrue(runnable.getOverruns() >= 1);
+		assertTrue(runnable.getSkipped() >= 2);
+		assertDeadlines(runnable);
+	}
+	
+	@Test
+	public void catchesUpWithMissedDeadlines() {
+		CountingRunnable runnable = new CountingRunnable(LOOPS, LOOPS / 2, 25L);
+		runnable.setOverrun(Overrun.CATCH_UP);
+		runnable.run();
+		
+		assertEquals(LOOPS - 1, runnable.getPeriods());
+		assertTrue(runnable.getOverruns() >= 1);
+		assertEquals(0, runnable.getSkipped());
+		assertTrue(runnable.getMaxLateness() >= 15L * 1000000L); // the loop after the stall
+		assertDeadlines(runnable);
+	}
+	
+	@Test
+	public void keepsTheRecentPeriods() {
+		CountingRunnable runnable = new CountingRunnable(RateLimitedRunnable.WINDOW + LOOPS, -1, 0L);
+		runnable.setPacing(Pacing.SLEEP);
+		runnable.setSleep(0L);
+		runnable.run();
+		
+		assertEquals(RateLimitedRunnable.WINDOW + LOOPS - 1, runnable.getPeriods());
+		assertEquals(RateLimitedRunnable.WINDOW, runnable.getRecentPeriods().length);
+		assertEquals(0, runnable.getMaxLateness()); // not deadline paced
+	}
+	
+	@Test
+	public void resumeResetsTheStatistics() {
+		CountingRunnable runnable = new CountingRunnable(LOOPS, LOOPS / 2, 25L);
+		runnable.run();
+		runnable.pause();
+		runnable.resume();
+		
+		assertEquals(0, runnable.getPeriods());
+		assertEquals(0, runnable.getRecentPeriods().length);
+		assertEquals(0, runnable.getOverruns());
+		assertEquals(0, runnable.getSkipped());
+	}
+	
+	@Test
+	public void waitsUntilTheDeadline() throws InterruptedException {
+		long deadline = System.nanoTime() + PERIOD / 4;
+		RateLimitedRunnable.waitUntil(deadline, 0L);
+		assertTrue(System.nanoTime() - deadline >= 0);
+		
+		deadline = System.nanoTime() + PERIOD / 4;
+		RateLimitedRunnable.waitUntil(deadline, PERIOD / 10);
+		assertTrue(System.nanoTime() - deadline >= 0);
+	}
+	
+	@Test(expected = InterruptedException.class)
+	public void stopsWaitingWhenInterrupted() throws InterruptedException {
+		Thread.currentThread().interrupt();
+		RateLimitedRunnable.waitUntil(System.nanoTime() + 1000L * PERIOD, 0L);
+	}
+
+}
@@ -0,0 +1,159 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.AsyncBlockWriter.Policy;
+
+public class AsyncBlockWriterTest {
+	
+	private static final long TIMEOUT = 5000L; // ms
+	
+	/**
+	 * Records the first byte of each block written, and each flush and
+	 * close, in order.
+	 */
+	static class RecordingSink implements BlockSink {
+		final List<String> ops = Collections.synchronizedList(new ArrayList<String>());
+		
+		@Override
+		public void write(ByteBuffer block) {
+			ops.add(String.valueOf(block.get(block.position())));
+		}
+		
+		@Override
+		public void flush() {
+			ops.add("flush");
+		}
+		
+		@Override
+		public void close() {
+			ops.add("close");
+		}
+	}
+	
+	private static ByteBuffer block(int value) {
+		ByteBuffer block = ByteBuffer.allocate(8);
+		while (block.hasRemaining()) {
+			block.put((byte) value);
+		}
+		block.flip();
+		return block;
+	}
+	
+	private static void write(BlockSink sink, int... values) throws IOException {
+		for (int value : values) {
+			ByteBuffer block = block(value);
+			sink.write(block);
+			assertEquals(0, block.position()); // copied, not consumed
+		}
+	}
+	
+	@Test
+	public void writesBlocksFlushesAndClosesInOrder() throws IOException {
+		AsyncBlockWriter writer = new AsyncBlockWriter("test", 4, Policy.BLOCK);
+		RecordingSink target = new RecordingSink();
+		BlockSink sink = writer.open(target);
+		writer.start();
+		
+		write(sink, 1, 2);
+		sink.flush();
+		write(sink, 3, 4, 5, 6, 7);
+		sink.close();
+		assertTrue(writer.shutdown(TIMEOUT));
+		
+		assertEquals(Arrays.asList("1", "2", "flush", "3", "4", "5", "6", "7", "close"), target.ops);
+		assertEquals(7, writer.getBlockCount());
+		assertEquals(0, writer.getDroppedCount());
+		assertEquals(0, writer.getPending());
+	}
+	
+	@Test
+	public void blockWaitsForTheQueue() throws IOException, InterruptedException {
+		AsyncBlockWriter writer = new AsyncBlockWriter("test", 2, Policy.BLOCK);
+		RecordingSink target = new RecordingSink();
+		final BlockSink sink = writer.open(target);
+		write(sink, 1, 2);
+		
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(sink, 3);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		producer.start();
+		producer.join(100L);
+		assertTrue(producer.isAlive()); // the queue is full until the writer starts
+		assertEquals(2, writer.getPending());
+		
+		writer.start();
+		producer.join(TIMEOUT);
+		assertFalse(producer.isAlive());
+		assertTrue(writer.shutdown(TIMEOUT));
+		
+		assertEquals(Arrays.asList("1", "2", "3"), target.ops);
+		assertEquals(0, writer.getDroppedCount());
+	}
+	
+	@Test
+	public void dropOldestKeepsTheNewestBlocks() throws IOException {
+		AsyncBlockWriter writer = new AsyncBlockWriter("test", 2, Policy.DROP_OLDEST);
+		RecordingSink target = new RecordingSink();
+		BlockSink sink = writer.open(target);
+		write(sink, 1, 2, 3, 4);
+		assertEquals(2, writer.getPending());
+		
+		writer.start();
+		assertTrue(writer.shutdown(TIMEOUT));
+		
+		assertEquals(Arrays.asList("3", "4"), target.ops);
+		assertEquals(2, writer.getDroppedCount());
+		assertFalse(writer.isDetached());
+	}
+	
+	@Test
+	public void detachDropsTheTargetsBlocks() throws IOException {
+		AsyncBlockWriter writer = new AsyncBlockWriter("test", 2, Policy.DETACH);
+		RecordingSink target = new RecordingSink();
+		BlockSink sink = writer.open(target);
+		write(sink, 1, 2, 3);
+		assertTrue(writer.isDetached());
+		assertEquals(0, writer.getPending());
+		
+		write(sink, 4);
+		sink.close(); // still closed
+		writer.start();
+		assertTrue(writer.shutdown(TIMEOUT));
+		
+		assertEquals(Arrays.asList("close"), target.ops);
+		assertEquals(4, writer.getDroppedCount());
+	}
+	
+	@Test
+	public void dropsBlocksAfterShutdown() throws IOException {
+		AsyncBlockWriter writer = new AsyncBlockWriter("test", 2, Policy.BLOCK);
+		RecordingSink target = new RecordingSink();
+		BlockSink sink = writer.open(target);
+		writer.start();
+		assertTrue(writer.shutdown(TIMEOUT));
+		
+		write(sink, 1);
+		assertEquals(1, writer.getDroppedCount());
+		assertTrue(target.ops.isEmpty());
+	}
+
+}
@@ -0,0 +1,176 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BlockScannerTest {
+	
+	private static final int BLOCK_SIZE = 64;
+	private static final int PAYLOAD = BLOCK_SIZE - BlockOutputStream.HEADER_SIZE;
+	
+	/**
+	 * Collects the blocks in memory.
+	 */
+	static class MemorySink implements BlockSink {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		@Override
+		public void write(ByteBuffer block) {
+			bytes.write(block.array(), block.position(), block.remaining());
+		}
+		
+		@Override
+		public void flush() {}
+		
+		@Override
+		public void close() {}
+	}
+	
+	/**
+	 * Writes blocks whose payload is filled with their index.
+	 */
+	private static byte[] writeBlocks(int count) throws IOException {
+		MemorySink sink = new MemorySink();
+		BlockOutputStream out = new BlockOutputStream(sink, BLOCK_SIZE, true);
+		for (int i = 0; i < count; i++) {
+			byte[] payload = new byte[PAYLOAD];
+			for (int j = 0; j < PAYLOAD; j++) {
+				payload[j] = (byte) i;
+			}
+			out.write(payload);
+		}
+		out.close();
+		return sink.bytes.toByteArray();
+	}
+	
+	private static List<Long> scan(BlockScanner scanner) throws IOException {
+		List<Long> sequences = new ArrayList<Long>();
+		while (scanner.next()) {
+			sequences.add(scanner.getSequence());
+			assertEquals(PAYLOAD, scanner.getPayloadLength());
+			assertEquals((byte) scanner.getSequence(), scanner.getBuffer()[scanner.getPayloadOffset()]);
+		}
+		return sequences;
+	}
+	
+	private static List<Long> sequences(long... sequences) {
+		List<Long> list = new ArrayList<Long>();
+		for (long sequence : sequences) {
+			list.add(sequence);
+		}
+		return list;
+	}
+	
+	private static void putInt(byte[] b, int off, int value) {
+		ByteBuffer.wrap(b).putInt(off, value);
+	}
+	
+	@Test
+	public void readsIntactBlocks() throws IOException {
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(writeBlocks(5)), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 2, 3, 4), scan(scanner));
+		assertEquals(0, scanner.getCorruptionCount());
+	}
+	
+	@Test
+	public void skipsDamagedPayload() throws IOException {
+		byte[] log = writeBlocks(5);
+		log[2 * BLOCK_SIZE + BlockOutputStream.HEADER_SIZE + 3] ^= 0x10;
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 3, 4), scan(scanner));
+		assertEquals(1, scanner.getCorruptionCount());
+		assertEquals(BLOCK_SIZE, scanner.getSkippedBytes());
+	}
+	
+	@Test
+	public void resyncsPastLengthWithinBlockSize() throws IOException {
+		byte[] log = writeBlocks(5);
+		putInt(log, 3 * BLOCK_SIZE + 8, PAYLOAD - 1); // wrong, but not larger than a block
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 2, 4), scan(scanner));
+	}
+	
+	@Test
+	public void resyncsPastLengthRunningPastTheEnd() throws IOException {
+		byte[] log = writeBlocks(5);
+		putInt(log, 1 * BLOCK_SIZE + 8, PAYLOAD * 10); // past the end of the log
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log));
+		assertEquals(sequences(0, 2, 3, 4), scan(scanner));
+	}
+	
+	@Test
+	public void rejectsLengthLargerThanBlockSize() throws IOException {
+		byte[] log = writeBlocks(5);
+		putInt(log, 2 * BLOCK_SIZE + 8, BLOCK_SIZE * 2);
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 3, 4), scan(scanner));
+		assertEquals(1, scanner.getOversizedCount());
+	}
+	
+	@Test
+	public void resyncsPastFalseSyncMarker() throws IOException {
+		byte[] log = writeBlocks(5);
+		int payload = 1 * BLOCK_SIZE + BlockOutputStream.HEADER_SIZE;
+		putInt(log, payload, BlockOutputStream.SYNC); // corrupts block 1 with a false marker
+		putInt(log, payload + 8, 4);
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 2, 3, 4), scan(scanner));
+	}
+	
+	@Test
+	public void treatsTrailingZerosAsUnusedSpace() throws IOException {
+		byte[] blocks = writeBlocks(3);
+		byte[] log = new byte[blocks.length + 1000];
+		System.arraycopy(blocks, 0, log, 0, blocks.length);
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 2), scan(scanner));
+		assertEquals(0, scanner.getCorruptionCount());
+		assertEquals(1000, scanner.getUnusedBytes());
+		assertEquals(blocks.length, scanner.getEndOffset());
+	}
+	
+	@Test
+	public void treatsUnfinishedMappedBlockAsUnusedSpace() throws IOException {
+		byte[] blocks = writeBlocks(3);
+		byte[] log = new byte[blocks.length + BLOCK_SIZE + 1000];
+		System.arraycopy(blocks, 0, log, 0, blocks.length);
+		for (int i = 0; i < PAYLOAD / 2; i++) {
+			log[blocks.length + BlockOutputStream.HEADER_SIZE + i] = 3; // its header is not yet filled in
+		}
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 2), scan(scanner));
+		assertEquals(0, scanner.getCorruptionCount());
+		assertEquals(BLOCK_SIZE + 1000, scanner.getUnusedBytes());
+		assertEquals(blocks.length, scanner.getEndOffset());
+	}
+	
+	@Test
+	public void reportsTornBlockBeforeTrailingZerosAsDamage() throws IOException {
+		byte[] blocks = writeBlocks(4);
+		byte[] log = new byte[blocks.length + 1000];
+		System.arraycopy(blocks, 0, log, 0, blocks.length);
+		log[3 * BLOCK_SIZE + BlockOutputStream.HEADER_SIZE + 1] ^= 1; // its header was written
+		BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(log), BLOCK_SIZE);
+		assertEquals(sequences(0, 1, 2), scan(scanner));
+		assertEquals(1, scanner.getCorruptionCount());
+		assertEquals(0, scanner.getUnusedBytes());
+	}
+	
+	@Test
+	public void recognisesFramedLogs() throws IOException {
+		byte[] log = writeBlocks(1);
+		assertTrue(BlockScanner.isFramed(log, 0, log.length));
+		assertFalse(BlockScanner.isFramed(new byte[] { 1, 2, 3, 4 }, 0, 4));
+	}
+
+}
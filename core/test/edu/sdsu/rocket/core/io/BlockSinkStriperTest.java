@@ -0,0 +1,105 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.BlockScannerTest.MemorySink;
+
+public class BlockSinkStriperTest {
+	
+	private static final int BLOCK_SIZE = 64;
+	private static final int PAYLOAD = BLOCK_SIZE - BlockOutputStream.HEADER_SIZE;
+	private static final int STRIPES = 3;
+	private static final int BLOCKS = 10;
+	
+	private static byte[] data(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + 7);
+		}
+		return data;
+	}
+	
+	private static MemorySink[] stripe(byte[] data) throws IOException {
+		MemorySink[] sinks = new MemorySink[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			sinks[i] = new MemorySink();
+		}
+		BlockOutputStream out = new BlockOutputStream(new BlockSinkStriper(sinks), BLOCK_SIZE, true);
+		out.write(data);
+		out.close();
+		return sinks;
+	}
+	
+	private static BlockInputStream open(byte[]... stripes) {
+		BlockScanner[] scanners = new BlockScanner[stripes.length];
+		for (int i = 0; i < stripes.length; i++) {
+			scanners[i] = new BlockScanner(new ByteArrayInputStream(stripes[i]), BLOCK_SIZE);
+		}
+		return new BlockInputStream(scanners);
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[100];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	@Test
+	public void writesBlocksRoundRobin() throws IOException {
+		MemorySink[] sinks = stripe(data(BLOCKS * PAYLOAD));
+		for (int i = 0; i < STRIPES; i++) {
+			int blocks = (BLOCKS - i + STRIPES - 1) / STRIPES;
+			byte[] stripe = sinks[i].bytes.toByteArray();
+			assertEquals(blocks * BLOCK_SIZE, stripe.length);
+			
+			BlockScanner scanner = new BlockScanner(new ByteArrayInputStream(stripe), BLOCK_SIZE);
+			for (int j = 0; j < blocks; j++) {
+				scanner.next();
+				assertEquals(i + j * STRIPES, scanner.getSequence());
+			}
+		}
+	}
+	
+	@Test
+	public void reassemblesStripesInOrder() throws IOException {
+		byte[] data = data(BLOCKS * PAYLOAD + PAYLOAD / 2);
+		MemorySink[] sinks = stripe(data);
+		BlockInputStream in = open(sinks[2].bytes.toByteArray(), sinks[0].bytes.toByteArray(), sinks[1].bytes.toByteArray());
+		assertArrayEquals(data, readAll(in));
+		assertEquals(0, in.getLostBlockCount());
+	}
+	
+	@Test
+	public void losesOnlyTheDamagedBlockOfAStripe() throws IOException {
+		byte[] data = data(BLOCKS * PAYLOAD);
+		MemorySink[] sinks = stripe(data);
+		byte[][] stripes = new byte[STRIPES][];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = sinks[i].bytes.toByteArray();
+		}
+		stripes[1][BLOCK_SIZE + BlockOutputStream.HEADER_SIZE] ^= 1; // block 4
+		
+		BlockInputStream in = open(stripes);
+		byte[] read = readAll(in);
+		assertEquals(1, in.getLostBlockCount());
+		assertEquals(data.length - PAYLOAD, read.length);
+		byte[] expected = new byte[data.length - PAYLOAD];
+		System.arraycopy(data, 0, expected, 0, 4 * PAYLOAD);
+		System.arraycopy(data, 5 * PAYLOAD, expected, 4 * PAYLOAD, expected.length - 4 * PAYLOAD);
+		assertArrayEquals(expected, read);
+	}
+
+}
@@ -0,0 +1,127 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileChannelSinkTest {
+	
+	private static final int BLOCK_SIZE = 64;
+	private static final int PAYLOAD = BLOCK_SIZE - BlockOutputStream.HEADER_SIZE;
+	private static final int PREALLOCATE = 100 * BLOCK_SIZE;
+	private static final int BLOCKS = 10;
+	
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+	
+	private File dir;
+	private File file;
+	
+	@Before
+	public void setUp() {
+		dir = temp.getRoot();
+		file = new File(dir, "adxl345.log");
+	}
+	
+	private static byte[] data(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + 7);
+		}
+		return data;
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[100];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	@Test
+	public void truncatesPreallocatedFileOnClose() throws IOException {
+		byte[] data = data(BLOCKS * PAYLOAD);
+		FileChannelSink sink = new FileChannelSink(file, PREALLOCATE);
+		assertTrue(sink.isPreallocated());
+		assertEquals(PREALLOCATE, file.length());
+		
+		BlockOutputStream out = new BlockOutputStream(sink, BLOCK_SIZE, true);
+		out.write(data);
+		out.flush();
+		assertEquals(PREALLOCATE, file.length()); // written into the allocated space
+		out.close();
+		
+		assertEquals(BLOCKS * BLOCK_SIZE, file.length());
+		assertArrayEquals(data, readAll(LogFiles.open(BLOCK_SIZE, file)));
+	}
+	
+	@Test
+	public void discardsTheContentsOfAnExistingFile() throws IOException {
+		OutputStream old = new FileOutputStream(file);
+		old.write(data(2 * PREALLOCATE));
+		old.close();
+		
+		FileChannelSink sink = new FileChannelSink(file, PREALLOCATE);
+		BlockOutputStream out = new BlockOutputStream(sink, BLOCK_SIZE, true);
+		out.write(data(BLOCKS * PAYLOAD));
+		out.flush();
+		
+		byte[] contents = readAll(new FileInputStream(file));
+		assertEquals(PREALLOCATE, contents.length);
+		for (int i = BLOCKS * BLOCK_SIZE; i < contents.length; i++) {
+			assertEquals(0, contents[i]);
+		}
+		out.close();
+	}
+	
+	@Test
+	public void recoversTheEndOfACrashedLog() throws IOException {
+		byte[] data = data(BLOCKS * PAYLOAD);
+		FileChannelSink sink = new FileChannelSink(file, PREALLOCATE);
+		BlockOutputStream out = new BlockOutputStream(sink, BLOCK_SIZE, true);
+		out.write(data);
+		out.flush();
+		
+		// read before the file is closed and truncated
+		BlockScanner scanner = new BlockScanner(new FileInputStream(file), BLOCK_SIZE);
+		BlockInputStream in = new BlockInputStream(scanner);
+		assertArrayEquals(data, readAll(in));
+		assertEquals(0, in.getCorruptionCount());
+		assertEquals(PREALLOCATE - BLOCKS * BLOCK_SIZE, in.getUnusedBytes());
+		assertEquals(BLOCKS * BLOCK_SIZE, scanner.getEndOffset());
+		out.close();
+	}
+	
+	@Test
+	public void growsWithoutPreallocation() throws IOException {
+		byte[] data = data(BLOCKS * PAYLOAD);
+		FileChannelSink sink = new FileChannelSink(file, 0L);
+		assertFalse(sink.isPreallocated());
+		BlockOutputStream out = new BlockOutputStream(sink, BLOCK_SIZE, true);
+		out.write(data);
+		out.flush();
+		assertEquals(BLOCKS * BLOCK_SIZE, file.length());
+		out.close();
+		
+		assertArrayEquals(data, readAll(LogFiles.open(BLOCK_SIZE, file)));
+	}
+
+}
@@ -0,0 +1,229 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.ADXL345InputStream.ADXL345Reading;
+import edu.sdsu.rocket.core.io.BlockScannerTest.MemorySink;
+import edu.sdsu.rocket.core.io.FlightLogInputStream.FlightLogRecord;
+import edu.sdsu.rocket.core.io.LogThroughputTest.FakeStopwatch;
+import edu.sdsu.rocket.core.io.MS5611InputStream.MS5611Reading;
+
+/**
+ * An accelerometer and a barometer share the flight log and its stopwatch,
+ * the accelerometer compact so that lost records show in its readings.
+ */
+public class FlightLogStreamTest {
+	
+	private static final int READINGS = 1000; // accelerometer
+	private static final int BAROMETER_INTERVAL = 4; // accelerometer readings
+	private static final int BLOCK_SIZE = 256;
+	
+	/**
+	 * Writes the readings of both sensors, interleaved.
+	 *
+	 * @param isFinished Whether the footer is written.
+	 */
+	private static void writeFlightLog(OutputStream out, boolean isFinished) throws IOException {
+		FakeStopwatch stopwatch = new FakeStopwatch();
+		FlightLogOutputStream flightLog = new FlightLogOutputStream(out, stopwatch);
+		ADXL345OutputStream adxl345 = new ADXL345OutputStream(flightLog.addChannel(ADXL345OutputStream.NAME), stopwatch);
+		adxl345.setCompact(true, SensorCodecTest.KEYFRAME_INTERVAL);
+		MS5611OutputStream ms5611 = new MS5611OutputStream(flightLog.addChannel(MS5611OutputStream.NAME), stopwatch);
+		flightLog.writeHeader();
+		for (int i = 0; i < READINGS; i++) {
+			adxl345.writeValues((short) (i * i), (short) (i * 3), (short) -i);
+			if (i % BAROMETER_INTERVAL == 0) {
+				ms5611.writeValues(2000 + i, 101325 - i);
+			}
+		}
+		adxl345.close(); // the flight log stays open
+		ms5611.close();
+		if (isFinished) {
+			flightLog.close();
+		} else {
+			flightLog.flush();
+		}
+	}
+	
+	private static byte[] writeFlightLog(boolean isFinished) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeFlightLog(out, isFinished);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decodes the readings of each channel from its records, checking them.
+	 */
+	private static class Readings {
+		final ByteBufferInputStream adxl345Payload = new ByteBufferInputStream();
+		final ByteBufferInputStream ms5611Payload = new ByteBufferInputStream();
+		final ADXL345InputStream adxl345 = new ADXL345InputStream(adxl345Payload);
+		final MS5611InputStream ms5611 = new MS5611InputStream(ms5611Payload);
+		final long[] counts = new long[2];
+		int adxl345Readings;
+		int ms5611Readings;
+		long timestamp;
+		
+		void read(FlightLogInputStream in) throws IOException {
+			FlightLogRecord record;
+			while ((record = in.readRecord()) != null) {
+				counts[record.channel]++;
+				if (record.channel == 0) {
+					adxl345Payload.setBuffer(record.payload);
+					ADXL345Reading reading;
+					while ((reading = adxl345.readReading()) != null) {
+						int i = reading.values[1] / 3;
+						assertEquals((short) (i * i), reading.values[0]);
+						assertEquals(-i, reading.values[2]);
+						advance(reading.timestamp);
+						adxl345Readings++;
+					}
+				} else {
+					ms5611Payload.setBuffer(record.payload);
+					MS5611Reading reading;
+					while ((reading = ms5611.readReading()) != null) {
+						assertEquals(101325 - (reading.values[0] - 2000), reading.values[1]);
+						advance(reading.timestamp);
+						ms5611Readings++;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * The readings of both channels are in the order of the shared
+		 * stopwatch.
+		 */
+		private void advance(long timestamp) {
+			assertTrue(timestamp > this.timestamp);
+			this.timestamp = timestamp;
+		}
+	}
+	
+	@Test
+	public void readsTheRecordsOfEachChannel() throws IOException {
+		FlightLogInputStream in = new FlightLogInputStream(new ByteArrayInputStream(writeFlightLog(true)));
+		assertEquals(FlightLogOutputStream.VERSION, in.getVersion());
+		assertArrayEquals(new String[] { ADXL345OutputStream.NAME, MS5611OutputStream.NAME }, in.getChannels());
+		assertEquals(1, in.getChannel(MS5611OutputStream.NAME));
+		assertEquals(-1, in.getChannel(GPSOutputStream.NAME));
+		
+		Readings readings = new Readings();
+		readings.read(in);
+		assertEquals(READINGS, readings.adxl345Readings);
+		assertEquals(READINGS / BAROMETER_INTERVAL, readings.ms5611Readings);
+		assertArrayEquals(readings.counts, in.getRecordCounts());
+		assertNull(in.readRecord());
+		in.close();
+	}
+	
+	@Test
+	public void locatesRecordsAfterModifiedUTF8Names() throws IOException {
+		String[] names = { "nul\u0000", "rocket\uD83D\uDE80" }; // encoded differently than in UTF-8
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FlightLogOutputStream flightLog = new FlightLogOutputStream(out, new FakeStopwatch());
+		for (String name : names) {
+			flightLog.addChannel(name);
+		}
+		for (int i = 0; i < 10; i++) {
+			byte[] payload = new byte[i + 1];
+			Arrays.fill(payload, (byte) i);
+			flightLog.writeRecord(i % 2, payload, 0, payload.length);
+		}
+		flightLog.close();
+		byte[] log = out.toByteArray();
+		
+		FlightLogInputStream in = new FlightLogInputStream(new ByteArrayInputStream(log));
+		assertArrayEquals(names, in.getChannels());
+		for (int i = 0; i < 10; i++) {
+			FlightLogRecord record = in.readRecord();
+			assertEquals(i % 2, log[(int) record.offset]);
+			assertEquals(i + 1, ByteBuffer.wrap(log, (int) record.offset + 1, 2).getShort());
+			assertEquals(i, log[(int) record.offset + 3]);
+			assertEquals(i + 1, record.payload.remaining());
+		}
+		assertNull(in.readRecord());
+		assertArrayEquals(new long[] { 5, 5 }, in.getRecordCounts());
+	}
+	
+	@Test
+	public void readsTheCompleteRecordsOfAnUnfinishedLog() throws IOException {
+		byte[] log = writeFlightLog(false);
+		byte[] truncated = Arrays.copyOf(log, log.length - 5); // mid-record
+		
+		FlightLogInputStream in = new FlightLogInputStream(new ByteArrayInputStream(log));
+		Readings readings = new Readings();
+		readings.read(in);
+		assertEquals(READINGS, readings.adxl345Readings);
+		assertNull(in.getRecordCounts()); // no footer
+		
+		in = new FlightLogInputStream(new ByteArrayInputStream(truncated));
+		readings = new Readings();
+		readings.read(in);
+		assertEquals(READINGS - 1, readings.adxl345Readings); // the last record is an accelerometer reading
+		assertNull(in.getRecordCounts());
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsUnknownChannel() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FlightLogOutputStream flightLog = new FlightLogOutputStream(out, new FakeStopwatch());
+		flightLog.addChannel(ADXL345OutputStream.NAME);
+		flightLog.writeHeader();
+		flightLog.write(new byte[] { 5, 0, 1, 0 }); // a record of channel 5
+		flightLog.flush();
+		
+		FlightLogInputStream in = new FlightLogInputStream(new ByteArrayInputStream(out.toByteArray()));
+		in.readRecord();
+	}
+	
+	@Test
+	public void resumesEachChannelAfterALostBlock() throws IOException {
+		MemorySink sink = new MemorySink();
+		writeFlightLog(new BlockOutputStream(sink, BLOCK_SIZE, true), true);
+		ByteBuffer blocks = ByteBuffer.wrap(sink.bytes.toByteArray());
+		
+		int start = 0; // of the lost block, the third
+		for (int i = 0; i < 2; i++) {
+			start += BlockOutputStream.HEADER_SIZE + blocks.getInt(start + 8);
+		}
+		int end = start + BlockOutputStream.HEADER_SIZE + blocks.getInt(start + 8);
+		ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+		damaged.write(blocks.array(), 0, start);
+		damaged.write(blocks.array(), end, blocks.capacity() - end);
+		
+		InputStream log = new BlockInputStream(new BlockScanner(new ByteArrayInputStream(damaged.toByteArray()), BLOCK_SIZE));
+		FlightLogInputStream in = new FlightLogInputStream(log);
+		final Readings readings = new Readings();
+		final int[] discontinuities = new int[1];
+		LogFiles.setDiscontinuityListener(log, new DiscontinuityListener() {
+			@Override
+			public void onDiscontinuity() {
+				readings.adxl345.onDiscontinuity(); // the barometer is not compact
+				discontinuities[0]++;
+			}
+		});
+		readings.read(in); // checks the accelerometer deltas are not applied across the gap
+		
+		assertEquals(1, discontinuities[0]);
+		assertTrue(readings.adxl345Readings < READINGS);
+		assertTrue(readings.ms5611Readings < READINGS / BAROMETER_INTERVAL);
+		long[] counts = in.getRecordCounts(); // as written
+		assertTrue(readings.counts[0] < counts[0]);
+		assertTrue(readings.counts[1] < counts[1]);
+	}
+
+}
@@ -0,0 +1,48 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.GPSInputStream.GPSReading;
+import edu.sdsu.rocket.core.io.LogThroughputTest.FakeStopwatch;
+
+public class GPSStreamTest {
+	
+	private static final int FIXES = 100;
+	private static final long PERIOD = 2500000L; // ns, of FakeStopwatch
+	
+	@Test
+	public void readsTheFixesWritten() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GPSOutputStream log = new GPSOutputStream(out, new FakeStopwatch());
+		for (int i = 0; i < FIXES; i++) {
+			log.writeFix(32.7757 + i * 1e-6, -117.0719 - i * 1e-6, 100.5 + i, i % 4, 200 + i % 10);
+		}
+		log.close();
+		
+		GPSInputStream in = new GPSInputStream(new ByteArrayInputStream(out.toByteArray()));
+		for (int i = 0; i < FIXES; i++) {
+			GPSReading reading = in.readReading();
+			assertEquals((i + 1) * PERIOD, reading.timestamp);
+			assertEquals(32.7757 + i * 1e-6, reading.latitude, 0.0);
+			assertEquals(-117.0719 - i * 1e-6, reading.longitude, 0.0);
+			assertEquals(100.5 + i, reading.altitude, 0.0);
+			assertEquals(i % 4, reading.fixStatus);
+			assertEquals(200 + i % 10, reading.satellites); // unsigned
+		}
+		assertNull(in.readReading());
+		in.close();
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsUnknownRecordType() throws IOException {
+		new GPSInputStream(new ByteArrayInputStream(new byte[] { 0x7F })).readReading();
+	}
+
+}
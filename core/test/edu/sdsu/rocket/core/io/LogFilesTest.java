@@ -0,0 +1,106 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogFilesTest {
+	
+	private static final int CHUNK_SIZE = 64;
+	
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+	
+	private File dir;
+	
+	@Before
+	public void setUp() {
+		dir = temp.getRoot();
+	}
+	
+	private static byte[] data(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+	
+	private static void write(File file, byte[] data) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[100];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	@Test
+	public void skipsCorruptChunk() throws IOException {
+		byte[] data = data(10 * CHUNK_SIZE, 0);
+		File file = new File(dir, "adxl345.log.z");
+		CompressedLogOutputStream out = new CompressedLogOutputStream(new FileOutputStream(file), CHUNK_SIZE, 6);
+		out.write(data);
+		out.close();
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(CompressedLogOutputStream.HEADER_SIZE + 4);
+			int second = CompressedLogOutputStream.HEADER_SIZE + CompressedLogOutputStream.CHUNK_HEADER_SIZE + raf.readInt();
+			raf.seek(second + CompressedLogOutputStream.CHUNK_HEADER_SIZE);
+			raf.write(new byte[] { (byte) 0xFF, (byte) 0xFF });
+		} finally {
+			raf.close();
+		}
+		
+		CompressedLogInputStream in = new CompressedLogInputStream(file);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data, 0, CHUNK_SIZE);
+		expected.write(data, 2 * CHUNK_SIZE, data.length - 2 * CHUNK_SIZE);
+		assertArrayEquals(expected.toByteArray(), readAll(in));
+		assertEquals(1, in.getCorruptChunkCount());
+		
+		in = new CompressedLogInputStream(file);
+		in.seek(CHUNK_SIZE + 10); // within the corrupt chunk
+		assertEquals(2 * CHUNK_SIZE, in.getPosition());
+		in.close();
+	}
+	
+	@Test
+	public void readsSegmentsAfterMissingSegment() throws IOException {
+		File file = new File(dir, "adxl345.log");
+		write(LogFiles.getSegment(file, 0), data(100, 0));
+		write(LogFiles.getSegment(file, 2), data(100, 2));
+		
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(data(100, 0));
+		expected.write(data(100, 2));
+		assertArrayEquals(expected.toByteArray(), readAll(LogFiles.openCopy(file)));
+		assertEquals(Arrays.asList(LogFiles.getSegment(file, 0), LogFiles.getSegment(file, 2)), LogFiles.listFiles(file));
+	}
+
+}
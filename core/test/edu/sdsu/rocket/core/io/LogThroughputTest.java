@@ -0,0 +1,171 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+
+/**
+ * Compares the writes reaching the files of a sensor log mirrored to two
+ * files through the block sink against the byte at a time multiplexer path it
+ * replaced, which issued a write per byte per file. Counting writes rather
+ * than timing them keeps the comparison independent of the machine's load.
+ */
+public class LogThroughputTest {
+	
+	private static final int RECORDS = 100000;
+	private static final int MIRRORS = 2;
+	private static final int RECORD_SIZE = SensorOutputStream.RECORD_HEADER_SIZE + 6; // bytes
+	
+	/**
+	 * Timestamps advancing by a fixed interval, so both paths write the same
+	 * bytes.
+	 */
+	static class FakeStopwatch extends Stopwatch {
+		long time;
+		
+		@Override
+		public long nanoSecondsElapsed() {
+			return time += 2500000L;
+		}
+	}
+	
+	/**
+	 * Counts the writes reaching a file stream.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+		int writes;
+		
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			writes++;
+			out.write(b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			writes++;
+			out.write(b, off, len);
+		}
+	}
+	
+	/**
+	 * Counts the blocks reaching a sink.
+	 */
+	static class CountingSink implements BlockSink {
+		final BlockSink sink;
+		int writes;
+		
+		CountingSink(BlockSink sink) {
+			this.sink = sink;
+		}
+		
+		@Override
+		public void write(ByteBuffer block) throws IOException {
+			writes++;
+			sink.write(block);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			sink.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			sink.close();
+		}
+	}
+	
+	private final File[] multiplexed = new File[MIRRORS];
+	private final File[] blocks = new File[MIRRORS];
+	
+	@Before
+	public void setUp() throws IOException {
+		for (int i = 0; i < MIRRORS; i++) {
+			multiplexed[i] = File.createTempFile("multiplexed", ".log");
+			blocks[i] = File.createTempFile("blocks", ".log");
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		for (int i = 0; i < MIRRORS; i++) {
+			multiplexed[i].delete();
+			blocks[i].delete();
+		}
+	}
+	
+	private static OutputStream openMultiplexed(File[] files, CountingOutputStream[] counters) throws IOException {
+		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
+		for (int i = 0; i < files.length; i++) {
+			counters[i] = new CountingOutputStream(new FileOutputStream(files[i]));
+			multiplexer.add(new FilterOutputStream(counters[i])); // writes a byte at a time
+		}
+		return multiplexer;
+	}
+	
+	private static OutputStream openBlocks(File[] files, CountingSink[] counters) throws IOException {
+		BlockSinkMultiplexer multiplexer = new BlockSinkMultiplexer();
+		for (int i = 0; i < files.length; i++) {
+			counters[i] = new CountingSink(new FileChannelSink(files[i]));
+			multiplexer.add(counters[i]);
+		}
+		return new BlockOutputStream(multiplexer);
+	}
+	
+	private static void write(OutputStream out) throws IOException {
+		ADXL345OutputStream log = new ADXL345OutputStream(out, new FakeStopwatch());
+		for (int i = 0; i < RECORDS; i++) {
+			log.writeValues((short) i, (short) (i * 3), (short) -i);
+		}
+		log.close();
+	}
+	
+	private static byte[] read(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+	
+	@Test
+	public void blockSinkWritesWholeBlocks() throws IOException {
+		CountingOutputStream[] multiplexedCounters = new CountingOutputStream[MIRRORS];
+		CountingSink[] blockCounters = new CountingSink[MIRRORS];
+		write(openMultiplexed(multiplexed, multiplexedCounters));
+		write(openBlocks(blocks, blockCounters));
+		
+		int bytes = RECORDS * RECORD_SIZE;
+		int recordsPerBlock = BlockOutputStream.DEFAULT_BLOCK_SIZE / RECORD_SIZE; // records never straddle blocks
+		int blockCount = (RECORDS + recordsPerBlock - 1) / recordsPerBlock;
+		for (int i = 0; i < MIRRORS; i++) {
+			assertArrayEquals(read(multiplexed[i]), read(blocks[i]));
+			assertEquals(bytes, multiplexed[i].length());
+			assertEquals(bytes, multiplexedCounters[i].writes);
+			assertEquals(blockCount, blockCounters[i].writes);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedLogOutputStreamTest {
+	
+	private static final int BLOCK_SIZE = 64;
+	private static final int PAYLOAD = BLOCK_SIZE - BlockOutputStream.HEADER_SIZE;
+	private static final int SEGMENT_SIZE = 4 * BLOCK_SIZE + BLOCK_SIZE / 2;
+	private static final int WRITE_SIZE = PAYLOAD / 4; // bytes, so blocks are filled
+	
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+	
+	private File[] files;
+	
+	@Before
+	public void setUp() throws IOException {
+		files = new File[2]; // a log and its mirror
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File(temp.newFolder("logs" + i), "adxl345.log");
+		}
+	}
+	
+	private static byte[] data(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + 7);
+		}
+		return data;
+	}
+	
+	private static void write(MappedLogOutputStream out, byte[] data) throws IOException {
+		for (int off = 0; off < data.length; off += WRITE_SIZE) {
+			out.write(data, off, Math.min(WRITE_SIZE, data.length - off));
+		}
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[100];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	@Test
+	public void writesMirroredSegmentsOfBlocks() throws IOException {
+		byte[] data = data(10 * PAYLOAD + WRITE_SIZE);
+		MappedLogOutputStream out = new MappedLogOutputStream(files, SEGMENT_SIZE, BLOCK_SIZE);
+		write(out, data);
+		out.close();
+		
+		assertEquals(11, out.getSequence());
+		assertEquals(2, out.getIndex()); // four blocks per segment
+		for (File file : files) {
+			assertFalse(file.exists());
+			assertEquals(4 * BLOCK_SIZE, LogFiles.getSegment(file, 0).length()); // truncated
+			assertEquals(4 * BLOCK_SIZE, LogFiles.getSegment(file, 1).length());
+			assertEquals(3 * BLOCK_SIZE - PAYLOAD + WRITE_SIZE, LogFiles.getSegment(file, 2).length());
+			assertArrayEquals(data, readAll(LogFiles.open(BLOCK_SIZE, file)));
+		}
+		assertArrayEquals(data, readAll(LogFiles.open(BLOCK_SIZE, files)));
+	}
+	
+	@Test
+	public void recoversTheClosedBlocksOfACrashedLog() throws IOException {
+		byte[] data = data(3 * PAYLOAD);
+		MappedLogOutputStream out = new MappedLogOutputStream(files, SEGMENT_SIZE, BLOCK_SIZE);
+		write(out, data);
+		out.sync();
+		out.write(data(PAYLOAD / 2)); // in a block which is never closed
+		
+		// read before the segment is closed and truncated
+		File segment = LogFiles.getSegment(files[0], 0);
+		assertEquals(SEGMENT_SIZE, segment.length());
+		BlockScanner scanner = new BlockScanner(new FileInputStream(segment), BLOCK_SIZE);
+		BlockInputStream in = new BlockInputStream(scanner);
+		assertArrayEquals(data, readAll(in));
+		assertEquals(0, in.getCorruptionCount());
+		assertEquals(SEGMENT_SIZE - 3 * BLOCK_SIZE, in.getUnusedBytes());
+		assertEquals(3 * BLOCK_SIZE, scanner.getEndOffset());
+		out.close();
+	}
+	
+	@Test
+	public void closesOldBlocksOnTheNextWrite() throws IOException, InterruptedException {
+		MappedLogOutputStream out = new MappedLogOutputStream(files, SEGMENT_SIZE, BLOCK_SIZE);
+		out.setMaxAge(1L);
+		out.write(data(WRITE_SIZE));
+		assertEquals(0, out.getSequence());
+		Thread.sleep(5L);
+		out.write(data(WRITE_SIZE));
+		assertEquals(1, out.getSequence());
+		out.close();
+	}
+
+}
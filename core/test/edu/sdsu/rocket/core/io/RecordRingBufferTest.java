@@ -0,0 +1,101 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RecordRingBufferTest {
+	
+	/**
+	 * Records each write separately.
+	 */
+	private static class WriteRecorder extends ByteArrayOutputStream {
+		final List<byte[]> writes = new ArrayList<byte[]>();
+		
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			super.write(b, off, len);
+			byte[] write = new byte[len];
+			System.arraycopy(b, off, write, 0, len);
+			writes.add(write);
+		}
+	}
+	
+	private static byte[] record(int length, int seed) {
+		byte[] record = new byte[length];
+		for (int i = 0; i < length; i++) {
+			record[i] = (byte) (seed + i);
+		}
+		return record;
+	}
+	
+	@Test
+	public void writesRecordsLargerThanASlotWhole() throws IOException {
+		RecordRingBuffer ring = new RecordRingBuffer(16, 8);
+		WriteRecorder target = new WriteRecorder();
+		RingBufferOutputStream out = ring.open(target);
+		ring.start();
+		
+		List<byte[]> records = new ArrayList<byte[]>();
+		for (int i = 0; i < 200; i++) {
+			byte[] record = record(1 + (i * 7) % 60, i); // up to 8 slots, wrapping around
+			records.add(record);
+			out.write(record);
+			assertTrue(ring.await(1000L));
+		}
+		assertTrue(ring.shutdown(1000L));
+		
+		assertEquals(records.size(), target.writes.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertArrayEquals(records.get(i), target.writes.get(i));
+		}
+		assertEquals(0, ring.getDroppedCount());
+	}
+	
+	@Test
+	public void shutdownWritesPublishedRecords() throws IOException {
+		RecordRingBuffer ring = new RecordRingBuffer(1024, 32);
+		WriteRecorder target = new WriteRecorder();
+		RingBufferOutputStream out = ring.open(target);
+		
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (int i = 0; i < 100; i++) {
+			byte[] record = record(20, i);
+			out.write(record);
+			expected.write(record);
+		}
+		ring.start();
+		
+		assertTrue(ring.shutdown(1000L));
+		assertArrayEquals(expected.toByteArray(), target.toByteArray());
+		assertEquals(0, ring.getPending());
+	}
+	
+	@Test
+	public void dropsRecordsWhenFull() throws IOException {
+		RecordRingBuffer ring = new RecordRingBuffer(8, 4);
+		RingBufferOutputStream out = ring.open(new ByteArrayOutputStream());
+		
+		for (int i = 0; i < 10; i++) {
+			out.write(record(4, i));
+		}
+		assertEquals(8, ring.getRecordCount());
+		assertEquals(2, ring.getDroppedCount());
+		assertTrue(out.checkDropped());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRecordsLargerThanHalfTheCapacity() throws IOException {
+		RecordRingBuffer ring = new RecordRingBuffer(8, 4);
+		RingBufferOutputStream out = ring.open(new ByteArrayOutputStream());
+		out.write(new byte[17]);
+	}
+
+}
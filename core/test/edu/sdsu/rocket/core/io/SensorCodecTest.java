@@ -0,0 +1,159 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.ADXL345InputStream.ADXL345Reading;
+import edu.sdsu.rocket.core.io.BlockScannerTest.MemorySink;
+import edu.sdsu.rocket.core.io.LogThroughputTest.FakeStopwatch;
+
+public class SensorCodecTest {
+	
+	static final int KEYFRAME_INTERVAL = 16; // readings
+	private static final int BLOCK_SIZE = 64;
+	private static final long PERIOD = 2500000L; // ns, of FakeStopwatch
+	
+	/**
+	 * Writes compact readings whose values follow from their timestamp, see
+	 * {@link #assertReading(long, short, short, short)}.
+	 */
+	static void writeReadings(OutputStream out, int count) throws IOException {
+		ADXL345OutputStream log = new ADXL345OutputStream(out, new FakeStopwatch());
+		log.setCompact(true, KEYFRAME_INTERVAL);
+		for (int i = 0; i < count; i++) {
+			log.writeValues((short) (i * i), (short) (i * 3), (short) -i);
+		}
+		log.close();
+	}
+	
+	static void assertReading(long timestamp, short x, short y, short z) {
+		int i = (int) (timestamp / PERIOD) - 1;
+		assertEquals((short) (i * i), x);
+		assertEquals(i * 3, y);
+		assertEquals(-i, z);
+	}
+	
+	/**
+	 * Returns framed readings with the specified block missing.
+	 */
+	private static byte[] writeBlocksLosing(int count, int lostBlock) throws IOException {
+		MemorySink sink = new MemorySink();
+		writeReadings(new BlockOutputStream(sink, BLOCK_SIZE, true), count);
+		ByteBuffer blocks = ByteBuffer.wrap(sink.bytes.toByteArray());
+		
+		int start = 0; // of the lost block
+		for (int i = 0; i < lostBlock; i++) {
+			start += BlockOutputStream.HEADER_SIZE + blocks.getInt(start + 8);
+		}
+		int end = start + BlockOutputStream.HEADER_SIZE + blocks.getInt(start + 8);
+		ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+		damaged.write(blocks.array(), 0, start);
+		damaged.write(blocks.array(), end, blocks.capacity() - end);
+		return damaged.toByteArray();
+	}
+	
+	private static BlockInputStream openBlocks(byte[] blocks) {
+		return new BlockInputStream(new BlockScanner(new ByteArrayInputStream(blocks), BLOCK_SIZE));
+	}
+	
+	@Test
+	public void decodesCompactReadings() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeReadings(out, 1000);
+		
+		SensorLogCursor cursor = new SensorLogCursor(new ByteArrayInputStream(out.toByteArray()), SensorLogCursor.Format.VECTOR);
+		int count = 0;
+		while (cursor.next()) {
+			assertReading(cursor.getTimestamp(), cursor.getX(), cursor.getY(), cursor.getZ());
+			assertEquals(count % (KEYFRAME_INTERVAL + 1) == 0, cursor.isKeyframe());
+			count++;
+		}
+		assertEquals(1000, count);
+		
+		ADXL345InputStream in = new ADXL345InputStream(new ByteArrayInputStream(out.toByteArray()));
+		count = 0;
+		ADXL345Reading reading;
+		while ((reading = in.readReading()) != null) {
+			assertReading(reading.timestamp, reading.values[0], reading.values[1], reading.values[2]);
+			count++;
+		}
+		assertEquals(1000, count);
+	}
+	
+	@Test
+	public void cursorSkipsDeltasAfterLostBlock() throws IOException {
+		BlockInputStream log = openBlocks(writeBlocksLosing(1000, 5));
+		SensorLogCursor cursor = new SensorLogCursor(log, SensorLogCursor.Format.VECTOR);
+		LogFiles.setDiscontinuityListener(log, cursor);
+		
+		int count = 0;
+		while (cursor.next()) {
+			assertReading(cursor.getTimestamp(), cursor.getX(), cursor.getY(), cursor.getZ());
+			count++;
+		}
+		assertEquals(1, log.getLostBlockCount());
+		assertTrue(count < 1000);
+		assertTrue(count > 1000 - 2 * KEYFRAME_INTERVAL); // those of the block and up to the next keyframe
+	}
+	
+	@Test
+	public void inputStreamSkipsDeltasAfterLostBlock() throws IOException {
+		BlockInputStream log = openBlocks(writeBlocksLosing(1000, 5));
+		ADXL345InputStream in = new ADXL345InputStream(log);
+		LogFiles.setDiscontinuityListener(log, in);
+		
+		int count = 0;
+		ADXL345Reading reading;
+		while ((reading = in.readReading()) != null) {
+			assertReading(reading.timestamp, reading.values[0], reading.values[1], reading.values[2]);
+			count++;
+		}
+		assertEquals(1, log.getLostBlockCount());
+		assertTrue(count < 1000);
+	}
+	
+	@Test
+	public void droppedRecordForcesKeyframe() throws IOException {
+		RecordRingBuffer ring = new RecordRingBuffer(8, 16);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		RingBufferOutputStream out = ring.open(target);
+		ADXL345OutputStream log = new ADXL345OutputStream(out, new FakeStopwatch());
+		log.setCompact(true, KEYFRAME_INTERVAL);
+		out.setDiscontinuityListener(log);
+		
+		for (int i = 0; i < 9; i++) { // the last is dropped
+			log.writeValues((short) (i * i), (short) (i * 3), (short) -i);
+		}
+		assertEquals(1, ring.getDroppedCount());
+		ring.start();
+		try {
+			assertTrue(ring.await(1000L));
+			log.writeValues((short) (9 * 9), (short) 27, (short) -9);
+			log.close();
+		} finally {
+			assertTrue(ring.shutdown(1000L));
+		}
+		
+		InputStream in = new ByteArrayInputStream(target.toByteArray());
+		SensorLogCursor cursor = new SensorLogCursor(in, SensorLogCursor.Format.VECTOR);
+		for (int i = 0; i < 8; i++) {
+			assertTrue(cursor.next());
+			assertReading(cursor.getTimestamp(), cursor.getX(), cursor.getY(), cursor.getZ());
+		}
+		assertTrue(cursor.next());
+		assertTrue(cursor.isKeyframe());
+		assertReading(cursor.getTimestamp(), cursor.getX(), cursor.getY(), cursor.getZ());
+		assertFalse(cursor.next());
+	}
+
+}
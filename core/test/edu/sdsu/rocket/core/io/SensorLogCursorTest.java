@@ -0,0 +1,125 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.ADS1115InputStream.ADS1115Reading;
+import edu.sdsu.rocket.core.io.LogThroughputTest.FakeStopwatch;
+import edu.sdsu.rocket.core.io.MS5611InputStream.MS5611Reading;
+
+/**
+ * The cursor decodes the same readings as the sensor input streams, across
+ * the boundaries of a small window.
+ */
+public class SensorLogCursorTest {
+	
+	private static final int READINGS = 1000;
+	private static final int WINDOW_SIZE = 100; // bytes, not a multiple of a record
+	private static final int BATCH_SIZE = 64; // readings
+	
+	private static SensorLogCursor open(byte[] log, SensorLogCursor.Format format) {
+		return new SensorLogCursor(new ByteArrayInputStream(log), format, WINDOW_SIZE);
+	}
+	
+	@Test
+	public void decodesBarometerReadings() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MS5611OutputStream log = new MS5611OutputStream(out, new FakeStopwatch());
+		for (int i = 0; i < READINGS; i++) {
+			log.writeValues(2000 + i, 101325 - i * 7);
+			if (i % 250 == 0) {
+				log.writeFault(i);
+			}
+		}
+		log.close();
+		
+		SensorLogCursor cursor = open(out.toByteArray(), SensorLogCursor.Format.BAROMETER);
+		MS5611InputStream in = new MS5611InputStream(new ByteArrayInputStream(out.toByteArray()));
+		MS5611Reading reading;
+		int count = 0;
+		while ((reading = in.readReading()) != null) {
+			assertTrue(cursor.next());
+			assertEquals(reading.timestamp, cursor.getTimestamp());
+			assertEquals(reading.values[0], cursor.getTemperature());
+			assertEquals(reading.values[1], cursor.getPressure());
+			count++;
+		}
+		assertFalse(cursor.next());
+		assertEquals(READINGS, count);
+		assertEquals(READINGS / 250, cursor.getFaultCount());
+	}
+	
+	@Test
+	public void decodesAnalogReadings() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ADS1115OutputStream log = new ADS1115OutputStream(out, new FakeStopwatch());
+		for (int i = 0; i < READINGS; i++) {
+			log.writeValue(i % 4, i * 0.125f);
+		}
+		log.close();
+		
+		SensorLogCursor cursor = open(out.toByteArray(), SensorLogCursor.Format.ANALOG);
+		ADS1115InputStream in = new ADS1115InputStream(new ByteArrayInputStream(out.toByteArray()));
+		ADS1115Reading reading;
+		int count = 0;
+		while ((reading = in.readReading()) != null) {
+			assertTrue(cursor.next());
+			assertEquals(reading.timestamp, cursor.getTimestamp());
+			assertEquals(count % 4, cursor.getChannel());
+			assertEquals(reading.values[count % 4], cursor.getValue(), 0f);
+			count++;
+		}
+		assertFalse(cursor.next());
+		assertEquals(READINGS, count);
+	}
+	
+	@Test
+	public void readsBatchesOfOneScalingFactor() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ADXL345OutputStream log = new ADXL345OutputStream(out, new FakeStopwatch());
+		log.setCompact(true, SensorCodecTest.KEYFRAME_INTERVAL);
+		log.writeScalingFactor(1f);
+		for (int i = 0; i < READINGS; i++) {
+			if (i == READINGS / 2 + 1) {
+				log.writeScalingFactor(2f);
+			}
+			log.writeValues((short) (i * i), (short) (i * 3), (short) -i);
+		}
+		log.close();
+		
+		SensorLogCursor cursor = open(out.toByteArray(), SensorLogCursor.Format.VECTOR);
+		long[] timestamps = new long[BATCH_SIZE];
+		short[] x = new short[BATCH_SIZE];
+		short[] y = new short[BATCH_SIZE];
+		short[] z = new short[BATCH_SIZE];
+		int count = 0;
+		int n;
+		while ((n = cursor.readBatch(timestamps, x, y, z)) != 0) {
+			float scalingFactor = count <= READINGS / 2 ? 1f : 2f;
+			assertEquals(scalingFactor, cursor.getScalingFactor(), 0f);
+			for (int i = 0; i < n; i++, count++) {
+				assertEquals((short) (count * count), x[i]);
+				assertEquals(count * 3, y[i]);
+				assertEquals(-count, z[i]);
+				assertTrue(i == 0 || timestamps[i] > timestamps[i - 1]);
+			}
+			if (count <= READINGS / 2) {
+				assertEquals(0, count % BATCH_SIZE); // only the batch with the change ends early
+			}
+		}
+		assertEquals(READINGS, count);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWindowSmallerThanARecord() {
+		new SensorLogCursor(new ByteArrayInputStream(new byte[0]), SensorLogCursor.Format.VECTOR, 8);
+	}
+
+}
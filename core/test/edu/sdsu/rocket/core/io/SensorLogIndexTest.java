@@ -0,0 +1,118 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.sdsu.rocket.core.io.BlockScannerTest.MemorySink;
+
+public class SensorLogIndexTest {
+	
+	private static final int BLOCK_SIZE = 256;
+	private static final int READINGS = 2000;
+	private static final int INTERVAL = 64; // readings
+	private static final long PERIOD = 2500000L; // ns, of the fake stopwatch
+	
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+	
+	private File dir;
+	private File[] copies;
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = temp.getRoot();
+		temp.newFolder("mirror");
+		copies = new File[] { new File(dir, "adxl345.log"), new File(dir, "mirror/adxl345.log") };
+		
+		MemorySink sink = new MemorySink();
+		SensorCodecTest.writeReadings(new BlockOutputStream(sink, BLOCK_SIZE, true), READINGS);
+		byte[] blocks = sink.bytes.toByteArray();
+		
+		// the first copy is damaged near its start, the mirror is segmented
+		byte[] damaged = blocks.clone();
+		for (int i = 300; i < 310; i++) {
+			damaged[i] = (byte) 0xFF;
+		}
+		write(copies[0], damaged, 0, damaged.length);
+		int split = blocks.length / 3;
+		write(LogFiles.getSegment(copies[1], 0), blocks, 0, split);
+		write(LogFiles.getSegment(copies[1], 1), blocks, split, blocks.length - split);
+	}
+	
+	private static void write(File file, byte[] b, int off, int len) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(b, off, len);
+		} finally {
+			out.close();
+		}
+	}
+	
+	private SensorLogIndex build() throws IOException {
+		InputStream log = LogFiles.open(BLOCK_SIZE, copies);
+		SensorLogCursor cursor = new SensorLogCursor(log, SensorLogCursor.Format.VECTOR);
+		try {
+			return SensorLogIndex.build(cursor, (BlockInputStream) log, INTERVAL, SensorLogIndex.getStamp(copies));
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	@Test
+	public void writesAndReadsEntries() throws IOException {
+		SensorLogIndex index = build();
+		assertTrue(index.hasBlockOffsets());
+		assertTrue(index.size() >= READINGS / (INTERVAL + SensorCodecTest.KEYFRAME_INTERVAL));
+		
+		File file = SensorLogIndex.getIndexFile(copies[0]);
+		index.write(file);
+		SensorLogIndex read = SensorLogIndex.read(file);
+		assertEquals(index.getStamp(), read.getStamp());
+		assertEquals(index.size(), read.size());
+		for (int i = 0; i < index.size(); i++) {
+			assertEquals(index.getTimestamp(i), read.getTimestamp(i));
+			assertEquals(index.getOffset(i), read.getOffset(i));
+			assertEquals(index.getPayloadOffset(i), read.getPayloadOffset(i));
+			assertEquals(index.getBlockOffsets(i)[0], read.getBlockOffsets(i)[0]);
+			assertEquals(index.getBlockOffsets(i)[1], read.getBlockOffsets(i)[1]);
+		}
+	}
+	
+	@Test
+	public void seeksToEntriesWithoutReadingBlocksBefore() throws IOException {
+		SensorLogIndex index = build();
+		for (int entry = 0; entry < index.size(); entry += 5) {
+			BlockInputStream log = (BlockInputStream) LogFiles.open(BLOCK_SIZE, copies);
+			LogFiles.seek(log, BLOCK_SIZE, index.getBlockOffsets(entry), copies);
+			LogFiles.skipFully(log, index.getPayloadOffset(entry));
+			SensorLogCursor cursor = new SensorLogCursor(log, SensorLogCursor.Format.VECTOR);
+			
+			assertTrue(cursor.next());
+			assertTrue(cursor.isKeyframe());
+			assertEquals(index.getTimestamp(entry), cursor.getTimestamp());
+			int count = 1;
+			while (cursor.next()) {
+				SensorCodecTest.assertReading(cursor.getTimestamp(), cursor.getX(), cursor.getY(), cursor.getZ());
+				count++;
+			}
+			assertEquals(READINGS - index.getTimestamp(entry) / PERIOD + 1, count);
+			assertEquals(0, log.getLostBlockCount());
+			if (entry > 0) {
+				assertEquals(0, log.getCorruptionCount()); // the damage is before
+			}
+			cursor.close();
+		}
+	}
+
+}
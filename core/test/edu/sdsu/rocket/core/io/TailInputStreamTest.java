@@ -0,0 +1,177 @@
+package edu.sdsu.rocket.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The log is followed on a separate thread, which signals each time it has
+ * read everything available and waits for more.
+ */
+public class TailInputStreamTest {
+	
+	private static final long TIMEOUT = 5000L; // ms
+	private static final long POLL_INTERVAL = 1L; // ms
+	private static final int BLOCK_SIZE = 64;
+	private static final int PAYLOAD = BLOCK_SIZE - BlockOutputStream.HEADER_SIZE;
+	private static final int RECORD_SIZE = PAYLOAD / 4; // bytes
+	
+	/**
+	 * Reads a log until its end, signalling whenever it waits for data.
+	 */
+	static class Follower implements Runnable, Flushable {
+		final TailInputStream tail;
+		final Semaphore idle = new Semaphore(0);
+		final ByteArrayOutputStream read = new ByteArrayOutputStream();
+		final Thread thread = new Thread(this, "follower");
+		volatile IOException exception;
+		
+		Follower(TailInputStream tail) {
+			this.tail = tail;
+			tail.setIdle(this);
+		}
+		
+		@Override
+		public void run() {
+			try {
+				InputStream in = LogFiles.follow(tail);
+				byte[] b = new byte[100];
+				int n;
+				while ((n = in.read(b)) != -1) {
+					synchronized (read) {
+						read.write(b, 0, n);
+					}
+				}
+				in.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		
+		@Override
+		public void flush() {
+			idle.release();
+		}
+		
+		/**
+		 * Waits until everything available has been read and returns it.
+		 */
+		byte[] awaitIdle() throws InterruptedException {
+			assertTrue("timed out following", idle.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+			synchronized (read) {
+				return read.toByteArray();
+			}
+		}
+		
+		byte[] stop() throws InterruptedException {
+			tail.stop();
+			thread.join(TIMEOUT);
+			assertFalse(thread.isAlive());
+			assertEquals(null, exception);
+			return read.toByteArray();
+		}
+	}
+	
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+	
+	private File dir;
+	private File file;
+	
+	@Before
+	public void setUp() {
+		dir = temp.getRoot();
+		file = new File(dir, "adxl345.log");
+	}
+	
+	private static byte[] data(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+	
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] c = new byte[a.length + b.length];
+		System.arraycopy(a, 0, c, 0, a.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+	
+	private static void write(OutputStream out, byte[] data) throws IOException {
+		for (int off = 0; off < data.length; off += RECORD_SIZE) {
+			out.write(data, off, Math.min(RECORD_SIZE, data.length - off));
+		}
+	}
+	
+	@Test
+	public void followsAPlainLogAsItGrows() throws IOException, InterruptedException {
+		byte[] first = data(1000, 1);
+		byte[] second = data(500, 2);
+		OutputStream out = new FileOutputStream(file);
+		out.write(first);
+		out.flush();
+		
+		Follower follower = new Follower(new TailInputStream(file, POLL_INTERVAL));
+		follower.thread.start();
+		assertArrayEquals(first, follower.awaitIdle());
+		
+		out.write(second);
+		out.close();
+		assertArrayEquals(concat(first, second), follower.awaitIdle());
+		assertArrayEquals(concat(first, second), follower.stop());
+	}
+	
+	@Test
+	public void waitsForTheLogToBeCreated() throws IOException, InterruptedException {
+		byte[] data = data(1000, 1);
+		Follower follower = new Follower(new TailInputStream(file, POLL_INTERVAL));
+		follower.thread.start();
+		
+		OutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		assertArrayEquals(data, follower.stop());
+	}
+	
+	@Test
+	public void returnsOnlyClosedBlocksOfAMappedLog() throws IOException, InterruptedException {
+		byte[] closed = data(3 * PAYLOAD, 1);
+		byte[] open = data(2 * RECORD_SIZE, 2);
+		MappedLogOutputStream out = new MappedLogOutputStream(new File[] { file }, 8 * BLOCK_SIZE, BLOCK_SIZE);
+		write(out, closed);
+		write(out, open); // in a block which is not yet closed
+		
+		TailInputStream tail = new TailInputStream(file, POLL_INTERVAL);
+		tail.setBlockSize(BLOCK_SIZE);
+		Follower follower = new Follower(tail);
+		follower.thread.start();
+		assertArrayEquals(closed, follower.awaitIdle());
+		
+		out.flush(); // closes the block
+		assertArrayEquals(concat(closed, open), follower.awaitIdle());
+		
+		byte[] next = data(10 * PAYLOAD, 3); // into the next segments
+		write(out, next);
+		out.close();
+		assertArrayEquals(concat(concat(closed, open), next), follower.stop());
+	}
+
+}
@@ -4,9 +4,40 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnableTest;
+import edu.sdsu.rocket.core.io.AsyncBlockWriterTest;
+import edu.sdsu.rocket.core.io.BlockScannerTest;
+import edu.sdsu.rocket.core.io.BlockSinkStriperTest;
+import edu.sdsu.rocket.core.io.FileChannelSinkTest;
+import edu.sdsu.rocket.core.io.FlightLogStreamTest;
+import edu.sdsu.rocket.core.io.GPSStreamTest;
+import edu.sdsu.rocket.core.io.LogFilesTest;
+import edu.sdsu.rocket.core.io.LogThroughputTest;
+import edu.sdsu.rocket.core.io.MappedLogOutputStreamTest;
+import edu.sdsu.rocket.core.io.RecordRingBufferTest;
+import edu.sdsu.rocket.core.io.SensorCodecTest;
+import edu.sdsu.rocket.core.io.SensorLogCursorTest;
+import edu.sdsu.rocket.core.io.SensorLogIndexTest;
+import edu.sdsu.rocket.core.io.TailInputStreamTest;
+
 @RunWith(Suite.class)
 @SuiteClasses({
 //	DummyTests.class,
+	AsyncBlockWriterTest.class,
+	BlockScannerTest.class,
+	BlockSinkStriperTest.class,
+	FileChannelSinkTest.class,
+	FlightLogStreamTest.class,
+	GPSStreamTest.class,
+	LogFilesTest.class,
+	LogThroughputTest.class,
+	MappedLogOutputStreamTest.class,
+	RecordRingBufferTest.class,
+	SensorCodecTest.class,
+	SensorLogCursorTest.class,
+	SensorLogIndexTest.class,
+	TailInputStreamTest.class,
+	RateLimitedRunnableTest.class,
 })
 
 public class AllTests {}
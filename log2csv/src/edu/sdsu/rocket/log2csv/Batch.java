@@ -0,0 +1,261 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.sdsu.rocket.core.io.LogFiles;
+
+/**
+ * Converts every log directory under a root (e.g. the timestamped
+ * directories the server creates in each logging directory), skipping the
+ * directories which are up to date.
+ * 
+ * A directory is up to date if it was converted with the same options and
+ * none of its files (logs and outputs alike) have been added, removed or
+ * changed in size or modification time since. This is recorded in a
+ * manifest written to the directory after it is converted.
+ * 
+ * The directories are converted in parallel on a work-stealing pool, so a
+ * few long flights do not hold up the rest.
+ */
+public class Batch {
+	
+	public static final String MANIFEST = "log2csv.manifest";
+	
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	
+	/**
+	 * Converts one log directory.
+	 */
+	public interface Task {
+		
+		/**
+		 * @param folder Log directory.
+		 * @param mirrors The same directory under the other roots.
+		 * @param threads Number of threads to convert the directory with.
+		 * @return false if the directory failed to convert.
+		 */
+		public boolean convert(File folder, File[] mirrors, int threads);
+	
+	}
+	
+	private final File[] roots;
+	private final int threads;
+	private final String options;
+	
+	private final AtomicInteger failures = new AtomicInteger();
+	
+	/**
+	 * @param roots Roots of the log directories. The log directories are
+	 *              found under the first root; the same directories under
+	 *              the other roots are their mirrors.
+	 * @param threads Number of threads.
+	 * @param options Description of the conversion, directories converted
+	 *                with other options are not up to date.
+	 */
+	public Batch(File[] roots, int threads, String options) {
+		if (roots.length == 0) {
+			throw new IllegalArgumentException("No roots.");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Threads must be positive.");
+		}
+		this.roots = roots;
+		this.threads = threads;
+		this.options = options;
+	}
+	
+	/**
+	 * Converts the log directories which are not up to date.
+	 * 
+	 * @param task
+	 * @return Number of directories which failed to convert.
+	 */
+	public int run(Task task) {
+		List<File> folders = new ArrayList<File>();
+		findLogDirectories(roots[0], folders);
+		
+		List<File> pending = new ArrayList<File>();
+		for (File folder : folders) {
+			if (!isUpToDate(folder)) {
+				pending.add(folder);
+			}
+		}
+		System.out.println(folders.size() + " log directories under " + roots[0] + ", "
+				+ (folders.size() - pending.size()) + " up to date.");
+		if (pending.isEmpty()) return 0;
+		
+		long start = System.nanoTime();
+		failures.set(0);
+		ForkJoinPool pool = new ForkJoinPool(Math.min(threads, pending.size()));
+		try {
+			int converterThreads = Math.max(1, threads / pending.size()); // when fewer directories than threads
+			pool.invoke(new Conversions(task, pending, converterThreads));
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println(String.format(Locale.US, "Converted %d log directories (%d failed) in %.1f s.",
+				pending.size(), failures.get(), (System.nanoTime() - start) / NANOSECONDS_PER_SECOND));
+		return failures.get();
+	}
+	
+	/**
+	 * Converts a range of directories, splitting it in halves so that idle
+	 * threads steal the other half.
+	 */
+	private class Conversions extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Task task;
+		private final List<File> folders;
+		private final int threads;
+		
+		Conversions(Task task, List<File> folders, int threads) {
+			this.task = task;
+			this.folders = folders;
+			this.threads = threads;
+		}
+		
+		@Override
+		protected void compute() {
+			if (folders.size() > 1) {
+				int middle = folders.size() / 2;
+				invokeAll(new Conversions(task, folders.subList(0, middle), threads),
+						new Conversions(task, folders.subList(middle, folders.size()), threads));
+				return;
+			}
+			
+			File folder = folders.get(0);
+			System.out.println("Converting " + folder + " ...");
+			boolean isConverted;
+			try {
+				isConverted = task.convert(folder, getMirrors(folder), threads);
+			} catch (RuntimeException e) {
+				System.err.println(folder + ": " + e);
+				isConverted = false;
+			}
+			if (isConverted) {
+				try {
+					writeManifest(folder);
+				} catch (IOException e) {
+					System.err.println("Failed to write manifest of " + folder + ": " + e);
+				}
+			} else {
+				failures.incrementAndGet();
+				System.err.println("Failed to convert " + folder);
+			}
+		}
+	
+	}
+	
+	/**
+	 * Finds the directories which contain logs, in order. Directories with
+	 * logs are not searched further.
+	 */
+	private static void findLogDirectories(File folder, List<File> folders) {
+		File[] files = folder.listFiles();
+		if (files == null) return;
+		Arrays.sort(files);
+		
+		for (File file : files) {
+			if (file.isFile() && LogFiles.getLogFile(file).getName().endsWith(".log")) {
+				folders.add(folder);
+				return;
+			}
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				findLogDirectories(file, folders);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the same directory under the other roots (where it exists).
+	 */
+	private File[] getMirrors(File folder) {
+		String path = getRelativePath(folder);
+		List<File> mirrors = new ArrayList<File>();
+		for (int i = 1; i < roots.length; i++) {
+			File mirror = new File(roots[i], path);
+			if (mirror.isDirectory()) {
+				mirrors.add(mirror);
+			}
+		}
+		return mirrors.toArray(new File[mirrors.size()]);
+	}
+	
+	private String getRelativePath(File folder) {
+		String root = roots[0].getPath();
+		String path = folder.getPath();
+		return path.length() > root.length() ? path.substring(root.length() + 1) : "";
+	}
+	
+	/**
+	 * Lists the files of a log directory and its mirrors, in the form
+	 * recorded in the manifest.
+	 */
+	private String getManifest(File folder) {
+		StringBuilder manifest = new StringBuilder();
+		manifest.append("options\t").append(options).append('\n');
+		File[] mirrors = getMirrors(folder);
+		for (int copy = 0; copy <= mirrors.length; copy++) {
+			File[] files = (copy == 0 ? folder : mirrors[copy - 1]).listFiles();
+			if (files == null) continue;
+			Arrays.sort(files);
+			for (File file : files) {
+				if (!file.isFile() || MANIFEST.equals(file.getName())) continue;
+				manifest.append(copy).append('\t')
+					.append(file.getName()).append('\t')
+					.append(file.length()).append('\t')
+					.append(file.lastModified()).append('\n');
+			}
+		}
+		return manifest.toString();
+	}
+	
+	private boolean isUpToDate(File folder) {
+		File file = new File(folder, MANIFEST);
+		if (!file.isFile()) return false;
+		
+		StringBuilder manifest = new StringBuilder();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					manifest.append(line).append('\n');
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println(file + ": " + e);
+			return false;
+		}
+		return manifest.toString().equals(getManifest(folder));
+	}
+	
+	private void writeManifest(File folder) throws IOException {
+		String manifest = getManifest(folder);
+		Writer writer = new FileWriter(new File(folder, MANIFEST));
+		try {
+			writer.write(manifest);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
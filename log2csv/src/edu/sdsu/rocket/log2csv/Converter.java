@@ -1,213 +1,1591 @@
 package edu.sdsu.rocket.log2csv;
 
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import au.com.bytecode.opencsv.CSVWriter;
+
+import com.badlogic.gdx.utils.JsonWriter;
+
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable;
 import edu.sdsu.rocket.core.io.ADS1115InputStream;
 import edu.sdsu.rocket.core.io.ADS1115InputStream.ADS1115Reading;
+import edu.sdsu.rocket.core.io.ADS1115OutputStream;
 import edu.sdsu.rocket.core.io.ADXL345InputStream;
 import edu.sdsu.rocket.core.io.ADXL345InputStream.ADXL345Reading;
+import edu.sdsu.rocket.core.io.ADXL345OutputStream;
+import edu.sdsu.rocket.core.io.BlockInputStream;
+import edu.sdsu.rocket.core.io.BlockOutputStream;
+import edu.sdsu.rocket.core.io.ByteBufferInputStream;
+import edu.sdsu.rocket.core.io.DiscontinuityListener;
+import edu.sdsu.rocket.core.io.FlightLogInputStream;
+import edu.sdsu.rocket.core.io.FlightLogInputStream.FlightLogRecord;
+import edu.sdsu.rocket.core.io.GPSInputStream;
+import edu.sdsu.rocket.core.io.GPSInputStream.GPSReading;
+import edu.sdsu.rocket.core.io.GPSOutputStream;
 import edu.sdsu.rocket.core.io.HMC5883LInputStream;
 import edu.sdsu.rocket.core.io.HMC5883LInputStream.HMC5883LReading;
+import edu.sdsu.rocket.core.io.HMC5883LOutputStream;
 import edu.sdsu.rocket.core.io.ITG3205InputStream;
 import edu.sdsu.rocket.core.io.ITG3205InputStream.ITG3205Reading;
+import edu.sdsu.rocket.core.io.ITG3205OutputStream;
+import edu.sdsu.rocket.core.io.LogFiles;
 import edu.sdsu.rocket.core.io.MS5611InputStream;
 import edu.sdsu.rocket.core.io.MS5611InputStream.MS5611Reading;
+import edu.sdsu.rocket.core.io.MS5611OutputStream;
+import edu.sdsu.rocket.core.io.SensorLogCursor;
+import edu.sdsu.rocket.core.io.SensorLogIndex;
+import edu.sdsu.rocket.core.io.TailInputStream;
+import edu.sdsu.rocket.core.models.Pressures;
 
 public class Converter {
+	
+	public enum Output {
+		FAST, // FastCsvWriter
+		OPENCSV, // opencsv CSVWriter
+		NPY; // NumPy column files, see NpyColumns
+	}
+	
+	/**
+	 * How the values of the other sensors are filled in on each row of a
+	 * merged table.
+	 */
+	public enum Merge {
+		HOLD, // last reading
+		LINEAR; // linearly interpolated between the readings either side
+	}
+	
+	// Timestamp (ns), A0 (mV), A1 (mV), A2 (mV), A3 (mV)
+	private static final String[] ADS1115_HEADER = { "Timestamp", "A0", "A1", "A2", "A3" };
+	
+	// Timestamp (ns), Multiplier, X*Multiplier (G), Y*Multiplier (G), Z*Multiplier (G)
+	private static final String[] ADXL345_HEADER = { "Timestamp", "Multiplier", "X", "Y", "Z" };
+	
+	// Timestamp (ns), Multiplier, X*Multiplier (deg/s), Y*Multiplier (deg/s), Z*Multiplier (deg/s)
+	private static final String[] ITG3205_HEADER = { "Timestamp", "Multiplier", "X", "Y", "Z" };
+	
+	// Timestamp (ns), Multiplier, X*Multiplier (Gauss), Y*Multiplier (Gauss), Z*Multiplier (Gauss)
+	private static final String[] HMC5883L_HEADER = { "Timestamp", "Multiplier", "X", "Y", "Z" };
+	
+	// Timestamp (ns), Temperature*100 (C), Pressure*100 (mbar)
+	private static final String[] MS5611_HEADER = { "Timestamp", "Temperature", "Pressure" };
+	
+	// Timestamp (ns), Latitude (deg), Longitude (deg), Altitude (m MSL), Fix, Satellites
+	private static final String[] GPS_HEADER = { "Timestamp", "Latitude", "Longitude", "Altitude", "Fix", "Satellites" };
+	
+	private static final int BATCH_SIZE = 4096; // readings
+	
+	private static final long PROGRESS_INTERVAL = 1000L; // milliseconds
+	
+	private static final int ADS1115_CHANNELS = 4;
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	
+	/**
+	 * Motor pressure above which the motor is considered to be burning.
+	 */
+	private static final double BURN_THRESHOLD = 0.1 * Pressures.MOTOR_MAX_PRESSURE; // PSI
+	
+	/**
+	 * How long the motor pressure has to stay across {@link #BURN_THRESHOLD}
+	 * for the burn to start or end, so noise spikes are not taken as a burn.
+	 */
+	private static final long BURN_SUSTAIN = 50000000L; // ns
 
 	private File location;
+	private File[] mirrors;
+	
+	private int threads = 1;
+	private Output output = Output.FAST;
+	private int blockSize = BlockOutputStream.DEFAULT_BLOCK_SIZE;
+	
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+	
+	/**
+	 * Formats batches of readings into CSV rows when converting with more
+	 * than one thread.
+	 */
+	private ExecutorService formatters;
+	
+	private final List<Progress> progress = new ArrayList<Progress>();
 
-	public Converter(File location) {
+	/**
+	 * @param location Folder containing the logs (and where the CSV files are
+	 *                 written).
+	 * @param mirrors Folders containing mirrored copies of the logs, from
+	 *                which damaged blocks of framed logs are recovered, or
+	 *                the other stripes of striped logs.
+	 */
+	public Converter(File location, File... mirrors) {
 		this.location = location;
+		this.mirrors = mirrors;
 	}
 	
-	public void convert() {
-		System.out.print("Converting ADC (ADS1115) ... ");
-		try {
-			convertADS1115();
-			System.out.println("Done");
-		} catch (IOException e) {
-			System.err.println("ADS1115: " + e);
+	/**
+	 * Sets the number of threads: the sensor logs are converted concurrently
+	 * on a pool of this many threads, and the readings of each vector sensor
+	 * log are formatted in parallel on a second pool of the same size.
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Threads must be positive.");
+		}
+		this.threads = threads;
+	}
+	
+	/**
+	 * Sets the block size framed logs were written with (logging.blockSize of
+	 * the server), which bounds the length of a block when resynchronising
+	 * past damaged blocks.
+	 * 
+	 * @param blockSize (in bytes, including the block header)
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize <= BlockOutputStream.HEADER_SIZE) {
+			throw new IllegalArgumentException("Block size too small: " + blockSize);
+		}
+		this.blockSize = blockSize;
+	}
+	
+	/**
+	 * Sets how the CSV files are written, by default with a
+	 * {@link FastCsvWriter}, or that the sensor logs are exported as NumPy
+	 * column files instead (sensor logs only, not merged or followed).
+	 * 
+	 * @param output
+	 */
+	public void setOutput(Output output) {
+		if (output == null) throw new NullPointerException();
+		this.output = output;
+	}
+	
+	/**
+	 * Limits the sensor logs to readings with timestamps in the specified
+	 * range (inclusive). Each log is indexed the first time, after which
+	 * reading seeks to the start of the range and stops at its end.
+	 * 
+	 * @param from Timestamp (ns).
+	 * @param to Timestamp (ns).
+	 */
+	public void setRange(long from, long to) {
+		if (from > to) {
+			throw new IllegalArgumentException("Range ends before it starts.");
+		}
+		this.from = from;
+		this.to = to;
+	}
+	
+	private boolean isRange() {
+		return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+	}
+	
+	private boolean isInRange(long timestamp) {
+		return timestamp >= from && timestamp <= to;
+	}
+	
+	private File[] getCopies(String file) {
+		File[] copies = new File[1 + mirrors.length];
+		copies[0] = new File(location, file);
+		for (int i = 0; i < mirrors.length; i++) {
+			copies[i + 1] = new File(mirrors[i], file);
+		}
+		return copies;
+	}
+	
+	/**
+	 * Opens the specified log, reading from every mirrored copy (or stripe)
+	 * of it when the log is framed.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private InputStream open(String file) throws IOException {
+		return LogFiles.open(blockSize, getCopies(file));
+	}
+	
+	/**
+	 * Opens a cursor over a sensor log. When a range is set, the log is first
+	 * moved to the last indexed reading before the range (so only up to
+	 * {@link SensorLogIndex#DEFAULT_INTERVAL} readings are decoded before it):
+	 * a framed log is reopened at the block of the reading in every copy, so
+	 * the blocks before it are not read, and a plain log is skipped.
+	 * 
+	 * @param name Sensor name.
+	 * @param log Sensor log, from {@link #open(String)}.
+	 * @param progress
+	 * @return
+	 * @throws IOException
+	 */
+	private SensorLogCursor openCursor(String name, InputStream log, Progress progress) throws IOException {
+		SensorLogCursor.Format format = SensorLogCursor.Format.getFormat(name);
+		int entry = -1;
+		float scalingFactor = 0f;
+		if (from != Long.MIN_VALUE) {
+			SensorLogIndex index = getIndex(name);
+			entry = index.find(from - 1); // a reading before the range, to hold or interpolate from
+			if (entry != -1) {
+				if (!seek(name, log, index, entry)) {
+					LogFiles.skipFully(log, index.getOffset(entry));
+				}
+				scalingFactor = index.getScalingFactor(entry);
+			}
 		}
 		
-		System.out.print("Converting Accelerometer (ADXL345) ... ");
+		SensorLogCursor cursor = new SensorLogCursor(progress.track(log), format);
+		LogFiles.setDiscontinuityListener(log, cursor);
+		if (entry != -1) {
+			cursor.setScalingFactor(scalingFactor);
+		}
+		return cursor;
+	}
+	
+	/**
+	 * Moves a framed log to the block of an index entry and within it to the
+	 * record of the entry.
+	 * 
+	 * @return false if the log has to be skipped to the entry instead (it is
+	 *         not framed, or the block cannot be seeked).
+	 */
+	private boolean seek(String name, InputStream log, SensorLogIndex index, int entry) throws IOException {
+		if (!(log instanceof BlockInputStream) || !index.hasBlockOffsets()) return false;
 		try {
-			convertADXL345();
-			System.out.println("Done");
+			LogFiles.seek((BlockInputStream) log, blockSize, index.getBlockOffsets(entry), getCopies(name + ".log"));
 		} catch (IOException e) {
-			System.err.println("ADXL345: " + e);
+			System.err.println(name + ": " + e.getMessage() + " Skipping to the range instead.");
+			return false;
+		}
+		LogFiles.skipFully(log, index.getPayloadOffset(entry));
+		return true;
+	}
+	
+	/**
+	 * Reads the index of a sensor log, indexing the log (and writing the
+	 * index next to it) if it has no index or the log has changed since.
+	 * 
+	 * @param name Sensor name.
+	 * @return
+	 * @throws IOException
+	 */
+	private SensorLogIndex getIndex(String name) throws IOException {
+		File[] copies = getCopies(name + ".log");
+		File file = SensorLogIndex.getIndexFile(copies[0]);
+		long stamp = SensorLogIndex.getStamp(copies);
+		if (file.isFile()) {
+			try {
+				SensorLogIndex index = SensorLogIndex.read(file);
+				if (index.getStamp() == stamp) return index;
+			} catch (IOException e) {
+				System.err.println(name + ": " + e);
+			}
 		}
 		
-		System.out.print("Converting Gyroscope (ITG3205) ... ");
+		System.out.println("Indexing " + name + " ...");
+		InputStream log = LogFiles.open(blockSize, copies);
+		SensorLogCursor cursor = new SensorLogCursor(log, SensorLogCursor.Format.getFormat(name));
+		LogFiles.setDiscontinuityListener(log, cursor);
+		SensorLogIndex index;
 		try {
-			convertITG3205();
-			System.out.println("Done");
-		} catch (IOException e) {
-			System.err.println("ITG3205: " + e);
+			index = SensorLogIndex.build(cursor, log instanceof BlockInputStream ? (BlockInputStream) log : null, SensorLogIndex.DEFAULT_INTERVAL, stamp);
+		} finally {
+			cursor.close();
 		}
-		
-		System.out.print("Converting Magnetometer (HMC5883L) ... ");
 		try {
-			convertHMC5883L();
-			System.out.println("Done");
+			index.write(file);
 		} catch (IOException e) {
-			System.err.println("HMC5883L: " + e);
+			System.err.println("Failed to write " + file + ": " + e);
+		}
+		return index;
+	}
+	
+	/**
+	 * Creates the CSV file of the specified sensor and writes its header.
+	 * 
+	 * @param name Sensor name.
+	 * @param header
+	 * @return
+	 * @throws IOException
+	 */
+	private CsvSink openCsv(String name, String[] header) throws IOException {
+		File file = new File(location, name + ".csv");
+		CsvSink csv;
+		switch (output) {
+		case OPENCSV:
+			csv = new OpenCsvSink(new CSVWriter(new BufferedWriter(new FileWriter(file)), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER));
+			break;
+		default:
+			csv = new FastCsvWriter(new FileOutputStream(file).getChannel());
+			break;
+		}
+		for (String column : header) {
+			csv.field(column);
+		}
+		csv.endRow();
+		return csv;
+	}
+	
+	/**
+	 * Reports the damaged blocks which were skipped while reading a framed
+	 * log.
+	 * 
+	 * @param name
+	 * @param in
+	 */
+	private static void report(String name, InputStream in) {
+		if (!(in instanceof BlockInputStream)) return;
+		BlockInputStream blocks = (BlockInputStream) in;
+		if (blocks.getCorruptionCount() != 0 || blocks.getLostBlockCount() != 0) {
+			System.err.println(name + ": skipped " + blocks.getCorruptionCount()
+					+ " damaged regions (" + blocks.getSkippedBytes() + " bytes), "
+					+ blocks.getLostBlockCount() + " blocks lost in every copy");
+		}
+		if (blocks.getOversizedCount() != 0) {
+			System.err.println(name + ": skipped " + blocks.getOversizedCount()
+					+ " block headers longer than the block size (see --block-size)");
+		}
+		if (blocks.getUnusedBytes() != 0) {
+			System.err.println(name + ": not closed, ignored " + blocks.getUnusedBytes()
+					+ " bytes of unused pre-allocated space");
+		}
+	}
+	
+	/**
+	 * Converts every sensor log in the location (or the flight log, if any).
+	 * 
+	 * @return false if any log failed to convert (a sensor which was not
+	 *         logged is not a failure).
+	 */
+	public boolean convert() {
+		File[] files = location.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				try {
+					File log = LogFiles.getLogFile(file); // segments of a log share its name
+					if (file.isFile() && FlightLogInputStream.isFlightLog(log)) {
+						if (output == Output.NPY) {
+							System.err.println("Flight logs cannot be exported as NumPy files, convert to CSV instead.");
+							return false;
+						}
+						System.out.print("Converting flight log (" + log.getName() + ") ... ");
+						convertFlightLog(log);
+						System.out.println("Done");
+						return true;
+					}
+				} catch (IOException e) {
+					System.err.println(file.getName() + ": " + e);
+					return false;
+				}
+			}
 		}
 		
-		System.out.print("Converting Barometer (MS5611) ... ");
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		if (threads > 1) {
+			formatters = Executors.newFixedThreadPool(threads);
+		}
+		RateLimitedRunnable reporter = startReporter();
+		boolean isConverted = true;
 		try {
-			convertMS5611();
-			System.out.println("Done");
-		} catch (IOException e) {
-			System.err.println("MS5611: " + e);
+			List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>();
+			tasks.add(pool.submit(new Conversion("ADC (ADS1115)") {
+				@Override
+				void convert() throws IOException {
+					convertADS1115();
+				}
+			}));
+			tasks.add(pool.submit(new Conversion("Accelerometer (ADXL345)") {
+				@Override
+				void convert() throws IOException {
+					convertADXL345();
+				}
+			}));
+			tasks.add(pool.submit(new Conversion("Gyroscope (ITG3205)") {
+				@Override
+				void convert() throws IOException {
+					convertITG3205();
+				}
+			}));
+			tasks.add(pool.submit(new Conversion("Magnetometer (HMC5883L)") {
+				@Override
+				void convert() throws IOException {
+					convertHMC5883L();
+				}
+			}));
+			tasks.add(pool.submit(new Conversion("Barometer (MS5611)") {
+				@Override
+				void convert() throws IOException {
+					convertMS5611();
+				}
+			}));
+			if (!LogFiles.listFiles(new File(location, GPSOutputStream.NAME + ".log")).isEmpty()) { // GPS is optional
+				tasks.add(pool.submit(new Conversion("GPS") {
+					@Override
+					void convert() throws IOException {
+						convertGPS();
+					}
+				}));
+			}
+			
+			for (Future<Boolean> task : tasks) {
+				try {
+					isConverted &= task.get();
+				} catch (ExecutionException e) {
+					System.err.println(e.getCause());
+					isConverted = false;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println(e);
+			isConverted = false;
+		} finally {
+			reporter.setRunning(false);
+			pool.shutdownNow();
+			if (formatters != null) {
+				formatters.shutdownNow();
+				formatters = null;
+			}
 		}
+		return isConverted;
 	}
-
+	
+	/**
+	 * Converts one sensor log, reporting failures the same way as the
+	 * sequential conversion.
+	 */
+	private abstract class Conversion implements Callable<Boolean> {
+		
+		final String sensor;
+		
+		Conversion(String sensor) {
+			this.sensor = sensor;
+		}
+		
+		abstract void convert() throws IOException;
+		
+		/**
+		 * @return false if the log failed to convert (but not if it does not
+		 *         exist).
+		 */
+		@Override
+		public Boolean call() {
+			System.out.println("Converting " + sensor + " ...");
+			try {
+				convert();
+			} catch (FileNotFoundException e) {
+				System.err.println(sensor + ": " + e);
+			} catch (IOException e) {
+				System.err.println(sensor + ": " + e);
+				return false;
+			}
+			return true;
+		}
+		
+	}
+	
+	/**
+	 * Starts a thread which periodically prints the progress of the logs
+	 * being converted.
+	 */
+	private RateLimitedRunnable startReporter() {
+		RateLimitedRunnable reporter = new RateLimitedRunnable(PROGRESS_INTERVAL) {
+			private boolean isStarted;
+			
+			@Override
+			public void loop() throws InterruptedException {
+				if (!isStarted) { // nothing to report yet
+					isStarted = true;
+					return;
+				}
+				synchronized (progress) {
+					for (Progress p : progress) {
+						if (!p.isFinished()) {
+							System.out.println(p);
+						}
+					}
+				}
+			}
+		};
+		Thread thread = new Thread(reporter, "progress");
+		thread.setDaemon(true);
+		thread.start();
+		return reporter;
+	}
+	
+	/**
+	 * Starts tracking the conversion of the specified log.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private Progress startProgress(String name) {
+		Progress p = new Progress(name);
+		synchronized (progress) {
+			progress.add(p);
+		}
+		return p;
+	}
+	
+	private static void finishProgress(Progress progress) {
+		progress.finish();
+		System.out.println(progress);
+	}
+	
 	public void convertADS1115() throws IOException {
 		String name = "ads1115";
+		if (output == Output.NPY) {
+			exportNpy(name, ADS1115_HEADER);
+			return;
+		}
 		System.out.println(location + File.separator + name + ".log");
-		ADS1115InputStream in = new ADS1115InputStream(new FileInputStream(location + File.separator + name + ".log"));
-		CSVWriter writer = new CSVWriter(new FileWriter(location + File.separator + name + ".csv"), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
-		
-		// Timestamp (ns), A0 (mV), A1 (mV), A2 (mV), A3 (mV)
-		writer.writeNext("Timestamp", "A0", "A1", "A2", "A3");
+		InputStream log = open(name + ".log");
+		Progress progress = startProgress(name);
+		SensorLogCursor cursor = openCursor(name, log, progress);
+		CsvSink csv = openCsv(name, ADS1115_HEADER);
 		try {
-			ADS1115Reading reading;
-			while ((reading = in.readReading()) != null) {
-				String[] entries = new String[5];
-				entries[0] = String.valueOf(reading.timestamp);
-				entries[1] = Float.isNaN(reading.values[0]) ? "" : String.valueOf(reading.values[0]); // A0
-				entries[2] = Float.isNaN(reading.values[1]) ? "" : String.valueOf(reading.values[1]); // A1
-				entries[3] = Float.isNaN(reading.values[2]) ? "" : String.valueOf(reading.values[2]); // A2
-				entries[4] = Float.isNaN(reading.values[3]) ? "" : String.valueOf(reading.values[3]); // A3
-				writer.writeNext(entries);
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				writeRow(csv, cursor);
+				progress.addReadings(1);
 			}
+			report(name, log);
 		} finally {
 			try {
-				in.close();
+				cursor.close();
 			} catch (IOException e) {
 				System.err.println("Failed to close " + name);
 			}
-			writer.close();
+			csv.close();
+			finishProgress(progress);
 		}
 	}
 	
 	public void convertADXL345() throws IOException {
-		String name = "adxl345";
+		convertVector("adxl345", ADXL345_HEADER);
+	}
+	
+	public void convertITG3205() throws IOException {
+		convertVector("itg3205", ITG3205_HEADER);
+	}
+	
+	public void convertHMC5883L() throws IOException {
+		convertVector("hmc5883l", HMC5883L_HEADER);
+	}
+	
+	/**
+	 * Converts the log of a vector sensor (ADXL345, ITG3205 or HMC5883L),
+	 * decoding the readings in batches with a {@link SensorLogCursor}.
+	 * 
+	 * When converting with more than one thread, the batches are formatted
+	 * into CSV rows in parallel and written in order. A batch is cut where
+	 * the cursor has decoded it, since compact readings depend on the
+	 * previous keyframe and the scaling factor on earlier records, so the
+	 * log itself is decoded in order.
+	 * 
+	 * @param name Sensor name.
+	 * @param header
+	 * @throws IOException
+	 */
+	private void convertVector(String name, String[] header) throws IOException {
+		if (output == Output.NPY) {
+			exportNpy(name, header);
+			return;
+		}
 		System.out.println(location + File.separator + name + ".log");
-		ADXL345InputStream in = new ADXL345InputStream(new FileInputStream(location + File.separator + name + ".log"));
-		CSVWriter writer = new CSVWriter(new FileWriter(location + File.separator + name + ".csv"), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
+		InputStream log = open(name + ".log");
+		Progress progress = startProgress(name);
+		SensorLogCursor cursor = openCursor(name, log, progress);
+		CsvSink csv = openCsv(name, header);
 		
-		// Timestamp (ns), Multiplier, X*Multiplier (G), Y*Multiplier (G), Z*Multiplier (G)
-		writer.writeNext("Timestamp", "Multiplier", "X", "Y", "Z");
+		Deque<Future<CsvSink>> pending = new ArrayDeque<Future<CsvSink>>();
 		try {
-			ADXL345Reading reading;
-			while ((reading = in.readReading()) != null) {
-				String[] entries = new String[5];
-				entries[0] = String.valueOf(reading.timestamp);
-				entries[1] = String.valueOf(reading.scalingFactor);
-				entries[2] = String.valueOf(reading.values[0]); // x
-				entries[3] = String.valueOf(reading.values[1]); // y
-				entries[4] = String.valueOf(reading.values[2]); // z
-				writer.writeNext(entries);
+			while (true) {
+				VectorBatch batch = new VectorBatch();
+				int count = cursor.readBatch(batch.timestamps, batch.x, batch.y, batch.z);
+				if (count == 0) break;
+				batch.count = count;
+				batch.scalingFactor = cursor.getScalingFactor();
+				boolean isEnd = isRange() && batch.limit(from, to);
+				progress.addReadings(batch.count - batch.start);
+				
+				if (formatters == null) {
+					batch.rows = csv;
+					batch.call();
+				} else {
+					batch.rows = csv.newBuffer();
+					pending.add(formatters.submit(batch));
+					if (pending.size() > 2 * threads) {
+						csv.append(get(pending.remove()));
+					}
+				}
+				if (isEnd) break;
 			}
+			while (!pending.isEmpty()) {
+				csv.append(get(pending.remove()));
+			}
+			report(name, log);
 		} finally {
+			for (Future<CsvSink> batch : pending) {
+				batch.cancel(false);
+			}
 			try {
-				in.close();
+				cursor.close();
 			} catch (IOException e) {
 				System.err.println("Failed to close " + name);
 			}
-			writer.close();
+			csv.close();
+			finishProgress(progress);
 		}
 	}
 	
-	public void convertITG3205() throws IOException {
-		String name = "itg3205";
-		System.out.println(location + File.separator + name + ".log");
-		ITG3205InputStream in = new ITG3205InputStream(new FileInputStream(location + File.separator + name + ".log"));
-		CSVWriter writer = new CSVWriter(new FileWriter(location + File.separator + name + ".csv"), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
+	private static CsvSink get(Future<CsvSink> batch) throws IOException {
+		try {
+			return batch.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Readings decoded from a vector sensor log, formatted into the same CSV
+	 * rows as {@link #writeRow(CsvSink, long, float, short[])}.
+	 */
+	private static class VectorBatch implements Callable<CsvSink> {
+		
+		final long[] timestamps = new long[BATCH_SIZE];
+		final short[] x = new short[BATCH_SIZE];
+		final short[] y = new short[BATCH_SIZE];
+		final short[] z = new short[BATCH_SIZE];
+		int start;
+		int count;
+		float scalingFactor;
 		
-		// Timestamp (ns), Multiplier, X*Multiplier (deg/s), Y*Multiplier (deg/s), Z*Multiplier (deg/s)
-		writer.writeNext("Timestamp", "Multiplier", "X", "Y", "Z");
+		/**
+		 * Limits the batch to readings in the specified range.
+		 * 
+		 * @param from
+		 * @param to
+		 * @return true if the batch ends after the range.
+		 */
+		boolean limit(long from, long to) {
+			while (start < count && timestamps[start] < from) {
+				start++;
+			}
+			int end = start;
+			while (end < count && timestamps[end] <= to) {
+				end++;
+			}
+			boolean isEnd = end < count;
+			count = end;
+			return isEnd;
+		}
+		
+		/**
+		 * Sink the rows are formatted into, either the CSV file or a buffer
+		 * which is appended to it in order.
+		 */
+		CsvSink rows;
+		
+		@Override
+		public CsvSink call() throws IOException {
+			for (int i = start; i < count; i++) {
+				rows.field(timestamps[i]);
+				rows.field(scalingFactor);
+				rows.field(x[i]);
+				rows.field(y[i]);
+				rows.field(z[i]);
+				rows.endRow();
+			}
+			return rows;
+		}
+		
+	}
+	
+	public void convertMS5611() throws IOException {
+		String name = "ms5611";
+		if (output == Output.NPY) {
+			exportNpy(name, MS5611_HEADER);
+			return;
+		}
+		System.out.println(location + File.separator + name + ".log");
+		InputStream log = open(name + ".log");
+		Progress progress = startProgress(name);
+		SensorLogCursor cursor = openCursor(name, log, progress);
+		CsvSink csv = openCsv(name, MS5611_HEADER);
 		try {
-			ITG3205Reading reading;
-			while ((reading = in.readReading()) != null) {
-				String[] entries = new String[5];
-				entries[0] = String.valueOf(reading.timestamp);
-				entries[1] = String.valueOf(reading.scalingFactor);
-				entries[2] = String.valueOf(reading.values[0]); // x
-				entries[3] = String.valueOf(reading.values[1]); // y
-				entries[4] = String.valueOf(reading.values[2]); // z
-				writer.writeNext(entries);
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				writeRow(csv, cursor);
+				progress.addReadings(1);
 			}
+			if (cursor.getFaultCount() != 0) {
+				System.err.println(name + ": " + cursor.getFaultCount() + " faults");
+			}
+			report(name, log);
 		} finally {
 			try {
-				in.close();
+				cursor.close();
 			} catch (IOException e) {
 				System.err.println("Failed to close " + name);
 			}
-			writer.close();
+			csv.close();
+			finishProgress(progress);
 		}
 	}
 	
-	public void convertHMC5883L() throws IOException {
-		String name = "hmc5883l";
+	/**
+	 * Converts the log of decoded GPS fixes. GPS logs are small, so they are
+	 * read with a {@link GPSInputStream} instead of being indexed, and a range
+	 * is applied by filtering.
+	 * 
+	 * @throws IOException
+	 */
+	public void convertGPS() throws IOException {
+		String name = GPSOutputStream.NAME;
 		System.out.println(location + File.separator + name + ".log");
-		HMC5883LInputStream in = new HMC5883LInputStream(new FileInputStream(location + File.separator + name + ".log"));
-		CSVWriter writer = new CSVWriter(new FileWriter(location + File.separator + name + ".csv"), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
-		
-		// Timestamp (ns), Multiplier, X*Multiplier (Gauss), Y*Multiplier (Gauss), Z*Multiplier (Gauss)
-		writer.writeNext("Timestamp", "Multiplier", "X", "Y", "Z");
+		InputStream log = open(name + ".log");
+		Progress progress = startProgress(name);
+		GPSInputStream in = new GPSInputStream(progress.track(log));
+		CsvSink csv = null;
+		NpyColumns columns = null;
 		try {
-			HMC5883LReading reading;
+			if (output == Output.NPY) {
+				columns = new NpyColumns(location, name, GPS_HEADER, NpyColumns.GPS_TYPES);
+			} else {
+				csv = openCsv(name, GPS_HEADER);
+			}
+			GPSReading reading;
 			while ((reading = in.readReading()) != null) {
-				String[] entries = new String[5];
-				entries[0] = String.valueOf(reading.timestamp);
-				entries[1] = String.valueOf(reading.scalingFactor);
-				entries[2] = String.valueOf(reading.values[0]); // x
-				entries[3] = String.valueOf(reading.values[1]); // y
-				entries[4] = String.valueOf(reading.values[2]); // z
-				writer.writeNext(entries);
+				if (!isInRange(reading.timestamp)) continue;
+				if (columns != null) {
+					columns.write(reading);
+				} else {
+					writeRow(csv, reading);
+				}
+				progress.addReadings(1);
 			}
+			report(name, log);
 		} finally {
 			try {
 				in.close();
 			} catch (IOException e) {
 				System.err.println("Failed to close " + name);
 			}
-			writer.close();
+			if (csv != null) {
+				csv.close();
+			}
+			if (columns != null) {
+				columns.close();
+			}
+			finishProgress(progress);
 		}
 	}
 	
-	public void convertMS5611() throws IOException {
-		String name = "ms5611";
+	/**
+	 * Exports a sensor log as NumPy column files (see {@link NpyColumns})
+	 * instead of a CSV file. The readings are decoded with a
+	 * {@link SensorLogCursor} straight into the buffers of the columns, so
+	 * logs of any length are exported in constant memory.
+	 * 
+	 * @param name Sensor name.
+	 * @param header Column names, as in the CSV file.
+	 * @throws IOException
+	 */
+	private void exportNpy(String name, String[] header) throws IOException {
 		System.out.println(location + File.separator + name + ".log");
-		MS5611InputStream in = new MS5611InputStream(new FileInputStream(location + File.separator + name + ".log"));
-		CSVWriter writer = new CSVWriter(new FileWriter(location + File.separator + name + ".csv"), CSVWriter.DEFAULT_SEPARATOR, CSVWriter.NO_QUOTE_CHARACTER);
+		InputStream log = open(name + ".log");
+		Progress progress = startProgress(name);
+		SensorLogCursor cursor = openCursor(name, log, progress);
+		NpyColumns columns = new NpyColumns(location, name, header, NpyColumns.getTypes(cursor.getFormat()));
+		try {
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				columns.write(cursor);
+				progress.addReadings(1);
+			}
+			if (cursor.getFaultCount() != 0) {
+				System.err.println(name + ": " + cursor.getFaultCount() + " faults");
+			}
+			report(name, log);
+		} finally {
+			try {
+				cursor.close();
+			} catch (IOException e) {
+				System.err.println("Failed to close " + name);
+			}
+			columns.close();
+			finishProgress(progress);
+		}
+	}
+	
+	/**
+	 * Follows the sensor logs while they are still being written, appending
+	 * newly written readings to the CSV files as they arrive, until the
+	 * process is interrupted (e.g. Ctrl-C). Each log is read once, from the
+	 * start, and the CSV files are flushed whenever a log is idle.
+	 * 
+	 * Only the logs in the location are followed (not their mirrors), and
+	 * flight logs are not supported.
+	 * 
+	 * @param pollInterval Interval at which the logs are checked for new
+	 *                     data (ms).
+	 */
+	public void follow(long pollInterval) {
+		final List<TailInputStream> tails = new ArrayList<TailInputStream>();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final String[] names = { ADS1115OutputStream.NAME, ADXL345OutputStream.NAME, ITG3205OutputStream.NAME, HMC5883LOutputStream.NAME, MS5611OutputStream.NAME };
+		final String[][] headers = { ADS1115_HEADER, ADXL345_HEADER, ITG3205_HEADER, HMC5883L_HEADER, MS5611_HEADER };
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			final String[] header = headers[i];
+			final TailInputStream tail = new TailInputStream(new File(location, name + ".log"), pollInterval);
+			tail.setBlockSize(blockSize);
+			tails.add(tail);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						follow(name, header, tail);
+					} catch (IOException e) {
+						System.err.println(name + ": " + e);
+					}
+				}
+			}, name));
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread("follow-stop") {
+			@Override
+			public void run() {
+				for (TailInputStream tail : tails) {
+					tail.stop();
+				}
+				try {
+					for (Thread thread : threads) {
+						thread.join(); // until its CSV file is closed
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					System.err.println(e);
+				}
+			}
+		});
 		
-		// Timestamp (ns), Temperature*100 (C), Pressure*100 (mbar)
-		writer.writeNext("Timestamp", "Temperature", "Pressure");
+		RateLimitedRunnable reporter = startReporter();
+		System.out.println("Following " + location + " (Ctrl-C to stop) ...");
+		for (Thread thread : threads) {
+			thread.start();
+		}
 		try {
-			MS5611Reading reading;
-			while ((reading = in.readReading()) != null) {
-				String[] entries = new String[3];
-				entries[0] = String.valueOf(reading.timestamp);
-				entries[1] = String.valueOf(reading.values[0]); // C * 100
-				entries[2] = String.valueOf(reading.values[1]); // mbar * 100
-				writer.writeNext(entries);
+			for (Thread thread : threads) {
+				thread.join();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println(e);
+		} finally {
+			reporter.setRunning(false);
+		}
+	}
+	
+	private void follow(String name, String[] header, TailInputStream tail) throws IOException {
+		Progress progress = startProgress(name);
+		CsvSink csv = openCsv(name, header);
+		tail.setIdle(csv);
+		InputStream log = LogFiles.follow(tail);
+		SensorLogCursor cursor = new SensorLogCursor(progress.track(log), SensorLogCursor.Format.getFormat(name));
+		LogFiles.setDiscontinuityListener(log, cursor);
+		try {
+			while (cursor.next()) {
+				if (!isInRange(cursor.getTimestamp())) continue;
+				writeRow(csv, cursor);
+				progress.addReadings(1);
+			}
+			report(name, log);
+		} catch (EOFException e) {
+			System.err.println(name + ": stopped within a record");
 		} finally {
 			try {
-				in.close();
+				cursor.close();
 			} catch (IOException e) {
 				System.err.println("Failed to close " + name);
 			}
-			writer.close();
+			csv.close();
+			finishProgress(progress);
 		}
 	}
 	
+	/**
+	 * Summarizes every sensor log (see {@link SensorSummary}), reading each
+	 * log once and the logs concurrently on the pool of threads, and writes
+	 * the report to summary.json as well as printing it. When a range is set,
+	 * only the readings in it are summarized.
+	 * 
+	 * Besides the statistics of each column, the report includes the peak of
+	 * each vector sensor's magnitude (e.g. peak acceleration), the burn of the
+	 * motor (from when the motor pressure stays above {@link #BURN_THRESHOLD}
+	 * for {@link #BURN_SUSTAIN} to when it stays below it as long) and
+	 * the barometric apogee above the first barometer reading.
+	 * 
+	 * @return false if any log failed to be summarized (a sensor which was
+	 *         not logged is not a failure).
+	 */
+	public boolean summarize() {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		RateLimitedRunnable reporter = startReporter();
+		List<SensorSummary> summaries = new ArrayList<SensorSummary>();
+		boolean isSummarized = true;
+		try {
+			List<Future<SensorSummary>> tasks = new ArrayList<Future<SensorSummary>>();
+			tasks.add(pool.submit(new Summary(ADS1115OutputStream.NAME, null)));
+			tasks.add(pool.submit(new Summary(ADXL345OutputStream.NAME, "peakAcceleration"))); // G
+			tasks.add(pool.submit(new Summary(ITG3205OutputStream.NAME, "peakRotation"))); // deg/s
+			tasks.add(pool.submit(new Summary(HMC5883LOutputStream.NAME, "peakField"))); // Gauss
+			tasks.add(pool.submit(new Summary(MS5611OutputStream.NAME, null)));
+			for (Future<SensorSummary> task : tasks) {
+				try {
+					summaries.add(task.get());
+				} catch (ExecutionException e) {
+					System.err.println(e.getCause());
+					isSummarized &= e.getCause() instanceof FileNotFoundException;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println(e);
+			isSummarized = false;
+		} finally {
+			reporter.setRunning(false);
+			pool.shutdownNow();
+		}
+		
+		for (SensorSummary summary : summaries) {
+			System.out.println(summary);
+		}
+		File file = new File(location, "summary.json");
+		try {
+			JsonWriter json = new JsonWriter(new BufferedWriter(new FileWriter(file)));
+			try {
+				json.setOutputType(JsonWriter.OutputType.json);
+				json.object();
+				for (SensorSummary summary : summaries) {
+					summary.write(json);
+				}
+				json.pop();
+			} finally {
+				json.close();
+			}
+			System.out.println("Summary written to " + file);
+		} catch (IOException e) {
+			System.err.println("Failed to write " + file + ": " + e);
+			isSummarized = false;
+		}
+		return isSummarized;
+	}
+	
+	/**
+	 * Summarizes one sensor log.
+	 */
+	private class Summary implements Callable<SensorSummary> {
+		
+		final String name;
+		final String peak;
+		
+		/**
+		 * @param name Sensor name.
+		 * @param peak Name of the peak magnitude (vector sensors only).
+		 */
+		Summary(String name, String peak) {
+			this.name = name;
+			this.peak = peak;
+		}
+		
+		@Override
+		public SensorSummary call() throws IOException {
+			System.out.println("Summarizing " + name + " ...");
+			InputStream log = open(name + ".log");
+			Progress progress = startProgress(name);
+			SensorLogCursor cursor = openCursor(name, log, progress);
+			try {
+				SensorSummary summary;
+				switch (cursor.getFormat()) {
+				case VECTOR:
+					summary = summarizeVector(cursor, progress);
+					break;
+				case BAROMETER:
+					summary = summarizeBarometer(cursor, progress);
+					break;
+				default:
+					summary = summarizeAnalog(cursor, progress);
+					break;
+				}
+				report(name, log);
+				return summary;
+			} finally {
+				try {
+					cursor.close();
+				} catch (IOException e) {
+					System.err.println("Failed to close " + name);
+				}
+				finishProgress(progress);
+			}
+		}
+		
+		private SensorSummary summarizeVector(SensorLogCursor cursor, Progress progress) throws IOException {
+			SensorSummary summary = new SensorSummary(name, "X", "Y", "Z");
+			double peakMagnitude = Double.NaN;
+			long peakAt = 0;
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				double x = cursor.getX() * cursor.getScalingFactor();
+				double y = cursor.getY() * cursor.getScalingFactor();
+				double z = cursor.getZ() * cursor.getScalingFactor();
+				summary.addReading(cursor.getTimestamp());
+				summary.add(0, x);
+				summary.add(1, y);
+				summary.add(2, z);
+				double magnitude = Math.sqrt(x * x + y * y + z * z);
+				if (!(magnitude <= peakMagnitude)) {
+					peakMagnitude = magnitude;
+					peakAt = cursor.getTimestamp();
+				}
+				progress.addReadings(1);
+			}
+			if (summary.getReadings() != 0) {
+				summary.put(peak, peakMagnitude);
+				summary.put(peak + "At", peakAt);
+			}
+			return summary;
+		}
+		
+		private SensorSummary summarizeBarometer(SensorLogCursor cursor, Progress progress) throws IOException {
+			SensorSummary summary = new SensorSummary(name, "Temperature", "Pressure"); // C, mbar
+			double ground = Double.NaN;
+			double minPressure = Double.NaN;
+			long apogeeAt = 0;
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				double pressure = cursor.getPressure() / 100.0;
+				summary.addReading(cursor.getTimestamp());
+				summary.add(0, cursor.getTemperature() / 100.0);
+				summary.add(1, pressure);
+				if (Double.isNaN(ground)) {
+					ground = pressure;
+				}
+				if (!(pressure >= minPressure)) {
+					minPressure = pressure;
+					apogeeAt = cursor.getTimestamp();
+				}
+				progress.addReadings(1);
+			}
+			if (summary.getReadings() != 0) {
+				summary.put("groundPressure", ground); // mbar
+				summary.put("apogee", getAltitude(minPressure, ground)); // m above ground
+				summary.put("apogeeAt", apogeeAt);
+			}
+			summary.put("faults", cursor.getFaultCount());
+			return summary;
+		}
+		
+		private SensorSummary summarizeAnalog(SensorLogCursor cursor, Progress progress) throws IOException {
+			SensorSummary summary = new SensorSummary(name, "A0", "A1", "A2", "A3"); // mV
+			double peakPressure = Double.NaN;
+			long peakAt = 0;
+			long burnStart = Long.MIN_VALUE;
+			long burnEnd = Long.MIN_VALUE;
+			long crossedAt = Long.MIN_VALUE; // first reading across the threshold since the last reading on this side
+			boolean isBurning = false;
+			boolean isBurnt = false;
+			while (cursor.next() && cursor.getTimestamp() <= to) {
+				if (cursor.getTimestamp() < from) continue;
+				summary.addReading(cursor.getTimestamp());
+				int channel = cursor.getChannel();
+				if (channel >= 0 && channel < ADS1115_CHANNELS) {
+					summary.add(channel, cursor.getValue());
+				}
+				if (channel == 0) {
+					double pressure = Pressures.getMotor(cursor.getValue());
+					if (!(pressure <= peakPressure)) {
+						peakPressure = pressure;
+						peakAt = cursor.getTimestamp();
+					}
+					if (!isBurnt) {
+						long timestamp = cursor.getTimestamp();
+						if ((pressure >= BURN_THRESHOLD) != isBurning) {
+							if (crossedAt == Long.MIN_VALUE) {
+								crossedAt = timestamp;
+							}
+							if (timestamp - crossedAt >= BURN_SUSTAIN) {
+								if (isBurning) {
+									isBurnt = true; // only the first burn is reported
+								} else {
+									burnStart = crossedAt;
+									burnEnd = timestamp;
+								}
+								isBurning = !isBurning;
+								crossedAt = Long.MIN_VALUE;
+							}
+						} else {
+							crossedAt = Long.MIN_VALUE;
+							if (isBurning) {
+								burnEnd = timestamp;
+							}
+						}
+					}
+				}
+				progress.addReadings(1);
+			}
+			if (!Double.isNaN(peakPressure)) {
+				summary.put("peakMotorPressure", peakPressure); // PSI
+				summary.put("peakMotorPressureAt", peakAt);
+			}
+			if (burnStart != Long.MIN_VALUE) {
+				summary.put("burnStart", burnStart);
+				summary.put("burnEnd", burnEnd);
+				summary.put("burnDuration", (burnEnd - burnStart) / NANOSECONDS_PER_SECOND); // s
+			}
+			return summary;
+		}
+		
+	}
+	
+	/**
+	 * Returns the altitude at the specified pressure above where the pressure
+	 * is the reference pressure, by the international barometric formula.
+	 * 
+	 * @param pressure mbar
+	 * @param reference mbar
+	 * @return m
+	 */
+	private static double getAltitude(double pressure, double reference) {
+		return 44330.0 * (1.0 - Math.pow(pressure / reference, 1.0 / 5.255));
+	}
+	
+	/**
+	 * Converts every sensor log into one table (merged.csv) with a column per
+	 * value, merging the logs by timestamp.
+	 * 
+	 * Without a rate, there is a row at the timestamp of every reading, on
+	 * which the values of the other sensors are held or interpolated. With a
+	 * rate, there are rows at that rate from the first reading to the last.
+	 * Each ADC channel is read as a separate signal, so rows are not sparse.
+	 * 
+	 * The logs are streamed (only two readings of each sensor are in memory
+	 * at a time), so the table can be written for logs of any length. When a
+	 * range is set, the rows are limited to it.
+	 * 
+	 * @param merge
+	 * @param rate Rows per second, or 0 for a row per reading.
+	 * @throws IOException
+	 */
+	public void convertMerged(Merge merge, double rate) throws IOException {
+		String name = "merged";
+		List<Signal> signals = new ArrayList<Signal>();
+		PriorityQueue<Signal> queue = new PriorityQueue<Signal>(16, Signal.NEXT_TIMESTAMP);
+		Progress progress = startProgress(name);
+		CsvSink csv = null;
+		try {
+			for (int i = 0; i < ADS1115_CHANNELS; i++) {
+				addSignal(signals, progress, ADS1115OutputStream.NAME, i, "A" + i); // mV
+			}
+			addSignal(signals, progress, ADXL345OutputStream.NAME, -1, "X", "Y", "Z"); // G
+			addSignal(signals, progress, ITG3205OutputStream.NAME, -1, "X", "Y", "Z"); // deg/s
+			addSignal(signals, progress, HMC5883LOutputStream.NAME, -1, "X", "Y", "Z"); // Gauss
+			addSignal(signals, progress, MS5611OutputStream.NAME, -1, "Temperature", "Pressure"); // C, mbar
+			if (signals.isEmpty()) {
+				System.err.println("No sensor readings to merge.");
+				return;
+			}
+			
+			List<String> header = new ArrayList<String>();
+			header.add("Timestamp");
+			for (Signal signal : signals) {
+				for (String column : signal.getColumns()) {
+					header.add(signal.getName() + "." + column);
+				}
+			}
+			csv = openCsv(name, header.toArray(new String[header.size()]));
+			queue.addAll(signals);
+			if (from != Long.MIN_VALUE) {
+				advance(queue, from - 1); // readings before the range are only held or interpolated from
+			}
+			
+			if (rate > 0 && !queue.isEmpty()) {
+				double period = NANOSECONDS_PER_SECOND / rate;
+				long start = Math.max(from, queue.peek().getNextTimestamp());
+				long end = start;
+				for (long row = 0; ; row++) {
+					long timestamp = start + Math.round(row * period); // no accumulated rounding error
+					if (timestamp > to) break;
+					end = Math.max(end, advance(queue, timestamp));
+					if (queue.isEmpty() && timestamp > end) break;
+					writeMergedRow(csv, timestamp, signals, merge);
+					progress.addReadings(1);
+				}
+			} else if (rate <= 0) {
+				while (!queue.isEmpty() && queue.peek().getNextTimestamp() <= to) {
+					long timestamp = queue.peek().getNextTimestamp();
+					advance(queue, timestamp);
+					writeMergedRow(csv, timestamp, signals, merge);
+					progress.addReadings(1);
+				}
+			}
+			
+			Set<String> reported = new HashSet<String>(); // ADC channels share a log
+			for (Signal signal : signals) {
+				if (reported.add(signal.getName())) {
+					report(signal.getName(), signal.getLog());
+				}
+			}
+		} finally {
+			for (Signal signal : signals) {
+				try {
+					signal.close();
+				} catch (IOException e) {
+					System.err.println("Failed to close " + signal.getName());
+				}
+			}
+			if (csv != null) {
+				csv.close();
+			}
+			finishProgress(progress);
+		}
+	}
+	
+	/**
+	 * Opens the log of a sensor as a signal of a merged table, unless the log
+	 * is missing or has no readings.
+	 * 
+	 * @param signals
+	 * @param progress
+	 * @param name Sensor name.
+	 * @param channel ADC channel (analog logs only).
+	 * @param columns
+	 * @throws IOException
+	 */
+	private void addSignal(List<Signal> signals, Progress progress, String name, int channel, String... columns) throws IOException {
+		InputStream log;
+		try {
+			log = open(name + ".log");
+		} catch (FileNotFoundException e) {
+			if (channel <= 0) {
+				System.err.println(name + ": " + e.getMessage() + ", not merged");
+			}
+			return;
+		}
+		
+		Signal signal = new Signal(name, columns, log, openCursor(name, log, progress), channel);
+		if (signal.hasNext()) {
+			signals.add(signal);
+		} else {
+			signal.close();
+		}
+	}
+	
+	/**
+	 * Advances every signal with readings up to the specified time.
+	 * 
+	 * @param queue Signals which have a next reading, by its timestamp.
+	 * @param timestamp
+	 * @return Timestamp of the last reading advanced past (or Long.MIN_VALUE).
+	 * @throws IOException
+	 */
+	private static long advance(PriorityQueue<Signal> queue, long timestamp) throws IOException {
+		long last = Long.MIN_VALUE;
+		while (!queue.isEmpty() && queue.peek().getNextTimestamp() <= timestamp) {
+			Signal signal = queue.poll();
+			last = Math.max(last, signal.getNextTimestamp());
+			signal.advance();
+			if (signal.hasNext()) {
+				queue.add(signal);
+			}
+		}
+		return last;
+	}
+	
+	private static void writeMergedRow(CsvSink csv, long timestamp, List<Signal> signals, Merge merge) throws IOException {
+		csv.field(timestamp);
+		for (Signal signal : signals) {
+			signal.write(csv, timestamp, merge);
+		}
+		csv.endRow();
+	}
+	
+	/**
+	 * Converts a flight log into the same per sensor CSV files as the
+	 * individual sensor logs. Flight logs are not indexed, so when a range is
+	 * set the whole log is read and filtered.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void convertFlightLog(File file) throws IOException {
+		System.out.println(file);
+		InputStream log = open(file.getName());
+		Progress progress = startProgress(file.getName());
+		FlightLogInputStream in = new FlightLogInputStream(progress.track(log));
+		String[] names = in.getChannels();
+		final FlightLogChannel[] channels = new FlightLogChannel[names.length];
+		LogFiles.setDiscontinuityListener(log, new DiscontinuityListener() {
+			@Override
+			public void onDiscontinuity() {
+				for (FlightLogChannel channel : channels) {
+					if (channel != null) {
+						channel.onDiscontinuity();
+					}
+				}
+			}
+		});
+		try {
+			for (int i = 0; i < names.length; i++) {
+				channels[i] = openFlightLogChannel(names[i]);
+				if (channels[i] == null) {
+					System.err.println("Skipping unsupported flight log channel: " + names[i]);
+				}
+			}
+			
+			FlightLogRecord record;
+			while ((record = in.readRecord()) != null) {
+				FlightLogChannel channel = channels[record.channel];
+				if (channel != null) {
+					channel.payload.setBuffer(record.payload);
+					channel.convert();
+				}
+				progress.addReadings(1);
+			}
+			report(file.getName(), log);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				System.err.println("Failed to close " + file.getName());
+			}
+			for (FlightLogChannel channel : channels) {
+				if (channel != null) {
+					channel.csv.close();
+				}
+			}
+			finishProgress(progress);
+		}
+	}
+	
+	private FlightLogChannel openFlightLogChannel(String name) throws IOException {
+		if (ADS1115OutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, ADS1115_HEADER) {
+				final ADS1115InputStream in = new ADS1115InputStream(payload);
+				@Override
+				void convert() throws IOException {
+					ADS1115Reading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		} else if (ADXL345OutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, ADXL345_HEADER) {
+				final ADXL345InputStream in = new ADXL345InputStream(payload);
+				@Override
+				void onDiscontinuity() {
+					in.onDiscontinuity();
+				}
+				@Override
+				void convert() throws IOException {
+					ADXL345Reading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		} else if (ITG3205OutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, ITG3205_HEADER) {
+				final ITG3205InputStream in = new ITG3205InputStream(payload);
+				@Override
+				void onDiscontinuity() {
+					in.onDiscontinuity();
+				}
+				@Override
+				void convert() throws IOException {
+					ITG3205Reading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		} else if (HMC5883LOutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, HMC5883L_HEADER) {
+				final HMC5883LInputStream in = new HMC5883LInputStream(payload);
+				@Override
+				void onDiscontinuity() {
+					in.onDiscontinuity();
+				}
+				@Override
+				void convert() throws IOException {
+					HMC5883LReading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		} else if (MS5611OutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, MS5611_HEADER) {
+				final MS5611InputStream in = new MS5611InputStream(payload);
+				@Override
+				void convert() throws IOException {
+					MS5611Reading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		} else if (GPSOutputStream.NAME.equals(name)) {
+			return new FlightLogChannel(name, GPS_HEADER) {
+				final GPSInputStream in = new GPSInputStream(payload);
+				@Override
+				void convert() throws IOException {
+					GPSReading reading;
+					while ((reading = in.readReading()) != null) {
+						if (isInRange(reading.timestamp)) {
+							writeRow(csv, reading);
+						}
+					}
+				}
+			};
+		}
+		return null;
+	}
+	
+	/**
+	 * Decodes the records of one flight log channel into its CSV file.
+	 */
+	private abstract class FlightLogChannel {
+		
+		final ByteBufferInputStream payload = new ByteBufferInputStream();
+		final CsvSink csv;
+		
+		FlightLogChannel(String name, String[] header) throws IOException {
+			csv = openCsv(name, header);
+		}
+		
+		/**
+		 * Called where records of the flight log are missing, before the
+		 * channel's next record is converted.
+		 */
+		void onDiscontinuity() {}
+		
+		/**
+		 * Converts the readings contained in the current payload.
+		 */
+		abstract void convert() throws IOException;
+		
+	}
+	
+	/**
+	 * Writes the current reading of a cursor, in the same CSV row as the
+	 * reading of the sensor's input stream.
+	 */
+	private static void writeRow(CsvSink csv, SensorLogCursor cursor) throws IOException {
+		csv.field(cursor.getTimestamp());
+		switch (cursor.getFormat()) {
+		case VECTOR:
+			csv.field(cursor.getScalingFactor());
+			csv.field(cursor.getX());
+			csv.field(cursor.getY());
+			csv.field(cursor.getZ());
+			break;
+		case BAROMETER:
+			csv.field(cursor.getTemperature()); // C * 100
+			csv.field(cursor.getPressure()); // mbar * 100
+			break;
+		case ANALOG:
+			for (int i = 0; i < ADS1115_CHANNELS; i++) {
+				csv.field(cursor.getChannel() == i ? cursor.getValue() : Float.NaN);
+			}
+			break;
+		}
+		csv.endRow();
+	}
+	
+	private static void writeRow(CsvSink csv, ADS1115Reading reading) throws IOException {
+		csv.field(reading.timestamp);
+		csv.field(reading.values[0]); // A0
+		csv.field(reading.values[1]); // A1
+		csv.field(reading.values[2]); // A2
+		csv.field(reading.values[3]); // A3
+		csv.endRow();
+	}
+	
+	private static void writeRow(CsvSink csv, ADXL345Reading reading) throws IOException {
+		writeRow(csv, reading.timestamp, reading.scalingFactor, reading.values);
+	}
+	
+	private static void writeRow(CsvSink csv, ITG3205Reading reading) throws IOException {
+		writeRow(csv, reading.timestamp, reading.scalingFactor, reading.values);
+	}
+	
+	private static void writeRow(CsvSink csv, HMC5883LReading reading) throws IOException {
+		writeRow(csv, reading.timestamp, reading.scalingFactor, reading.values);
+	}
+	
+	private static void writeRow(CsvSink csv, long timestamp, float scalingFactor, short[] values) throws IOException {
+		csv.field(timestamp);
+		csv.field(scalingFactor);
+		csv.field(values[0]); // x
+		csv.field(values[1]); // y
+		csv.field(values[2]); // z
+		csv.endRow();
+	}
+	
+	private static void writeRow(CsvSink csv, MS5611Reading reading) throws IOException {
+		csv.field(reading.timestamp);
+		csv.field(reading.values[0]); // C * 100
+		csv.field(reading.values[1]); // mbar * 100
+		csv.endRow();
+	}
+	
+	/**
+	 * Writes a GPS fix. Coordinates need the precision of a double, and GPS
+	 * logs are small, so they are formatted with {@link Double#toString(double)}.
+	 */
+	private static void writeRow(CsvSink csv, GPSReading reading) throws IOException {
+		csv.field(reading.timestamp);
+		csv.field(Double.toString(reading.latitude));
+		csv.field(Double.toString(reading.longitude));
+		csv.field(Double.toString(reading.altitude));
+		csv.field(reading.fixStatus);
+		csv.field(reading.satellites);
+		csv.endRow();
+	}
+	
 }
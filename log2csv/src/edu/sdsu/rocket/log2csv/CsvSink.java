@@ -0,0 +1,43 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Destination of the CSV rows of a converted log, written one field at a
+ * time.
+ */
+public interface CsvSink extends Closeable, Flushable {
+	
+	public void field(String value) throws IOException;
+	
+	public void field(long value) throws IOException;
+	
+	/**
+	 * Writes a float field, or an empty field if the value is NaN.
+	 * 
+	 * @param value
+	 * @throws IOException
+	 */
+	public void field(float value) throws IOException;
+	
+	public void endRow() throws IOException;
+	
+	/**
+	 * Returns an in-memory sink of the same kind, into which rows can be
+	 * formatted on another thread and then appended to this sink.
+	 * 
+	 * @return
+	 */
+	public CsvSink newBuffer();
+	
+	/**
+	 * Appends the rows of a buffer returned by {@link #newBuffer()}.
+	 * 
+	 * @param buffer
+	 * @throws IOException
+	 */
+	public void append(CsvSink buffer) throws IOException;
+
+}
@@ -0,0 +1,342 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes CSV rows by formatting numbers directly into a reusable byte buffer
+ * which is written to a channel once full, so no String is allocated per
+ * field.
+ * 
+ * Floats are written as the shortest decimal which reads back as the same
+ * float, in the notation of {@link Float#toString(float)} (plain between
+ * 10^-3 and 10^7, computerized scientific notation otherwise). Fields are
+ * separated by commas and never quoted, as with opencsv's CSVWriter without
+ * a quote character.
+ */
+public class FastCsvWriter implements CsvSink {
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20; // bytes
+	
+	private static final int MAX_NUMBER_SIZE = 32; // bytes
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16; // bytes, of in-memory buffers
+	
+	private static final byte SEPARATOR = ',';
+	private static final byte LINE_END = '\n';
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final double LOG10_2 = 0.30102999566398114;
+	
+	private static final double[] POW10 = new double[23]; // exactly representable powers of ten
+	private static final long[] LONG_POW10 = new long[19];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+		LONG_POW10[0] = 1;
+		for (int i = 1; i < LONG_POW10.length; i++) {
+			LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+		}
+	}
+	
+	private final WritableByteChannel channel;
+	private byte[] buffer;
+	private int position;
+	private boolean isRowStarted;
+	
+	/**
+	 * The last float written and its formatted form, since the same value
+	 * (e.g. a scaling factor) is often written on every row.
+	 */
+	private float lastFloat = Float.NaN;
+	private final byte[] lastFloatBytes = new byte[MAX_NUMBER_SIZE];
+	private int lastFloatLength;
+	
+	public FastCsvWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public FastCsvWriter(WritableByteChannel channel, int bufferSize) {
+		if (channel == null) throw new NullPointerException();
+		if (bufferSize < MAX_NUMBER_SIZE * 2) {
+			throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+		}
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+	}
+	
+	/**
+	 * In-memory buffer which grows as rows are written.
+	 */
+	private FastCsvWriter() {
+		this.channel = null;
+		this.buffer = new byte[INITIAL_BUFFER_SIZE];
+	}
+	
+	@Override
+	public void field(String value) throws IOException {
+		byte[] b = value.getBytes(UTF_8);
+		separate(b.length);
+		if (b.length > buffer.length - position) {
+			write(b, 0, b.length);
+		} else {
+			System.arraycopy(b, 0, buffer, position, b.length);
+			position += b.length;
+		}
+	}
+	
+	@Override
+	public void field(long value) throws IOException {
+		separate(MAX_NUMBER_SIZE);
+		position = putLong(buffer, position, value);
+	}
+	
+	@Override
+	public void field(float value) throws IOException {
+		separate(MAX_NUMBER_SIZE);
+		if (Float.isNaN(value)) return; // empty field
+		
+		if (Float.floatToRawIntBits(value) != Float.floatToRawIntBits(lastFloat)) {
+			lastFloat = value;
+			lastFloatLength = putFloat(lastFloatBytes, 0, value);
+		}
+		System.arraycopy(lastFloatBytes, 0, buffer, position, lastFloatLength);
+		position += lastFloatLength;
+	}
+	
+	@Override
+	public void endRow() throws IOException {
+		ensure(1);
+		buffer[position++] = LINE_END;
+		isRowStarted = false;
+	}
+	
+	/**
+	 * Writes the separator before a field (unless first in its row) and
+	 * ensures space for the field.
+	 */
+	private void separate(int size) throws IOException {
+		ensure(size + 1);
+		if (isRowStarted) {
+			buffer[position++] = SEPARATOR;
+		}
+		isRowStarted = true;
+	}
+	
+	/**
+	 * Ensures the specified number of bytes fit in the buffer (if possible),
+	 * writing it out or growing it.
+	 */
+	private void ensure(int size) throws IOException {
+		if (buffer.length - position >= size) return;
+		if (channel == null) {
+			byte[] b = new byte[Math.max(buffer.length * 2, position + size)];
+			System.arraycopy(buffer, 0, b, 0, position);
+			buffer = b;
+		} else {
+			flush();
+		}
+	}
+	
+	private void write(byte[] b, int off, int len) throws IOException {
+		if (channel == null) {
+			ensure(len);
+			System.arraycopy(b, off, buffer, position, len);
+			position += len;
+			return;
+		}
+		flush();
+		ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+	
+	@Override
+	public CsvSink newBuffer() {
+		return new FastCsvWriter();
+	}
+	
+	@Override
+	public void append(CsvSink buffer) throws IOException {
+		FastCsvWriter rows = (FastCsvWriter) buffer;
+		if (rows.position > this.buffer.length - position) {
+			write(rows.buffer, 0, rows.position);
+		} else {
+			System.arraycopy(rows.buffer, 0, this.buffer, position, rows.position);
+			position += rows.position;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (channel == null) return;
+		ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		position = 0;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (channel == null) return;
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes the decimal digits of a long.
+	 * 
+	 * @return Position after the digits.
+	 */
+	static int putLong(byte[] b, int pos, long value) {
+		if (value == Long.MIN_VALUE) {
+			byte[] digits = Long.toString(value).getBytes(UTF_8);
+			System.arraycopy(digits, 0, b, pos, digits.length);
+			return pos + digits.length;
+		}
+		if (value < 0) {
+			b[pos++] = '-';
+			value = -value;
+		}
+		int length = 1;
+		while (length < LONG_POW10.length && value >= LONG_POW10[length]) {
+			length++;
+		}
+		for (int i = pos + length - 1; i >= pos; i--) {
+			b[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + length;
+	}
+	
+	/**
+	 * Writes the shortest decimal which reads back as the specified float.
+	 * 
+	 * The digits are found by searching for the fewest significant digits the
+	 * float can be rounded to which still convert back to it. Values whose
+	 * digits cannot be scaled by an exact power of ten (far outside the range
+	 * of sensor readings) fall back to {@link Float#toString(float)}.
+	 * 
+	 * @return Position after the float.
+	 */
+	static int putFloat(byte[] b, int pos, float value) {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			return putString(b, pos, Float.toString(value));
+		}
+		if (value == 0f) {
+			return putString(b, pos, Float.floatToRawIntBits(value) == 0 ? "0.0" : "-0.0");
+		}
+		
+		float magnitude = Math.abs(value);
+		double d = magnitude;
+		int exponent = (int) Math.floor(Math.getExponent(magnitude) * LOG10_2); // may be one too low
+		if (exponent + 1 >= -22 && exponent + 1 <= 22
+				&& d >= (exponent + 1 >= 0 ? POW10[exponent + 1] : 1 / POW10[-exponent - 1])) {
+			exponent++;
+		}
+		
+		// the number of digits which reads back is monotonic, so search for the fewest
+		long m = 0;
+		int length = 0;
+		int low = 1;
+		int high = 9;
+		while (low <= high) {
+			int digits = (low + high) >>> 1;
+			int scale = digits - 1 - exponent; // d * 10^scale has the specified digits before the point
+			if (scale > 22 || scale < -22) {
+				return putString(b, pos, Float.toString(value));
+			}
+			long candidate = Math.round(scale >= 0 ? d * POW10[scale] : d / POW10[-scale]);
+			double decimal = scale >= 0 ? candidate / POW10[scale] : candidate * POW10[-scale];
+			if ((float) decimal == magnitude) {
+				m = candidate;
+				length = digits;
+				high = digits - 1;
+			} else {
+				low = digits + 1;
+			}
+		}
+		if (length == 0) {
+			return putString(b, pos, Float.toString(value));
+		}
+		
+		int e = exponent;
+		if (m >= LONG_POW10[length]) { // rounded up to the next power of ten
+			e++;
+			length++;
+		}
+		while (length > 1 && m % 10 == 0) {
+			m /= 10;
+			length--;
+		}
+		if (value < 0) {
+			b[pos++] = '-';
+		}
+		return putDecimal(b, pos, m, length, e);
+	}
+	
+	/**
+	 * Writes the decimal m * 10^(exponent - length + 1) where m has the
+	 * specified number of digits, in the notation of
+	 * {@link Float#toString(float)}.
+	 */
+	private static int putDecimal(byte[] b, int pos, long m, int length, int exponent) {
+		int start = pos;
+		pos = putLong(b, pos, m); // digits, placed below
+		
+		if (exponent >= -3 && exponent < 7) {
+			if (exponent < 0) { // 0.00ddd
+				int zeros = -exponent;
+				System.arraycopy(b, start, b, start + zeros + 1, length);
+				b[start] = '0';
+				b[start + 1] = '.';
+				for (int i = 0; i < zeros - 1; i++) {
+					b[start + 2 + i] = '0';
+				}
+				return start + zeros + 1 + length;
+			}
+			int integer = exponent + 1;
+			if (length <= integer) { // ddd00.0
+				for (int i = length; i < integer; i++) {
+					b[pos++] = '0';
+				}
+				b[pos++] = '.';
+				b[pos++] = '0';
+				return pos;
+			}
+			// dd.ddd
+			System.arraycopy(b, start + integer, b, start + integer + 1, length - integer);
+			b[start + integer] = '.';
+			return pos + 1;
+		}
+		
+		// d.dddE-n
+		if (length == 1) {
+			b[pos++] = '.';
+			b[pos++] = '0';
+		} else {
+			System.arraycopy(b, start + 1, b, start + 2, length - 1);
+			b[start + 1] = '.';
+			pos++;
+		}
+		b[pos++] = 'E';
+		return putLong(b, pos, exponent);
+	}
+	
+	private static int putString(byte[] b, int pos, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			b[pos++] = (byte) s.charAt(i);
+		}
+		return pos;
+	}
+
+}
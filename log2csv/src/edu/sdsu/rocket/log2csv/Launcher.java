@@ -1,18 +1,107 @@
 package edu.sdsu.rocket.log2csv;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.sdsu.rocket.core.io.BlockOutputStream;
+import edu.sdsu.rocket.core.io.TailInputStream;
 
 public class Launcher {
 	
 	private static final String NAME = System.getProperty("program.name");
 
 	public static void main(String[] args) {
-		if (args.length == 0) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Converter.Output output = Converter.Output.FAST;
+		Converter.Merge merge = null;
+		double rate = 0;
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		int blockSize = BlockOutputStream.DEFAULT_BLOCK_SIZE;
+		boolean isFollow = false;
+		boolean isSummary = false;
+		boolean isBatch = false;
+		List<String> folders = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("--threads".equals(args[i]) && i + 1 < args.length) {
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads <= 0) {
+					System.err.println("Invalid number of threads: " + args[i]);
+					System.exit(1);
+				}
+			} else if ("--csv".equals(args[i]) && i + 1 < args.length) {
+				try {
+					output = Converter.Output.valueOf(args[++i].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid CSV writer: " + args[i]);
+					System.exit(1);
+				}
+			} else if ("--merge".equals(args[i]) && i + 1 < args.length) {
+				try {
+					merge = Converter.Merge.valueOf(args[++i].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid merge: " + args[i]);
+					System.exit(1);
+				}
+			} else if ("--rate".equals(args[i]) && i + 1 < args.length) {
+				try {
+					rate = Double.parseDouble(args[++i]);
+				} catch (NumberFormatException e) {
+					rate = 0;
+				}
+				if (!(rate > 0) || Double.isInfinite(rate)) {
+					System.err.println("Invalid rate: " + args[i]);
+					System.exit(1);
+				}
+			} else if (("--from".equals(args[i]) || "--to".equals(args[i])) && i + 1 < args.length) {
+				try {
+					if ("--from".equals(args[i])) {
+						from = Long.parseLong(args[++i]);
+					} else {
+						to = Long.parseLong(args[++i]);
+					}
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid timestamp: " + args[i]);
+					System.exit(1);
+				}
+			} else if ("--block-size".equals(args[i]) && i + 1 < args.length) {
+				try {
+					blockSize = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					blockSize = 0;
+				}
+				if (blockSize <= BlockOutputStream.HEADER_SIZE) {
+					System.err.println("Invalid block size: " + args[i]);
+					System.exit(1);
+				}
+			} else if ("--follow".equals(args[i])) {
+				isFollow = true;
+			} else if ("--summary".equals(args[i])) {
+				isSummary = true;
+			} else if ("--batch".equals(args[i])) {
+				isBatch = true;
+			} else if ("--npy".equals(args[i])) {
+				output = Converter.Output.NPY;
+			} else if (args[i].startsWith("--")) {
+				usage();
+				System.exit(1);
+			} else {
+				folders.add(args[i]);
+			}
+		}
+		
+		if (folders.isEmpty()) {
 			usage();
 			System.exit(1);
 		}
 		
-		File folder = new File(args[0]);
+		File folder = new File(folders.get(0));
 		if (!folder.exists()) {
 			System.err.println("Location not found: " + folder);
 			System.exit(1);
@@ -22,13 +111,146 @@ public class Launcher {
 			System.exit(1);
 		}
 		
-		Converter converter = new Converter(folder);
-		converter.convert();
+		File[] mirrors = new File[folders.size() - 1];
+		for (int i = 0; i < mirrors.length; i++) {
+			mirrors[i] = new File(folders.get(i + 1));
+			if (!mirrors[i].isDirectory()) {
+				System.err.println("Location not found: " + mirrors[i]);
+				System.exit(1);
+			}
+		}
+		
+		if (from > to) {
+			System.err.println("Invalid range: " + from + " to " + to);
+			System.exit(1);
+		}
+		if (output == Converter.Output.NPY && (isFollow || merge != null || rate != 0)) {
+			System.err.println("--npy cannot be combined with --follow, --merge or --rate.");
+			System.exit(1);
+		}
+		if (isFollow && isSummary) {
+			System.err.println("--follow cannot be combined with --summary.");
+			System.exit(1);
+		}
+		
+		if (isBatch) {
+			if (isFollow) {
+				System.err.println("--batch cannot be combined with --follow.");
+				System.exit(1);
+			}
+			File[] roots = new File[folders.size()];
+			roots[0] = folder;
+			System.arraycopy(mirrors, 0, roots, 1, mirrors.length);
+			String options = (isSummary ? "summary" : output.name().toLowerCase())
+					+ " merge=" + merge + " rate=" + rate + " from=" + from + " to=" + to + " blockSize=" + blockSize;
+			
+			final Converter.Output batchOutput = output;
+			final Converter.Merge batchMerge = merge;
+			final double batchRate = rate;
+			final long batchFrom = from;
+			final long batchTo = to;
+			final int batchBlockSize = blockSize;
+			final boolean isBatchSummary = isSummary;
+			int failures = new Batch(roots, threads, options).run(new Batch.Task() {
+				@Override
+				public boolean convert(File folder, File[] mirrors, int threads) {
+					Converter converter = new Converter(folder, mirrors);
+					converter.setThreads(threads);
+					converter.setOutput(batchOutput);
+					converter.setRange(batchFrom, batchTo);
+					converter.setBlockSize(batchBlockSize);
+					return Launcher.convert(converter, batchMerge, batchRate, isBatchSummary);
+				}
+			});
+			if (failures != 0) {
+				System.exit(1);
+			}
+			return;
+		}
+		
+		Converter converter = new Converter(folder, mirrors);
+		converter.setThreads(threads);
+		converter.setOutput(output);
+		converter.setRange(from, to);
+		converter.setBlockSize(blockSize);
+		if (isFollow) {
+			converter.follow(TailInputStream.DEFAULT_POLL_INTERVAL);
+		} else if (!convert(converter, merge, rate, isSummary)) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Runs a conversion (or summary) of one location.
+	 * 
+	 * @return false if it failed.
+	 */
+	private static boolean convert(Converter converter, Converter.Merge merge, double rate, boolean isSummary) {
+		if (isSummary) {
+			return converter.summarize();
+		} else if (merge == null && rate == 0) {
+			return converter.convert();
+		} else {
+			try {
+				converter.convertMerged(merge == null ? Converter.Merge.LINEAR : merge, rate);
+				return true;
+			} catch (IOException e) {
+				System.err.println(e);
+				return false;
+			}
+		}
 	}
 
 	private static void usage() {
 		System.out.println("Usage:");
-		System.out.println("  " + NAME + " FOLDER");
+		System.out.println("  " + NAME + " [--threads N] [--csv fast|opencsv]");
+		System.out.println("      [--merge hold|linear] [--rate HZ] [--from NS] [--to NS]");
+		System.out.println("      [--block-size BYTES] [--follow] [--npy] [--summary] [--batch]");
+		System.out.println("      FOLDER [FOLDER ...]");
+		System.out.println();
+		System.out.println("The CSV files are written to the first FOLDER. When logging to");
+		System.out.println("several directories, pass all of them: damaged blocks of mirrored");
+		System.out.println("logs are recovered from the other copies and striped logs are");
+		System.out.println("reassembled in order. Pass the logging.blockSize the logs were");
+		System.out.println("written with as BYTES if it is not the default (" + BlockOutputStream.DEFAULT_BLOCK_SIZE + ").");
+		System.out.println();
+		System.out.println("The sensor logs are converted concurrently on N threads (by");
+		System.out.println("default the number of processors).");
+		System.out.println();
+		System.out.println("The CSV files are written by a buffered writer which formats");
+		System.out.println("numbers without allocating strings (fast, the default) or by");
+		System.out.println("opencsv (opencsv).");
+		System.out.println();
+		System.out.println("With --merge or --rate, all sensor logs are instead merged by");
+		System.out.println("timestamp into one table (merged.csv), with a row per reading");
+		System.out.println("or HZ rows per second. The other sensors' values on each row are");
+		System.out.println("the last readings (hold) or interpolated between the readings");
+		System.out.println("either side (linear, the default).");
+		System.out.println();
+		System.out.println("With --from and/or --to, only readings with timestamps (ns) in");
+		System.out.println("that range are converted. Each log is indexed once (written");
+		System.out.println("next to it as LOG.idx) so later ranges seek straight to it.");
+		System.out.println();
+		System.out.println("With --follow, the sensor logs in the first FOLDER are followed");
+		System.out.println("while the server is still writing them: new readings are");
+		System.out.println("appended to the CSV files as they are logged, until Ctrl-C.");
+		System.out.println();
+		System.out.println("With --npy, each column of each sensor log is instead exported");
+		System.out.println("as a NumPy file (e.g. adxl345.X.npy), which can be loaded or");
+		System.out.println("memory-mapped with numpy.load(FILE, mmap_mode=\"r\").");
+		System.out.println();
+		System.out.println("With --summary, nothing is converted: each sensor log is read");
+		System.out.println("once to report its sample rate, interval jitter and gaps, the");
+		System.out.println("range, mean and RMS of each value, peak acceleration, the motor");
+		System.out.println("burn and the barometric apogee (written to summary.json).");
+		System.out.println();
+		System.out.println("With --batch, each FOLDER is instead a root of log directories");
+		System.out.println("(e.g. a logging directory of the server): every directory of");
+		System.out.println("logs under the first root is converted, with the same directory");
+		System.out.println("under the other roots as its copies. Directories converted before");
+		System.out.println("with the same options and unchanged since (as recorded in their");
+		System.out.println("log2csv.manifest) are skipped, and the rest are converted in");
+		System.out.println("parallel on the N threads.");
 		System.out.println();
 	}
 	
@@ -0,0 +1,133 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import edu.sdsu.rocket.core.io.GPSInputStream.GPSReading;
+import edu.sdsu.rocket.core.io.SensorLogCursor;
+
+/**
+ * The columns of a sensor log exported as NumPy .npy files, one per column
+ * of its CSV file ("adxl345.Timestamp.npy", "adxl345.X.npy", ...), each
+ * with a value per reading:
+ * 
+ * Vector logs: Timestamp (int64, ns), Multiplier (float32), X, Y, Z (int16,
+ * raw, as in the CSV files).
+ * Barometer logs: Timestamp (int64, ns), Temperature (int32, C * 100),
+ * Pressure (int32, mbar * 100).
+ * Analog logs: Timestamp (int64, ns), A0 to A3 (float32, mV), NaN except for
+ * the channel of the reading.
+ * GPS logs: Timestamp (int64, ns), Latitude, Longitude (float64, degrees),
+ * Altitude (float64, m MSL), Fix, Satellites (uint8).
+ */
+class NpyColumns implements Closeable {
+	
+	static final NpyWriter.Type[] GPS_TYPES = {
+		NpyWriter.Type.INT64,
+		NpyWriter.Type.FLOAT64,
+		NpyWriter.Type.FLOAT64,
+		NpyWriter.Type.FLOAT64,
+		NpyWriter.Type.UINT8,
+		NpyWriter.Type.UINT8
+	};
+	
+	private final NpyWriter[] columns;
+	
+	/**
+	 * @param location Folder the files are written to.
+	 * @param name Sensor name.
+	 * @param header Column names of the sensor's CSV file.
+	 * @param types Types of the columns.
+	 * @throws IOException
+	 */
+	NpyColumns(File location, String name, String[] header, NpyWriter.Type[] types) throws IOException {
+		this.columns = new NpyWriter[header.length];
+		try {
+			for (int i = 0; i < header.length; i++) {
+				File file = new File(location, name + "." + header[i] + NpyWriter.SUFFIX);
+				columns[i] = new NpyWriter(file, types[i]);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the types of the columns of a sensor log.
+	 * 
+	 * @param format
+	 * @return
+	 */
+	static NpyWriter.Type[] getTypes(SensorLogCursor.Format format) {
+		switch (format) {
+		case VECTOR:
+			return new NpyWriter.Type[] { NpyWriter.Type.INT64, NpyWriter.Type.FLOAT32, NpyWriter.Type.INT16, NpyWriter.Type.INT16, NpyWriter.Type.INT16 };
+		case BAROMETER:
+			return new NpyWriter.Type[] { NpyWriter.Type.INT64, NpyWriter.Type.INT32, NpyWriter.Type.INT32 };
+		default:
+			return new NpyWriter.Type[] { NpyWriter.Type.INT64, NpyWriter.Type.FLOAT32, NpyWriter.Type.FLOAT32, NpyWriter.Type.FLOAT32, NpyWriter.Type.FLOAT32 };
+		}
+	}
+	
+	/**
+	 * Writes the current reading of a cursor.
+	 * 
+	 * @param cursor
+	 * @throws IOException
+	 */
+	void write(SensorLogCursor cursor) throws IOException {
+		columns[0].putLong(cursor.getTimestamp());
+		switch (cursor.getFormat()) {
+		case VECTOR:
+			columns[1].putFloat(cursor.getScalingFactor());
+			columns[2].putShort(cursor.getX());
+			columns[3].putShort(cursor.getY());
+			columns[4].putShort(cursor.getZ());
+			break;
+		case BAROMETER:
+			columns[1].putInt(cursor.getTemperature());
+			columns[2].putInt(cursor.getPressure());
+			break;
+		case ANALOG:
+			for (int i = 1; i < columns.length; i++) {
+				columns[i].putFloat(cursor.getChannel() == i - 1 ? cursor.getValue() : Float.NaN);
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Writes a GPS fix, into columns of {@link #GPS_TYPES}.
+	 * 
+	 * @param reading
+	 * @throws IOException
+	 */
+	void write(GPSReading reading) throws IOException {
+		columns[0].putLong(reading.timestamp);
+		columns[1].putDouble(reading.latitude);
+		columns[2].putDouble(reading.longitude);
+		columns[3].putDouble(reading.altitude);
+		columns[4].putByte((byte) reading.fixStatus);
+		columns[5].putByte((byte) reading.satellites);
+	}
+	
+	/**
+	 * Closes every column, writing the final length into its header.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (NpyWriter column : columns) {
+			if (column == null) continue;
+			try {
+				column.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+}
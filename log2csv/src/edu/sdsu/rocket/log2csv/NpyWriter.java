@@ -0,0 +1,183 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes one column of values to a NumPy .npy file (format version 1.0), so
+ * that it can be loaded or memory-mapped directly, e.g. with
+ * numpy.load("adxl345.X.npy", mmap_mode="r").
+ * 
+ * The file is a 128 byte header followed by the values, contiguous and
+ * little-endian. The number of values is only known once the column is
+ * closed, so the header is written first with room for any length and
+ * rewritten on close. Values are buffered and written to the file once the
+ * buffer is full, so a column of any length is streamed.
+ */
+public class NpyWriter implements Closeable {
+	
+	public enum Type {
+		UINT8("|u1", 1),
+		INT16("<i2", 2),
+		INT32("<i4", 4),
+		INT64("<i8", 8),
+		FLOAT32("<f4", 4),
+		FLOAT64("<f8", 8);
+		
+		private final String descr;
+		private final int size; // bytes
+		
+		private Type(String descr, int size) {
+			this.descr = descr;
+			this.size = size;
+		}
+	}
+	
+	public static final String SUFFIX = ".npy";
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16; // bytes
+	
+	private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y' };
+	private static final int HEADER_SIZE = 128; // bytes, a multiple of 64 so the values are aligned
+	
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+	
+	private final Type type;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long length;
+	
+	public NpyWriter(File file, Type type) throws IOException {
+		this(file, type, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * @param file
+	 * @param type Type of the values.
+	 * @param bufferSize Size of the buffer (bytes).
+	 * @throws IOException
+	 */
+	public NpyWriter(File file, Type type, int bufferSize) throws IOException {
+		if (type == null) throw new NullPointerException();
+		if (bufferSize < type.size) {
+			throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+		}
+		this.type = type;
+		this.buffer = ByteBuffer.allocate(bufferSize - bufferSize % type.size).order(ByteOrder.LITTLE_ENDIAN);
+		this.channel = new FileOutputStream(file).getChannel();
+		try {
+			writeHeader();
+			channel.position(HEADER_SIZE);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the number of values written.
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	public void putByte(byte value) throws IOException {
+		ensure();
+		buffer.put(value);
+		length++;
+	}
+	
+	public void putShort(short value) throws IOException {
+		ensure();
+		buffer.putShort(value);
+		length++;
+	}
+	
+	public void putInt(int value) throws IOException {
+		ensure();
+		buffer.putInt(value);
+		length++;
+	}
+	
+	public void putLong(long value) throws IOException {
+		ensure();
+		buffer.putLong(value);
+		length++;
+	}
+	
+	public void putFloat(float value) throws IOException {
+		ensure();
+		buffer.putFloat(value);
+		length++;
+	}
+	
+	public void putDouble(double value) throws IOException {
+		ensure();
+		buffer.putDouble(value);
+		length++;
+	}
+	
+	private void ensure() throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Writes the buffered values to the file (the header is only up to date
+	 * once closed).
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Writes the header, with the number of values written so far.
+	 */
+	private void writeHeader() throws IOException {
+		String dict = "{'descr': '" + type.descr + "', 'fortran_order': False, 'shape': (" + length + ",), }";
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.put((byte) 1); // major version
+		header.put((byte) 0); // minor version
+		header.putShort((short) (HEADER_SIZE - header.position() - 2));
+		header.put(dict.getBytes(US_ASCII));
+		while (header.position() < HEADER_SIZE - 1) {
+			header.put((byte) ' ');
+		}
+		header.put((byte) '\n');
+		header.flip();
+		
+		long position = 0;
+		while (header.hasRemaining()) {
+			position += channel.write(header, position);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			writeHeader();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
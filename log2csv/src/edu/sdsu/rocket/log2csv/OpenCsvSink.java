@@ -0,0 +1,85 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Writes rows through an opencsv {@link CSVWriter}, formatting every field
+ * into a String.
+ */
+public class OpenCsvSink implements CsvSink {
+	
+	private final CSVWriter writer;
+	private final List<String[]> rows;
+	private final List<String> fields = new ArrayList<String>();
+	
+	public OpenCsvSink(CSVWriter writer) {
+		if (writer == null) throw new NullPointerException();
+		this.writer = writer;
+		this.rows = null;
+	}
+	
+	/**
+	 * In-memory buffer of rows.
+	 */
+	private OpenCsvSink() {
+		this.writer = null;
+		this.rows = new ArrayList<String[]>();
+	}
+	
+	@Override
+	public void field(String value) {
+		fields.add(value);
+	}
+	
+	@Override
+	public void field(long value) {
+		fields.add(String.valueOf(value));
+	}
+	
+	@Override
+	public void field(float value) {
+		fields.add(Float.isNaN(value) ? "" : String.valueOf(value));
+	}
+	
+	@Override
+	public void endRow() {
+		String[] row = fields.toArray(new String[fields.size()]);
+		fields.clear();
+		if (writer == null) {
+			rows.add(row);
+		} else {
+			writer.writeNext(row);
+		}
+	}
+	
+	@Override
+	public CsvSink newBuffer() {
+		return new OpenCsvSink();
+	}
+	
+	@Override
+	public void append(CsvSink buffer) {
+		for (String[] row : ((OpenCsvSink) buffer).rows) {
+			writer.writeNext(row);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Tracks the conversion of one log (bytes decoded and readings converted) so
+ * that progress and throughput can be reported while logs are converted
+ * concurrently.
+ */
+public class Progress {
+	
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	private static final double BYTES_PER_MEGABYTE = 1 << 20;
+	
+	private final String name;
+	private final long start = System.nanoTime();
+	
+	private volatile long bytes;
+	private volatile long readings;
+	private volatile long finish;
+	
+	public Progress(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns a stream which counts the bytes read from the specified log.
+	 *
+	 * @param in
+	 * @return
+	 */
+	public InputStream track(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) bytes++;
+				return b;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) bytes += n;
+				return n;
+			}
+		};
+	}
+	
+	/**
+	 * Adds converted readings (only called by the converting thread).
+	 *
+	 * @param count
+	 */
+	public void addReadings(long count) {
+		readings += count;
+	}
+	
+	public void finish() {
+		finish = System.nanoTime();
+	}
+	
+	public boolean isFinished() {
+		return finish != 0;
+	}
+	
+	@Override
+	public String toString() {
+		long end = isFinished() ? finish : System.nanoTime();
+		double seconds = (end - start) / NANOSECONDS_PER_SECOND;
+		double megabytes = bytes / BYTES_PER_MEGABYTE;
+		return String.format(Locale.US, "%s: %s%d readings, %.1f MB in %.1f s (%.1f MB/s, %.0f readings/s)",
+				name,
+				isFinished() ? "done, " : "",
+				readings,
+				megabytes,
+				seconds,
+				seconds == 0 ? 0 : megabytes / seconds,
+				seconds == 0 ? 0 : readings / seconds);
+	}
+
+}
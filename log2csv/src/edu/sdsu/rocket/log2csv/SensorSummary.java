@@ -0,0 +1,267 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.badlogic.gdx.utils.JsonWriter;
+
+/**
+ * Statistics of one sensor log, accumulated in a single pass over its
+ * readings in constant memory: the achieved sample rate, the intervals
+ * between readings (range, jitter and a histogram, in which gaps stand out),
+ * min/max/mean/RMS of each column and any values derived by the caller
+ * (e.g. peak acceleration or apogee).
+ */
+class SensorSummary {
+	
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+	private static final double NANOSECONDS_PER_MICROSECOND = 1e3;
+	
+	/**
+	 * Interval histogram buckets, by powers of two of microseconds: bucket 0
+	 * is under 1 us, bucket i is [2^(i-1), 2^i) us.
+	 */
+	private static final int BUCKETS = 40;
+	
+	private final String name;
+	private final String[] columns;
+	
+	private long readings;
+	private long first;
+	private long last;
+	
+	private long intervals;
+	private double intervalMean;
+	private double intervalM2; // sum of squared differences from the mean (Welford)
+	private long minInterval = Long.MAX_VALUE;
+	private long maxInterval = Long.MIN_VALUE;
+	private long maxIntervalAt; // timestamp of the reading ending the longest interval
+	private final long[] histogram = new long[BUCKETS];
+	
+	private final long[] counts;
+	private final double[] min;
+	private final double[] max;
+	private final double[] sum;
+	private final double[] sumOfSquares;
+	
+	private final Map<String, Number> derived = new LinkedHashMap<String, Number>();
+	
+	/**
+	 * @param name Sensor name.
+	 * @param columns Names of the values of each reading.
+	 */
+	SensorSummary(String name, String... columns) {
+		this.name = name;
+		this.columns = columns;
+		counts = new long[columns.length];
+		min = new double[columns.length];
+		max = new double[columns.length];
+		sum = new double[columns.length];
+		sumOfSquares = new double[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			min[i] = Double.POSITIVE_INFINITY;
+			max[i] = Double.NEGATIVE_INFINITY;
+		}
+	}
+	
+	String getName() {
+		return name;
+	}
+	
+	long getReadings() {
+		return readings;
+	}
+	
+	/**
+	 * Adds a reading at the specified time, whose values are then added with
+	 * {@link #add(int, double)}.
+	 * 
+	 * @param timestamp
+	 */
+	void addReading(long timestamp) {
+		if (readings != 0) {
+			long interval = timestamp - last;
+			intervals++;
+			double delta = interval - intervalMean;
+			intervalMean += delta / intervals;
+			intervalM2 += delta * (interval - intervalMean);
+			if (interval < minInterval) {
+				minInterval = interval;
+			}
+			if (interval > maxInterval) {
+				maxInterval = interval;
+				maxIntervalAt = timestamp;
+			}
+			histogram[getBucket(interval)]++;
+		} else {
+			first = timestamp;
+		}
+		last = timestamp;
+		readings++;
+	}
+	
+	private static int getBucket(long interval) {
+		long microseconds = interval / 1000L;
+		if (microseconds <= 0) return 0;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(microseconds));
+	}
+	
+	/**
+	 * Adds a value of the current reading. NaN (no value) is ignored.
+	 * 
+	 * @param column
+	 * @param value
+	 */
+	void add(int column, double value) {
+		if (Double.isNaN(value)) return;
+		counts[column]++;
+		if (value < min[column]) {
+			min[column] = value;
+		}
+		if (value > max[column]) {
+			max[column] = value;
+		}
+		sum[column] += value;
+		sumOfSquares[column] += value * value;
+	}
+	
+	/**
+	 * Sets a value derived from the readings, reported after the columns.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	void put(String key, double value) {
+		derived.put(key, value);
+	}
+	
+	/**
+	 * Sets a timestamp (or count) derived from the readings.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	void put(String key, long value) {
+		derived.put(key, value);
+	}
+	
+	private double getDuration() {
+		return (last - first) / NANOSECONDS_PER_SECOND;
+	}
+	
+	/**
+	 * Returns the achieved sample rate (Hz).
+	 */
+	private double getRate() {
+		return last == first ? Double.NaN : intervals / getDuration();
+	}
+	
+	/**
+	 * Returns the standard deviation of the intervals (ns).
+	 */
+	private double getJitter() {
+		return intervals < 2 ? Double.NaN : Math.sqrt(intervalM2 / (intervals - 1));
+	}
+	
+	/**
+	 * Writes the summary as a JSON object. Values which are undefined (e.g.
+	 * the rate of a log with a single reading) are written as null.
+	 * 
+	 * @param json
+	 * @throws IOException
+	 */
+	void write(JsonWriter json) throws IOException {
+		json.object(name);
+		json.set("readings", readings);
+		if (readings != 0) {
+			json.set("start", first);
+			json.set("end", last);
+			set(json, "duration", getDuration());
+			set(json, "rate", getRate());
+		}
+		if (intervals != 0) {
+			json.object("interval"); // ns
+			json.set("min", minInterval);
+			set(json, "mean", intervalMean);
+			json.set("max", maxInterval);
+			json.set("maxAt", maxIntervalAt);
+			set(json, "jitter", getJitter());
+			json.array("histogram"); // us
+			for (int i = 0; i < BUCKETS; i++) {
+				if (histogram[i] == 0) continue;
+				json.object();
+				json.set("from", i == 0 ? 0L : 1L << (i - 1));
+				json.set("to", i == BUCKETS - 1 ? null : 1L << i);
+				json.set("count", histogram[i]);
+				json.pop();
+			}
+			json.pop();
+			json.pop();
+		}
+		
+		json.object("columns");
+		for (int i = 0; i < columns.length; i++) {
+			json.object(columns[i]);
+			json.set("count", counts[i]);
+			if (counts[i] != 0) {
+				set(json, "min", min[i]);
+				set(json, "max", max[i]);
+				set(json, "mean", sum[i] / counts[i]);
+				set(json, "rms", Math.sqrt(sumOfSquares[i] / counts[i]));
+			}
+			json.pop();
+		}
+		json.pop();
+		
+		for (Map.Entry<String, Number> entry : derived.entrySet()) {
+			if (entry.getValue() instanceof Double) {
+				set(json, entry.getKey(), entry.getValue().doubleValue());
+			} else {
+				json.set(entry.getKey(), entry.getValue());
+			}
+		}
+		json.pop();
+	}
+	
+	private static void set(JsonWriter json, String key, double value) throws IOException {
+		json.set(key, Double.isNaN(value) || Double.isInfinite(value) ? null : value);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format(Locale.US, "%s: %d readings", name, readings));
+		if (readings != 0) {
+			s.append(String.format(Locale.US, " over %.3f s (%.1f Hz)", getDuration(), getRate()));
+		}
+		if (intervals != 0) {
+			s.append(String.format(Locale.US, "%n  interval: min %.1f us, mean %.1f us, max %.1f us at %d, jitter %.1f us",
+					minInterval / NANOSECONDS_PER_MICROSECOND,
+					intervalMean / NANOSECONDS_PER_MICROSECOND,
+					maxInterval / NANOSECONDS_PER_MICROSECOND,
+					maxIntervalAt,
+					getJitter() / NANOSECONDS_PER_MICROSECOND));
+			s.append(String.format(Locale.US, "%n  histogram (us):"));
+			for (int i = 0; i < BUCKETS; i++) {
+				if (histogram[i] == 0) continue;
+				s.append(String.format(Locale.US, " [%d,%s)=%d",
+						i == 0 ? 0L : 1L << (i - 1),
+						i == BUCKETS - 1 ? "" : Long.toString(1L << i),
+						histogram[i]));
+			}
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (counts[i] == 0) continue;
+			s.append(String.format(Locale.US, "%n  %s: min %.6g, max %.6g, mean %.6g, rms %.6g",
+					columns[i], min[i], max[i], sum[i] / counts[i], Math.sqrt(sumOfSquares[i] / counts[i])));
+		}
+		for (Map.Entry<String, Number> entry : derived.entrySet()) {
+			String format = entry.getValue() instanceof Double ? "%n  %s: %.6g" : "%n  %s: %d";
+			s.append(String.format(Locale.US, format, entry.getKey(), entry.getValue()));
+		}
+		return s.toString();
+	}
+
+}
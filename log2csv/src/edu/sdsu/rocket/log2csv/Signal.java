@@ -0,0 +1,160 @@
+package edu.sdsu.rocket.log2csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+
+import edu.sdsu.rocket.core.io.SensorLogCursor;
+
+/**
+ * Readings of one sensor (or one ADC channel) as columns of a merged table.
+ * 
+ * The log is read one reading ahead, so that the values at any time between
+ * the previous and next readings can be held or interpolated. Only these two
+ * readings are kept in memory, however long the log.
+ */
+class Signal {
+	
+	/**
+	 * Orders signals by the timestamp of their next reading.
+	 */
+	static final Comparator<Signal> NEXT_TIMESTAMP = new Comparator<Signal>() {
+		@Override
+		public int compare(Signal a, Signal b) {
+			return a.nextTimestamp < b.nextTimestamp ? -1 : (a.nextTimestamp == b.nextTimestamp ? 0 : 1);
+		}
+	};
+	
+	private final String name;
+	private final String[] columns;
+	private final InputStream log;
+	private final SensorLogCursor cursor;
+	private final int channel;
+	
+	private boolean hasPrevious;
+	private long previousTimestamp;
+	private float[] previous;
+	
+	private boolean hasNext;
+	private long nextTimestamp;
+	private float[] next;
+	
+	/**
+	 * @param name Sensor name.
+	 * @param columns Column names of the values of the sensor.
+	 * @param log Sensor log.
+	 * @param cursor Cursor reading the log.
+	 * @param channel ADC channel to read (analog logs only).
+	 * @throws IOException
+	 */
+	Signal(String name, String[] columns, InputStream log, SensorLogCursor cursor, int channel) throws IOException {
+		this.name = name;
+		this.columns = columns;
+		this.log = log;
+		this.cursor = cursor;
+		this.channel = channel;
+		this.previous = new float[columns.length];
+		this.next = new float[columns.length];
+		hasNext = read();
+	}
+	
+	String getName() {
+		return name;
+	}
+	
+	String[] getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * Returns the log (for reporting damage once the signal has been read).
+	 */
+	InputStream getLog() {
+		return log;
+	}
+	
+	boolean hasNext() {
+		return hasNext;
+	}
+	
+	long getNextTimestamp() {
+		return nextTimestamp;
+	}
+	
+	/**
+	 * Makes the next reading the previous one and reads the one after it.
+	 * 
+	 * @throws IOException
+	 */
+	void advance() throws IOException {
+		float[] values = previous;
+		previous = next;
+		next = values;
+		previousTimestamp = nextTimestamp;
+		hasPrevious = hasNext;
+		hasNext = read();
+	}
+	
+	/**
+	 * Reads the next reading of the signal into {@link #next}.
+	 * 
+	 * @return false once the end of the log is reached.
+	 * @throws IOException
+	 */
+	private boolean read() throws IOException {
+		while (cursor.next()) {
+			switch (cursor.getFormat()) {
+			case VECTOR:
+				next[0] = cursor.getX() * cursor.getScalingFactor();
+				next[1] = cursor.getY() * cursor.getScalingFactor();
+				next[2] = cursor.getZ() * cursor.getScalingFactor();
+				break;
+			case BAROMETER:
+				next[0] = cursor.getTemperature() / 100f; // C
+				next[1] = cursor.getPressure() / 100f; // mbar
+				break;
+			case ANALOG:
+				if (cursor.getChannel() != channel) continue;
+				next[0] = cursor.getValue(); // mV
+				break;
+			}
+			nextTimestamp = cursor.getTimestamp();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes the values of the signal at the specified time, which must not
+	 * be before the previous reading nor after the next one. Values are empty
+	 * before the first reading and, when interpolating, after the last one.
+	 * 
+	 * @param csv
+	 * @param timestamp
+	 * @param merge
+	 * @throws IOException
+	 */
+	void write(CsvSink csv, long timestamp, Converter.Merge merge) throws IOException {
+		for (int i = 0; i < columns.length; i++) {
+			csv.field(getValue(i, timestamp, merge));
+		}
+	}
+	
+	private float getValue(int column, long timestamp, Converter.Merge merge) {
+		if (!hasPrevious) return Float.NaN;
+		if (timestamp == previousTimestamp) return previous[column];
+		switch (merge) {
+		case LINEAR:
+			if (!hasNext || nextTimestamp <= previousTimestamp) return Float.NaN;
+			double fraction = (double) (timestamp - previousTimestamp) / (nextTimestamp - previousTimestamp);
+			return (float) (previous[column] + (next[column] - previous[column]) * fraction);
+		default:
+			return previous[column];
+		}
+	}
+	
+	public void close() throws IOException {
+		cursor.close();
+	}
+
+}
@@ -0,0 +1,146 @@
+package edu.sdsu.rocket.log2csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.io.ITG3205OutputStream;
+
+public class BatchTest {
+	
+	/**
+	 * Converts each directory with a {@link Converter}, recording the
+	 * directories converted.
+	 */
+	static class Conversions implements Batch.Task {
+		final List<File> folders = Collections.synchronizedList(new ArrayList<File>());
+		final List<File> mirrors = Collections.synchronizedList(new ArrayList<File>());
+		volatile File failing;
+		
+		@Override
+		public boolean convert(File folder, File[] mirrors, int threads) {
+			folders.add(folder);
+			this.mirrors.addAll(Arrays.asList(mirrors));
+			if (folder.equals(failing)) return false;
+			
+			Converter converter = new Converter(folder);
+			converter.setThreads(threads);
+			converter.setBlockSize(1024);
+			return converter.convert();
+		}
+		
+		List<File> getSortedFolders() {
+			List<File> sorted = new ArrayList<File>(folders);
+			Collections.sort(sorted);
+			folders.clear();
+			return sorted;
+		}
+	}
+	
+	private File root;
+	private File first;
+	private File second;
+	private File nested;
+	
+	@Before
+	public void setUp() throws IOException {
+		root = ConverterTest.createFolder();
+		first = createLogs(new File(root, "2026-05-01_10-00-00"));
+		second = createLogs(new File(root, "2026-05-01_11-30-00"));
+		nested = createLogs(new File(root, "launch/2026-05-02_09-15-00"));
+		new File(root, "notes").mkdir(); // no logs
+	}
+	
+	@After
+	public void tearDown() {
+		ConverterTest.delete(root);
+	}
+	
+	private static File createLogs(File folder) throws IOException {
+		folder.mkdirs();
+		ConverterTest.writeLogs(folder);
+		return folder;
+	}
+	
+	/**
+	 * Appends a gyroscope reading to a log.
+	 */
+	private static void append(File file) throws IOException {
+		ITG3205OutputStream out = new ITG3205OutputStream(new FileOutputStream(file, true), new ConverterTest.FakeStopwatch(1L));
+		try {
+			out.writeValues((short) 1, (short) 2, (short) 3);
+		} finally {
+			out.close();
+		}
+	}
+	
+	@Test
+	public void convertsOnlyDirectoriesWhichAreNotUpToDate() throws IOException {
+		Conversions conversions = new Conversions();
+		Batch batch = new Batch(new File[] { root }, 4, "csv");
+		assertEquals(0, batch.run(conversions));
+		assertEquals(Arrays.asList(first, second, nested), conversions.getSortedFolders());
+		for (File folder : new File[] { first, second, nested }) {
+			assertTrue(new File(folder, "adxl345.csv").isFile());
+			assertTrue(new File(folder, Batch.MANIFEST).isFile());
+		}
+		assertFalse(new File(root, "notes/" + Batch.MANIFEST).exists());
+		
+		assertEquals(0, batch.run(conversions));
+		assertEquals(Collections.<File>emptyList(), conversions.getSortedFolders()); // all up to date
+		
+		append(new File(second, "itg3205.log"));
+		assertEquals(0, batch.run(conversions));
+		assertEquals(Arrays.asList(second), conversions.getSortedFolders());
+		
+		assertEquals(0, new Batch(new File[] { root }, 4, "npy").run(conversions));
+		assertEquals(Arrays.asList(first, second, nested), conversions.getSortedFolders()); // other options
+	}
+	
+	@Test
+	public void retriesDirectoriesWhichFailed() {
+		Conversions conversions = new Conversions();
+		conversions.failing = second;
+		Batch batch = new Batch(new File[] { root }, 2, "csv");
+		assertEquals(1, batch.run(conversions));
+		assertFalse(new File(second, Batch.MANIFEST).exists());
+		conversions.getSortedFolders();
+		
+		conversions.failing = null;
+		assertEquals(0, batch.run(conversions));
+		assertEquals(Arrays.asList(second), conversions.getSortedFolders());
+	}
+	
+	@Test
+	public void passesTheMirrorsOfEachDirectory() throws IOException {
+		File mirrorRoot = ConverterTest.createFolder();
+		try {
+			File mirror = new File(mirrorRoot, "launch/2026-05-02_09-15-00");
+			mirror.mkdirs();
+			Conversions conversions = new Conversions();
+			assertEquals(0, new Batch(new File[] { root, mirrorRoot }, 1, "csv").run(conversions));
+			assertArrayEquals(new File[] { mirror }, conversions.mirrors.toArray());
+			conversions.getSortedFolders();
+			
+			append(new File(mirror, "itg3205.log")); // a change to a mirror
+			assertEquals(0, new Batch(new File[] { root, mirrorRoot }, 1, "csv").run(conversions));
+			assertEquals(Arrays.asList(nested), conversions.getSortedFolders());
+		} finally {
+			ConverterTest.delete(mirrorRoot);
+		}
+	}
+
+}
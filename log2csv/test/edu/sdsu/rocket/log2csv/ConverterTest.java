@@ -0,0 +1,358 @@
+package edu.sdsu.rocket.log2csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+import edu.sdsu.rocket.core.io.ADS1115OutputStream;
+import edu.sdsu.rocket.core.io.ADXL345OutputStream;
+import edu.sdsu.rocket.core.io.BlockOutputStream;
+import edu.sdsu.rocket.core.io.FileChannelSink;
+import edu.sdsu.rocket.core.io.FlightLogOutputStream;
+import edu.sdsu.rocket.core.io.GPSOutputStream;
+import edu.sdsu.rocket.core.io.ITG3205OutputStream;
+import edu.sdsu.rocket.core.io.MS5611OutputStream;
+
+public class ConverterTest {
+	
+	static final int ADXL345_READINGS = 10000; // several batches
+	static final int ITG3205_READINGS = 1000;
+	static final int MS5611_READINGS = 500;
+	static final int ADS1115_READINGS = 2000;
+	static final long ADXL345_PERIOD = 1000000L; // ns
+	static final long ITG3205_PERIOD = 10000000L; // ns
+	static final long MS5611_PERIOD = 20000000L; // ns
+	static final long ADS1115_PERIOD = 5000000L; // ns
+	
+	/**
+	 * Time which advances by a period every reading.
+	 */
+	static class FakeStopwatch extends Stopwatch {
+		final long period;
+		long time;
+		
+		FakeStopwatch(long period) {
+			this.period = period;
+		}
+		
+		@Override
+		public long nanoSecondsElapsed() {
+			return time += period;
+		}
+	}
+	
+	/**
+	 * Writes a log of each sensor (but the magnetometer) into the specified
+	 * folder, the accelerometer log framed and compact. Reading i of each
+	 * sensor is at (i + 1) periods.
+	 */
+	static void writeLogs(File folder) throws IOException {
+		BlockOutputStream blocks = new BlockOutputStream(new FileChannelSink(new File(folder, "adxl345.log")), 1024, true);
+		FakeStopwatch clock = new FakeStopwatch(ADXL345_PERIOD);
+		ADXL345OutputStream adxl345 = new ADXL345OutputStream(blocks, clock);
+		adxl345.setCompact(true, 64);
+		adxl345.writeScalingFactor(0.004f);
+		clock.time = 0L; // the readings from the first period
+		for (int i = 0; i < ADXL345_READINGS; i++) {
+			adxl345.writeValues((short) i, (short) (i * 3), (short) -i);
+		}
+		adxl345.close();
+		
+		clock = new FakeStopwatch(ITG3205_PERIOD);
+		ITG3205OutputStream itg3205 = new ITG3205OutputStream(new FileOutputStream(new File(folder, "itg3205.log")), clock);
+		itg3205.writeScalingFactor(0.0695f);
+		clock.time = 0L;
+		for (int i = 0; i < ITG3205_READINGS; i++) {
+			itg3205.writeValues((short) (i % 100), (short) 0, (short) 1);
+		}
+		itg3205.close();
+		
+		MS5611OutputStream ms5611 = new MS5611OutputStream(new FileOutputStream(new File(folder, "ms5611.log")), new FakeStopwatch(MS5611_PERIOD));
+		for (int i = 0; i < MS5611_READINGS; i++) {
+			int climb = Math.min(i, MS5611_READINGS - i); // apogee halfway
+			ms5611.writeValues(2000 - climb, 101325 - 10 * climb);
+		}
+		ms5611.close();
+		
+		ADS1115OutputStream ads1115 = new ADS1115OutputStream(new FileOutputStream(new File(folder, "ads1115.log")), new FakeStopwatch(ADS1115_PERIOD));
+		for (int i = 0; i < ADS1115_READINGS; i++) {
+			ads1115.writeValue(i % 4, i % 4 * 100f);
+		}
+		ads1115.close();
+	}
+	
+	static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+	
+	private static String join(String[] fields) {
+		StringBuilder s = new StringBuilder();
+		for (String field : fields) {
+			if (s.length() != 0) s.append(',');
+			s.append(field);
+		}
+		return s.toString();
+	}
+	
+	static File createFolder() throws IOException {
+		File folder = File.createTempFile("logs", "");
+		folder.delete();
+		folder.mkdir();
+		return folder;
+	}
+	
+	static void delete(File folder) {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				delete(file);
+			}
+		}
+		folder.delete();
+	}
+	
+	private File folder;
+	
+	@Before
+	public void setUp() throws IOException {
+		folder = createFolder();
+		writeLogs(folder);
+	}
+	
+	@After
+	public void tearDown() {
+		delete(folder);
+	}
+	
+	private List<String> convert(int threads) throws IOException {
+		Converter converter = new Converter(folder);
+		converter.setThreads(threads);
+		converter.setBlockSize(1024);
+		assertTrue(converter.convert());
+		
+		List<String> lines = new ArrayList<String>();
+		for (String name : new String[] { "ads1115", "adxl345", "itg3205", "ms5611" }) {
+			lines.addAll(readLines(new File(folder, name + ".csv")));
+		}
+		return lines;
+	}
+	
+	@Test
+	public void convertsEachSensorLog() throws IOException {
+		convert(1);
+		
+		List<String> adxl345 = readLines(new File(folder, "adxl345.csv"));
+		assertEquals(ADXL345_READINGS + 1, adxl345.size());
+		assertEquals("Timestamp,Multiplier,X,Y,Z", adxl345.get(0));
+		assertEquals("1000000,0.004,0,0,0", adxl345.get(1));
+		assertEquals("10000000000,0.004,9999,29997,-9999", adxl345.get(ADXL345_READINGS));
+		
+		List<String> ms5611 = readLines(new File(folder, "ms5611.csv"));
+		assertEquals(MS5611_READINGS + 1, ms5611.size());
+		assertEquals("20000000,2000,101325", ms5611.get(1));
+		
+		List<String> ads1115 = readLines(new File(folder, "ads1115.csv"));
+		assertEquals(ADS1115_READINGS + 1, ads1115.size());
+		assertEquals("5000000,0.0,,,", ads1115.get(1)); // the other channels are empty
+		assertEquals("10000000,,100.0,,", ads1115.get(2));
+		
+		assertFalse(new File(folder, "hmc5883l.csv").exists()); // not logged
+	}
+	
+	private List<String[]> convertMerged(Converter.Merge merge, double rate) throws IOException {
+		Converter converter = new Converter(folder);
+		converter.setBlockSize(1024);
+		converter.convertMerged(merge, rate);
+		
+		List<String[]> rows = new ArrayList<String[]>();
+		for (String line : readLines(new File(folder, "merged.csv"))) {
+			rows.add(line.split(",", -1));
+		}
+		return rows;
+	}
+	
+	/**
+	 * Returns the merged row at the specified timestamp.
+	 */
+	private static String[] getRow(List<String[]> rows, long timestamp) {
+		for (String[] row : rows.subList(1, rows.size())) {
+			if (Long.parseLong(row[0]) == timestamp) return row;
+		}
+		throw new AssertionError("No row at " + timestamp);
+	}
+	
+	@Test
+	public void mergesOnEveryReadingHoldingTheOthers() throws IOException {
+		List<String[]> rows = convertMerged(Converter.Merge.HOLD, 0);
+		assertEquals("Timestamp,ads1115.A0,ads1115.A1,ads1115.A2,ads1115.A3,adxl345.X,adxl345.Y,adxl345.Z,"
+				+ "itg3205.X,itg3205.Y,itg3205.Z,ms5611.Temperature,ms5611.Pressure", join(rows.get(0)));
+		assertEquals(ADXL345_READINGS + 1, rows.size()); // every other reading is at an accelerometer reading
+		
+		String[] first = getRow(rows, ADXL345_PERIOD);
+		assertEquals("", first[1]); // before the first reading
+		assertEquals("", first[12]);
+		
+		String[] row = getRow(rows, 30 * ADXL345_PERIOD);
+		assertEquals("0.0", row[1]); // A0 at 25 ms
+		assertEquals("100.0", row[2]); // A1 at 30 ms
+		assertEquals("200.0", row[3]); // A2 at 15 ms
+		assertEquals("300.0", row[4]); // A3 at 20 ms
+		assertEquals(1013.25f, Float.parseFloat(row[12]), 0f); // at 20 ms
+	}
+	
+	@Test
+	public void mergesInterpolatingTheOthers() throws IOException {
+		List<String[]> rows = convertMerged(Converter.Merge.LINEAR, 0);
+		assertEquals(ADXL345_READINGS + 1, rows.size());
+		
+		String[] row = getRow(rows, 30 * ADXL345_PERIOD);
+		assertEquals(1013.20f, Float.parseFloat(row[12]), 1e-3f); // halfway from 20 ms to 40 ms
+		row = getRow(rows, 35 * ADXL345_PERIOD);
+		assertEquals(2.5f * 0.0695f, Float.parseFloat(row[8]), 1e-5f); // halfway from 30 ms to 40 ms
+		
+		String[] last = rows.get(rows.size() - 1);
+		assertEquals(ADXL345_READINGS * ADXL345_PERIOD, Long.parseLong(last[0]));
+		assertEquals("300.0", last[4]); // every log ends at 10 s
+	}
+	
+	@Test
+	public void mergesAtAFixedRate() throws IOException {
+		List<String[]> rows = convertMerged(Converter.Merge.LINEAR, 100.0);
+		assertEquals(1000 + 1, rows.size()); // from the first reading to the last
+		for (int i = 1; i < rows.size(); i++) {
+			assertEquals(ADXL345_PERIOD + (i - 1) * 10000000L, Long.parseLong(rows.get(i)[0]));
+		}
+	}
+	
+	@Test
+	public void summarizesEachSensorLog() throws IOException {
+		Converter converter = new Converter(folder);
+		converter.setThreads(4);
+		converter.setBlockSize(1024);
+		assertTrue(converter.summarize()); // but the magnetometer, which was not logged
+		
+		String json = join(readLines(new File(folder, "summary.json")).toArray(new String[0]));
+		assertTrue(json, json.contains("adxl345"));
+		assertTrue(json, json.contains("peakAcceleration"));
+		assertTrue(json, json.contains("groundPressure"));
+		assertTrue(json, json.contains("apogeeAt"));
+		assertTrue(json, json.contains(Long.toString((MS5611_READINGS / 2 + 1) * MS5611_PERIOD))); // lowest pressure
+		assertFalse(json, json.contains("hmc5883l"));
+	}
+	
+	@Test
+	public void convertsAFlightLogIntoEachSensorLog() throws IOException {
+		File flight = createFolder();
+		try {
+			FakeStopwatch clock = new FakeStopwatch(ADXL345_PERIOD); // shared by every sensor
+			FlightLogOutputStream flightLog = new FlightLogOutputStream(new FileOutputStream(new File(flight, "flight.log")), clock);
+			ADXL345OutputStream adxl345 = new ADXL345OutputStream(flightLog.addChannel(ADXL345OutputStream.NAME), clock);
+			MS5611OutputStream ms5611 = new MS5611OutputStream(flightLog.addChannel(MS5611OutputStream.NAME), clock);
+			GPSOutputStream gps = new GPSOutputStream(flightLog.addChannel(GPSOutputStream.NAME), clock);
+			adxl345.writeScalingFactor(0.004f);
+			clock.time = 0L;
+			for (int i = 0; i < 100; i++) {
+				adxl345.writeValues((short) i, (short) (i * 3), (short) -i);
+				if (i % 10 == 0) {
+					ms5611.writeValues(2000 + i, 101325 - i);
+				}
+			}
+			gps.writeFix(32.5, -117.25, 100.0, 1, 4);
+			flightLog.close();
+			
+			Converter converter = new Converter(flight);
+			assertTrue(converter.convert());
+			
+			List<String> adxl345Rows = readLines(new File(flight, "adxl345.csv"));
+			assertEquals(100 + 1, adxl345Rows.size());
+			assertEquals("Timestamp,Multiplier,X,Y,Z", adxl345Rows.get(0));
+			assertEquals("1000000,0.004,0,0,0", adxl345Rows.get(1));
+			assertEquals("3000000,0.004,1,3,-1", adxl345Rows.get(2)); // after the barometer
+			
+			List<String> ms5611Rows = readLines(new File(flight, "ms5611.csv"));
+			assertEquals(10 + 1, ms5611Rows.size());
+			assertEquals("2000000,2000,101325", ms5611Rows.get(1));
+			assertEquals("13000000,2010,101315", ms5611Rows.get(2));
+			
+			List<String> gpsRows = readLines(new File(flight, "gps.csv"));
+			assertEquals("111000000,32.5,-117.25,100.0,1,4", gpsRows.get(1));
+			assertFalse(new File(flight, "itg3205.csv").exists()); // not a channel
+		} finally {
+			delete(flight);
+		}
+	}
+	
+	@Test
+	public void convertsGPSFixes() throws IOException {
+		GPSOutputStream gps = new GPSOutputStream(new FileOutputStream(new File(folder, "gps.log")), new FakeStopwatch(1000000000L));
+		gps.writeFix(32.5, -117.25, 100.0, 1, 4);
+		gps.writeFix(32.75, -117.5, 250.0, 2, 9);
+		gps.close();
+		convert(1);
+		
+		List<String> lines = readLines(new File(folder, "gps.csv"));
+		assertEquals(3, lines.size());
+		assertEquals("Timestamp,Latitude,Longitude,Altitude,Fix,Satellites", lines.get(0));
+		assertEquals("1000000000,32.5,-117.25,100.0,1,4", lines.get(1));
+		assertEquals("2000000000,32.75,-117.5,250.0,2,9", lines.get(2));
+	}
+	
+	@Test
+	public void exportsNumPyColumns() throws IOException {
+		Converter converter = new Converter(folder);
+		converter.setBlockSize(1024);
+		converter.setOutput(Converter.Output.NPY);
+		assertTrue(converter.convert());
+		assertFalse(new File(folder, "adxl345.csv").exists());
+		
+		ByteBuffer timestamps = NpyWriterTest.readValues(new File(folder, "adxl345.Timestamp.npy"), "<i8", 8, ADXL345_READINGS);
+		ByteBuffer multiplier = NpyWriterTest.readValues(new File(folder, "adxl345.Multiplier.npy"), "<f4", 4, ADXL345_READINGS);
+		ByteBuffer x = NpyWriterTest.readValues(new File(folder, "adxl345.X.npy"), "<i2", 2, ADXL345_READINGS);
+		ByteBuffer z = NpyWriterTest.readValues(new File(folder, "adxl345.Z.npy"), "<i2", 2, ADXL345_READINGS);
+		for (int i = 0; i < ADXL345_READINGS; i++) {
+			assertEquals((i + 1) * ADXL345_PERIOD, timestamps.getLong());
+			assertEquals(0.004f, multiplier.getFloat(), 0f);
+			assertEquals((short) i, x.getShort());
+			assertEquals((short) -i, z.getShort());
+		}
+		
+		ByteBuffer pressure = NpyWriterTest.readValues(new File(folder, "ms5611.Pressure.npy"), "<i4", 4, MS5611_READINGS);
+		assertEquals(101325, pressure.getInt(0));
+		
+		ByteBuffer a1 = NpyWriterTest.readValues(new File(folder, "ads1115.A1.npy"), "<f4", 4, ADS1115_READINGS);
+		assertTrue(Float.isNaN(a1.getFloat(0))); // a reading of A0
+		assertEquals(100f, a1.getFloat(4), 0f);
+	}
+	
+	@Test
+	public void convertsInParallelAsSequentially() throws IOException {
+		List<String> sequential = convert(1);
+		List<String> parallel = convert(4);
+		assertEquals(sequential, parallel);
+	}
+
+}
@@ -0,0 +1,54 @@
+package edu.sdsu.rocket.log2csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FastCsvWriterTest {
+	
+	private final byte[] b = new byte[64];
+	
+	private String putFloat(float value) {
+		return new String(b, 0, FastCsvWriter.putFloat(b, 0, value));
+	}
+	
+	private String putLong(long value) {
+		return new String(b, 0, FastCsvWriter.putLong(b, 0, value));
+	}
+	
+	@Test
+	public void writesLongs() {
+		for (long value : new long[] { 0L, 7L, -1L, 10L, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+			assertEquals(Long.toString(value), putLong(value));
+		}
+	}
+	
+	@Test
+	public void writesFloatsInFloatToStringNotation() {
+		float[] values = {
+			0f, -0f, 1f, -1f, 0.1f, 3.3f, 100f, 1234.5f, 0.001f, 1.0E-4f, 9999999f, 1.0E7f,
+			1.5E8f, 3.4028235E38f, 1.4E-45f, Float.NaN, Float.POSITIVE_INFINITY,
+		};
+		for (float value : values) {
+			assertEquals(Float.toString(value), putFloat(value));
+		}
+	}
+	
+	@Test
+	public void writesShortestFloatWhichReadsBack() {
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			float value = i % 2 == 0
+				? (random.nextInt(65536) - 32768) * 0.0039f // scaled sensor readings
+				: Float.intBitsToFloat(random.nextInt());
+			if (Float.isNaN(value)) continue;
+			String s = putFloat(value);
+			assertEquals(s, value, Float.parseFloat(s), 0f);
+			assertTrue(s, s.length() <= Float.toString(value).length());
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package edu.sdsu.rocket.log2csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NpyWriterTest {
+	
+	private static final int VALUES = 10000;
+	private static final int BUFFER_SIZE = 100; // bytes, so the values are flushed many times
+	
+	/**
+	 * Checks the header of a .npy file and returns its values.
+	 *
+	 * @param file
+	 * @param descr Expected type of the values (e.g. "<i2").
+	 * @param length Expected number of values.
+	 * @return
+	 * @throws IOException
+	 */
+	static ByteBuffer readValues(File file, String descr, int size, long length) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] b = new byte[(int) in.length()];
+			in.readFully(b);
+			ByteBuffer npy = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+			assertEquals((byte) 0x93, npy.get());
+			assertEquals("NUMPY", new String(b, 1, 5, Charset.forName("US-ASCII")));
+			assertEquals(1, npy.get(6)); // version 1.0
+			assertEquals(0, npy.get(7));
+			int headerLength = npy.getShort(8);
+			int start = 10 + headerLength;
+			assertEquals(0, start % 64); // aligned
+			String header = new String(b, 10, headerLength, Charset.forName("US-ASCII"));
+			assertEquals("{'descr': '" + descr + "', 'fortran_order': False, 'shape': (" + length + ",), }", header.trim());
+			assertTrue(header.endsWith("\n"));
+			assertEquals(start + length * size, b.length);
+			
+			npy.position(start);
+			return npy.slice().order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private File file;
+	
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("column", NpyWriter.SUFFIX);
+	}
+	
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+	
+	@Test
+	public void writesShortColumn() throws IOException {
+		NpyWriter npy = new NpyWriter(file, NpyWriter.Type.INT16, BUFFER_SIZE);
+		for (int i = 0; i < VALUES; i++) {
+			npy.putShort((short) (i - VALUES / 2));
+		}
+		assertEquals(VALUES, npy.getLength());
+		npy.close();
+		
+		ByteBuffer values = readValues(file, "<i2", 2, VALUES);
+		for (int i = 0; i < VALUES; i++) {
+			assertEquals((short) (i - VALUES / 2), values.getShort());
+		}
+	}
+	
+	@Test
+	public void writesLongAndDoubleColumns() throws IOException {
+		NpyWriter longs = new NpyWriter(file, NpyWriter.Type.INT64, BUFFER_SIZE);
+		for (int i = 0; i < VALUES; i++) {
+			longs.putLong(i * 1000000000000L);
+		}
+		longs.close();
+		ByteBuffer values = readValues(file, "<i8", 8, VALUES);
+		for (int i = 0; i < VALUES; i++) {
+			assertEquals(i * 1000000000000L, values.getLong());
+		}
+		
+		NpyWriter doubles = new NpyWriter(file, NpyWriter.Type.FLOAT64, BUFFER_SIZE);
+		for (int i = 0; i < VALUES; i++) {
+			doubles.putDouble(i / 3.0);
+		}
+		doubles.close();
+		values = readValues(file, "<f8", 8, VALUES);
+		for (int i = 0; i < VALUES; i++) {
+			assertEquals(i / 3.0, values.getDouble(), 0.0);
+		}
+	}
+	
+	@Test
+	public void writesEmptyColumn() throws IOException {
+		new NpyWriter(file, NpyWriter.Type.UINT8).close();
+		readValues(file, "|u1", 1, 0);
+	}
+
+}
@@ -0,0 +1,63 @@
+package edu.sdsu.rocket.log2csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SensorSummaryTest {
+	
+	private static final int READINGS = 100;
+	private static final long PERIOD = 1000000L; // ns
+	private static final int GAP = 50; // reading after a missed interval
+	
+	/**
+	 * Returns a summary of readings every period but one gap of ten periods,
+	 * with values 0 to 99 in the first column and none in the second.
+	 */
+	private static SensorSummary summarize() {
+		SensorSummary summary = new SensorSummary("adxl345", "X", "Y");
+		long timestamp = 0L;
+		for (int i = 0; i < READINGS; i++) {
+			timestamp += i == GAP ? 10 * PERIOD : PERIOD;
+			summary.addReading(timestamp);
+			summary.add(0, i);
+			summary.add(1, Double.NaN);
+		}
+		return summary;
+	}
+	
+	@Test
+	public void summarizesIntervalsAndColumns() {
+		SensorSummary summary = summarize();
+		assertEquals(READINGS, summary.getReadings());
+		
+		String s = summary.toString();
+		assertTrue(s, s.startsWith("adxl345: 100 readings over 0.108 s (916.7 Hz)"));
+		assertTrue(s, s.contains("interval: min 1000.0 us, mean 1090.9 us, max 10000.0 us at 60000000,"));
+		assertTrue(s, s.contains("histogram (us): [512,1024)=98 [8192,16384)=1"));
+		assertTrue(s, s.contains("X: min 0.00000, max 99.0000, mean 49.5000, rms 57.3018"));
+		assertFalse(s, s.contains("Y:")); // no values
+	}
+	
+	@Test
+	public void reportsDerivedValues() {
+		SensorSummary summary = summarize();
+		summary.put("apogee", 123.5);
+		summary.put("apogeeAt", 42L);
+		String s = summary.toString();
+		assertTrue(s, s.endsWith(String.format("%n  apogee: 123.500%n  apogeeAt: 42")));
+	}
+	
+	@Test
+	public void summarizesASingleReading() {
+		SensorSummary summary = new SensorSummary("ms5611", "Pressure");
+		summary.addReading(PERIOD);
+		summary.add(0, 1013.25);
+		String s = summary.toString();
+		assertTrue(s, s.startsWith("ms5611: 1 readings over 0.000 s (NaN Hz)"));
+		assertFalse(s, s.contains("interval"));
+	}
+
+}
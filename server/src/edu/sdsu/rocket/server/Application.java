@@ -4,6 +4,9 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Json;
 import com.pi4j.io.gpio.*;
+import com.pi4j.io.gpio.event.GpioPinDigitalStateChangeEvent;
+import com.pi4j.io.gpio.event.GpioPinListenerDigital;
+import com.pi4j.io.i2c.I2CBus;
 import com.pi4j.io.i2c.I2CFactory;
 import com.pi4j.io.serial.Serial;
 import com.pi4j.io.serial.SerialFactory;
@@ -12,6 +15,7 @@ import edu.sdsu.rocket.core.io.*;
 import edu.sdsu.rocket.core.models.Sensors;
 import edu.sdsu.rocket.core.net.SensorServer;
 import edu.sdsu.rocket.server.devices.*;
+import edu.sdsu.rocket.server.devices.DeviceManager.Device;
 import edu.sdsu.rocket.server.devices.DeviceManager.DeviceRunnable;
 import edu.sdsu.rocket.server.devices.HMC5883L.DataOutputRate;
 import edu.sdsu.rocket.server.devices.HMC5883L.MagnetometerListener;
@@ -41,11 +45,14 @@ public class Application {
 	
 	public static final String FILE_SEPARATOR = System.getProperty("file.separator");
 	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	private static final long NANOSECONDS_PER_MICROSECOND = 1000L;
 	
 	private Settings settings;
 	private Logging log;
 	
 	private final DeviceManager manager = new DeviceManager();
+	private CyclicExecutive executive;
+	private final I2CBusArbiter bus = I2CBusArbiter.getInstance(I2CBus.BUS_1);
 	private final Reader input = new InputStreamReader(System.in);
 	
 	/**
@@ -66,6 +73,7 @@ public class Application {
 	
 	private final SensorServer server = new SensorServer(local, remote);
 	
+	private ADS1115 ads1115;
 	private XTend900 radio;
 	private DeviceRunnable transmitter;
 	private Watchdog watchdog;
@@ -91,6 +99,7 @@ public class Application {
 		
 		Json json = new Json();
 		settings = json.fromJson(Settings.class, new FileInputStream(file));
+		migrateSleep();
 		
 		if (settings.test) {
 			try {
@@ -106,6 +115,32 @@ public class Application {
 		}
 	}
 
+	/**
+	 * Maps the sleep of settings written before the devices had a rate to
+	 * the rate of a loop followed by that sleep (sleep 0 to as fast as
+	 * possible), warning that it is deprecated.
+	 */
+	@SuppressWarnings("deprecation")
+	private void migrateSleep() {
+		if (settings.devices == null) return;
+		if (settings.devices.adxl345 != null) {
+			settings.devices.adxl345.rate = getRate("adxl345", settings.devices.adxl345.sleep, settings.devices.adxl345.rate);
+		}
+		if (settings.devices.itg3205 != null) {
+			settings.devices.itg3205.rate = getRate("itg3205", settings.devices.itg3205.sleep, settings.devices.itg3205.rate);
+		}
+		if (settings.devices.ms5611 != null) {
+			settings.devices.ms5611.rate = getRate("ms5611", settings.devices.ms5611.sleep, settings.devices.ms5611.rate);
+		}
+	}
+	
+	private static float getRate(String device, long sleep, float rate) {
+		if (sleep < 0L) return rate;
+		float migrated = sleep == 0L ? 0f : 1000f / sleep; // Hz
+		System.err.println("Warning: devices." + device + ".sleep is deprecated, use rate instead (using rate " + migrated + " Hz).");
+		return migrated;
+	}
+	
 	protected void setupLogging() throws IOException {
 		System.out.println("Setup Logging.");
 		log = new Logging(settings);
@@ -127,6 +162,17 @@ public class Application {
 	}
 	
 	protected void setupDevices() throws IOException, I2CFactory.UnsupportedBusNumberException {
+		if (settings.devices.scheduler != null && settings.devices.scheduler.enabled) {
+			executive = new CyclicExecutive(settings.devices.scheduler.threads);
+			executive.setCalibrationLoops(settings.devices.scheduler.calibrationLoops);
+		}
+		
+		bus.setPriority("ADXL345", settings.devices.adxl345.priority, settings.devices.adxl345.deadline * NANOSECONDS_PER_MICROSECOND);
+		bus.setPriority("ITG3205", settings.devices.itg3205.priority, settings.devices.itg3205.deadline * NANOSECONDS_PER_MICROSECOND);
+		bus.setPriority("HMC5883L", settings.devices.hmc5883l.priority, settings.devices.hmc5883l.deadline * NANOSECONDS_PER_MICROSECOND);
+		bus.setPriority("MS5611", settings.devices.ms5611.priority, settings.devices.ms5611.deadline * NANOSECONDS_PER_MICROSECOND);
+		bus.setPriority("ADS1115", settings.devices.ads1115.priority, settings.devices.ads1115.deadline * NANOSECONDS_PER_MICROSECOND);
+		
 		setupAccelerometer();
 		setupGyroscope();
 		setupMagnetometer();
@@ -135,6 +181,10 @@ public class Application {
 		setupGPS();
 		
 		try {
+			if (executive != null) {
+				System.out.println("Setup Cyclic Executive.");
+				executive.start();
+			}
 			setupRadio();
 			setupWatchdog();
 		} catch (IllegalStateException e) {
@@ -144,6 +194,19 @@ public class Application {
 		}
 	}
 	
+	/**
+	 * Adds a device with a rate to the cyclic executive, if enabled. The
+	 * executive times the device's loop right away, so a device is scheduled
+	 * before its listener is set to keep those readings out of its log.
+	 * 
+	 * @return false if the device is to be run on a thread of its own.
+	 */
+	private boolean schedule(Device device, float rate) {
+		if (executive == null || rate <= 0f) return false;
+		executive.add(device, rate);
+		return true;
+	}
+	
 	private void setupAccelerometer() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		if (!settings.devices.adxl345.enabled) return;
 		System.out.println("Setup Accelerometer [ADXL345].");
@@ -163,6 +226,8 @@ public class Application {
 		adxl345log.writeScalingFactor(scalingFactor);
 		System.out.println("Scaling Factor: " + scalingFactor);
 		
+		boolean isScheduled = schedule(adxl345, settings.devices.adxl345.rate); // calibrated before the listener is set
+		
 		adxl345.setListener(new ADXL345.AccelerometerListener() {
 			@Override
 			public void onValues(short x, short y, short z) {
@@ -177,10 +242,9 @@ public class Application {
 			}
 		});
 		
-		manager
-			.add(adxl345)
-			.setSleep(settings.devices.adxl345.sleep);
-//			.setThrottle(settings.devices.adxl345.throttle);
+		if (!isScheduled) {
+			manager.add(adxl345, settings.devices.adxl345.rate);
+		}
 	}
 
 	private void setupGyroscope() throws IOException, FileNotFoundException, I2CFactory.UnsupportedBusNumberException {
@@ -201,6 +265,8 @@ public class Application {
 		local.gyroscope.setScalingFactor(1f / ITG3205.ITG3205_SENSITIVITY_SCALE_FACTOR);
 		itg3205log.writeScalingFactor(local.gyroscope.getScalingFactor());
 		
+		boolean isScheduled = schedule(itg3205, settings.devices.itg3205.rate); // calibrated before the listener is set
+		
 		itg3205.setListener(new GyroscopeListener() {
 			@Override
 			public void onValues(short x, short y, short z) {
@@ -216,10 +282,9 @@ public class Application {
 			
 		});
 		
-		manager
-			.add(itg3205)
-			.setSleep(settings.devices.itg3205.sleep);
-//			.setThrottle(settings.devices.itg3205.throttle);
+		if (!isScheduled) {
+			manager.add(itg3205, settings.devices.itg3205.rate);
+		}
 	}
 	
 	private void setupMagnetometer() throws IOException, FileNotFoundException, I2CFactory.UnsupportedBusNumberException {
@@ -229,7 +294,7 @@ public class Application {
 		
 		HMC5883L hmc5883l = settings.test ? new MockHMC5883L() : new HMC5883L();
 		hmc5883l
-			.setDataOutputRate(DataOutputRate.RATE_75)
+			.setDataOutputRate(DataOutputRate.valueOf(settings.devices.hmc5883l.rate))
 			.setOperatingMode(OperatingMode.CONTINUOUS)
 			.setup();
 		
@@ -242,6 +307,11 @@ public class Application {
 		hmc5883llog.writeScalingFactor(scalingFactor);
 		System.out.println("Scaling Factor: " + scalingFactor);
 		
+		float rate = hmc5883l.getDataOutputRate().getFrequency(); // polling faster reads the same sample
+		System.out.println("Data Output Rate: " + rate + " Hz");
+		
+		boolean isScheduled = schedule(hmc5883l, rate); // calibrated before the listener is set
+		
 		hmc5883l.setListener(new MagnetometerListener() {
 			@Override
 			public void onValues(short x, short y, short z) {
@@ -257,9 +327,9 @@ public class Application {
 			
 		});
 		
-		manager
-			.add(hmc5883l)
-			.setSleep(hmc5883l.getDataOutputRate().getDelay());
+		if (!isScheduled) {
+			manager.add(hmc5883l, rate);
+		}
 	}
 	
 	private void setupBarometer() throws IOException, I2CFactory.UnsupportedBusNumberException {
@@ -270,6 +340,8 @@ public class Application {
 		MS5611 ms5611 = settings.test ? new MockMS5611() : new MS5611();
 		ms5611.setup();
 		
+		boolean isScheduled = schedule(ms5611, settings.devices.ms5611.rate); // calibrated before the listener is set
+		
 		ms5611.setListener(new MS5611.BarometerListener() {
 			@Override
 			public void onValues(int T, int P) {
@@ -296,10 +368,9 @@ public class Application {
 			}
 		});
 		
-		manager
-			.add(ms5611)
-			.setSleep(settings.devices.ms5611.sleep);
-//			.setThrottle(settings.devices.ms5611.throttle);
+		if (!isScheduled) {
+			manager.add(ms5611, settings.devices.ms5611.rate);
+		}
 	}
 
 	private void setupADC() throws IOException, I2CFactory.UnsupportedBusNumberException {
@@ -307,7 +378,7 @@ public class Application {
 		System.out.println("Setup ADC [ADS1115].");
 		final ADS1115OutputStream ads1115log = log.getADS1115OutputStream();
 		
-		ADS1115 ads1115 = settings.test ? new MockADS1115() : new ADS1115();
+		ads1115 = settings.test ? new MockADS1115() : new ADS1115();
 		ads1115.setup()
 			.setGain(ADS1115.Gain.PGA_1)
 			.setMode(ADS1115.Mode.MODE_SINGLE)
@@ -327,6 +398,34 @@ public class Application {
 			ads1115.setSequence(settings.devices.ads1115.sequence);
 		}
 		
+		ADS1115.Acquisition acquisition = settings.devices.ads1115.acquisition;
+		Pin readyPin = RaspiPin.getPinByAddress(settings.devices.ads1115.readyPin);
+		if (acquisition == ADS1115.Acquisition.READY && !settings.test && readyPin == null) {
+			System.err.println("ADS1115 readyPin " + settings.devices.ads1115.readyPin + " is not a GPIO pin, waiting for conversions instead (WAIT).");
+			acquisition = ADS1115.Acquisition.WAIT;
+		}
+		ads1115.setAcquisition(acquisition);
+		if (ads1115.getAcquisition() == ADS1115.Acquisition.READY) {
+			ads1115.writeConversionReady();
+			if (!settings.test) { // the mock signals ready itself
+				final ADS1115 adc = ads1115;
+				final PinState asserted = ads1115.getPolarity() == ADS1115.Polarity.COMP_POL_ACTIVE_HIGH ? PinState.HIGH : PinState.LOW;
+				GpioController gpio = GpioFactory.getInstance();
+				GpioPinDigitalInput ready = gpio.provisionDigitalInputPin(readyPin, "ALERT/RDY", PinPullResistance.PULL_UP); // open drain
+				ready.addListener(new GpioPinListenerDigital() {
+					@Override
+					public void handleGpioPinDigitalStateChangeEvent(GpioPinDigitalStateChangeEvent event) {
+						if (event.getState() == asserted) {
+							adc.onReady();
+						}
+					}
+				});
+			}
+		}
+		System.out.println("ADS1115 acquisition: " + ads1115.getAcquisition());
+		
+		boolean isScheduled = schedule(ads1115, settings.devices.ads1115.rate); // calibrated before the listener is set
+		
 		ads1115.setListener(new ADS1115.AnalogListener() {
 			@Override
 			public void onValue(ADS1115.Channel channel, float value) {
@@ -345,7 +444,9 @@ public class Application {
 			}
 		});
 		
-		manager.add(ads1115);
+		if (!isScheduled) {
+			manager.add(ads1115, settings.devices.ads1115.rate);
+		}
 	}
 	
 	private void setupGPS() throws FileNotFoundException {
@@ -368,8 +469,9 @@ public class Application {
 		}
 		
 		FileInputStream in = new FileInputStream(settings.devices.gps.device);
-		OutputStream out = log.getGPSOutputStream();
-		final PrintWriter writer = new PrintWriter(out);
+		final GPSOutputStream gpslog = log.getGPSOutputStream();
+		OutputStream nmea = log.getNMEAOutputStream();
+		final PrintWriter writer = nmea == null ? null : new PrintWriter(nmea);
 		
 		SentenceReader reader = new SentenceReader(in);
 		reader.addSentenceListener(new SentenceListener() {
@@ -390,6 +492,7 @@ public class Application {
 			
 			@Override
 			public void sentenceRead(SentenceEvent event) {
+				if (writer == null) return;
 				String sentence = event.getSentence().toString();
 				writer.println(sentence);
 			}
@@ -406,6 +509,11 @@ public class Application {
 					System.out.println("GPS provider update: latitude=" + latitude + ", longitude=" + longitude + ", altitude=" + altitude);
 				}
 				local.gps.set(latitude, longitude, altitude);
+				try {
+					gpslog.writeFix(latitude, longitude, altitude, local.gps.getFixStatus(), local.gps.getSatellites());
+				} catch (IOException e) {
+					System.err.println(e);
+				}
 			}
 		});
 		
@@ -557,7 +665,10 @@ public class Application {
 		case '?':
 			System.out.println();
 			System.out.println("?: help");
-			System.out.println("f: loop frequency");
+			System.out.println("f: loop frequency, I2C bus and ADC");
+			if (log.getRingBuffer() != null || log.getWriters().size != 0) {
+				System.out.println("l: logging status");
+			}
 			if (watchdog != null) {
 				System.out.println("w: watchdog status");
 				System.out.println("W: watchdog start");
@@ -596,6 +707,23 @@ public class Application {
 			break;
 		case 'f':
 			System.out.println(manager.toString());
+			if (executive != null) {
+				System.out.println(executive.toString());
+			}
+			if (!bus.isEmpty()) {
+				System.out.println(bus.toString());
+			}
+			if (ads1115 != null) {
+				System.out.println(ads1115.toString());
+			}
+			break;
+		case 'l':
+			if (log.getRingBuffer() != null) {
+				System.out.println(log.getRingBuffer());
+			}
+			for (AsyncBlockWriter writer : log.getWriters()) {
+				System.out.println(writer);
+			}
 			break;
 		case 'a':
 			local.accelerometer.get(tmpVec);
@@ -750,6 +878,11 @@ public class Application {
 			}
 		}
 		
+		if (executive != null) {
+			System.out.println("Stopping cyclic executive.");
+			executive.stop();
+		}
+		
 		System.out.println("Stopping device manager.");
 		manager.clear();
 		
@@ -2,37 +2,98 @@ package edu.sdsu.rocket.server;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.badlogic.gdx.utils.Array;
 
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable;
+import edu.sdsu.rocket.core.helpers.Stopwatch;
 import edu.sdsu.rocket.core.io.ADS1115OutputStream;
 import edu.sdsu.rocket.core.io.ADXL345OutputStream;
+import edu.sdsu.rocket.core.io.AsyncBlockWriter;
+import edu.sdsu.rocket.core.io.BlockOutputStream;
+import edu.sdsu.rocket.core.io.BlockSink;
+import edu.sdsu.rocket.core.io.BlockSinkMultiplexer;
+import edu.sdsu.rocket.core.io.BlockSinkStriper;
+import edu.sdsu.rocket.core.io.FileChannelSink;
+import edu.sdsu.rocket.core.io.FlightLogOutputStream;
+import edu.sdsu.rocket.core.io.GPSOutputStream;
 import edu.sdsu.rocket.core.io.HMC5883LOutputStream;
 import edu.sdsu.rocket.core.io.ITG3205OutputStream;
+import edu.sdsu.rocket.core.io.LogFiles;
 import edu.sdsu.rocket.core.io.MS5611OutputStream;
-import edu.sdsu.rocket.core.io.OutputStreamMultiplexer;
+import edu.sdsu.rocket.core.io.MappedLogOutputStream;
+import edu.sdsu.rocket.core.io.RecordRingBuffer;
+import edu.sdsu.rocket.core.io.RingBufferOutputStream;
+import edu.sdsu.rocket.core.io.SegmentCompressor;
+import edu.sdsu.rocket.core.io.SegmentedSink;
+import edu.sdsu.rocket.core.io.SensorOutputStream;
 
 public class Logging {
 	
 	public static final String FILE_SEPARATOR = System.getProperty("file.separator");
 	
+	private static final int VECTOR_RECORD_SIZE = SensorOutputStream.RECORD_HEADER_SIZE + 6; // bytes
+	private static final int MS5611_RECORD_SIZE = SensorOutputStream.RECORD_HEADER_SIZE + 8; // bytes
+	private static final int ADS1115_RECORD_SIZE = SensorOutputStream.RECORD_HEADER_SIZE + 8; // bytes
+	private static final int GPS_RECORD_SIZE = SensorOutputStream.RECORD_HEADER_SIZE + 26; // bytes
+	private static final int FLIGHT_LOG_RECORD_HEADER = 3; // bytes
+	
 	private ADXL345OutputStream adxl345Log;
 	private ITG3205OutputStream itg3205Log;
 	private HMC5883LOutputStream hmc5883llog;
 	private MS5611OutputStream ms5611Log;
 	private ADS1115OutputStream ads1115Log;
-	private OutputStreamMultiplexer gpsLog;
-	private OutputStreamMultiplexer xtend900log;
+	private GPSOutputStream gpsLog;
+	private OutputStream nmeaLog;
+	private OutputStream xtend900log;
 
 	private final Settings settings;
 	private final Array<File> dirs = new Array<File>();
-
+	
+	/**
+	 * When enabled, sensor records are published into the ring buffer and
+	 * written by its writer thread so device threads never wait on disk I/O.
+	 */
+	private RecordRingBuffer ring;
+	
+	/**
+	 * Shared by all sensor logs so their timestamps are directly comparable.
+	 */
+	private final Stopwatch stopwatch = new Stopwatch();
+	
+	/**
+	 * When enabled, all sensor records are interleaved into this single log
+	 * instead of one log file per sensor.
+	 */
+	private FlightLogOutputStream flightLog;
+	private final Map<String, OutputStream> flightLogChannels = new HashMap<String, OutputStream>();
+	
+	/**
+	 * When enabled, closed segments of the sensor logs are compressed in the
+	 * background.
+	 */
+	private SegmentCompressor compressor;
+	
+	/**
+	 * When enabled, each logging directory is written by its own thread so a
+	 * slow directory cannot stall acquisition or the other directories.
+	 */
+	private final Array<AsyncBlockWriter> writers = new Array<AsyncBlockWriter>();
+	
+	/**
+	 * With the mapped backend, sensor records are written directly into
+	 * memory mapped segments which are written back periodically by the sync
+	 * thread.
+	 */
+	private final Array<MappedLogOutputStream> mappedLogs = new Array<MappedLogOutputStream>();
+	private RateLimitedRunnable sync;
 	
 	public Logging(Settings settings) throws IOException {
 		this.settings = settings;
@@ -52,12 +113,383 @@ public class Logging {
 			}
 			dirs.add(d);
 		}
+		
+		if (isMapped()) {
+			if (isStriped()) {
+				System.err.println("Stripe mode is not supported by the mapped logging backend, sensor logs will be mirrored.");
+			}
+			if (settings.logging.durabilityInterval != 0) {
+				startSync(settings.logging.durabilityInterval);
+			}
+			System.out.println("Logging backend: " + settings.logging.backend + ".");
+		}
+		
+		Settings.WriterSettings writer = settings.logging.writers;
+		if (writer != null && writer.enabled) {
+			for (File d : dirs) {
+				AsyncBlockWriter w = new AsyncBlockWriter(d.getPath(), writer.queueCapacity, writer.policy);
+				w.start();
+				writers.add(w);
+			}
+			System.out.println("Logging writers: " + writers.size + " directories, " + writer.queueCapacity + " blocks, " + writer.policy + ".");
+		}
+		
+		Settings.RingBufferSettings ringBuffer = settings.logging.ringBuffer;
+		if (ringBuffer != null && ringBuffer.enabled) {
+			ring = new RecordRingBuffer(ringBuffer.capacity, ringBuffer.slotSize);
+			ring.setFlushInterval(ringBuffer.flushInterval != 0L ? ringBuffer.flushInterval : settings.logging.flushInterval); // as the blocks' max age, so blocks fill
+			ring.start();
+			System.out.println("Logging ring buffer: " + ring.getCapacity() + " slots of " + ring.getSlotSize() + " bytes.");
+		}
+		
+		Settings.PreallocateSettings preallocate = settings.logging.preallocate;
+		if (preallocate != null && preallocate.enabled && !isFramed() && !isMapped()) {
+			System.err.println("Log pre-allocation requires checksums, logs will not be pre-allocated.");
+		}
+		
+		if (settings.logging.compress && (isSegmented() || isMapped())) {
+			compressor = new SegmentCompressor();
+			compressor.start();
+		}
+		
+		if (settings.logging.flightLog != null) {
+			openFlightLog(settings.logging.flightLog);
+		}
+	}
+	
+	private void openFlightLog(String file) throws IOException {
+		Settings.DevicesSettings devices = settings.devices;
+		long bytesPerSecond = 0;
+		if (devices.adxl345.enabled) {
+			bytesPerSecond += getBytesPerSecond(ADXL345OutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		if (devices.itg3205.enabled) {
+			bytesPerSecond += getBytesPerSecond(ITG3205OutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		if (devices.hmc5883l.enabled) {
+			bytesPerSecond += getBytesPerSecond(HMC5883LOutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		if (devices.ms5611.enabled) {
+			bytesPerSecond += getBytesPerSecond(MS5611OutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		if (devices.ads1115.enabled) {
+			bytesPerSecond += getBytesPerSecond(ADS1115OutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		if (devices.gps.enabled) {
+			bytesPerSecond += getBytesPerSecond(GPSOutputStream.NAME, FLIGHT_LOG_RECORD_HEADER);
+		}
+		
+		flightLog = new FlightLogOutputStream(openRecordLog(file, bytesPerSecond), stopwatch);
+		
+		if (devices.adxl345.enabled) {
+			flightLogChannels.put(ADXL345OutputStream.NAME, flightLog.addChannel(ADXL345OutputStream.NAME));
+		}
+		if (devices.itg3205.enabled) {
+			flightLogChannels.put(ITG3205OutputStream.NAME, flightLog.addChannel(ITG3205OutputStream.NAME));
+		}
+		if (devices.hmc5883l.enabled) {
+			flightLogChannels.put(HMC5883LOutputStream.NAME, flightLog.addChannel(HMC5883LOutputStream.NAME));
+		}
+		if (devices.ms5611.enabled) {
+			flightLogChannels.put(MS5611OutputStream.NAME, flightLog.addChannel(MS5611OutputStream.NAME));
+		}
+		if (devices.ads1115.enabled) {
+			flightLogChannels.put(ADS1115OutputStream.NAME, flightLog.addChannel(ADS1115OutputStream.NAME));
+		}
+		if (devices.gps.enabled) {
+			flightLogChannels.put(GPSOutputStream.NAME, flightLog.addChannel(GPSOutputStream.NAME));
+		}
+		flightLog.writeHeader();
+		System.out.println("Flight log: " + file + " " + flightLogChannels.keySet());
+	}
+	
+	/**
+	 * Returns the ring buffer sensor records are published into, or null if
+	 * logging is synchronous.
+	 * 
+	 * @return
+	 */
+	public RecordRingBuffer getRingBuffer() {
+		return ring;
+	}
+	
+	/**
+	 * Opens the specified log file in every logging directory.
+	 * 
+	 * Writes are collected into blocks of settings.logging.blockSize bytes
+	 * which are written to each file with a single channel write.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	private BlockOutputStream openLog(String file) throws FileNotFoundException {
+		BlockOutputStream out = new BlockOutputStream(openSink(file, false, false, 0L), settings.logging.blockSize);
+		out.setMaxAge(settings.logging.flushInterval);
+		return out;
+	}
+	
+	/**
+	 * Opens the specified sensor (or flight) log in every logging directory.
+	 * 
+	 * Blocks are framed with a sync marker and CRC32 if
+	 * settings.logging.checksums is set, so the log can be recovered after a
+	 * crash, and the log is split into segments if a segment size or
+	 * duration is set. In stripe mode the blocks are distributed across the
+	 * directories instead of mirrored, and are always framed so that their
+	 * sequence numbers can be used to put the stripes back in order.
+	 * 
+	 * Framed logs are pre-allocated if enabled (see
+	 * {@link #getPreallocation(long)}). With the mapped backend the log is
+	 * written into memory mapped segments instead (see
+	 * {@link #openMappedLog(String)}).
+	 * 
+	 * @param file
+	 * @param bytesPerSecond Expected data rate of the log.
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	private OutputStream openRecordLog(final String file, long bytesPerSecond) throws FileNotFoundException {
+		if (isMapped()) {
+			return openMappedLog(file);
+		}
+		
+		final long preallocate = getPreallocation(bytesPerSecond);
+		BlockSink sink;
+		if (isSegmented()) {
+			sink = new SegmentedSink(new SegmentedSink.SegmentFactory() {
+				@Override
+				public BlockSink openSegment(int index) throws IOException {
+					return openSink(LogFiles.getSegment(new File(file), index).getPath(), isStriped(), true, preallocate);
+				}
+
+			}, settings.logging.segmentSize, settings.logging.segmentDuration);
+		} else {
+			sink = openSink(file, isStriped(), false, preallocate);
+		}
+		
+		BlockOutputStream out = new BlockOutputStream(sink, settings.logging.blockSize, isFramed());
+		out.setMaxAge(settings.logging.flushInterval);
+		return out;
+	}
+	
+	/**
+	 * Opens the specified sensor (or flight) log in every logging directory
+	 * as memory mapped segments of settings.logging.segmentSize bytes (or
+	 * {@link MappedLogOutputStream#DEFAULT_SEGMENT_SIZE} if not set).
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private MappedLogOutputStream openMappedLog(String file) {
+		File[] files = new File[dirs.size];
+		for (int i = 0; i < dirs.size; i++) {
+			files[i] = new File(dirs.get(i) + FILE_SEPARATOR + file);
+		}
+		long segmentSize = settings.logging.segmentSize != 0
+				? settings.logging.segmentSize
+				: MappedLogOutputStream.DEFAULT_SEGMENT_SIZE;
+		
+		MappedLogOutputStream out = new MappedLogOutputStream(files, segmentSize, settings.logging.blockSize);
+		out.setMaxAge(settings.logging.flushInterval);
+		out.setCompressor(compressor);
+		synchronized (mappedLogs) {
+			mappedLogs.add(out);
+		}
+		return out;
+	}
+	
+	/**
+	 * Starts the thread which writes the mapped logs back to their files.
+	 * 
+	 * @param interval Milliseconds between write backs.
+	 */
+	private void startSync(long interval) {
+		sync = new RateLimitedRunnable(interval) {
+			@Override
+			public void loop() throws InterruptedException {
+				synchronized (mappedLogs) {
+					for (MappedLogOutputStream log : mappedLogs) {
+						try {
+							log.sync();
+						} catch (IOException e) {
+							System.err.println(e);
+						}
+					}
+				}
+			}
+		};
+		Thread thread = new Thread(sync, "log-sync");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Returns the size each file of a log is pre-allocated to: the data
+	 * expected within settings.logging.preallocate.duration (or a segment, if
+	 * shorter) split across the stripes.
+	 * 
+	 * Only framed logs are pre-allocated since the end of the data of a log
+	 * which was not closed can only be found by its block headers.
+	 * 
+	 * @param bytesPerSecond Expected data rate of the log.
+	 * @return Size in bytes, 0 if pre-allocation is disabled.
+	 */
+	private long getPreallocation(long bytesPerSecond) {
+		Settings.PreallocateSettings preallocate = settings.logging.preallocate;
+		if (preallocate == null || !preallocate.enabled || !isFramed()) {
+			return 0L;
+		}
+		
+		int blockSize = settings.logging.blockSize;
+		long size = bytesPerSecond * preallocate.duration;
+		if (settings.logging.segmentDuration != 0) {
+			size = Math.min(size, bytesPerSecond * settings.logging.segmentDuration / 1000L);
+		}
+		size += size / (blockSize - BlockOutputStream.HEADER_SIZE) * BlockOutputStream.HEADER_SIZE;
+		if (settings.logging.segmentSize != 0) {
+			size = Math.min(size, settings.logging.segmentSize + blockSize);
+		}
+		if (isStriped()) {
+			size /= dirs.size;
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns the expected data rate of the log of the specified sensor, from
+	 * its record rate (see settings.logging.preallocate) and record size.
+	 * 
+	 * @param name Sensor name.
+	 * @param recordHeader Size of the header the log adds to each record.
+	 * @return
+	 */
+	private long getBytesPerSecond(String name, int recordHeader) {
+		Settings.PreallocateSettings preallocate = settings.logging.preallocate;
+		if (preallocate == null) return 0L;
+		
+		if (ADXL345OutputStream.NAME.equals(name)) {
+			return (long) preallocate.adxl345 * (VECTOR_RECORD_SIZE + recordHeader);
+		} else if (ITG3205OutputStream.NAME.equals(name)) {
+			return (long) preallocate.itg3205 * (VECTOR_RECORD_SIZE + recordHeader);
+		} else if (HMC5883LOutputStream.NAME.equals(name)) {
+			return (long) preallocate.hmc5883l * (VECTOR_RECORD_SIZE + recordHeader);
+		} else if (MS5611OutputStream.NAME.equals(name)) {
+			return (long) preallocate.ms5611 * (MS5611_RECORD_SIZE + recordHeader);
+		} else if (ADS1115OutputStream.NAME.equals(name)) {
+			return (long) preallocate.ads1115 * (ADS1115_RECORD_SIZE + recordHeader);
+		} else if (GPSOutputStream.NAME.equals(name)) {
+			return (long) preallocate.gps * (GPS_RECORD_SIZE + recordHeader);
+		}
+		return 0L;
+	}
+	
+	/**
+	 * Sensor and flight logs are framed if settings.logging.checksums is set
+	 * and always in stripe mode.
+	 */
+	private boolean isFramed() {
+		return settings.logging.checksums || isStriped();
+	}
+	
+	private boolean isMapped() {
+		return settings.logging.backend == Settings.LoggingBackend.MAPPED;
+	}
+	
+	private boolean isStriped() {
+		return settings.logging.mode == Settings.LoggingMode.STRIPE;
+	}
+	
+	private boolean isSegmented() {
+		return settings.logging.segmentSize != 0 || settings.logging.segmentDuration != 0;
+	}
+	
+	/**
+	 * Opens a sink which writes to the specified file in every logging
+	 * directory, through the writer thread of each directory if enabled.
+	 * 
+	 * @param file
+	 * @param isStriped Whether blocks are distributed round-robin across the
+	 *                  directories instead of written to all of them.
+	 * @param isSegment Whether the file is a segment to be compressed once
+	 *                  closed.
+	 * @param preallocate Size to pre-allocate each file to (in bytes), 0 to
+	 *                    grow the files as they are written.
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	private BlockSink openSink(String file, boolean isStriped, boolean isSegment, long preallocate) throws FileNotFoundException {
+		BlockSink[] sinks = new BlockSink[dirs.size];
+		for (int i = 0; i < dirs.size; i++) {
+			File f = new File(dirs.get(i) + FILE_SEPARATOR + file);
+			BlockSink sink = new FileChannelSink(f, preallocate);
+			if (isSegment && compressor != null) {
+				sink = compressor.wrap(sink, f);
+			}
+			if (writers.size != 0) {
+				sink = writers.get(i).open(sink);
+			}
+			sinks[i] = sink;
+		}
+		return isStriped ? new BlockSinkStriper(sinks) : new BlockSinkMultiplexer(sinks);
+	}
+	
+	/**
+	 * Opens the log of the specified sensor, either its channel of the flight
+	 * log or its own log file in every logging directory.
+	 * 
+	 * When the ring buffer is enabled the returned stream publishes records
+	 * into it and the logs are written by its writer thread.
+	 * 
+	 * @param name Sensor name.
+	 * @param file Sensor log file.
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	private OutputStream openSensorLog(String name, String file) throws FileNotFoundException {
+		OutputStream out;
+		if (flightLog != null) {
+			out = flightLogChannels.get(name);
+			if (out == null) {
+				throw new RuntimeException("Flight log channel not defined: " + name);
+			}
+		} else {
+			if (file == null) {
+				throw new RuntimeException(name + " logFile not defined.");
+			}
+			out = openRecordLog(file, getBytesPerSecond(name, 0));
+		}
+		return ring == null ? out : ring.open(out);
+	}
+	
+	/**
+	 * Has a sensor stream write a keyframe after a record of it is dropped
+	 * because the ring buffer is full, since its next delta encoded reading
+	 * would be relative to the dropped one.
+	 * 
+	 * @param log Stream from {@link #openSensorLog(String, String)}.
+	 * @param out Sensor stream writing to it.
+	 */
+	private static void setDiscontinuityListener(OutputStream log, SensorOutputStream out) {
+		if (log instanceof RingBufferOutputStream) {
+			((RingBufferOutputStream) log).setDiscontinuityListener(out);
+		}
 	}
 	
 	public Array<File> getDirectories() {
 		return dirs;
 	}
 	
+	/**
+	 * Returns the writers of the logging directories (empty if the
+	 * directories are written synchronously).
+	 * 
+	 * @return
+	 */
+	public Array<AsyncBlockWriter> getWriters() {
+		return writers;
+	}
+	
 	public ADXL345OutputStream getADXL345OutputStream() throws FileNotFoundException {
 		if (adxl345Log == null) {
 			adxl345Log = openADXL345OutputStream();
@@ -67,17 +499,10 @@ public class Logging {
 	
 	public ADXL345OutputStream openADXL345OutputStream() throws FileNotFoundException {
 		String file = settings.devices.adxl345.logFile;
-		if (file == null) {
-			throw new RuntimeException("ADXL345 logFile not defined.");
-		}
-		
-		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
-		ADXL345OutputStream out = new ADXL345OutputStream(multiplexer);
-		
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			multiplexer.add(new FileOutputStream(f));
-		}
+		OutputStream log = openSensorLog(ADXL345OutputStream.NAME, file);
+		ADXL345OutputStream out = new ADXL345OutputStream(log, stopwatch);
+		out.setCompact(settings.logging.compact, settings.logging.keyframeInterval);
+		setDiscontinuityListener(log, out);
 		return out;
 	}
 	
@@ -97,17 +522,10 @@ public class Logging {
 	
 	public ITG3205OutputStream openITG3205OutputStream() throws FileNotFoundException {
 		String file = settings.devices.itg3205.logFile;
-		if (file == null) {
-			throw new RuntimeException("ITG3205 logFile not defined.");
-		}
-		
-		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
-		ITG3205OutputStream out = new ITG3205OutputStream(multiplexer);
-		
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			multiplexer.add(new FileOutputStream(f));
-		}
+		OutputStream log = openSensorLog(ITG3205OutputStream.NAME, file);
+		ITG3205OutputStream out = new ITG3205OutputStream(log, stopwatch);
+		out.setCompact(settings.logging.compact, settings.logging.keyframeInterval);
+		setDiscontinuityListener(log, out);
 		return out;
 	}
 	
@@ -127,17 +545,10 @@ public class Logging {
 	
 	public HMC5883LOutputStream openHMC5883LOutputStream() throws FileNotFoundException {
 		String file = settings.devices.hmc5883l.logFile;
-		if (file == null) {
-			throw new RuntimeException("HMC5883L logFile not defined.");
-		}
-		
-		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
-		HMC5883LOutputStream out = new HMC5883LOutputStream(multiplexer);
-		
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			multiplexer.add(new FileOutputStream(f));
-		}
+		OutputStream log = openSensorLog(HMC5883LOutputStream.NAME, file);
+		HMC5883LOutputStream out = new HMC5883LOutputStream(log, stopwatch);
+		out.setCompact(settings.logging.compact, settings.logging.keyframeInterval);
+		setDiscontinuityListener(log, out);
 		return out;
 	}
 	
@@ -157,18 +568,7 @@ public class Logging {
 
 	public MS5611OutputStream openMS5611OutputStream() throws FileNotFoundException {
 		String file = settings.devices.ms5611.logFile;
-		if (file == null) {
-			throw new RuntimeException("MS5611 logFile not defined.");
-		}
-		
-		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
-		MS5611OutputStream out = new MS5611OutputStream(multiplexer);
-		
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			multiplexer.add(new FileOutputStream(f));
-		}
-		return out;
+		return new MS5611OutputStream(openSensorLog(MS5611OutputStream.NAME, file), stopwatch);
 	}
 	
 	public void closeMS5611OutputStream() throws IOException {
@@ -187,18 +587,7 @@ public class Logging {
 	
 	public ADS1115OutputStream openADS1115OutputStream() throws FileNotFoundException {
 		String file = settings.devices.ads1115.logFile;
-		if (file == null) {
-			throw new RuntimeException("ADS1115 logFile not defined.");
-		}
-		
-		OutputStreamMultiplexer multiplexer = new OutputStreamMultiplexer();
-		ADS1115OutputStream out = new ADS1115OutputStream(multiplexer);
-		
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			multiplexer.add(new FileOutputStream(f));
-		}
-		return out;
+		return new ADS1115OutputStream(openSensorLog(ADS1115OutputStream.NAME, file), stopwatch);
 	}
 	
 	public void closeADS1115OutputStream() throws IOException {
@@ -208,25 +597,16 @@ public class Logging {
 		ads1115Log = null;
 	}
 	
-	public OutputStream getGPSOutputStream() throws FileNotFoundException {
+	public GPSOutputStream getGPSOutputStream() throws FileNotFoundException {
 		if (gpsLog == null) {
 			gpsLog = openGPSOutputStream();
 		}
 		return gpsLog;
 	}
 	
-	public OutputStreamMultiplexer openGPSOutputStream() throws FileNotFoundException {
-		String file = settings.devices.gps.logFile;
-		if (file == null) {
-			throw new RuntimeException("GPS logFile not defined.");
-		}
-		
-		gpsLog = new OutputStreamMultiplexer();
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			gpsLog.add(new FileOutputStream(f));
-		}
-		return gpsLog;
+	public GPSOutputStream openGPSOutputStream() throws FileNotFoundException {
+		String file = settings.devices.gps.fixLogFile;
+		return new GPSOutputStream(openSensorLog(GPSOutputStream.NAME, file), stopwatch);
 	}
 	
 	public void closeGPSOutputStream() throws IOException {
@@ -236,6 +616,39 @@ public class Logging {
 		gpsLog = null;
 	}
 	
+	/**
+	 * Returns the log of the raw NMEA sentences received from the GPS, or
+	 * null if settings.devices.gps.logFile is not set.
+	 * 
+	 * @return
+	 * @throws FileNotFoundException
+	 */
+	public OutputStream getNMEAOutputStream() throws FileNotFoundException {
+		if (nmeaLog == null) {
+			nmeaLog = openNMEAOutputStream();
+		}
+		return nmeaLog;
+	}
+	
+	public OutputStream openNMEAOutputStream() throws FileNotFoundException {
+		String file = settings.devices.gps.logFile;
+		if (file == null) return null;
+		if (flightLog == null && file.equals(settings.devices.gps.fixLogFile)) {
+			System.err.println("GPS logFile " + file + " is the fixLogFile, not logging NMEA sentences.");
+			return null;
+		}
+		
+		nmeaLog = openLog(file);
+		return nmeaLog;
+	}
+	
+	public void closeNMEAOutputStream() throws IOException {
+		if (nmeaLog != null) {
+			nmeaLog.close();
+		}
+		nmeaLog = null;
+	}
+	
 	public OutputStream getXTend900OutputStream() throws FileNotFoundException {
 		if (xtend900log == null) {
 			xtend900log = openXTend900OutputStream();
@@ -243,17 +656,13 @@ public class Logging {
 		return xtend900log;
 	}
 	
-	public OutputStreamMultiplexer openXTend900OutputStream() throws FileNotFoundException {
+	public OutputStream openXTend900OutputStream() throws FileNotFoundException {
 		String file = settings.devices.xtend900.logFile;
 		if (file == null) {
 			throw new RuntimeException("XTend 900 logFile not defined.");
 		}
 		
-		xtend900log = new OutputStreamMultiplexer();
-		for (File d : dirs) {
-			File f = new File(d + FILE_SEPARATOR + file);
-			xtend900log.add(new FileOutputStream(f));
-		}
+		xtend900log = openLog(file);
 		return xtend900log;
 	}
 	
@@ -265,6 +674,19 @@ public class Logging {
 	}
 	
 	public void close() {
+		if (sync != null) {
+			sync.setRunning(false); // closing each mapped log writes it back
+			sync = null;
+		}
+		
+		if (ring != null) {
+			long timeout = settings.logging.ringBuffer.shutdownTimeout;
+			if (!ring.shutdown(timeout)) {
+				System.err.println("Logging ring buffer not flushed within " + timeout + " ms.");
+			}
+			System.out.println(ring);
+		}
+		
 		try {
 			closeADXL345OutputStream();
 		} catch (IOException e) {
@@ -295,11 +717,40 @@ public class Logging {
 		} catch (IOException e) {
 			System.err.println(e);
 		}
+		try {
+			closeNMEAOutputStream();
+		} catch (IOException e) {
+			System.err.println(e);
+		}
 		try {
 			closeXTend900OutputStream();
 		} catch (IOException e) {
 			System.err.println(e);
 		}
+		if (flightLog != null) {
+			try {
+				flightLog.close();
+			} catch (IOException e) {
+				System.err.println(e);
+			}
+			flightLog = null;
+		}
+		
+		for (AsyncBlockWriter writer : writers) {
+			long timeout = settings.logging.writers.shutdownTimeout;
+			if (!writer.shutdown(timeout)) {
+				System.err.println("Logging writer " + writer.getName() + " not flushed within " + timeout + " ms.");
+			}
+			System.out.println(writer);
+		}
+		
+		if (compressor != null) {
+			long timeout = settings.logging.compressTimeout;
+			if (!compressor.shutdown(timeout)) {
+				System.err.println("Log segments not compressed within " + timeout + " ms.");
+			}
+			System.out.println(compressor);
+		}
 	}
 
 }
@@ -1,5 +1,8 @@
 package edu.sdsu.rocket.server;
 
+import edu.sdsu.rocket.core.io.AsyncBlockWriter;
+import edu.sdsu.rocket.server.devices.ADS1115;
+import edu.sdsu.rocket.server.devices.CyclicExecutive;
 import edu.sdsu.rocket.server.io.radio.XTend900Config;
 
 public class Settings {
@@ -11,9 +14,65 @@ public class Settings {
 	public StatusSettings status;
 	public DevicesSettings devices;
 
+	public enum LoggingMode {
+		MIRROR, // every directory holds a full copy of each log
+		STRIPE; // blocks are distributed round-robin across the directories
+	}
+	
+	public enum LoggingBackend {
+		STREAM, // records are written through output streams into blocks handed to the files
+		MAPPED; // records are written directly into memory mapped segments
+	}
+	
 	public static class LoggingSettings {
 		public String dateFormat;
 		public String[] directories;
+		public LoggingMode mode = LoggingMode.MIRROR;
+		public LoggingBackend backend = LoggingBackend.STREAM;
+		public long durabilityInterval = 1000L; // milliseconds, 0 to leave write back to the kernel
+		public String flightLog;
+		public int blockSize = 4096; // bytes, pass to log2csv --block-size if changed
+		public long flushInterval = 1000L; // milliseconds
+		public boolean checksums = true;
+		public boolean compact;
+		public int keyframeInterval = 256; // readings
+		public long segmentSize; // bytes, 0 for no size limit
+		public long segmentDuration; // milliseconds, 0 for no time limit
+		public boolean compress;
+		public long compressTimeout = 10000L; // milliseconds
+		public RingBufferSettings ringBuffer;
+		public WriterSettings writers;
+		public PreallocateSettings preallocate;
+	}
+	
+	/**
+	 * Sensor (and flight) logs are pre-allocated to the size expected after
+	 * the specified duration at the specified record rates.
+	 */
+	public static class PreallocateSettings {
+		public boolean enabled;
+		public long duration = 600L; // seconds
+		public int adxl345 = 400; // records per second
+		public int itg3205 = 2667; // records per second
+		public int hmc5883l = 75; // records per second
+		public int ms5611 = 100; // records per second
+		public int ads1115 = 860; // records per second
+		public int gps = 10; // records per second
+	}
+	
+	public static class WriterSettings {
+		public boolean enabled;
+		public int queueCapacity = 256; // blocks
+		public AsyncBlockWriter.Policy policy = AsyncBlockWriter.Policy.BLOCK;
+		public long shutdownTimeout = 2000L; // milliseconds
+	}
+	
+	public static class RingBufferSettings {
+		public boolean enabled;
+		public int capacity = 8192; // slots
+		public int slotSize = 32; // bytes
+		public long flushInterval; // milliseconds while idle, 0 for logging.flushInterval (each flush ends a block)
+		public long shutdownTimeout = 2000L; // milliseconds
 	}
 	
 	public static class ServerSettings {
@@ -24,7 +83,19 @@ public class Settings {
 		public boolean enabled;
 	}
 	
+	/**
+	 * Devices with a rate are run by a cyclic executive on the specified
+	 * number of threads (instead of a thread each), after timing each
+	 * device's loop the specified number of times.
+	 */
+	public static class SchedulerSettings {
+		public boolean enabled;
+		public int threads = 1;
+		public int calibrationLoops = CyclicExecutive.DEFAULT_CALIBRATION_LOOPS;
+	}
+	
 	public static class DevicesSettings {
+		public SchedulerSettings scheduler;
 		public XTend900Settings xtend900;
 		public ADXL345Settings adxl345;
 		public ITG3205Settings itg3205;
@@ -53,38 +124,56 @@ public class Settings {
 	public static class ADXL345Settings {
 		public boolean enabled;
 		public String logFile;
-		public long sleep;
-//		public long throttle;
+		@Deprecated
+		public long sleep = -1L; // milliseconds after each loop, replaced by rate (-1 when not set)
+		public float rate; // Hz, 0 for as fast as possible
+		public int priority = 3; // on the I2C bus, higher first
+		public long deadline = 1000L; // microseconds waiting for the I2C bus before going first, 0 for none
 	}
 	
 	public static class ITG3205Settings {
 		public boolean enabled;
 		public String logFile;
-		public long sleep;
-//		public long throttle;
+		@Deprecated
+		public long sleep = -1L; // milliseconds after each loop, replaced by rate (-1 when not set)
+		public float rate; // Hz, 0 for as fast as possible (the sample rate divider sets 2667 Hz)
+		public int priority = 3; // on the I2C bus, higher first
+		public long deadline = 500L; // microseconds waiting for the I2C bus before going first, 0 for none
 	}
 	
 	public static class HMC5883LSettings {
 		public boolean enabled;
 		public String logFile;
+		public float rate = 75f; // Hz, rounded up to a data output rate of the device (0.75 to 75), 0 for the fastest
+		public int priority = 1; // on the I2C bus, higher first
+		public long deadline = 5000L; // microseconds waiting for the I2C bus before going first, 0 for none
 	}
 	
 	public static class MS5611Settings {
 		public boolean enabled;
 		public String logFile;
-		public long sleep;
-//		public long throttle;
+		@Deprecated
+		public long sleep = -1L; // milliseconds after each loop, replaced by rate (-1 when not set)
+		public float rate; // Hz (4 loops per reading), 0 for as fast as possible
+		public int priority = 2; // on the I2C bus, higher first
+		public long deadline = 2000L; // microseconds waiting for the I2C bus before going first, 0 for none
 	}
 	
 	public static class ADS1115Settings {
 		public boolean enabled;
 		public String logFile;
+		public float rate; // Hz (a loop converts the whole sequence), 0 for as fast as possible
+		public int priority = 0; // on the I2C bus, higher first
+		public long deadline = 10000L; // microseconds waiting for the I2C bus before going first, 0 for none
+		public ADS1115.Acquisition acquisition = ADS1115.Acquisition.WAIT; // how the end of each conversion is waited for
+		public int readyPin = -1; // GPIO (WiringPi number) of the ALERT/RDY pin, for READY
 		public int[] sequence;
 	}
 	
 	public static class GPSSettings {
 		public boolean enabled;
-		public String logFile;
+		public String logFile; // raw NMEA sentences (optional)
+		public String fixLogFile = "gps.log"; // decoded fixes, log2csv reads gps.log
 		public String device;
 		public GPSPosition local;
 		public GPSPosition remote;
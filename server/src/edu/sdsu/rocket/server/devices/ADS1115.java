@@ -5,11 +5,40 @@ import com.pi4j.io.i2c.I2CDevice;
 import com.pi4j.io.i2c.I2CFactory;
 
 import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable;
 import edu.sdsu.rocket.server.devices.DeviceManager.Device;
 
 public class ADS1115 implements Device {
 	
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	
+	/**
+	 * How the end of a single-shot conversion is waited for.
+	 */
+	public enum Acquisition {
+		/**
+		 * Reads the config register until the conversion is done, a bus
+		 * transaction per poll.
+		 */
+		POLL,
+		/**
+		 * Sleeps for the conversion time of the data rate, then reads the
+		 * conversion once.
+		 */
+		WAIT,
+		/**
+		 * Waits for the ALERT/RDY pin, configured as conversion ready with
+		 * {@link ADS1115#writeConversionReady()}, to be signaled with
+		 * {@link ADS1115#onReady()} (e.g. on a GPIO edge), then reads the
+		 * conversion once.
+		 */
+		READY,
+	}
+	
 	public enum Channel {
 		A0, A1, A2, A3,
 		;
@@ -39,6 +68,17 @@ public class ADS1115 implements Device {
 		this.timeout = timeout;
 	}
 	
+	protected Acquisition acquisition = Acquisition.WAIT;
+	public ADS1115 setAcquisition(Acquisition acquisition) {
+		if (acquisition == null) throw new NullPointerException();
+		this.acquisition = acquisition;
+		return this;
+	}
+	
+	public Acquisition getAcquisition() {
+		return acquisition;
+	}
+	
 	protected int[] sequence = new int[] { 0, 1, 2, 3 };
 	public void setSequence(int[] sequence) {
 		if (sequence == null || sequence.length == 0) {
@@ -320,6 +360,18 @@ public class ADS1115 implements Device {
 	 * Read/write buffer.
 	 */
 	private final byte[] BUFFER = new byte[2];
+	
+	/**
+	 * Signals of the ALERT/RDY pin.
+	 */
+	private final Semaphore ready = new Semaphore(0);
+	
+	// statistics
+	private long samples;
+	private long transactions;
+	private long transactionTime; // ns, of the begin and read of each sample
+	private long waitTime; // ns, for conversions without polling
+	private long timeouts;
 
 	public ADS1115() {
 		this(I2CBus.BUS_1);
@@ -347,7 +399,7 @@ public class ADS1115 implements Device {
      */
 	public ADS1115 setup() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		// http://pi4j.com/example/control.html
-		i2c = I2CFactory.getInstance(i2cBus).getDevice(address.config);
+		i2c = I2CBusArbiter.getInstance(i2cBus).getDevice(address.config, "ADS1115");
 		return this;
 	}
 	
@@ -487,6 +539,38 @@ public class ADS1115 implements Device {
 		writeRegister(Register.CONFIG, config);
 	}
 	
+	/**
+	 * Configures the ALERT/RDY pin to assert (with the polarity of the
+	 * config) at the end of each conversion, for {@link Acquisition#READY}.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public ADS1115 writeConversionReady() throws IOException {
+		setQueue(Queue.COMP_QUE_1_CONVERSION);
+		writeLoThresh(LO_THRESH_RDY);
+		writeHiThresh(HI_THRESH_RDY);
+		return this;
+	}
+	
+	/**
+	 * Signals that the ALERT/RDY pin asserted, i.e. the conversion is ready.
+	 * Called from the GPIO listener of the pin.
+	 */
+	public void onReady() {
+		ready.release();
+	}
+	
+	/**
+	 * Returns the time a single-shot conversion takes at the data rate (ns),
+	 * including the 10% tolerance of the data rate.
+	 * 
+	 * @return
+	 */
+	public long getConversionTime() {
+		return NANOSECONDS_PER_SECOND * 11L / 10L / rate.sps;
+	}
+	
 	public short readConversion() throws IOException {
 		return (short) readRegister(Register.CONVERSION);
 	}
@@ -524,24 +608,108 @@ public class ADS1115 implements Device {
 	public void loop() throws IOException, InterruptedException {
 		for (int channel : sequence) {
 			long start = System.nanoTime();
+			if (acquisition == Acquisition.READY) {
+				ready.drainPermits(); // of the previous conversion
+			}
 			setSingleEnded(channel).begin();
+			long begun = System.nanoTime();
 			
 			// wait for conversion
-			while (isPerformingConversion()) {
-				if (System.nanoTime() - start > timeout) {
-					if (listener != null) {
-						listener.onConversionTimeout();
+			int polls = 0;
+			switch (acquisition) {
+			case POLL:
+				polls = 1;
+				while (isPerformingConversion()) {
+					if (System.nanoTime() - start > timeout) {
+						onConversionTimeout();
+						break;
+					}
+					polls++;
+				}
+				break;
+			case WAIT:
+				RateLimitedRunnable.waitUntil(begun + getConversionTime(), 0L);
+				break;
+			case READY:
+				if (timeout > 0) {
+					if (!ready.tryAcquire(timeout - (begun - start), TimeUnit.NANOSECONDS)) {
+						onConversionTimeout();
 					}
-					break;
+				} else {
+					ready.acquire();
 				}
+				break;
 			}
 			
+			long waited = System.nanoTime();
 			float value = readMillivolts();
+			long read = System.nanoTime();
+			
+			samples++;
+			transactions += 2 + polls; // the begin, polls and read
+			transactionTime += (begun - start) + (read - waited);
+			if (acquisition != Acquisition.POLL) {
+				waitTime += waited - begun;
+			}
 			
 			if (listener != null) {
 				listener.onValue(Channel.valueOf(channel), value);
 			}
 		}
 	}
+	
+	private void onConversionTimeout() {
+		timeouts++;
+		if (listener != null) {
+			listener.onConversionTimeout();
+		}
+	}
+	
+	public long getSampleCount() {
+		return samples;
+	}
+	
+	/**
+	 * Returns the number of conversions which did not end within the timeout.
+	 * 
+	 * @return
+	 */
+	public long getTimeoutCount() {
+		return timeouts;
+	}
+	
+	/**
+	 * Returns the mean number of bus transactions per sample, including the
+	 * polls of the config register.
+	 * 
+	 * @return
+	 */
+	public double getTransactionsPerSample() {
+		return samples == 0 ? 0.0 : transactions / (double) samples;
+	}
+	
+	/**
+	 * Returns the number of bus transactions per sample saved by not polling,
+	 * estimated as the number of polls the wait for the conversions would
+	 * have taken, at the mean duration of a transaction.
+	 * 
+	 * @return
+	 */
+	public double getTransactionsSaved() {
+		if (samples == 0 || transactionTime == 0) return 0.0;
+		double meanTransactionTime = transactionTime / (2.0 * samples);
+		return waitTime / meanTransactionTime / samples;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s (%s): %d samples, %.1f bus transactions per sample, %.1f saved, %d timeouts",
+				getClass().getSimpleName(),
+				acquisition,
+				samples,
+				getTransactionsPerSample(),
+				getTransactionsSaved(),
+				timeouts);
+	}
 
 }
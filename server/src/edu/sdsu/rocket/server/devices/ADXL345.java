@@ -223,7 +223,7 @@ public class ADXL345 implements Device {
      */
 	public void setup() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		// http://pi4j.com/example/control.html
-		i2c = I2CFactory.getInstance(i2cBus).getDevice(devAddr);
+		i2c = I2CBusArbiter.getInstance(i2cBus).getDevice(devAddr, "ADXL345");
 		
 		i2c.write(ADXL345_REGISTER_POWER_CTL, (byte) 0); // reset power settings
 		readFullResolution();
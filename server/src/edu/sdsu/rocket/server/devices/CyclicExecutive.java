@@ -0,0 +1,496 @@
+package edu.sdsu.rocket.server.devices;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+import edu.sdsu.rocket.server.devices.DeviceManager.Device;
+
+/**
+ * Time-triggered cyclic executive: runs devices from one (or a few)
+ * acquisition threads according to a static schedule, instead of a thread
+ * per device competing for the I2C bus under OS scheduling.
+ * 
+ * When added, each device's loop is timed back to back (its transaction
+ * cost), and on start the devices are assigned rate monotonically (highest rate first) to
+ * the threads and to frames: the frame of a thread is the period of its
+ * highest rate device, every other device runs every N frames (N being its
+ * period in whole frames, so it runs at least at its rate) at the offset
+ * which least loads the busiest frame. The schedule repeats every major
+ * cycle (the least common multiple of the N). It is schedulable if the cost
+ * of every frame fits in the frame.
+ * 
+ * While running, each frame starts at its deadline (regardless of how late
+ * the previous one ended, so the rates do not drift). A frame which runs
+ * past the start of the next is an overrun of its slot (its index in the
+ * major cycle), and frames which are missed entirely are skipped. The
+ * overruns of each slot and the achieved rate and cost of each device are
+ * reported by {@link #toString()}, so that a bench run shows whether every
+ * device meets its rate.
+ */
+public class CyclicExecutive {
+	
+	public static final int DEFAULT_CALIBRATION_LOOPS = 100;
+	
+	/**
+	 * Percentile of the calibration loop times taken as a device's cost, so
+	 * that a rare stall (e.g. garbage collection) does not inflate the
+	 * schedule. Loops which take longer show up as overruns.
+	 */
+	private static final double CALIBRATION_PERCENTILE = 0.95;
+	
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	private static final double NANOSECONDS_PER_MICROSECOND = 1000.0;
+	
+	/**
+	 * Maximum major cycle (frames). Schedules with longer cycles have their
+	 * multiples rounded down to powers of two (harmonic periods) of at most
+	 * this many frames.
+	 */
+	static final int MAX_FRAMES = 1024;
+	
+	/**
+	 * A device on the executive.
+	 */
+	class Task {
+		
+		final Device device;
+		final String name;
+		final float rate; // Hz, target
+		final long period; // ns, target
+		
+		long cost; // ns, measured while calibrating
+		int multiple; // frames per run
+		int offset; // frame of the first run
+		
+		long start = clock.nanoSecondsElapsed();
+		volatile long frequency;
+		long loops;
+		volatile long maxTime; // ns, since started
+		
+		Task(Device device, float rate) {
+			this.device = device;
+			this.name = device.getClass().getSimpleName();
+			this.rate = rate;
+			this.period = (long) (NANOSECONDS_PER_SECOND / rate);
+		}
+		
+		void loop() {
+			long begin = clock.nanoSecondsElapsed();
+			try {
+				device.loop();
+			} catch (IOException e) {
+				System.err.println(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			long time = clock.nanoSecondsElapsed();
+			
+			if (time - begin > maxTime) {
+				maxTime = time - begin;
+			}
+			loops++;
+			if (time - start > NANOSECONDS_PER_SECOND) {
+				frequency = loops;
+				loops = 0;
+				start = time;
+			}
+		}
+	
+	}
+	
+	/**
+	 * An acquisition thread and its schedule.
+	 */
+	class Executor extends Thread {
+		
+		final List<Task> tasks = new ArrayList<Task>();
+		
+		long frameLength; // ns
+		Task[][] slots; // tasks run in each frame of the major cycle
+		long[] loads; // ns, cost of each slot
+		
+		private long frame; // index since started
+		
+		// statistics, guarded by the lock
+		final Object lock = new Object();
+		long frames;
+		long[] overruns; // by slot
+		long[] maxOverrun; // ns, by slot
+		long skipped; // frames
+		
+		volatile boolean isRunning = true;
+		
+		Executor(int index) {
+			setName(CyclicExecutive.class.getSimpleName() + (threads > 1 ? "-" + index : ""));
+		}
+		
+		double getUtilization() {
+			double utilization = 0;
+			for (Task task : tasks) {
+				utilization += (double) task.cost / task.period;
+			}
+			return utilization;
+		}
+		
+		void plan() {
+			frameLength = tasks.get(0).period; // highest rate
+			long cycle = 1;
+			for (Task task : tasks) {
+				task.multiple = (int) Math.max(1L, task.period / frameLength);
+				if (cycle <= MAX_FRAMES) {
+					cycle = lcm(cycle, task.multiple);
+				}
+			}
+			if (cycle > MAX_FRAMES) {
+				cycle = 1;
+				for (Task task : tasks) {
+					task.multiple = Math.min(Integer.highestOneBit(task.multiple), MAX_FRAMES);
+					cycle = Math.max(cycle, task.multiple);
+				}
+			}
+			
+			int length = (int) cycle;
+			loads = new long[length];
+			List<List<Task>> schedule = new ArrayList<List<Task>>(length);
+			for (int i = 0; i < length; i++) {
+				schedule.add(new ArrayList<Task>());
+			}
+			for (Task task : tasks) {
+				int best = 0;
+				long bestLoad = Long.MAX_VALUE;
+				for (int offset = 0; offset < task.multiple; offset++) {
+					long load = 0;
+					for (int slot = offset; slot < length; slot += task.multiple) {
+						load = Math.max(load, loads[slot]);
+					}
+					if (load < bestLoad) {
+						best = offset;
+						bestLoad = load;
+					}
+				}
+				task.offset = best;
+				for (int slot = best; slot < length; slot += task.multiple) {
+					loads[slot] += task.cost;
+					schedule.get(slot).add(task);
+				}
+			}
+			
+			slots = new Task[length][];
+			for (int i = 0; i < length; i++) {
+				slots[i] = schedule.get(i).toArray(new Task[schedule.get(i).size()]);
+			}
+			overruns = new long[length];
+			maxOverrun = new long[length];
+		}
+		
+		long getMaxLoad() {
+			long max = 0;
+			for (long load : loads) {
+				max = Math.max(max, load);
+			}
+			return max;
+		}
+		
+		boolean isSchedulable() {
+			return getMaxLoad() <= frameLength;
+		}
+		
+		@Override
+		public void run() {
+			long deadline = clock.nanoSecondsElapsed();
+			while (isRunning && !isInterrupted()) {
+				deadline = runFrame(deadline);
+				
+				long sleep;
+				while (isRunning && (sleep = deadline - clock.nanoSecondsElapsed()) > 0) {
+					LockSupport.parkNanos(sleep);
+					if (isInterrupted()) return;
+				}
+			}
+		}
+		
+		/**
+		 * Runs the next frame, which starts at the specified deadline, and
+		 * accounts for it overrunning.
+		 * 
+		 * @param deadline
+		 * @return the deadline of the following frame.
+		 */
+		long runFrame(long deadline) {
+			int slot = (int) (frame % slots.length);
+			for (Task task : slots[slot]) {
+				task.loop();
+			}
+			frame++;
+			deadline += frameLength;
+			
+			long late = clock.nanoSecondsElapsed() - deadline;
+			synchronized (lock) {
+				frames++;
+				if (late > 0) {
+					overruns[slot]++;
+					if (late > maxOverrun[slot]) {
+						maxOverrun[slot] = late;
+					}
+					long missed = late / frameLength;
+					if (missed != 0) {
+						frame += missed;
+						deadline += missed * frameLength;
+						skipped += missed;
+					}
+				}
+			}
+			return deadline;
+		}
+	
+	}
+	
+	private final int threads;
+	private final Stopwatch clock;
+	private int calibrationLoops = DEFAULT_CALIBRATION_LOOPS;
+	
+	private final List<Task> tasks = new ArrayList<Task>();
+	final List<Executor> executors = new ArrayList<Executor>();
+	
+	public CyclicExecutive() {
+		this(1);
+	}
+	
+	/**
+	 * @param threads Number of acquisition threads.
+	 */
+	public CyclicExecutive(int threads) {
+		this(threads, new Stopwatch());
+	}
+	
+	/**
+	 * @param threads Number of acquisition threads.
+	 * @param clock Source of the time the frames and the devices are timed
+	 *              with.
+	 */
+	CyclicExecutive(int threads, Stopwatch clock) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Threads must be positive.");
+		}
+		if (clock == null) throw new NullPointerException();
+		this.threads = threads;
+		this.clock = clock;
+	}
+	
+	/**
+	 * Sets the number of loops of each device added after timed to measure
+	 * its cost.
+	 * 
+	 * @param loops
+	 */
+	public void setCalibrationLoops(int loops) {
+		if (loops <= 0) {
+			throw new IllegalArgumentException("Calibration loops must be positive.");
+		}
+		this.calibrationLoops = loops;
+	}
+	
+	/**
+	 * Adds a device, to be run at (at least) the specified rate once started,
+	 * and measures its cost by timing its loop back to back. The readings of
+	 * those loops go to the device's listener (at a rate the device never runs
+	 * at), so add a device before setting its listener.
+	 * 
+	 * @param device
+	 * @param rate Loops per second (Hz).
+	 */
+	public void add(Device device, float rate) {
+		if (device == null) throw new NullPointerException();
+		if (!(rate > 0f) || Float.isInfinite(rate)) {
+			throw new IllegalArgumentException("Invalid rate: " + rate);
+		}
+		if (!executors.isEmpty()) {
+			throw new IllegalStateException("Already started.");
+		}
+		Task task = new Task(device, rate);
+		calibrate(task);
+		tasks.add(task);
+	}
+	
+	/**
+	 * Times the loop of a device, stopping early (with the interrupt status
+	 * set) if the thread is interrupted.
+	 */
+	private void calibrate(Task task) {
+		System.out.println("Calibrating " + task.name + ".");
+		long[] times = new long[calibrationLoops];
+		int timed = 0;
+		for (int i = -1; i < calibrationLoops; i++) { // the first loop warms up
+			long begin = clock.nanoSecondsElapsed();
+			try {
+				task.device.loop();
+			} catch (IOException e) {
+				System.err.println(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (i >= 0) {
+				times[timed++] = clock.nanoSecondsElapsed() - begin;
+			}
+		}
+		if (timed != 0) {
+			Arrays.sort(times, 0, timed);
+			task.cost = times[(int) (CALIBRATION_PERCENTILE * (timed - 1))];
+		}
+	}
+	
+	public boolean isEmpty() {
+		return tasks.isEmpty();
+	}
+	
+	/**
+	 * Computes the schedule from the cost of each device and starts the
+	 * acquisition threads.
+	 * 
+	 * @throws InterruptedException if the thread was interrupted while the
+	 *         devices were calibrated.
+	 */
+	public void start() throws InterruptedException {
+		if (tasks.isEmpty() || !executors.isEmpty()) return;
+		if (Thread.interrupted()) throw new InterruptedException();
+		
+		plan();
+		System.out.println(getSchedule());
+		
+		long now = clock.nanoSecondsElapsed();
+		for (Task task : tasks) {
+			task.start = now;
+			task.maxTime = 0;
+		}
+		for (Executor executor : executors) {
+			System.out.println("Starting " + executor.getName() + " thread.");
+			executor.start();
+		}
+	}
+	
+	/**
+	 * Assigns the devices to the acquisition threads and computes the
+	 * schedule of each.
+	 */
+	void plan() {
+		// rate monotonic: highest rate (shortest period) first
+		List<Task> sorted = new ArrayList<Task>(tasks);
+		Collections.sort(sorted, new Comparator<Task>() {
+			@Override
+			public int compare(Task a, Task b) {
+				return a.period < b.period ? -1 : (a.period == b.period ? 0 : 1);
+			}
+		});
+		
+		for (int i = 0; i < threads && i < sorted.size(); i++) {
+			executors.add(new Executor(i));
+		}
+		for (Task task : sorted) {
+			Executor least = executors.get(0);
+			for (Executor executor : executors) {
+				if (executor.getUtilization() < least.getUtilization()) {
+					least = executor;
+				}
+			}
+			least.tasks.add(task);
+		}
+		
+		for (Executor executor : executors) {
+			executor.plan();
+		}
+	}
+	
+	/**
+	 * Stops the acquisition threads.
+	 */
+	public void stop() {
+		for (Executor executor : executors) {
+			System.out.println("Stopping " + executor.getName() + " thread.");
+			executor.isRunning = false;
+			executor.interrupt();
+			try {
+				executor.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Returns a description of the schedule: per thread, the frame, major
+	 * cycle, utilization and busiest frame, and per device its measured cost,
+	 * target and scheduled rates, and frames.
+	 * 
+	 * @return
+	 */
+	public String getSchedule() {
+		StringBuilder builder = new StringBuilder();
+		for (Executor executor : executors) {
+			if (builder.length() != 0) builder.append(String.format("%n"));
+			builder.append(String.format(Locale.US, "%s: frame %.1f us, major cycle %d frames, utilization %.1f%%, busiest frame %.1f us%s",
+					executor.getName(),
+					executor.frameLength / NANOSECONDS_PER_MICROSECOND,
+					executor.slots.length,
+					executor.getUtilization() * 100.0,
+					executor.getMaxLoad() / NANOSECONDS_PER_MICROSECOND,
+					executor.isSchedulable() ? "" : " (NOT SCHEDULABLE)"));
+			for (Task task : executor.tasks) {
+				builder.append(String.format(Locale.US, "%n  %s: cost %.1f us, %.1f Hz (target %.1f Hz), every %d frames from %d",
+						task.name,
+						task.cost / NANOSECONDS_PER_MICROSECOND,
+						(double) NANOSECONDS_PER_SECOND / (task.multiple * executor.frameLength),
+						task.rate,
+						task.multiple,
+						task.offset));
+			}
+		}
+		return builder.toString();
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < tasks.size(); i++) {
+			if (i != 0) builder.append("; ");
+			
+			Task task = tasks.get(i);
+			builder.append(String.format(Locale.US, "%s: %d Hz (target %.0f Hz, max %.1f us)",
+					task.name, task.frequency, task.rate, task.maxTime / NANOSECONDS_PER_MICROSECOND));
+		}
+		for (Executor executor : executors) {
+			synchronized (executor.lock) {
+				builder.append("; ").append(executor.getName()).append(": ")
+					.append(executor.frames).append(" frames, ")
+					.append(executor.skipped).append(" skipped");
+				for (int slot = 0; slot < executor.overruns.length; slot++) {
+					if (executor.overruns[slot] == 0) continue;
+					builder.append(String.format(Locale.US, ", slot %d overran %d times (max %.1f us)",
+							slot, executor.overruns[slot], executor.maxOverrun[slot] / NANOSECONDS_PER_MICROSECOND));
+				}
+			}
+		}
+		return getClass().getSimpleName() + ": [" + builder.toString() + "]";
+	}
+	
+	private static long lcm(long a, long b) {
+		return a / gcd(a, b) * b;
+	}
+	
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+}
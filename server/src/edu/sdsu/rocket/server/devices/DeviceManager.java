@@ -2,9 +2,12 @@ package edu.sdsu.rocket.server.devices;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 import edu.sdsu.rocket.core.helpers.RateLimitedRunnable;
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable.Pacing;
 
 public class DeviceManager {
 	
@@ -12,14 +15,34 @@ public class DeviceManager {
 		public void loop() throws IOException, InterruptedException;
 	}
 	
+	private static final double NANOSECONDS_PER_SECOND = 1000000000.0;
+	private static final double NANOSECONDS_PER_MICROSECOND = 1000.0;
+	
 	private List<DeviceThread> threads = new ArrayList<DeviceThread>();
 	
 	public DeviceRunnable add(Device device) {
-		return add(device, false);
+		return add(device, 0f, false);
 	}
 	
 	public DeviceRunnable add(Device device, boolean startPaused) {
+		return add(device, 0f, startPaused);
+	}
+	
+	public DeviceRunnable add(Device device, float rate) {
+		return add(device, rate, false);
+	}
+	
+	/**
+	 * Starts a thread running the device at the specified rate.
+	 * 
+	 * @param device
+	 * @param rate (Hz), 0 to loop as fast as possible
+	 * @param startPaused
+	 * @return
+	 */
+	public DeviceRunnable add(Device device, float rate, boolean startPaused) {
 		DeviceRunnable runnable = new DeviceRunnable(device, startPaused);
+		runnable.setRate(rate); // before the thread starts, so that no loop is unpaced
 		DeviceThread thread = new DeviceThread(runnable);
 		thread.setName(device.getClass().getSimpleName());
 		threads.add(thread);
@@ -48,7 +71,7 @@ public class DeviceManager {
 			if (i != 0) builder.append("; ");
 			
 			DeviceThread thread = threads.get(i);
-			builder.append(thread.getName() + ": " + thread.runnable.frequency + " Hz");
+			builder.append(thread.getName() + ": " + thread.runnable.getStatistics());
 		}
 		return getClass().getSimpleName() + ": [" + builder.toString() + "]";
 	}
@@ -64,15 +87,15 @@ public class DeviceManager {
 		
 	}
 	
+	/**
+	 * Runs a device at a target rate: each loop starts at a deadline one
+	 * period after the previous one (so the wait adapts to the duration of
+	 * the loop, and lateness is made up on the next loop rather than
+	 * accumulating), with statistics of the recent periods.
+	 */
 	public class DeviceRunnable extends RateLimitedRunnable {
 		
-		private static final long NANOSECONDS_PER_SECOND = 1000000000L;
-		
-		long start = System.nanoTime();
-		long frequency;
-		long loops;
-		
-		private long throttle;
+		private volatile float rate;
 		
 		final Device device;
 
@@ -87,12 +110,27 @@ public class DeviceManager {
 		}
 
 		/**
-		 * Set the throttle of the runnable loop.
+		 * Sets the target rate of the loop.
 		 * 
-		 * @param throttle (Hz)
+		 * @param rate (Hz), 0 to loop as fast as possible
 		 */
-		public void setThrottle(long throttle) {
-			this.throttle = throttle;
+		public void setRate(float rate) {
+			if (rate < 0f) {
+				throw new IllegalArgumentException("Rate cannot be negative.");
+			}
+			if (rate == 0f) {
+				setPacing(Pacing.SLEEP);
+				setSleep(0L);
+			} else {
+				setFrequency(rate);
+				setPacing(Pacing.DEADLINE);
+			}
+			this.rate = rate;
+			resetStatistics();
+		}
+		
+		public float getRate() {
+			return rate;
 		}
 		
 		@Override
@@ -102,22 +140,39 @@ public class DeviceManager {
 			} catch (IOException e) {
 				System.err.println(e);
 			}
+		}
+		
+		/**
+		 * Returns the achieved rate, the median, 99th percentile and longest
+		 * of the recent periods and, at a target rate, the number of loops
+		 * which overran their period and of deadlines missed.
+		 * 
+		 * @return
+		 */
+		public String getStatistics() {
+			long[] sorted = getRecentPeriods();
 			
-			loops++;
-			long time = System.nanoTime();
-			if (time - start > NANOSECONDS_PER_SECOND) {
-				if (throttle != 0) {
-					long dt = (time - start) / loops - getSleepNanoseconds(); // actual time per loop
-					long t = (time - start) / throttle; // target time per loop
-					long sleep = t - dt;
-					if (sleep < 0) sleep = 0;
-					setSleepNanoseconds(sleep);
+			StringBuilder builder = new StringBuilder();
+			if (sorted.length == 0) {
+				builder.append("- Hz");
+			} else {
+				long sum = 0;
+				for (long period : sorted) {
+					sum += period;
+				}
+				Arrays.sort(sorted);
+				builder.append(String.format(Locale.US, "%.1f Hz (period p50 %.1f us, p99 %.1f us, max %.1f us",
+						sorted.length * NANOSECONDS_PER_SECOND / sum,
+						sorted[(sorted.length - 1) / 2] / NANOSECONDS_PER_MICROSECOND,
+						sorted[(int) Math.ceil(0.99 * sorted.length) - 1] / NANOSECONDS_PER_MICROSECOND,
+						sorted[sorted.length - 1] / NANOSECONDS_PER_MICROSECOND));
+				if (getPacing() == Pacing.DEADLINE) {
+					builder.append(String.format(Locale.US, "; target %.0f Hz, %d overruns, %d missed",
+							rate, getOverruns(), getSkipped()));
 				}
-				
-				frequency = loops;
-				loops = 0;
-				start = time;
+				builder.append(")");
 			}
+			return builder.toString();
 		}
 		
 	}
@@ -78,6 +78,19 @@ public class HMC5883L implements Device {
 		public long getDelay() {
 			return delay;
 		}
+		public float getFrequency() {
+			return frequency;
+		}
+		/**
+		 * Returns the slowest rate of at least the specified frequency, or
+		 * the fastest rate for a higher frequency or 0.
+		 */
+		public static DataOutputRate valueOf(float frequency) {
+			for (DataOutputRate rate : values()) {
+				if (rate.frequency >= frequency && frequency > 0f) return rate;
+			}
+			return RATE_75;
+		}
 	}
 	
 	// Configuration Register A
@@ -235,7 +248,7 @@ public class HMC5883L implements Device {
      */
 	public HMC5883L setup() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		// http://pi4j.com/example/control.html
-		i2c = I2CFactory.getInstance(i2cBus).getDevice(devAddr);
+		i2c = I2CBusArbiter.getInstance(i2cBus).getDevice(devAddr, "HMC5883L");
 		writeConfiguration();
 		return this;
 	}
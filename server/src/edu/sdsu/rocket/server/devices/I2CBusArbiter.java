@@ -0,0 +1,459 @@
+package edu.sdsu.rocket.server.devices;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Arbitrates an I2C bus between the drivers of the devices on it, which run
+ * on threads of their own.
+ * 
+ * Every transaction (a read or write of a device obtained from
+ * {@link #getDevice(int, String)}) holds the bus. When the bus is busy, it is
+ * next granted to the waiting device which has waited longer than its
+ * deadline (the earliest deadline first), or else to the one with the
+ * highest priority (then the earliest deadline). So a device polled in a
+ * tight loop (e.g. the ADS1115 waiting for a conversion) cannot delay a
+ * higher priority device by more than the transaction in progress, and a low
+ * priority device with a deadline is not starved.
+ * 
+ * Several transactions which must not be interleaved with other devices'
+ * (e.g. writing a command and reading its result, or a read-modify-write of
+ * a register) are run as one between {@link #begin(I2CDevice)} and
+ * {@link #end(I2CDevice)}.
+ * 
+ * The occupancy of the bus and the number of transactions, bus time and
+ * queueing delay of each device are reported by {@link #toString()}.
+ */
+public class I2CBusArbiter {
+	
+	public static final int DEFAULT_PRIORITY = 0;
+	
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	private static final double NANOSECONDS_PER_MICROSECOND = 1000.0;
+	
+	private static final Map<Integer, I2CBusArbiter> arbiters = new HashMap<Integer, I2CBusArbiter>();
+	
+	/**
+	 * Returns the arbiter of a bus.
+	 * 
+	 * @param busNumber
+	 * @return
+	 */
+	public static synchronized I2CBusArbiter getInstance(int busNumber) {
+		I2CBusArbiter arbiter = arbiters.get(busNumber);
+		if (arbiter == null) {
+			arbiter = new I2CBusArbiter(busNumber);
+			arbiters.put(busNumber, arbiter);
+		}
+		return arbiter;
+	}
+	
+	/**
+	 * Starts a transaction of several reads and writes of a device, which are
+	 * not interleaved with other devices' until {@link #end(I2CDevice)}. Does
+	 * nothing for devices which are not arbitrated.
+	 * 
+	 * @param device
+	 */
+	public static void begin(I2CDevice device) {
+		if (device instanceof Client) {
+			((Client) device).acquire();
+		}
+	}
+	
+	/**
+	 * Ends a transaction started by {@link #begin(I2CDevice)}.
+	 * 
+	 * @param device
+	 */
+	public static void end(I2CDevice device) {
+		if (device instanceof Client) {
+			((Client) device).release();
+		}
+	}
+	
+	private static class Priority {
+		final int priority;
+		final long deadline;
+		
+		Priority(int priority, long deadline) {
+			this.priority = priority;
+			this.deadline = deadline;
+		}
+	}
+	
+	private static class Waiter {
+		final Thread thread;
+		final Client client;
+		final long requested;
+		volatile boolean isGranted;
+		
+		Waiter(Thread thread, Client client, long requested) {
+			this.thread = thread;
+			this.client = client;
+			this.requested = requested;
+		}
+		
+		/**
+		 * Returns when the waiter is due (ns), or Long.MAX_VALUE if it has no
+		 * deadline.
+		 */
+		long getDue() {
+			return client.deadline == 0 ? Long.MAX_VALUE : requested + client.deadline;
+		}
+	}
+	
+	private final int busNumber;
+	private I2CBus bus;
+	private final Map<String, Priority> priorities = new HashMap<String, Priority>();
+	private final List<Client> clients = new ArrayList<Client>();
+	
+	// guarded by this
+	private Thread owner;
+	private Client ownerClient;
+	private int holds;
+	private long acquired; // ns
+	private final List<Waiter> waiters = new ArrayList<Waiter>();
+	
+	private long start; // ns, of the statistics
+	private long busy; // ns
+	
+	I2CBusArbiter(int busNumber) {
+		this.busNumber = busNumber;
+	}
+	
+	/**
+	 * Sets the priority of a device, which applies from the device being
+	 * obtained from {@link #getDevice(int, String)}.
+	 * 
+	 * @param name Device name.
+	 * @param priority Higher priorities are granted the bus first.
+	 * @param deadline Queueing delay (ns) after which the device is granted
+	 *                 the bus first, regardless of priority, or 0 for none.
+	 */
+	public synchronized void setPriority(String name, int priority, long deadline) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException("Deadline cannot be negative.");
+		}
+		priorities.put(name, new Priority(priority, deadline));
+	}
+	
+	/**
+	 * Returns a device on the bus whose reads and writes are arbitrated.
+	 * 
+	 * @param address I2C address.
+	 * @param name Device name, reported in the statistics and to which the
+	 *             priority set with {@link #setPriority(String, int, long)}
+	 *             applies.
+	 * @return
+	 * @throws IOException
+	 * @throws I2CFactory.UnsupportedBusNumberException
+	 */
+	public synchronized I2CDevice getDevice(int address, String name) throws IOException, I2CFactory.UnsupportedBusNumberException {
+		if (bus == null) {
+			bus = I2CFactory.getInstance(busNumber);
+		}
+		return getDevice(bus.getDevice(address), name);
+	}
+	
+	/**
+	 * Returns a device whose reads and writes of the specified device are
+	 * arbitrated.
+	 */
+	synchronized I2CDevice getDevice(I2CDevice device, String name) {
+		Priority priority = priorities.get(name);
+		Client client = new Client(device, name,
+				priority == null ? DEFAULT_PRIORITY : priority.priority,
+				priority == null ? 0L : priority.deadline);
+		if (clients.isEmpty()) {
+			start = System.nanoTime();
+		}
+		clients.add(client);
+		return client;
+	}
+	
+	/**
+	 * Waits until the bus is granted to the current thread.
+	 */
+	private void acquire(Client client) {
+		Thread thread = Thread.currentThread();
+		long requested = System.nanoTime();
+		Waiter waiter;
+		synchronized (this) {
+			if (owner == thread) {
+				holds++; // within a transaction
+				return;
+			}
+			if (owner == null && waiters.isEmpty()) {
+				grant(thread, client, requested, requested);
+				return;
+			}
+			waiter = new Waiter(thread, client, requested);
+			waiters.add(waiter);
+		}
+		
+		boolean isInterrupted = false;
+		while (!waiter.isGranted) {
+			LockSupport.park(this);
+			if (Thread.interrupted()) {
+				isInterrupted = true; // transactions are short, so finish waiting
+			}
+		}
+		if (isInterrupted) {
+			thread.interrupt();
+		}
+	}
+	
+	private void grant(Thread thread, Client client, long requested, long now) {
+		owner = thread;
+		ownerClient = client;
+		holds = 1;
+		acquired = now;
+		
+		long delay = now - requested;
+		client.transactions++;
+		client.totalDelay += delay;
+		if (delay > client.maxDelay) {
+			client.maxDelay = delay;
+		}
+		if (client.deadline != 0 && delay > client.deadline) {
+			client.late++;
+		}
+	}
+	
+	/**
+	 * Releases the bus (once the outermost transaction of the current thread
+	 * ends) and grants it to the next waiter.
+	 */
+	private synchronized void release() {
+		if (owner != Thread.currentThread()) {
+			throw new IllegalStateException("Bus not held.");
+		}
+		if (--holds != 0) return;
+		
+		long now = System.nanoTime();
+		ownerClient.busy += now - acquired;
+		busy += now - acquired;
+		owner = null;
+		ownerClient = null;
+		
+		if (!waiters.isEmpty()) {
+			Waiter next = waiters.get(0);
+			for (int i = 1; i < waiters.size(); i++) {
+				if (isBefore(waiters.get(i), next, now)) {
+					next = waiters.get(i);
+				}
+			}
+			waiters.remove(next);
+			grant(next.thread, next.client, next.requested, now);
+			next.isGranted = true;
+			LockSupport.unpark(next.thread);
+		}
+	}
+	
+	/**
+	 * Returns whether waiter a is granted the bus before waiter b.
+	 */
+	private static boolean isBefore(Waiter a, Waiter b, long now) {
+		boolean isOverdue = a.getDue() < now;
+		if (isOverdue != (b.getDue() < now)) return isOverdue;
+		if (!isOverdue && a.client.priority != b.client.priority) {
+			return a.client.priority > b.client.priority;
+		}
+		if (a.getDue() != b.getDue()) return a.getDue() < b.getDue();
+		return a.requested < b.requested;
+	}
+	
+	public synchronized boolean isEmpty() {
+		return clients.isEmpty();
+	}
+	
+	/**
+	 * Returns the number of devices waiting for the bus.
+	 */
+	synchronized int getWaiting() {
+		return waiters.size();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		long elapsed = System.nanoTime() - start;
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < clients.size(); i++) {
+			if (i != 0) builder.append("; ");
+			
+			Client client = clients.get(i);
+			builder.append(String.format(Locale.US, "%s: %d transactions (%.0f/s), %.1f%% busy, delay mean %.1f us, max %.1f us",
+					client.name,
+					client.transactions,
+					client.transactions * (double) NANOSECONDS_PER_SECOND / elapsed,
+					100.0 * client.busy / elapsed,
+					client.transactions == 0 ? 0.0 : client.totalDelay / NANOSECONDS_PER_MICROSECOND / client.transactions,
+					client.maxDelay / NANOSECONDS_PER_MICROSECOND));
+			if (client.deadline != 0) {
+				builder.append(", ").append(client.late).append(" late");
+			}
+		}
+		return String.format(Locale.US, "I2C bus %d: %.1f%% busy, %d waiting [%s]",
+				busNumber, 100.0 * busy / elapsed, waiters.size(), builder.toString());
+	}
+	
+	/**
+	 * A device whose reads and writes are each a transaction.
+	 */
+	private class Client implements I2CDevice {
+		
+		final I2CDevice device;
+		final String name;
+		final int priority;
+		final long deadline; // ns
+		
+		// guarded by the arbiter
+		long transactions;
+		long busy; // ns
+		long totalDelay; // ns
+		long maxDelay; // ns
+		long late;
+		
+		Client(I2CDevice device, String name, int priority, long deadline) {
+			this.device = device;
+			this.name = name;
+			this.priority = priority;
+			this.deadline = deadline;
+		}
+		
+		void acquire() {
+			I2CBusArbiter.this.acquire(this);
+		}
+		
+		void release() {
+			I2CBusArbiter.this.release();
+		}
+		
+		@Override
+		public int getAddress() {
+			return device.getAddress();
+		}
+		
+		@Override
+		public void write(byte b) throws IOException {
+			acquire();
+			try {
+				device.write(b);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public void write(byte[] buffer, int offset, int size) throws IOException {
+			acquire();
+			try {
+				device.write(buffer, offset, size);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public void write(byte[] buffer) throws IOException {
+			acquire();
+			try {
+				device.write(buffer);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public void write(int address, byte b) throws IOException {
+			acquire();
+			try {
+				device.write(address, b);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+			acquire();
+			try {
+				device.write(address, buffer, offset, size);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public void write(int address, byte[] buffer) throws IOException {
+			acquire();
+			try {
+				device.write(address, buffer);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public int read() throws IOException {
+			acquire();
+			try {
+				return device.read();
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int size) throws IOException {
+			acquire();
+			try {
+				return device.read(buffer, offset, size);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public int read(int address) throws IOException {
+			acquire();
+			try {
+				return device.read(address);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+			acquire();
+			try {
+				return device.read(address, buffer, offset, size);
+			} finally {
+				release();
+			}
+		}
+		
+		@Override
+		public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset, int readSize) throws IOException {
+			acquire();
+			try {
+				return device.read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize);
+			} finally {
+				release();
+			}
+		}
+	
+	}
+
+}
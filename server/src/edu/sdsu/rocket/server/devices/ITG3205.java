@@ -155,7 +155,7 @@ public class ITG3205 implements Device {
      */
 	public void setup() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		// http://pi4j.com/example/control.html
-		i2c = I2CFactory.getInstance(i2cBus).getDevice(devAddr);
+		i2c = I2CBusArbiter.getInstance(i2cBus).getDevice(devAddr, "ITG3205");
 		
 		writeFullScaleRange(ITG3205_FULLSCALE_2000);
 	    writeClockSource(ITG3205_CLOCK_PLL_XGYRO);
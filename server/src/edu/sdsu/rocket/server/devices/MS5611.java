@@ -190,7 +190,7 @@ public class MS5611 implements Device {
      */
 	public void setup() throws IOException, I2CFactory.UnsupportedBusNumberException {
 		// http://pi4j.com/example/control.html
-		i2c = I2CFactory.getInstance(i2cBus).getDevice(devAddr);
+		i2c = I2CBusArbiter.getInstance(i2cBus).getDevice(devAddr, "MS5611");
 		
 		reset();
 		try {
@@ -249,8 +249,13 @@ public class MS5611 implements Device {
 	public int[] readPROM() throws IOException {
 		int[] prom = new int[8];
 		for (int i = 0; i < 8; i++) {
-			i2c.write((byte) (MS5611_PROM_READ + i * 2));
-			i2c.read(BUFFER, 0 /* offset */, 2 /* size */);
+			I2CBusArbiter.begin(i2c);
+			try {
+				i2c.write((byte) (MS5611_PROM_READ + i * 2));
+				i2c.read(BUFFER, 0 /* offset */, 2 /* size */);
+			} finally {
+				I2CBusArbiter.end(i2c);
+			}
 			prom[i] = ((BUFFER[0] & 0xFF) << 8) | (BUFFER[1] & 0xFF);
 		}
 		
@@ -322,8 +327,13 @@ public class MS5611 implements Device {
 	 * @throws IOException
 	 */
 	public long readADC() throws IOException {
-		i2c.write(MS5611_ADC_READ);
-		i2c.read(BUFFER, 0 /* offset */, 3 /* size */);
+		I2CBusArbiter.begin(i2c); // the result of the command
+		try {
+			i2c.write(MS5611_ADC_READ);
+			i2c.read(BUFFER, 0 /* offset */, 3 /* size */);
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 		return ((BUFFER[0] & 0xFF) << 16) | ((BUFFER[1] & 0xFF) << 8) | (BUFFER[2] & 0xFF);
 	}
 	
@@ -1,16 +1,39 @@
 package edu.sdsu.rocket.server.devices;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.badlogic.gdx.math.MathUtils;
 
-public class MockADS1115 extends ADS1115 {
+import edu.sdsu.rocket.core.helpers.RateLimitedRunnable;
 
+/**
+ * Simulates the conversions of an ADS1115: each takes the period of the data
+ * rate, each register access takes about as long as a transaction on the bus
+ * and, with {@link ADS1115.Acquisition#READY}, the ALERT/RDY pin is signaled
+ * at the end of each conversion.
+ */
+public class MockADS1115 extends ADS1115 {
+	
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
 	private static final int RANDOM_MIN = 0;
 	private static final int RANDOM_MAX = 10;
+	
+	/**
+	 * Duration of a simulated register access, about that of a two byte
+	 * register access at 400 kHz.
+	 */
+	private static final long TRANSACTION_NANOSECONDS = 100000L;
+	
 	private float[] x;
 	private int channel;
-
+	private long converted; // ns, end of the conversion
+	
+	private ScheduledExecutorService readySignal;
+	
 	@Override
 	public ADS1115 setup() throws IOException {
 		x = new float[] {
@@ -19,15 +42,44 @@ public class MockADS1115 extends ADS1115 {
 			(int)(Math.random() * (RANDOM_MAX - RANDOM_MIN) + RANDOM_MIN),
 			(int)(Math.random() * (RANDOM_MAX - RANDOM_MIN) + RANDOM_MIN),
 		};
+		readySignal = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "MockADS1115 ALERT/RDY");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		return this;
 	}
 	
 	@Override
-	public void begin() throws IOException {}
+	public ADS1115 writeConversionReady() throws IOException {
+		setQueue(Queue.COMP_QUE_1_CONVERSION);
+		transaction();
+		transaction();
+		return this;
+	}
+	
+	@Override
+	public void begin() throws IOException {
+		transaction();
+		long conversion = NANOSECONDS_PER_SECOND / getRate().getSamplesPerSecond();
+		converted = System.nanoTime() + conversion;
+		if (getAcquisition() == Acquisition.READY && getQueue() != Queue.COMP_QUE_DISABLE) {
+			readySignal.schedule(new Runnable() {
+				@Override
+				public void run() {
+					onReady();
+				}
+			}, conversion, TimeUnit.NANOSECONDS);
+		}
+	}
 	
 	@Override
 	public boolean isPerformingConversion() throws IOException {
-		return false;
+		transaction();
+		return System.nanoTime() < converted;
 	}
 	
 	@Override
@@ -38,35 +90,20 @@ public class MockADS1115 extends ADS1115 {
 		return this;
 	}
 	
-	public float readMillivoltsMock() throws IOException, InterruptedException {
-		Thread.sleep(1L);
-	
+	@Override
+	public short readConversion() throws IOException {
+		transaction();
 		float s = MathUtils.sin(x[channel]); // -1 to 1
 		float sp = (s / 2f) + 0.5f; // 0 to 1
-		return sp * 3300;
+		return (short) Math.min(Short.MAX_VALUE, Math.round(sp * 3300 / getGain().resolution)); // saturates beyond the range
 	}
 	
-	@Override
-	public void loop() throws IOException, InterruptedException {
-		for (int channel : sequence) {
-			long start = System.nanoTime();
-			setSingleEnded(channel).begin();
-			
-			// wait for conversion
-			while (isPerformingConversion()) {
-				if (System.nanoTime() - start > timeout) {
-					if (listener != null) {
-						listener.onConversionTimeout();
-					}
-					break;
-				}
-			}
-			
-			float value = readMillivoltsMock();
-			
-			if (listener != null) {
-				listener.onValue(Channel.valueOf(channel), value);
-			}
+	private static void transaction() {
+		try {
+			RateLimitedRunnable.waitUntil(System.nanoTime() + TRANSACTION_NANOSECONDS, 0L);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // for the device loop to stop
 		}
 	}
+
 }
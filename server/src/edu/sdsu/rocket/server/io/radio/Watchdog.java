@@ -96,6 +96,7 @@ public class Watchdog implements APIFrameListener {
 				}
 			}
 		};
+		runnable.setPacing(RateLimitedRunnable.Pacing.DEADLINE);
 		thread = new Thread(runnable);
 		thread.setName(getClass().getSimpleName());
 		thread.start();
@@ -4,9 +4,14 @@ import java.io.IOException;
 
 import com.pi4j.io.i2c.I2CDevice;
 
+import edu.sdsu.rocket.server.devices.I2CBusArbiter;
+
 /**
  * Partial adaptation from:
  * https://github.com/jrowberg/i2cdevlib/blob/master/MSP430/I2Cdev/I2Cdev.cpp
+ * 
+ * Read-modify-writes of a register (and the use of the word buffer) are one
+ * transaction of an arbitrated bus (see {@link I2CBusArbiter}).
  */
 public class I2Cdev {
 	
@@ -35,9 +40,14 @@ public class I2Cdev {
 	 * @throws IOException 
 	 */
 	public static void writeBit(I2CDevice i2c, int regAddr, int bitNum, boolean value) throws IOException {
-	    int b = i2c.read(regAddr);
-	    b = value ? (b | (1 << bitNum)) : (b & ~(1 << bitNum));
-	    i2c.write(regAddr, (byte) (b & 0xFF));
+		I2CBusArbiter.begin(i2c);
+		try {
+		    int b = i2c.read(regAddr);
+		    b = value ? (b | (1 << bitNum)) : (b & ~(1 << bitNum));
+		    i2c.write(regAddr, (byte) (b & 0xFF));
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 	
 	/** Read multiple bits from an 8-bit device register.
@@ -78,13 +88,18 @@ public class I2Cdev {
 	    // 10101111 original value (sample)
 	    // 10100011 original & ~mask
 	    // 10101011 masked | value
-		int b = i2c.read(regAddr);
-        int mask = ((1 << length) - 1) << (bitStart - length + 1);
-        data <<= (bitStart - length + 1); // shift data into correct position
-        data &= mask; // zero all non-important bits in data
-        b &= ~(mask); // zero all important bits in existing byte
-        b |= data; // combine data with existing byte
-        i2c.write(regAddr, (byte) (b & 0xFF));
+		I2CBusArbiter.begin(i2c);
+		try {
+			int b = i2c.read(regAddr);
+	        int mask = ((1 << length) - 1) << (bitStart - length + 1);
+	        data <<= (bitStart - length + 1); // shift data into correct position
+	        data &= mask; // zero all non-important bits in data
+	        b &= ~(mask); // zero all important bits in existing byte
+	        b |= data; // combine data with existing byte
+	        i2c.write(regAddr, (byte) (b & 0xFF));
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 	
 	/** write a single bit in a 16-bit device register.
@@ -106,9 +121,14 @@ public class I2Cdev {
 	 * @throws IOException 
 	 */
 	public static void writeBitW(I2CDevice i2c, int regAddr, int bitNum, boolean value) throws IOException {
-		int w = readWord(i2c, regAddr);
-		w = value ? (w | (1 << bitNum)) : (w & ~(1 << bitNum));
-		writeWord(i2c, regAddr, w);
+		I2CBusArbiter.begin(i2c);
+		try {
+			int w = readWord(i2c, regAddr);
+			w = value ? (w | (1 << bitNum)) : (w & ~(1 << bitNum));
+			writeWord(i2c, regAddr, w);
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 	
 	/** Write multiple bits in a 16-bit device register.
@@ -127,13 +147,18 @@ public class I2Cdev {
 		// 1010111110010110 original value (sample)
 		// 1010001110010110 original & ~mask
 		// 1010101110010110 masked | value
-		int w = readWord(i2c, regAddr);
-		int mask = ((1 << length) - 1) << (bitStart - length + 1);
-		data <<= (bitStart - length + 1); // shift data into correct position
-		data &= mask; // zero all non-important bits in data
-		w &= ~(mask); // zero all important bits in existing word
-		w |= data; // combine data with existing word
-		writeWord(i2c, regAddr, w);
+		I2CBusArbiter.begin(i2c);
+		try {
+			int w = readWord(i2c, regAddr);
+			int mask = ((1 << length) - 1) << (bitStart - length + 1);
+			data <<= (bitStart - length + 1); // shift data into correct position
+			data &= mask; // zero all non-important bits in data
+			w &= ~(mask); // zero all important bits in existing word
+			w |= data; // combine data with existing word
+			writeWord(i2c, regAddr, w);
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 	
 	/** Read single word from a 16-bit device register.
@@ -142,8 +167,13 @@ public class I2Cdev {
 	 * @throws IOException 
 	 */
 	public static short readWord(I2CDevice i2c, int regAddr) throws IOException {
-		i2c.read(regAddr, WORD_BUFFER, 0 /* offset */, 2 /* size */);
-		return (short) ((WORD_BUFFER[0] << 8) | (WORD_BUFFER[1] & 0xFF));
+		I2CBusArbiter.begin(i2c);
+		try {
+			i2c.read(regAddr, WORD_BUFFER, 0 /* offset */, 2 /* size */);
+			return (short) ((WORD_BUFFER[0] << 8) | (WORD_BUFFER[1] & 0xFF));
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 	
 	/** Write single word to a 16-bit device register.
@@ -153,9 +183,14 @@ public class I2Cdev {
 	 * @throws IOException 
 	 */
 	public static void writeWord(I2CDevice i2c, int regAddr, int data) throws IOException {
-		WORD_BUFFER[0] = (byte) ((data >> 8) & 0xFF);
-		WORD_BUFFER[1] = (byte) (data & 0xFF);
-		i2c.write(regAddr, WORD_BUFFER, 0 /* offset */, 2 /* size */);
+		I2CBusArbiter.begin(i2c);
+		try {
+			WORD_BUFFER[0] = (byte) ((data >> 8) & 0xFF);
+			WORD_BUFFER[1] = (byte) (data & 0xFF);
+			i2c.write(regAddr, WORD_BUFFER, 0 /* offset */, 2 /* size */);
+		} finally {
+			I2CBusArbiter.end(i2c);
+		}
 	}
 
 	/** Read a single bit from a 16-bit device register.
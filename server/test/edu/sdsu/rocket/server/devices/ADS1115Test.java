@@ -0,0 +1,151 @@
+package edu.sdsu.rocket.server.devices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ADS1115Test {
+	
+	private static final int[] SEQUENCE = new int[] { 0, 2, 3 };
+	private static final int LOOPS = 20;
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	/**
+	 * Records the conversions read from the mock, with whether each was read
+	 * before its conversion ended.
+	 */
+	static class RecordingADS1115 extends MockADS1115 {
+		final List<Float> conversions = new ArrayList<Float>();
+		int early;
+		private long converted;
+		
+		@Override
+		public void begin() throws IOException {
+			converted = System.nanoTime() + NANOSECONDS_PER_SECOND / getRate().getSamplesPerSecond();
+			super.begin();
+		}
+		
+		@Override
+		public short readConversion() throws IOException {
+			if (System.nanoTime() - converted < 0) early++;
+			short conversion = super.readConversion();
+			conversions.add(conversion * getGain().resolution);
+			return conversion;
+		}
+	}
+	
+	/**
+	 * Records the values and timeouts reported.
+	 */
+	static class RecordingListener implements ADS1115.AnalogListener {
+		final List<ADS1115.Channel> channels = new ArrayList<ADS1115.Channel>();
+		final List<Float> values = new ArrayList<Float>();
+		int timeouts;
+		
+		@Override
+		public void onValue(ADS1115.Channel channel, float value) {
+			channels.add(channel);
+			values.add(value);
+		}
+		
+		@Override
+		public void onConversionTimeout() {
+			timeouts++;
+		}
+	}
+	
+	private RecordingADS1115 ads1115;
+	private RecordingListener listener;
+	
+	@Before
+	public void setUp() throws IOException {
+		ads1115 = new RecordingADS1115();
+		ads1115.setup();
+		ads1115.setGain(ADS1115.Gain.PGA_1)
+			.setRate(ADS1115.Rate.DR_860SPS)
+			.setListener(listener = new RecordingListener());
+		ads1115.setSequence(SEQUENCE);
+		ads1115.setTimeout(NANOSECONDS_PER_SECOND);
+	}
+	
+	private void loop() throws IOException, InterruptedException {
+		for (int i = 0; i < LOOPS; i++) {
+			ads1115.loop();
+		}
+	}
+	
+	private void assertConversionsReported() {
+		int samples = LOOPS * SEQUENCE.length;
+		assertEquals(samples, ads1115.getSampleCount());
+		assertEquals(samples, listener.values.size());
+		assertEquals(ads1115.conversions, listener.values);
+		for (int i = 0; i < samples; i++) {
+			assertEquals(ADS1115.Channel.valueOf(SEQUENCE[i % SEQUENCE.length]), listener.channels.get(i));
+			float value = listener.values.get(i);
+			assertTrue("out of range: " + value, value >= 0f && value <= 3300f);
+		}
+	}
+	
+	@Test
+	public void defaultsToWait() {
+		assertEquals(ADS1115.Acquisition.WAIT, new ADS1115().getAcquisition());
+	}
+	
+	@Test
+	public void pollReadsAfterTheConversion() throws IOException, InterruptedException {
+		ads1115.setAcquisition(ADS1115.Acquisition.POLL);
+		loop();
+		
+		assertConversionsReported();
+		assertEquals(0, ads1115.early);
+		assertEquals(0, ads1115.getTimeoutCount());
+		assertTrue(ads1115.getTransactionsPerSample() > 3.0); // the begin, at least two polls and the read
+		assertEquals(0.0, ads1115.getTransactionsSaved(), 0.0);
+	}
+	
+	@Test
+	public void waitReadsOnceAfterTheConversionTime() throws IOException, InterruptedException {
+		ads1115.setAcquisition(ADS1115.Acquisition.WAIT);
+		loop();
+		
+		assertConversionsReported();
+		assertEquals(0, ads1115.early);
+		assertEquals(0, ads1115.getTimeoutCount());
+		assertEquals(2.0, ads1115.getTransactionsPerSample(), 0.0);
+		assertTrue(ads1115.getTransactionsSaved() > 1.0); // the conversion time is many transactions long
+	}
+	
+	@Test
+	public void readyReadsOnceWhenSignaled() throws IOException, InterruptedException {
+		ads1115.setAcquisition(ADS1115.Acquisition.READY);
+		ads1115.writeConversionReady();
+		loop();
+		
+		assertConversionsReported();
+		assertEquals(0, ads1115.early);
+		assertEquals(0, ads1115.getTimeoutCount());
+		assertEquals(0, listener.timeouts);
+		assertEquals(2.0, ads1115.getTransactionsPerSample(), 0.0);
+		assertTrue(ads1115.getTransactionsSaved() > 1.0);
+	}
+	
+	@Test
+	public void readyTimesOutWithoutSignal() throws IOException, InterruptedException {
+		ads1115.setAcquisition(ADS1115.Acquisition.READY); // the comparator is disabled, so never signaled
+		ads1115.setTimeout(5L * NANOSECONDS_PER_MILLISECOND);
+		ads1115.loop();
+		
+		assertEquals(SEQUENCE.length, ads1115.getTimeoutCount());
+		assertEquals(SEQUENCE.length, listener.timeouts);
+		assertEquals(SEQUENCE.length, ads1115.getSampleCount()); // read regardless
+		assertEquals(2.0, ads1115.getTransactionsPerSample(), 0.0);
+	}
+
+}
@@ -0,0 +1,167 @@
+package edu.sdsu.rocket.server.devices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.sdsu.rocket.core.helpers.Stopwatch;
+import edu.sdsu.rocket.server.devices.CyclicExecutive.Executor;
+import edu.sdsu.rocket.server.devices.DeviceManager.Device;
+
+public class CyclicExecutiveTest {
+	
+	private static final long NANOSECONDS_PER_MICROSECOND = 1000L;
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	/**
+	 * Time which only advances when set.
+	 */
+	static class FakeClock extends Stopwatch {
+		long time;
+		
+		@Override
+		public long nanoSecondsElapsed() {
+			return time;
+		}
+	}
+	
+	/**
+	 * Device whose loop takes a fixed time on the fake clock.
+	 */
+	class FakeDevice implements Device {
+		long cost; // ns
+		int loops;
+		
+		FakeDevice(long cost) {
+			this.cost = cost;
+		}
+		
+		@Override
+		public void loop() {
+			clock.time += cost;
+			loops++;
+		}
+	}
+	
+	private FakeClock clock;
+	private CyclicExecutive executive;
+	
+	@Before
+	public void setUp() {
+		clock = new FakeClock();
+		executive = new CyclicExecutive(1, clock);
+		executive.setCalibrationLoops(10);
+	}
+	
+	/**
+	 * Runs frames on the calling thread, waiting for each deadline by
+	 * advancing the clock to it.
+	 */
+	private long run(Executor executor, long deadline, int frames) {
+		for (int i = 0; i < frames; i++) {
+			deadline = executor.runFrame(deadline);
+			if (deadline - clock.time > 0) {
+				clock.time = deadline;
+			}
+		}
+		return deadline;
+	}
+	
+	private static void reset(FakeDevice... devices) {
+		for (FakeDevice device : devices) {
+			device.loops = 0;
+		}
+	}
+	
+	@Test
+	public void runsDevicesAtTheirRates() {
+		FakeDevice fast = new FakeDevice(100 * NANOSECONDS_PER_MICROSECOND);
+		FakeDevice medium = new FakeDevice(200 * NANOSECONDS_PER_MICROSECOND);
+		FakeDevice slow = new FakeDevice(300 * NANOSECONDS_PER_MICROSECOND);
+		executive.add(slow, 100f);
+		executive.add(fast, 1000f);
+		executive.add(medium, 250f);
+		executive.plan();
+		reset(fast, medium, slow);
+		
+		Executor executor = executive.executors.get(0);
+		assertEquals(NANOSECONDS_PER_MILLISECOND, executor.frameLength); // of the fastest
+		assertEquals(20, executor.slots.length); // lcm of 1, 4 and 10 frames
+		assertTrue(executor.isSchedulable());
+		
+		run(executor, clock.time, 2 * executor.slots.length);
+		assertEquals(40, fast.loops);
+		assertEquals(10, medium.loops);
+		assertEquals(4, slow.loops);
+		assertEquals(40, executor.frames);
+		assertEquals(0, executor.skipped);
+		for (long overruns : executor.overruns) {
+			assertEquals(0, overruns);
+		}
+	}
+	
+	@Test
+	public void countsOverrunsBySlot() {
+		FakeDevice fast = new FakeDevice(100 * NANOSECONDS_PER_MICROSECOND);
+		FakeDevice slow = new FakeDevice(300 * NANOSECONDS_PER_MICROSECOND);
+		executive.add(fast, 1000f);
+		executive.add(slow, 500f);
+		executive.plan();
+		
+		Executor executor = executive.executors.get(0);
+		assertEquals(2, executor.slots.length);
+		assertEquals(2, executor.slots[0].length); // both run in the first slot
+		assertEquals(1, executor.slots[1].length);
+		
+		long deadline = run(executor, clock.time, 2);
+		slow.cost = 2500 * NANOSECONDS_PER_MICROSECOND; // the first slot ends 1.6 ms past its frame
+		deadline = run(executor, deadline, 1);
+		
+		assertEquals(1, executor.overruns[0]);
+		assertEquals(0, executor.overruns[1]);
+		assertEquals(1600 * NANOSECONDS_PER_MICROSECOND, executor.maxOverrun[0]);
+		assertEquals(1, executor.skipped); // the second slot, missed entirely
+		assertEquals(3, executor.frames);
+		
+		slow.cost = 300 * NANOSECONDS_PER_MICROSECOND;
+		reset(fast, slow);
+		run(executor, deadline, 4); // from the first slot again
+		assertEquals(1, executor.overruns[0]);
+		assertEquals(1, executor.skipped);
+		assertEquals(4, fast.loops);
+		assertEquals(2, slow.loops);
+	}
+	
+	@Test
+	public void doesNotOverrunWhenTheClockWraps() {
+		clock.time = Long.MAX_VALUE - 10 * NANOSECONDS_PER_MILLISECOND;
+		FakeDevice device = new FakeDevice(100 * NANOSECONDS_PER_MICROSECOND);
+		executive.add(device, 1000f);
+		executive.plan();
+		
+		Executor executor = executive.executors.get(0);
+		run(executor, clock.time, 100); // past the wrap
+		assertTrue(clock.time < 0);
+		assertEquals(100, executor.frames);
+		assertEquals(0, executor.overruns[0]);
+		assertEquals(0, executor.skipped);
+	}
+	
+	@Test
+	public void limitsTheMajorCycle() {
+		FakeDevice fast = new FakeDevice(10 * NANOSECONDS_PER_MICROSECOND);
+		FakeDevice slow = new FakeDevice(10 * NANOSECONDS_PER_MICROSECOND);
+		executive.add(fast, 10000f);
+		executive.add(slow, 1f); // every 10000 frames
+		executive.plan();
+		
+		Executor executor = executive.executors.get(0);
+		assertEquals(CyclicExecutive.MAX_FRAMES, executor.slots.length);
+		reset(fast, slow);
+		run(executor, clock.time, CyclicExecutive.MAX_FRAMES);
+		assertEquals(1, slow.loops);
+	}
+
+}
@@ -0,0 +1,263 @@
+package edu.sdsu.rocket.server.devices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+public class I2CBusArbiterTest {
+	
+	private static final long TIMEOUT = 5000L; // ms
+	private static final long NANOSECONDS_PER_MILLISECOND = 1000000L;
+	
+	/**
+	 * Records the name of the device of each transaction, in the order they
+	 * reach the bus.
+	 */
+	static class FakeDevice implements I2CDevice {
+		final String name;
+		final List<String> transactions;
+		
+		FakeDevice(String name, List<String> transactions) {
+			this.name = name;
+			this.transactions = transactions;
+		}
+		
+		private int transaction() {
+			transactions.add(name);
+			return 0;
+		}
+		
+		@Override
+		public int getAddress() {
+			return 0;
+		}
+		
+		@Override
+		public void write(byte b) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public void write(byte[] buffer, int offset, int size) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public void write(byte[] buffer) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public void write(int address, byte b) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public void write(int address, byte[] buffer) throws IOException {
+			transaction();
+		}
+		
+		@Override
+		public int read() throws IOException {
+			return transaction();
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int size) throws IOException {
+			return transaction();
+		}
+		
+		@Override
+		public int read(int address) throws IOException {
+			return transaction();
+		}
+		
+		@Override
+		public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+			return transaction();
+		}
+		
+		@Override
+		public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset, int readSize) throws IOException {
+			return transaction();
+		}
+	}
+	
+	private I2CBusArbiter arbiter;
+	private List<String> transactions;
+	private final List<Thread> threads = new ArrayList<Thread>();
+	
+	@Before
+	public void setUp() {
+		arbiter = new I2CBusArbiter(1);
+		transactions = Collections.synchronizedList(new ArrayList<String>());
+	}
+	
+	@After
+	public void tearDown() throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join(TIMEOUT);
+		}
+	}
+	
+	private I2CDevice getDevice(String name) {
+		return arbiter.getDevice(new FakeDevice(name, transactions), name);
+	}
+	
+	/**
+	 * Starts a thread reading the device once, and waits for it to wait for
+	 * the bus.
+	 */
+	private void read(final I2CDevice device) throws InterruptedException {
+		int waiting = arbiter.getWaiting();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					device.read(0);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		threads.add(thread);
+		thread.start();
+		awaitWaiting(waiting + 1);
+	}
+	
+	private void awaitWaiting(int waiting) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (arbiter.getWaiting() != waiting) {
+			assertTrue("timed out waiting for the bus", System.currentTimeMillis() < deadline);
+			Thread.sleep(1L);
+		}
+	}
+	
+	private void awaitTransactions() throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join(TIMEOUT);
+			assertTrue(!thread.isAlive());
+		}
+	}
+	
+	@Test
+	public void grantsByPriority() throws IOException, InterruptedException {
+		arbiter.setPriority("high", 2, 0L);
+		arbiter.setPriority("medium", 1, 0L);
+		I2CDevice holder = getDevice("holder");
+		I2CDevice low = getDevice("low");
+		I2CDevice medium = getDevice("medium");
+		I2CDevice high = getDevice("high");
+		
+		I2CBusArbiter.begin(holder);
+		read(low);
+		read(high);
+		read(medium);
+		I2CBusArbiter.end(holder);
+		
+		awaitTransactions();
+		assertEquals(Arrays.asList("high", "medium", "low"), transactions);
+	}
+	
+	@Test
+	public void grantsEqualPrioritiesInRequestOrder() throws IOException, InterruptedException {
+		I2CDevice holder = getDevice("holder");
+		I2CDevice first = getDevice("first");
+		I2CDevice second = getDevice("second");
+		I2CDevice third = getDevice("third");
+		
+		I2CBusArbiter.begin(holder);
+		read(first);
+		read(second);
+		read(third);
+		I2CBusArbiter.end(holder);
+		
+		awaitTransactions();
+		assertEquals(Arrays.asList("first", "second", "third"), transactions);
+	}
+	
+	@Test
+	public void grantsOverdueDevicesFirst() throws IOException, InterruptedException {
+		arbiter.setPriority("high", 2, 0L);
+		arbiter.setPriority("late", 0, 1L * NANOSECONDS_PER_MILLISECOND);
+		arbiter.setPriority("due", 0, 1000L * NANOSECONDS_PER_MILLISECOND);
+		I2CDevice holder = getDevice("holder");
+		I2CDevice high = getDevice("high");
+		I2CDevice late = getDevice("late");
+		I2CDevice due = getDevice("due");
+		
+		I2CBusArbiter.begin(holder);
+		read(due);
+		read(late);
+		read(high);
+		Thread.sleep(10L); // past the deadline of late only
+		I2CBusArbiter.end(holder);
+		
+		awaitTransactions();
+		assertEquals(Arrays.asList("late", "high", "due"), transactions);
+	}
+	
+	@Test
+	public void nestedHoldsAreReentrant() throws IOException, InterruptedException {
+		I2CDevice holder = getDevice("holder");
+		I2CDevice other = getDevice("other");
+		
+		I2CBusArbiter.begin(holder);
+		I2CBusArbiter.begin(holder);
+		holder.write((byte) 0); // within the hold, without waiting
+		read(other);
+		I2CBusArbiter.end(holder);
+		holder.read(0);
+		assertEquals(1, arbiter.getWaiting()); // still held by the outer transaction
+		I2CBusArbiter.end(holder);
+		
+		awaitTransactions();
+		assertEquals(Arrays.asList("holder", "holder", "other"), transactions);
+		assertEquals(0, arbiter.getWaiting());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void releaseWithoutHoldThrows() {
+		I2CBusArbiter.end(getDevice("device"));
+	}
+	
+	@Test
+	public void releaseFromAnotherThreadThrows() throws InterruptedException {
+		final I2CDevice device = getDevice("device");
+		I2CBusArbiter.begin(device);
+		
+		final List<RuntimeException> thrown = new ArrayList<RuntimeException>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					I2CBusArbiter.end(device);
+				} catch (IllegalStateException e) {
+					thrown.add(e);
+				}
+			}
+		});
+		thread.start();
+		thread.join(TIMEOUT);
+		I2CBusArbiter.end(device);
+		
+		assertEquals(1, thrown.size());
+	}
+
+}